@@ -1,22 +1,45 @@
 package com.ronda.bluetoothassist;
 
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 
 import com.ronda.bluetoothassist.base.AppConst;
-import com.ronda.bluetoothassist.utils.CloseUtils;
+import com.ronda.bluetoothassist.capture.CaptureWriter;
+import com.ronda.bluetoothassist.capture.ReplaySource;
+import com.ronda.bluetoothassist.capture.Replayer;
+import com.ronda.bluetoothassist.checksum.ChecksumStage;
+import com.ronda.bluetoothassist.command.CommandChannel;
+import com.ronda.bluetoothassist.command.CommandFuture;
+import com.ronda.bluetoothassist.command.Correlator;
+import com.ronda.bluetoothassist.connection.ReconnectPolicy;
+import com.ronda.bluetoothassist.frame.FrameDecoder;
+import com.ronda.bluetoothassist.frame.FrameDecoderFactory;
+import com.ronda.bluetoothassist.io.BufferPool;
+import com.ronda.bluetoothassist.io.IoExecutor;
+import com.ronda.bluetoothassist.io.WriteFuture;
+import com.ronda.bluetoothassist.metrics.MetricsSnapshot;
+import com.ronda.bluetoothassist.modbus.ModbusCorrelator;
+import com.ronda.bluetoothassist.modbus.ModbusFrameDecoder;
+import com.ronda.bluetoothassist.modbus.ModbusPoller;
+import com.ronda.bluetoothassist.schedule.PeriodicSend;
+import com.ronda.bluetoothassist.schedule.SendScheduler;
+import com.ronda.bluetoothassist.transport.RfcommTransportFactory;
+import com.ronda.bluetoothassist.transport.TransportFactory;
 import com.ronda.bluetoothassist.utils.SPUtils;
 import com.socks.library.KLog;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.Arrays;
-import java.util.UUID;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Author: Ronda(1575558177@qq.com)
@@ -25,276 +48,555 @@ import java.util.UUID;
  * <p>
  * 蓝牙连接要点：
  * 当前显示设备的连接状态，只能由当前最近传入的连接设备来确定，与上次的连接设备无关。这种情况就是为了避免先后连接两个设备导致显示状态紊乱的情况
+ * <p>
+ * 可以同时与多个设备保持连接，每个设备一个 {@link Session}，以 MAC 地址为键。
+ * connect() 切换的是“主设备”（界面上显示状态的那个），openSession() 则在不影响其他设备的情况下增加一个会话。
+ * 具体的连接方式由 TransportFactory 决定，默认是蓝牙 RFCOMM。
+ * 连接尝试、读循环和写操作都在共享的 {@link IoExecutor} 中执行（连接尝试使用单独的线程），线程数不随设备数和重连次数增长
  */
 
 public class BluetoothChatService {
-    // Name for the SDP record when creating server socket
-    private static final String NAME_SECURE = "BluetoothChatSecure";
-    // Unique UUID for this application
-    private static final UUID MY_UUID_SECURE = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
     // Member fields
-    private final BluetoothAdapter mBtAdapter;
+    private final TransportFactory mTransportFactory;
     private final Handler mHandler;  // 由 UI Activity 通过构造器传过来的
-    private ConnectThread mConnectThread;
-    private ConnectedThread mConnectedThread;
-    private int mState;
+    private final IoExecutor mIoExecutor;
+    private final ConcurrentHashMap<String, Session> mSessions = new ConcurrentHashMap<String, Session>();
+    private final Object mPrimaryLock = new Object(); // 只保护主设备的切换，不参与收发
+    private volatile Session mPrimary;
+    private volatile int mReceiveMode = RECEIVE_MODE_COPY;
+    private volatile FrameDecoderFactory mFrameDecoderFactory;
+    private volatile ChecksumStage mSessionChecksum; // 新会话按它的配置各建一个校验
+    private final BufferPool mBufferPool = new BufferPool(READ_BUFFER_SIZE, 64);
+    private volatile boolean mAutoReconnect = true;
+    private volatile ReconnectPolicy mReconnectPolicy = new ReconnectPolicy();
+    private volatile boolean mAdapterEnabled = true;
+    private volatile CaptureWriter mCaptureWriter;
+    private volatile Replayer mReplayer;
+    private final SendScheduler mSendScheduler = new SendScheduler("BtScheduler");
+    private ScheduledExecutorService mCommandTimer; // 所有请求/应答通道共用的超时检查线程，第一次打开通道时创建
 
 
     public static final int STATE_NONE = 0; // we're doing nothing
     public static final int STATE_CONNECTING = 1; // now initiating an outgoing connection
     public static final int STATE_CONNECTED = 2; // now connected to a remote device
+    public static final int STATE_RECONNECTING = 3; // 连接意外断开，正在等待或进行自动重连
+
+    public static final int RECEIVE_MODE_COPY = 0;   // MESSAGE_READ 的 obj 是新复制出来的 byte[]
+    public static final int RECEIVE_MODE_POOLED = 1; // MESSAGE_READ 的 obj 是 Chunk，UI 处理完后必须调用 recycle()
+    public static final int RECEIVE_MODE_BATCHED = 2; // 合并后以 MESSAGE_READ_BATCH 发送，obj 是 ReceiveBatcher
+
+    private static final int READ_BUFFER_SIZE = 1024;
 
-    private String deviceAddress;
+    public static final String REPLAY_ADDRESS = "replay"; // 回放使用的会话，不对应真实设备
 
     public BluetoothChatService(Handler handler) {
-        mBtAdapter = BluetoothAdapter.getDefaultAdapter();
-        mState = STATE_NONE;
-        mHandler = handler;
+        this(handler, new RfcommTransportFactory(BluetoothAdapter.getDefaultAdapter()));
     }
 
-    private synchronized void setState(int state) {
-        mState = state;
-        // Give the new state to the Handler so the UI Activity can update
-        mHandler.obtainMessage(AppConst.MESSAGE_STATE_CHANGE, state, -1).sendToTarget();
+    public BluetoothChatService(Handler handler, TransportFactory transportFactory) {
+        this(handler, transportFactory, IoExecutor.getDefault());
     }
 
-    private synchronized void setState(int state, String deviceName) {
-        mState = state;
-        // Give the new state to the Handler so the UI Activity can update
-        mHandler.obtainMessage(AppConst.MESSAGE_STATE_CHANGE, state, -1, deviceName).sendToTarget();
+    public BluetoothChatService(Handler handler, TransportFactory transportFactory, IoExecutor ioExecutor) {
+        mTransportFactory = transportFactory;
+        mHandler = handler;
+        mIoExecutor = ioExecutor;
     }
 
-    public synchronized int getState() {
-        return mState;
+    /**
+     * 主设备的连接状态
+     */
+    public int getState() {
+        Session primary = mPrimary;
+        return primary == null ? STATE_NONE : primary.getState();
     }
 
-
     /**
-     * Stop all threads
-     * <p>
-     * 取消并置空本类中所有的线程（共3个）
+     * 设置主设备使用的分帧器，只有完整的帧才会通过 MESSAGE_READ 发给 UI
+     *
+     * @param decoder 为 null 时不分帧，每次读到的数据直接发给 UI
      */
-    public void stop() {
-        setState(STATE_NONE);
-        if (mConnectThread != null) {
-            mConnectThread.cancel();
-            mConnectThread = null;
+    public void setFrameDecoder(FrameDecoder decoder) {
+        Session primary = mPrimary;
+        if (primary != null) {
+            primary.setFrameDecoder(decoder);
         }
-        KLog.d("mConnectThread != null --> " + (mConnectThread != null));
-        if (mConnectedThread != null) {
-            mConnectedThread.cancel();
-            mConnectedThread = null;
-            KLog.d("stop --> mConnectThread = null");
+    }
+
+    public FrameDecoder getFrameDecoder() {
+        Session primary = mPrimary;
+        return primary == null ? null : primary.getFrameDecoder();
+    }
+
+    /**
+     * 设置主设备的帧尾校验：接收到的帧校验失败时计数并丢弃，发送的数据自动追加校验值。
+     * 主设备没有分帧器时收发都不校验
+     *
+     * @param stage 为 null 时不校验也不追加
+     */
+    public void setChecksumStage(ChecksumStage stage) {
+        Session primary = mPrimary;
+        if (primary != null) {
+            primary.setChecksumStage(stage);
         }
     }
 
+    public ChecksumStage getChecksumStage() {
+        Session primary = mPrimary;
+        return primary == null ? null : primary.getChecksumStage();
+    }
 
-    public synchronized void connect(String adrress) {
-        if (deviceAddress != null && deviceAddress.equals(adrress) && mState != STATE_NONE) { // 说明再次连接的是同一个设备，并且上次的连接请求还正在进行中或者已经正在通信中
-            return;
+    /**
+     * 新建会话时用它为每个会话创建各自的分帧器，为 null 时新会话不分帧
+     */
+    public void setFrameDecoderFactory(FrameDecoderFactory factory) {
+        mFrameDecoderFactory = factory;
+    }
+
+    /**
+     * 新建会话时按 template 的类型、帧头长度和 strip 为每个会话创建各自的校验，计数互不影响。
+     * 只在同时设置了分帧器工厂时生效
+     *
+     * @param template 为 null 时新会话不校验
+     */
+    public void setSessionChecksum(ChecksumStage template) {
+        mSessionChecksum = template;
+    }
+
+    /**
+     * 设置接收数据交给 UI 的方式，对所有会话生效
+     *
+     * @param mode {@link #RECEIVE_MODE_COPY}、{@link #RECEIVE_MODE_POOLED} 或 {@link #RECEIVE_MODE_BATCHED}
+     */
+    public void setReceiveMode(int mode) {
+        mReceiveMode = mode;
+    }
+
+    public int getReceiveMode() {
+        return mReceiveMode;
+    }
+
+    public BufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    /**
+     * 执行连接和收发的线程池，可以从中读取线程数、队列长度等统计
+     */
+    public IoExecutor getIoExecutor() {
+        return mIoExecutor;
+    }
+
+    /**
+     * 连接意外断开后是否自动重连，默认开启
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        mAutoReconnect = autoReconnect;
+    }
+
+    public boolean isAutoReconnect() {
+        return mAutoReconnect;
+    }
+
+    public void setReconnectPolicy(ReconnectPolicy policy) {
+        mReconnectPolicy = policy;
+    }
+
+    public ReconnectPolicy getReconnectPolicy() {
+        return mReconnectPolicy;
+    }
+
+    /**
+     * 蓝牙开关状态变化时由 UI 调用（监听 BluetoothAdapter.ACTION_STATE_CHANGED）。
+     * 关闭期间暂停重连；重新打开后先重连主设备，再重连其他设备
+     */
+    public void setAdapterEnabled(boolean enabled) {
+        mAdapterEnabled = enabled;
+        Session primary = mPrimary;
+        if (primary != null) {
+            primary.onAdapterStateChanged(enabled);
+        }
+        for (Session session : mSessions.values()) {
+            if (session != primary) {
+                session.onAdapterStateChanged(enabled);
+            }
         }
-        deviceAddress = adrress; // 存储最近一次传进来的数据
+    }
 
+    public boolean isAdapterEnabled() {
+        return mAdapterEnabled;
+    }
 
-        if (mConnectThread != null) {
-            mConnectThread.cancel();
-            mConnectThread = null;
+    /**
+     * 开始把所有会话收发的原始字节记录到 dir 下的文件中，已经在记录时先结束之前的
+     */
+    public CaptureWriter startCapture(File dir) throws IOException {
+        CaptureWriter writer = new CaptureWriter(dir, "capture");
+        CaptureWriter old = mCaptureWriter;
+        mCaptureWriter = writer;
+        if (old != null) {
+            old.close();
         }
-        if (mConnectedThread != null) {
-            mConnectedThread.cancel();
-            mConnectedThread = null;
+        return writer;
+    }
+
+    /**
+     * 结束记录，剩余的数据写盘后返回。会等待磁盘，不要在收发线程中调用
+     */
+    public void stopCapture() {
+        CaptureWriter old = mCaptureWriter;
+        mCaptureWriter = null;
+        if (old != null) {
+            old.close();
+            KLog.d("capture stopped: records=" + old.getRecordCount() + ", dropped=" + old.getDroppedRecords()
+                    + ", files=" + old.getFileCount());
         }
-        BluetoothDevice device = mBtAdapter.getRemoteDevice(adrress);
-        mConnectThread = new ConnectThread(device);
-        mConnectThread.start();
-        setState(STATE_CONNECTING);
     }
 
+    public CaptureWriter getCaptureWriter() {
+        return mCaptureWriter;
+    }
 
-    public synchronized void connected(BluetoothSocket socket, BluetoothDevice device) {
-        if (mConnectThread != null) {
-            mConnectThread = null;
+    /**
+     * 在后台把录下的文件（抓包格式或原始转储）回放到 {@link #REPLAY_ADDRESS} 会话的接收管道，
+     * 和真实设备的数据一样以 MESSAGE_READ / MESSAGE_READ_BATCH 发给 UI，结束后以 toast 报告帧率和字节率
+     *
+     * @param speed 倍速，{@link Replayer#SPEED_MAX} 为尽快
+     * @throws IllegalStateException 上一次回放还没有结束
+     */
+    public Session startReplay(File file, double speed) throws IOException {
+        if (mReplayer != null) {
+            throw new IllegalStateException("replay in progress");
+        }
+        ReplaySource source = Replayer.open(file);
+        Session session = obtainSession(REPLAY_ADDRESS);
+        final Replayer replayer = new Replayer(source, session.getReceivePipeline());
+        replayer.setSpeed(speed);
+        mReplayer = replayer;
+        try {
+            mIoExecutor.executeLongRunning(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Replayer.Stats stats = replayer.run();
+                        KLog.d("replay: " + stats);
+                        sendToast("replay: " + stats);
+                    } catch (IOException e) {
+                        sendToast("replay failed: " + e.getMessage());
+                    } finally {
+                        mReplayer = null;
+                    }
+                }
+            }, "BtReplay");
+        } catch (RejectedExecutionException e) {
+            mReplayer = null;
+            source.close();
+            throw new IOException("no io thread for replay");
         }
+        return session;
+    }
 
-        if (mConnectedThread != null) {
-            mConnectedThread.cancel();
-            mConnectedThread = null;
+    public void stopReplay() {
+        Replayer replayer = mReplayer;
+        if (replayer != null) {
+            replayer.cancel();
         }
+    }
 
-        setState(STATE_CONNECTED, device.getName());
+    public boolean isReplaying() {
+        return mReplayer != null;
+    }
 
-        //当连接成功时, 持久化存储Mac地址
-        SPUtils.setMainBluetoothAddr(device.getAddress());
+    TransportFactory getTransportFactory() {
+        return mTransportFactory;
+    }
 
-        mConnectedThread = new ConnectedThread(socket, device);
-        mConnectedThread.start();
+    /**
+     * 主设备的合并器，RECEIVE_MODE_BATCHED 模式下可以通过它调整合并间隔和上限
+     */
+    public ReceiveBatcher getReceiveBatcher() {
+        Session primary = mPrimary;
+        return primary == null ? null : primary.getReceiveBatcher();
     }
 
+    public Session getPrimarySession() {
+        return mPrimary;
+    }
 
-    private void sendConnectionFailed() {
-        Message msg = mHandler.obtainMessage(AppConst.MESSAGE_TOAST);
-        Bundle bundle = new Bundle();
-        bundle.putString(AppConst.TOAST, "Unable to connect device");
-        msg.setData(bundle);
-        mHandler.sendMessage(msg);
-        KLog.d("sendConnectionFailed");
+    public Session getSession(String address) {
+        return mSessions.get(address);
     }
 
+    /**
+     * 当前所有会话（包括未连接的）的只读视图
+     */
+    public Collection<Session> getSessions() {
+        return Collections.unmodifiableCollection(mSessions.values());
+    }
 
-    private void sendConnectionLost() {
-        // Send a failure message back to the Activity
-        Message msg = mHandler.obtainMessage(AppConst.MESSAGE_TOAST);
-        Bundle bundle = new Bundle();
-        bundle.putString(AppConst.TOAST, "Device connection was lost");
-        msg.setData(bundle);
-        mHandler.sendMessage(msg);
+    /**
+     * 主设备当前的收发统计，没有主设备时返回 null
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        Session primary = mPrimary;
+        return primary == null ? null : primary.getMetricsSnapshot();
     }
 
+    public MetricsSnapshot getMetricsSnapshot(String address) {
+        Session session = mSessions.get(address);
+        return session == null ? null : session.getMetricsSnapshot();
+    }
 
-    public void write(byte[] out) {
-        ConnectedThread r;
-        synchronized (this) {
-            if (mState != STATE_CONNECTED) return;
-            r = mConnectedThread;
+    /**
+     * UI 处理 MESSAGE_READ 时调用，记录这块数据在消息队列中等待的时间
+     *
+     * @param sessionId 消息 arg2 中的会话 id
+     * @param delayMs   SystemClock.uptimeMillis() - msg.getWhen()
+     */
+    void onReadDispatched(int sessionId, long delayMs) {
+        Session primary = mPrimary;
+        if (primary != null && primary.getId() == sessionId) {
+            primary.getMetrics().onDispatched(delayMs * 1000000);
+            return;
+        }
+        for (Session session : mSessions.values()) {
+            if (session.getId() == sessionId) {
+                session.getMetrics().onDispatched(delayMs * 1000000);
+                return;
+            }
         }
-        r.write(out);
     }
 
-    private class ConnectThread extends Thread {
-        private final BluetoothDevice mmDevice;
-        private final BluetoothSocket mmSocket;
 
-        private ConnectThread(BluetoothDevice device) {
-            mmDevice = device;
-            BluetoothSocket tmp = null;
-            try {
-                tmp = device.createRfcommSocketToServiceRecord(MY_UUID_SECURE);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            mmSocket = tmp;
+    /**
+     * Stop all threads
+     * <p>
+     * 断开并移除所有会话
+     */
+    public void stop() {
+        stopReplay();
+        mSendScheduler.cancelAll();
+        synchronized (mPrimaryLock) {
+            mPrimary = null;
+        }
+        for (String address : mSessions.keySet()) {
+            closeSession(address);
         }
+        KLog.d("stop --> sessions : " + mSessions.size());
+    }
 
-        @Override
-        public void run() {
-            mBtAdapter.cancelDiscovery();
-            try {
-                mmSocket.connect();
-            } catch (IOException e) {
-                CloseUtils.close(mmSocket);
-
-                // 保证当前连接中断异常的原因是自身的原因(距离太远，蓝牙关闭等)。
-                // 并不是由于选择连接了另一个设备而导致的（这种情况不出意外会连接成功，若所以不加判断的话，就会产生实际连接成功，但是却可能显示连接失败的情况）
-                // 根本目的就是：保证当前显示设备的连接状态，只能由当前最近传入的连接设备来确定，与上次的连接设备无关。这种情况就是为了避免先后连接两个设备导致显示状态紊乱的情况
-                if (mmDevice.getAddress().equals(deviceAddress)) {
-                    sendConnectionFailed();
-                    setState(STATE_NONE);
-                }
+
+    /**
+     * 连接主设备，之前的主设备会被断开
+     */
+    public void connect(String adrress) {
+        Session session;
+        synchronized (mPrimaryLock) {
+            Session old = mPrimary;
+            if (old != null && old.getAddress().equals(adrress) && old.getState() != STATE_NONE) { // 说明再次连接的是同一个设备，并且上次的连接请求还正在进行中或者已经正在通信中
                 return;
             }
-            synchronized (BluetoothChatService.this) {
-                mConnectThread = null;
+            if (old != null && !old.getAddress().equals(adrress)) {
+                closeSession(old.getAddress());
             }
-            connected(mmSocket, mmDevice);
+            session = obtainSession(adrress);
+            mPrimary = session; // 存储最近一次传进来的设备
         }
+        session.connect();
+    }
+
+    /**
+     * 增加一个与其他设备并存的会话并开始连接，已存在时只在未连接的情况下重新连接
+     */
+    public Session openSession(String address) {
+        Session session = obtainSession(address);
+        session.connect();
+        return session;
+    }
 
-        public void cancel() {
-            try {
-                mmSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+    /**
+     * 断开并移除一个会话，不影响其他会话
+     */
+    public void closeSession(String address) {
+        Session session = mSessions.remove(address);
+        if (session == null) {
+            return;
+        }
+        synchronized (mPrimaryLock) {
+            if (mPrimary == session) {
+                mPrimary = null;
             }
         }
+        session.close();
     }
 
-
-    private class ConnectedThread extends Thread {
-        private final BluetoothDevice mmDevice;
-        private final BluetoothSocket mmSocket;
-        private final InputStream mmInputStream;
-        private final OutputStream mmOutputStream;
-
-        private StringBuilder sb = new StringBuilder();
-        private int startIndex, endIndex;
-
-        private ConnectedThread(BluetoothSocket socket, BluetoothDevice device) {
-            mmDevice = device;
-            this.mmSocket = socket;
-            InputStream tmpIn = null;
-            OutputStream tmpOut = null;
-            try {
-                tmpIn = socket.getInputStream();
-                tmpOut = socket.getOutputStream();
-            } catch (IOException e) {
-                e.printStackTrace();
+    private Session obtainSession(String address) {
+        Session session = mSessions.get(address);
+        if (session != null) {
+            return session;
+        }
+        Session created = new Session(this, mHandler, address);
+        FrameDecoderFactory factory = mFrameDecoderFactory;
+        if (factory != null) {
+            created.setFrameDecoder(factory.create());
+            ChecksumStage template = mSessionChecksum;
+            if (template != null) {
+                created.setChecksumStage(new ChecksumStage(template.getType(), template.getCoverOffset(), template.isStrip()));
             }
-            mmInputStream = tmpIn;
-            mmOutputStream = tmpOut;
         }
+        session = mSessions.putIfAbsent(address, created);
+        return session != null ? session : created;
+    }
 
-        @Override
-        public void run() {
-            byte[] buffer = new byte[128];
-            int len;
-            KLog.d("[ConnectedThread]before while, STATE_CONNECTED --> " + (mState == STATE_CONNECTED) + ", mState" + mState);
-            while (mState == STATE_CONNECTED) {
-                try {
-                    len = mmInputStream.read(buffer);
-                    KLog.d("read:" + new String(buffer, 0, len).toString());
-
-                    byte[] buf_data = Arrays.copyOf(buffer, len);
+    /**
+     * 会话连接成功时调用（在该会话的连接线程中），记入设备历史
+     *
+     * @param latencyMs 这次连接尝试所用的时间
+     */
+    void onSessionConnected(Session session, long latencyMs) {
+        SPUtils.getDeviceHistory().recordSuccess(session.getAddress(), session.getName(), latencyMs,
+                System.currentTimeMillis());
+        if (session == mPrimary) {
+            //当连接成功时, 持久化存储Mac地址
+            SPUtils.setMainBluetoothAddr(session.getAddress());
+        }
+    }
 
-                    mHandler.obtainMessage(AppConst.MESSAGE_READ, -1, -1, buf_data).sendToTarget();
+    /**
+     * 会话的一次连接尝试失败（包括自动重连中的每一次）
+     */
+    void onSessionConnectFailed(Session session) {
+        SPUtils.getDeviceHistory().recordFailure(session.getAddress());
+    }
 
-//                    sb.append(new String(buffer, 0, len));
+    void sendToast(String text) {
+        Message msg = mHandler.obtainMessage(AppConst.MESSAGE_TOAST);
+        Bundle bundle = new Bundle();
+        bundle.putString(AppConst.TOAST, text);
+        msg.setData(bundle);
+        mHandler.sendMessage(msg);
+    }
 
-//                    String tmp = sb.toString().toLowerCase();
-//                    if ((startIndex = tmp.indexOf("aa")) != -1 && (endIndex = tmp.indexOf("bb", startIndex + 1)) != -1) {
-//                        //String t = tmp.substring(startIndex, endIndex+2);//aa010030911225bb
-//                        String t = tmp.substring(startIndex+2, endIndex);
-//                        mHandler.obtainMessage(AppConst.MESSAGE_READ, -1, -1, t).sendToTarget();
-//                        sb.delete(startIndex, endIndex+2);
-//                    }
 
-                } catch (IOException e) {
-                    KLog.d("ConnectedThread --> IOException : " + e.toString() + " mState : " + mState);
+    /**
+     * 向主设备异步写入，不会阻塞调用线程。写队列已满时直接拒绝
+     * <p>
+     * 返回的 WriteFuture 完成之前不能修改 out 中的数据
+     */
+    public WriteFuture write(byte[] out) {
+        Session primary = mPrimary;
+        if (primary == null) return WriteFuture.failed(out, new IOException("not connected"));
+        return primary.write(out);
+    }
 
-                    CloseUtils.close(mmSocket);
+    /**
+     * 向主设备异步写入，写队列已满时最多等待 timeoutMs（背压），供后台线程使用，不要在 UI 线程调用
+     */
+    public WriteFuture write(byte[] out, long timeoutMs) throws InterruptedException {
+        Session primary = mPrimary;
+        if (primary == null) return WriteFuture.failed(out, new IOException("not connected"));
+        return primary.write(out, timeoutMs);
+    }
 
-                    synchronized (BluetoothChatService.this) {
-                        mConnectedThread = null;
-                    }
+    /**
+     * 向指定设备异步写入
+     */
+    public WriteFuture write(String address, byte[] out) {
+        Session session = mSessions.get(address);
+        if (session == null) return WriteFuture.failed(out, new IOException("no session for " + address));
+        return session.write(out);
+    }
 
-                    // 保证当前连接中断异常的原因是自身的原因(距离太远，蓝牙关闭等)。
-                    // 并不是由于选择连接了另一个设备而导致的（这种情况不出意外会连接成功，若所以不加判断的话，就会产生实际连接成功，但是却可能显示连接失败的情况）
-                    // 根本目的就是：保证当前显示设备的连接状态，只能由当前最近传入的连接设备来确定，与上次的连接设备无关。这种情况就是为了避免先后连接两个设备导致显示状态紊乱的情况
-                    if (mmDevice.getAddress().equals(deviceAddress)) {
-                        sendConnectionLost();
-                        setState(STATE_NONE);
-                    }
-                    break; // 跳出循环
-                }
+    /**
+     * 在后台按固定周期向主设备依次发送 sequence 中的数据，主设备切换后发给新的主设备
+     *
+     * @param maxSends 发送这么多次后结束，0 表示一直发送直到 cancel() 或 stop()
+     */
+    public PeriodicSend schedulePeriodicSend(byte[][] sequence, long periodMs, long maxSends) {
+        return mSendScheduler.schedule(new SendScheduler.Target() {
+            @Override
+            public WriteFuture write(byte[] data) {
+                return BluetoothChatService.this.write(data);
             }
-        }
+        }, sequence, periodMs, TimeUnit.MILLISECONDS, maxSends);
+    }
 
-        public void write(byte[] buffer) {
-            try {
-                mmOutputStream.write(buffer);
-                KLog.d("[ConnectedThread]write, STATE_CONNECTED --> " + (mState == STATE_CONNECTED) + ", mState:" + mState);
-                KLog.d("write:" + new String(buffer).toString());
-                // Share the sent message back to the UI Activity
-                mHandler.obtainMessage(AppConst.MESSAGE_WRITE, -1, -1, new String(buffer)).sendToTarget();
-            } catch (IOException e) {
-                e.printStackTrace();
+    /**
+     * 在后台按固定周期向指定设备依次发送 sequence 中的数据
+     */
+    public PeriodicSend schedulePeriodicSend(final String address, byte[][] sequence, long periodMs, long maxSends) {
+        return mSendScheduler.schedule(new SendScheduler.Target() {
+            @Override
+            public WriteFuture write(byte[] data) {
+                return BluetoothChatService.this.write(address, data);
             }
-        }
+        }, sequence, periodMs, TimeUnit.MILLISECONDS, maxSends);
+    }
 
-        public void cancel() {
-            try {
-                mmSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    /**
+     * 为主设备打开请求/应答通道，没有主设备时返回 null
+     *
+     * @see Session#openCommandChannel(Correlator, int)
+     */
+    public CommandChannel openCommandChannel(Correlator correlator, int maxInFlight) {
+        Session primary = mPrimary;
+        return primary == null ? null : primary.openCommandChannel(correlator, maxInFlight);
+    }
+
+    /**
+     * 为指定设备打开请求/应答通道，没有这个会话时返回 null
+     */
+    public CommandChannel openCommandChannel(String address, Correlator correlator, int maxInFlight) {
+        Session session = mSessions.get(address);
+        return session == null ? null : session.openCommandChannel(correlator, maxInFlight);
+    }
+
+    /**
+     * 通过主设备的请求/应答通道发送一个请求，不等待
+     *
+     * @param timeoutMs 从写入开始等待应答的时间，0 表示一直等待
+     */
+    public CommandFuture sendCommand(byte[] request, long timeoutMs) {
+        Session primary = mPrimary;
+        CommandChannel channel = primary == null ? null : primary.getCommandChannel();
+        if (channel == null) return CommandFuture.failed(request, new IOException("no command channel"));
+        return channel.submit(request, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 把主设备当作 Modbus RTU 从站：改用 Modbus 分帧，打开按从站和功能码配对的通道，返回还没有开始的轮询器。
+     * 没有主设备时返回 null
+     *
+     * @param maxInFlight 同时等待应答的请求数，串口转换器会把请求排队发到总线上，一般 2 到 4 即可隐藏蓝牙的延迟
+     * @param timeoutMs   每个请求等待应答的时间
+     */
+    public ModbusPoller createModbusPoller(int maxInFlight, long timeoutMs) {
+        Session primary = mPrimary;
+        if (primary == null) return null;
+        primary.setChecksumStage(null); // 请求已经带上 CRC，应答的 CRC 由分帧器校验
+        primary.setFrameDecoder(new ModbusFrameDecoder());
+        CommandChannel channel = primary.openCommandChannel(new ModbusCorrelator(), maxInFlight);
+        return new ModbusPoller(channel, getCommandTimer(), timeoutMs);
+    }
+
+    synchronized ScheduledExecutorService getCommandTimer() {
+        if (mCommandTimer == null) {
+            mCommandTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BtCommandTimer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
         }
+        return mCommandTimer;
+    }
+
+    /**
+     * 周期发送的调度器，可以从中取得所有任务及其抖动统计
+     */
+    public SendScheduler getSendScheduler() {
+        return mSendScheduler;
     }
-}
\ No newline at end of file
+}
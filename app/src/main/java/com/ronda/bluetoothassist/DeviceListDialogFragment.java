@@ -14,25 +14,39 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.ListView;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.ronda.bluetoothassist.device.DeviceIndex;
+import com.ronda.bluetoothassist.device.DeviceInfo;
+import com.ronda.bluetoothassist.device.DeviceListAdapter;
+import com.ronda.bluetoothassist.utils.SPUtils;
+
 import java.util.Set;
 
+/**
+ * 选择要连接的设备
+ * <p>
+ * 列表以 MAC 地址为键（{@link DeviceIndex}），同一设备再次被搜索到或名字解析完成时原地更新；
+ * 搜索过程中的变化合并起来每 {@link #NOTIFY_DELAY_MS} 刷新一次列表。
+ * 关闭时保存最近见到的设备，下次打开时在搜索开始前就先显示出来
+ */
+
 public class DeviceListDialogFragment extends DialogFragment {
 
 
     private static final String NO_DEVICE_DATA = "没有搜索到蓝牙设备";
+    private static final long NOTIFY_DELAY_MS = 200;
+    private static final int MAX_RECENT_DEVICES = 64;
 
     private Button mBtnSearch;
 
     private ListView mListView;
-    private ArrayAdapter<String> mListViewAdapter;
-    private List<String> mDeviceList = new ArrayList<String>();//对话框的列表数据内容
+    private TextView mEmptyView;
+    private DeviceListAdapter mListViewAdapter;
+    private final DeviceIndex mIndex = new DeviceIndex();//对话框的列表数据内容
+    private boolean mNotifyPending;
 
     private BluetoothAdapter mBtAdapter;
 
@@ -57,20 +71,20 @@ public class DeviceListDialogFragment extends DialogFragment {
     public void onViewCreated(View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
+        mIndex.decode(SPUtils.getRecentDevices()); // 先显示上次见到的设备
+
         mListView = (ListView) view.findViewById(R.id.lv);
-        mListViewAdapter = new ArrayAdapter<String>(getActivity(), android.R.layout.simple_list_item_1, mDeviceList);
+        mEmptyView = (TextView) view.findViewById(R.id.tv_empty);
+        mListViewAdapter = new DeviceListAdapter(getActivity().getLayoutInflater(), mIndex);
         mListView.setAdapter(mListViewAdapter);
+        mListView.setEmptyView(mEmptyView);
         mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int i, long l) {
                 if (mCallback != null) {
                     mBtAdapter.cancelDiscovery();
-                    String info = ((TextView) view).getText().toString();
-                    if (NO_DEVICE_DATA.equals(info)){
-                        return;
-                    }
-                    String address = info.substring(info.length() - 17);
-                    mCallback.onSelectedItem(address);
+                    DeviceInfo info = mListViewAdapter.getItem(i);
+                    mCallback.onSelectedItem(info.getAddress());
                     dismiss();
                 }
             }
@@ -104,14 +118,44 @@ public class DeviceListDialogFragment extends DialogFragment {
         }
         // 注销广播接收器
         unregisterBluetoothReceiver();
+        if (mListView != null) {
+            mListView.removeCallbacks(mNotifyTask);
+        }
+        SPUtils.setRecentDevices(mIndex.encode(MAX_RECENT_DEVICES));
     }
 
     private void doDiscovery(){
+        mIndex.beginScan();
+        mEmptyView.setText("正在搜索...");
         findPairedDevices();
+        notifyNow();
         mBtAdapter.startDiscovery();
         mBtnSearch.setText("停止搜索");
     }
 
+    /**
+     * 搜索过程中的变化合并起来刷新，避免每个 ACTION_FOUND 都重新绘制整个列表
+     */
+    private void scheduleNotify() {
+        if (!mNotifyPending) {
+            mNotifyPending = true;
+            mListView.postDelayed(mNotifyTask, NOTIFY_DELAY_MS);
+        }
+    }
+
+    private void notifyNow() {
+        mListView.removeCallbacks(mNotifyTask);
+        mNotifyTask.run();
+    }
+
+    private final Runnable mNotifyTask = new Runnable() {
+        @Override
+        public void run() {
+            mNotifyPending = false;
+            mListViewAdapter.notifyDataSetChanged();
+        }
+    };
+
     /**
      * 开启蓝牙
      */
@@ -134,25 +178,12 @@ public class DeviceListDialogFragment extends DialogFragment {
     private void findPairedDevices() {
         //获取可配对蓝牙设备
         Set<BluetoothDevice> pairedDevices = mBtAdapter.getBondedDevices();
-
-        if (mBtAdapter != null && mBtAdapter.isDiscovering()) {
-            mDeviceList.clear();
-            mListViewAdapter.notifyDataSetChanged();
+        if (pairedDevices == null) {
+            return;
         }
-
-        if (pairedDevices.size() > 0) { //存在已经配对过的蓝牙设备
-            mDeviceList.clear();
-            for (BluetoothDevice device : pairedDevices) {
-                String str = device.getName() + ":" + device.getAddress();
-                if (!mDeviceList.contains(str)) {
-                    mDeviceList.add(str);
-                    mListViewAdapter.notifyDataSetChanged();
-                }
-            }
-        } else { //不存在已经配对过的蓝牙设备
-            mDeviceList.clear();
-            //mDeviceList.add(NO_PAIRED_DEVICES); //没有已匹配过的蓝牙
-            mListViewAdapter.notifyDataSetChanged();
+        long now = System.currentTimeMillis();
+        for (BluetoothDevice device : pairedDevices) { //已经配对过的蓝牙设备，已在列表中的原地更新
+            mIndex.update(device.getAddress(), device.getName(), DeviceIndex.RSSI_UNKNOWN, true, now);
         }
     }
 
@@ -163,6 +194,7 @@ public class DeviceListDialogFragment extends DialogFragment {
     private void registerBluetoothReceiver() {
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(BluetoothDevice.ACTION_FOUND);
+        intentFilter.addAction(BluetoothDevice.ACTION_NAME_CHANGED);
         intentFilter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
         mActivity.registerReceiver(mReceiver, intentFilter);
     }
@@ -184,21 +216,21 @@ public class DeviceListDialogFragment extends DialogFragment {
         @Override
         public void onReceive(Context context, Intent intent) {
             String action = intent.getAction();
-            if (BluetoothDevice.ACTION_FOUND.equals(action)) { //搜索到新设备
+            if (BluetoothDevice.ACTION_FOUND.equals(action)) { //搜索到设备，同一设备可能多次收到
                 BluetoothDevice btd = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                //搜索没有配过对的蓝牙设备
-                if (btd.getBondState() != BluetoothDevice.BOND_BONDED) {
-                    mDeviceList.add(btd.getName() + ":" + btd.getAddress());
-                    mListViewAdapter.notifyDataSetChanged();
+                short rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, DeviceIndex.RSSI_UNKNOWN);
+                boolean bonded = btd.getBondState() == BluetoothDevice.BOND_BONDED;
+                if (mIndex.update(btd.getAddress(), btd.getName(), rssi, bonded, System.currentTimeMillis())) {
+                    scheduleNotify();
                 }
-            } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) { //搜索结束
-
-                //if (lvDevice.getCount() == 0) {
-                if (mListViewAdapter.getCount() == 0) {
-
-                    mDeviceList.add(NO_DEVICE_DATA);
-                    mListViewAdapter.notifyDataSetChanged();
+            } else if (BluetoothDevice.ACTION_NAME_CHANGED.equals(action)) { //名字解析完成
+                BluetoothDevice btd = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                if (mIndex.updateName(btd.getAddress(), intent.getStringExtra(BluetoothDevice.EXTRA_NAME))) {
+                    scheduleNotify();
                 }
+            } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action)) { //搜索结束
+                notifyNow();
+                mEmptyView.setText(NO_DEVICE_DATA);
                 mBtnSearch.setText("再次搜索");
             }
         }
@@ -1,31 +1,83 @@
 package com.ronda.bluetoothassist;
 
+import android.app.AlertDialog;
+import android.bluetooth.BluetoothAdapter;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
+import android.text.Editable;
 import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
-import android.widget.ScrollView;
+import android.widget.ListView;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.ronda.bluetoothassist.base.AppConst;
+import com.ronda.bluetoothassist.capture.Replayer;
+import com.ronda.bluetoothassist.checksum.ChecksumStage;
+import com.ronda.bluetoothassist.console.ConsoleAdapter;
+import com.ronda.bluetoothassist.console.ConsoleBuffer;
+import com.ronda.bluetoothassist.console.HexDumpRenderer;
+import com.ronda.bluetoothassist.frame.DelimiterFrameDecoder;
+import com.ronda.bluetoothassist.frame.FrameDecoder;
+import com.ronda.bluetoothassist.frame.FrameDecoderFactory;
+import com.ronda.bluetoothassist.io.Chunk;
+import com.ronda.bluetoothassist.log.BtLog;
+import com.ronda.bluetoothassist.metrics.Histogram;
+import com.ronda.bluetoothassist.metrics.MetricsSnapshot;
+import com.ronda.bluetoothassist.schedule.PeriodicSend;
+import com.ronda.bluetoothassist.schema.SchemaRegistry;
+import com.ronda.bluetoothassist.settings.SettingsStore;
+import com.ronda.bluetoothassist.utils.HexFormatException;
 import com.ronda.bluetoothassist.utils.HexUtils;
 import com.ronda.bluetoothassist.utils.SPUtils;
-import com.socks.library.KLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 public class MainActivity extends AppCompatActivity implements View.OnClickListener {
 
+    public static final String TAG = MainActivity.class.getSimpleName();
+
+    private static final int MENU_METRICS = 1;
+    private static final int MENU_FRAMING = 2;
+    private static final int MENU_SCHEMAS = 3;
+    private static final long METRICS_REFRESH_MS = 1000;
+    private static final long REPEAT_SEND_PERIOD_MS = 100; // 长按发送时的周期，10 Hz
+    private static final int MAX_FRAME_LENGTH = 4096; // 按结束标志分帧时的最大帧长
+    private static final String[] CHECKSUM_NAMES = {"不校验", "XOR8", "SUM8", "CRC16/MODBUS", "CRC16/CCITT", "CRC32"}; // 下标即 FrameChecksum.TYPE_*
+
     private BluetoothChatService mChatService;
 
     private TextView tv_label;
-    private EditText et_send, et_receive;
+    private TextView tv_metrics;
+    private EditText et_send;
     private Button btn_connect, btn_clear, btn_send;
-    private CheckBox   cb_hex;
-    private ScrollView mScrollView;
+    private CheckBox   cb_hex, cb_hex_dump, cb_hex_send;
+    private ListView lv_receive;
+
+    private ConsoleBuffer mConsole; // 接收区只保留最近的若干行
+    private ConsoleAdapter mConsoleAdapter;
+    private final StringBuilder mHexBuilder = new StringBuilder(); // Hex 显示时复用，避免每个字节都产生临时字符串
+    private MetricsSnapshot mLastMetrics; // 浮层上一次刷新时的快照，用来计算速率
+    private PeriodicSend mRepeatSend;     // 长按发送按钮开始的周期发送
+    private byte[] mHexSendBuffer = new byte[64]; // Hex 发送时解析用，复用
+    private final SchemaRegistry mSchemas = new SchemaRegistry(); // 匹配到的帧按字段解码显示
+    private HexDumpRenderer mHexDump; // Hex Dump 显示时在后台格式化
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -35,41 +87,262 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         initView();
 
         mChatService = new BluetoothChatService(mHandler);
+        mChatService.setReceiveMode(BluetoothChatService.RECEIVE_MODE_BATCHED);
 
+        // 蓝牙关闭期间暂停自动重连，重新打开后立即重连
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        mChatService.setAdapterEnabled(adapter != null && adapter.isEnabled());
+        registerReceiver(mAdapterStateReceiver, new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
 
-        // 连接蓝牙时，会有对话框提示，所以不能在onCreate()中，只能是所有View绘制完之后才可以
-        String addr = SPUtils.getMainBluetoothAddr();
 
-        if (addr.isEmpty()) {
-            showDialog();
-        } else {//自动连接蓝牙
-            mChatService.connect(addr);
+        // 配置在后台读入，读入完成后再决定自动连接还是选择设备，UI 线程不等待磁盘
+        SettingsStore.getDefault().runWhenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                mHandler.post(mAutoConnectTask);
+            }
+        });
+    }
+
+    private final Runnable mAutoConnectTask = new Runnable() {
+        @Override
+        public void run() {
+            if (isFinishing()) {
+                return;
+            }
+            mConsole.setMaxLines(SPUtils.getConsoleMaxLines());
+            try {
+                mSchemas.load(SPUtils.getFrameSchemas());
+            } catch (IllegalArgumentException e) {
+                BtLog.w(TAG, "ignore frame schemas: {}", e.getMessage());
+            }
+            applyFraming();
+            // 连接蓝牙时，会有对话框提示，所以不能在onCreate()中，只能是所有View绘制完之后才可以
+            String addr = SPUtils.getMainBluetoothAddr();
+
+            if (addr.isEmpty()) {
+                showDialog(false);
+            } else {//自动连接蓝牙
+                mChatService.connect(addr);
+            }
         }
+    };
+
+    /**
+     * 按保存的结束标志和校验类型配置主设备和之后新建的会话。自动连接之前调用一次，在设置中保存后再调用
+     */
+    private void applyFraming() {
+        byte[] end;
+        try {
+            end = HexUtils.hexStringToBytes(SPUtils.getFrameDelimiter());
+        } catch (HexFormatException e) {
+            BtLog.w(TAG, "ignore frame delimiter: {}", e.getMessage());
+            end = null;
+        }
+        FrameDecoderFactory factory = null;
+        ChecksumStage checksum = null;
+        if (end != null) {
+            final byte[] delimiter = end;
+            factory = new FrameDecoderFactory() {
+                @Override
+                public FrameDecoder create() {
+                    return new DelimiterFrameDecoder(null, delimiter, false, MAX_FRAME_LENGTH);
+                }
+            };
+            int type = SPUtils.getChecksumType();
+            if (type != 0) {
+                try {
+                    checksum = new ChecksumStage(type, SPUtils.getChecksumCoverOffset(), true);
+                } catch (IllegalArgumentException e) {
+                    BtLog.w(TAG, "ignore checksum settings: {}", e.getMessage());
+                }
+            }
+        }
+        mChatService.setFrameDecoderFactory(factory);
+        mChatService.setSessionChecksum(checksum);
+        // 已经连接的主设备立即生效，先换分帧器再换校验
+        mChatService.setFrameDecoder(factory == null ? null : factory.create());
+        mChatService.setChecksumStage(checksum == null ? null
+                : new ChecksumStage(checksum.getType(), checksum.getCoverOffset(), checksum.isStrip()));
+    }
+
+    /**
+     * 编辑接收分帧的结束标志和帧尾校验，保存后立即生效
+     */
+    private void showFramingDialog() {
+        View view = getLayoutInflater().inflate(R.layout.dialog_framing, null, false);
+        final EditText et_delimiter = (EditText) view.findViewById(R.id.et_delimiter);
+        final Spinner sp_checksum = (Spinner) view.findViewById(R.id.sp_checksum);
+        final EditText et_cover_offset = (EditText) view.findViewById(R.id.et_cover_offset);
+        ArrayAdapter<String> adapter = new ArrayAdapter<String>(this, android.R.layout.simple_spinner_item, CHECKSUM_NAMES);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        sp_checksum.setAdapter(adapter);
+
+        et_delimiter.setText(SPUtils.getFrameDelimiter());
+        int type = SPUtils.getChecksumType();
+        sp_checksum.setSelection(type > 0 && type < CHECKSUM_NAMES.length ? type : 0);
+        et_cover_offset.setText(String.valueOf(SPUtils.getChecksumCoverOffset()));
+
+        new AlertDialog.Builder(this)
+                .setTitle("分帧与校验")
+                .setView(view)
+                .setPositiveButton("保存", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        String delimiter = et_delimiter.getText().toString().trim();
+                        String offsetText = et_cover_offset.getText().toString().trim();
+                        int offset;
+                        try {
+                            HexUtils.hexStringToBytes(delimiter);
+                            offset = offsetText.isEmpty() ? 0 : Integer.parseInt(offsetText);
+                        } catch (IllegalArgumentException e) { // HexFormatException 或 NumberFormatException
+                            Toast.makeText(MainActivity.this, "未保存: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                            return;
+                        }
+                        SPUtils.setFrameDelimiter(delimiter);
+                        SPUtils.setChecksumType(sp_checksum.getSelectedItemPosition());
+                        SPUtils.setChecksumCoverOffset(offset);
+                        applyFraming();
+                    }
+                })
+                .setNegativeButton("取消", null)
+                .show();
+    }
+
+    /**
+     * 编辑接收区按字段解码用的帧格式，格式有错时提示出错的行，不保存
+     */
+    private void showSchemasDialog() {
+        final EditText et_schemas = (EditText) getLayoutInflater().inflate(R.layout.dialog_schemas, null, false);
+        et_schemas.setText(SPUtils.getFrameSchemas());
+        new AlertDialog.Builder(this)
+                .setTitle("帧格式")
+                .setView(et_schemas)
+                .setPositiveButton("保存", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        String specs = et_schemas.getText().toString();
+                        try {
+                            mSchemas.load(specs);
+                        } catch (IllegalArgumentException e) {
+                            Toast.makeText(MainActivity.this, "未保存: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                            return;
+                        }
+                        SPUtils.setFrameSchemas(specs);
+                    }
+                })
+                .setNegativeButton("取消", null)
+                .show();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        unregisterReceiver(mAdapterStateReceiver);
+        mHandler.removeCallbacks(mMetricsRefresher);
+        mHandler.removeCallbacks(mAutoConnectTask);
         mChatService.stop();
+        mChatService.stopCapture();
+        mHexDump.shutdown();
     }
 
+    private final BroadcastReceiver mAdapterStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
+            if (state == BluetoothAdapter.STATE_ON) {
+                mChatService.setAdapterEnabled(true);
+            } else if (state == BluetoothAdapter.STATE_OFF || state == BluetoothAdapter.STATE_TURNING_OFF) {
+                mChatService.setAdapterEnabled(false);
+            }
+        }
+    };
+
     private void initView() {
         tv_label = (TextView) findViewById(R.id.tv_label);
+        tv_metrics = (TextView) findViewById(R.id.tv_metrics);
 
         et_send = (EditText) findViewById(R.id.et_send);
-        et_receive = (EditText) findViewById(R.id.et_receive);
 
         cb_hex = (CheckBox) findViewById(R.id.cb_hex);
+        cb_hex_dump = (CheckBox) findViewById(R.id.cb_hex_dump);
+        cb_hex_send = (CheckBox) findViewById(R.id.cb_hex_send);
 
         btn_connect = (Button) findViewById(R.id.btn_connect);
         btn_clear = (Button) findViewById(R.id.btn_clear);
         btn_send = (Button) findViewById(R.id.btn_send);
 
-        mScrollView = (ScrollView) findViewById(R.id.scroll_view);
+        lv_receive = (ListView) findViewById(R.id.lv_receive);
+        mConsole = new ConsoleBuffer(ConsoleBuffer.DEFAULT_MAX_LINES, ConsoleBuffer.DEFAULT_MAX_LINE_LENGTH); // 配置读入后再调整
+        mConsoleAdapter = new ConsoleAdapter(getLayoutInflater(), mConsole);
+        lv_receive.setAdapter(mConsoleAdapter);
+        mHexDump = new HexDumpRenderer("BtHexDump", HexDumpRenderer.DEFAULT_MAX_PENDING_BYTES,
+                ConsoleBuffer.DEFAULT_MAX_LINES, new HexDumpRenderer.Listener() {
+            @Override
+            public void onRowsReady(HexDumpRenderer renderer) {
+                mHandler.obtainMessage(AppConst.MESSAGE_HEX_DUMP, renderer).sendToTarget();
+            }
+        });
 
         btn_connect.setOnClickListener(this);
+        btn_connect.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                // 长按：在保留当前连接的同时再连接一个设备
+                showDialog(true);
+                return true;
+            }
+        });
         btn_clear.setOnClickListener(this);
+        tv_label.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                // 长按：原速回放最近一次的抓包，回放中再长按则停止
+                toggleReplay();
+                return true;
+            }
+        });
+        btn_clear.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                // 长按：开始/停止抓包
+                toggleCapture();
+                return true;
+            }
+        });
         btn_send.setOnClickListener(this);
+        btn_send.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                // 长按：按固定周期重复发送输入框的内容，再次点击或长按停止
+                toggleRepeatSend();
+                return true;
+            }
+        });
+    }
+
+    private void toggleRepeatSend() {
+        if (mRepeatSend != null) {
+            stopRepeatSend();
+            return;
+        }
+        byte[] data = getSendData();
+        if (data == null) {
+            return;
+        }
+        byte[][] sequence = {data};
+        mRepeatSend = mChatService.schedulePeriodicSend(sequence, REPEAT_SEND_PERIOD_MS, 0);
+        btn_send.setText("停止");
+    }
+
+    private void stopRepeatSend() {
+        PeriodicSend send = mRepeatSend;
+        mRepeatSend = null;
+        send.cancel();
+        btn_send.setText("发送");
+        Histogram.Snapshot jitter = send.getJitter();
+        Toast.makeText(this, "sent " + send.getSent() + ", missed " + send.getMissed() + ", busy " + send.getBusy()
+                + ", jitter p99 " + jitter.getPercentile(0.99) / 1000.0 + " ms", Toast.LENGTH_LONG).show();
     }
 
 
@@ -78,60 +351,206 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         switch (v.getId()) {
             case R.id.btn_connect:
                 if (btn_connect.getText().toString().equals("连接")) {
-                    showDialog();
+                    showDialog(false);
                 } else {
                     mChatService.stop();
                 }
                 break;
             case R.id.btn_clear:
-                et_receive.setText("");
+                mConsole.clear();
+                mHexDump.reset();
+                mConsoleAdapter.notifyDataSetChanged();
                 break;
             case R.id.btn_send:
-                mChatService.write(et_send.getText().toString().getBytes());
+                if (mRepeatSend != null) {
+                    stopRepeatSend();
+                    break;
+                }
+                byte[] data = getSendData();
+                if (data != null) {
+                    mChatService.write(data);
+                }
                 break;
         }
     }
 
+    /**
+     * 输入框的内容转成要发送的字节。Hex 发送时格式错误会在输入框上提示并把光标移到出错的位置，返回 null
+     */
+    private byte[] getSendData() {
+        Editable text = et_send.getText();
+        if (!cb_hex_send.isChecked()) {
+            return text.toString().getBytes();
+        }
+        int max = HexUtils.maxParsedLength(text.length());
+        if (mHexSendBuffer.length < max) {
+            mHexSendBuffer = new byte[Math.max(max, mHexSendBuffer.length * 2)];
+        }
+        int n;
+        try {
+            n = HexUtils.parseHex(text, 0, text.length(), mHexSendBuffer, 0);
+        } catch (HexFormatException e) {
+            et_send.setError(e.getMessage());
+            et_send.setSelection(e.getIndex());
+            return null;
+        }
+        // 写完之前数据不能修改，交给写队列的必须是单独的数组，这是每次发送唯一的一次分配
+        return n == 0 ? null : Arrays.copyOf(mHexSendBuffer, n);
+    }
+
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(Menu.NONE, MENU_METRICS, Menu.NONE, "性能统计").setCheckable(true);
+        menu.add(Menu.NONE, MENU_FRAMING, Menu.NONE, "分帧与校验");
+        menu.add(Menu.NONE, MENU_SCHEMAS, Menu.NONE, "帧格式");
+        return true;
+    }
 
-    private void showDialog() {
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == MENU_METRICS) {
+            boolean show = !item.isChecked();
+            item.setChecked(show);
+            showMetrics(show);
+            return true;
+        }
+        if (item.getItemId() == MENU_FRAMING) {
+            showFramingDialog();
+            return true;
+        }
+        if (item.getItemId() == MENU_SCHEMAS) {
+            showSchemasDialog();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * 在接收区上方显示主设备的吞吐量、read() 大小分布和各项延迟，每秒刷新一次。
+     * “to UI” 一行明显大于 “write” 且有丢弃时，瓶颈在 UI 而不是蓝牙
+     */
+    private void showMetrics(boolean show) {
+        mHandler.removeCallbacks(mMetricsRefresher);
+        mLastMetrics = null;
+        if (show) {
+            tv_metrics.setVisibility(View.VISIBLE);
+            mMetricsRefresher.run();
+        } else {
+            tv_metrics.setVisibility(View.GONE);
+        }
+    }
+
+    private final Runnable mMetricsRefresher = new Runnable() {
+        @Override
+        public void run() {
+            MetricsSnapshot snapshot = mChatService.getMetricsSnapshot();
+            if (snapshot == null) {
+                tv_metrics.setText("no session");
+            } else {
+                tv_metrics.setText(snapshot.format(mLastMetrics));
+            }
+            mLastMetrics = snapshot;
+            mHandler.postDelayed(this, METRICS_REFRESH_MS);
+        }
+    };
+
+
+    /**
+     * @param addSession true 时新设备与已有连接并存，false 时替换当前主设备
+     */
+    private void showDialog(final boolean addSession) {
         DeviceListDialogFragment dialog = new DeviceListDialogFragment();
         dialog.setCallback(new DeviceListDialogFragment.Callback() {
             @Override
             public void onSelectedItem(String address) {
                 // 连接远程蓝牙
-                mChatService.connect(address);
+                if (addSession) {
+                    mChatService.openSession(address);
+                } else {
+                    mChatService.connect(address);
+                }
             }
         });
         dialog.show(MainActivity.this.getFragmentManager(), "deviceListDialogFragment");
     }
 
 
+    private File getCaptureDir() {
+        File dir = getExternalFilesDir("capture");
+        if (dir == null) {
+            dir = new File(getFilesDir(), "capture");
+        }
+        return dir;
+    }
+
+    private void toggleReplay() {
+        if (mChatService.isReplaying()) {
+            mChatService.stopReplay();
+            return;
+        }
+        File latest = null;
+        File[] files = getCaptureDir().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (latest == null || file.lastModified() > latest.lastModified()) {
+                    latest = file;
+                }
+            }
+        }
+        if (latest == null) {
+            Toast.makeText(this, "no capture to replay", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        try {
+            mChatService.startReplay(latest, Replayer.SPEED_REAL_TIME);
+            Toast.makeText(this, "replaying " + latest.getName(), Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "replay failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
     /**
-     * 多行显示 始终定位到底部
-     *
-     * 根据scrolview 和子view去测量滑动的位置
-     *
-     * @param scrollView
-     * @param view
+     * 抓包文件保存在 App 的外部私有目录 capture/ 下
      */
-    private void scrollToBottom(final ScrollView scrollView, final View view) {
+    private void toggleCapture() {
+        if (mChatService.getCaptureWriter() != null) {
+            mChatService.stopCapture();
+            Toast.makeText(this, "capture stopped", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File dir = getCaptureDir();
+        try {
+            mChatService.startCapture(dir);
+            Toast.makeText(this, "capturing to " + dir, Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Toast.makeText(this, "capture failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
 
-        mHandler.post(new Runnable() {
+    /**
+     * 追加到接收区
+     * <p>
+     * ListView 的 transcriptMode 为 normal，停留在底部时会自动滚动到最新一行，用户向上翻看历史时则保持不动
+     */
+    private void appendReceived(CharSequence text) {
+        mConsole.append(text);
+        mConsoleAdapter.notifyDataSetChanged();
+    }
 
-            @Override
-            public void run() {
-                if (scrollView == null || view == null) {
-                    return;
-                }
-                // offset偏移量。是指当textview中内容超出 scrollview的高度，那么超出部分就是偏移量
-                int offset = view.getMeasuredHeight() - scrollView.getMeasuredHeight();
-                if (offset < 0) {
-                    offset = 0;
-                }
-                //scrollview开始滚动
-                scrollView.scrollTo(0, offset);
-            }
-        });
+    /**
+     * 把收到的数据转换成显示的文本：匹配到帧格式时显示解码后的字段，单独一行；否则按 Hex 或文本显示。
+     * 返回的文本可能是 mHexBuilder，在下一次调用之前有效
+     */
+    private CharSequence toDisplayText(byte[] buf, int offset, int length) {
+        mHexBuilder.setLength(0);
+        if (mSchemas.format(buf, offset, length, mHexBuilder)) {
+            return mHexBuilder.append('\n');
+        }
+        if (cb_hex.isChecked()) {
+            return HexUtils.appendHexWithSpace(buf, offset, length, mHexBuilder);
+        }
+        return new String(buf, offset, length);
     }
 
 
@@ -141,6 +560,14 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             AppCompatActivity activity = MainActivity.this;
             switch (msg.what) {
                 case AppConst.MESSAGE_STATE_CHANGE:
+                    // arg2 是会话 id，界面只显示主设备的状态，其他设备只做提示
+                    Session primary = mChatService.getPrimarySession();
+                    if (primary != null && msg.arg2 != primary.getId()) {
+                        if (msg.arg1 == BluetoothChatService.STATE_CONNECTED) {
+                            Toast.makeText(activity, "connected to " + msg.obj, Toast.LENGTH_SHORT).show();
+                        }
+                        break;
+                    }
 
                     switch (msg.arg1) {
                         case BluetoothChatService.STATE_CONNECTED:
@@ -154,6 +581,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                             Toast.makeText(activity, "connecting...", Toast.LENGTH_SHORT).show();
                             btn_connect.setText("断开");
                             break;
+                        case BluetoothChatService.STATE_RECONNECTING:
+                            tv_label.setText("reconnecting...");
+                            btn_connect.setText("断开");
+                            break;
                         case BluetoothChatService.STATE_NONE:
                             tv_label.setText("not connected");
                             btn_connect.setText("连接");
@@ -161,24 +592,77 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                             break;
                     }
                     break;
-                case AppConst.MESSAGE_WRITE:
-                    String writeMessage = (String) msg.obj;
-                    //mViewData.setText(writeMessage);
-                    KLog.e("write: " + writeMessage);
+                case AppConst.MESSAGE_WRITE: // obj 是已经写出的 byte[]
+                    if (BtLog.isLoggable(BtLog.DEBUG)) {
+                        byte[] writeBuf = (byte[]) msg.obj;
+                        BtLog.data(BtLog.DEBUG, TAG, "write: {} ({} bytes)", writeBuf, 0, writeBuf.length);
+                    }
                     break;
                 case AppConst.MESSAGE_READ:
                     //String readMessage = (String) msg.obj;
-                    byte[] buf = (byte[]) msg.obj;
-                    String readTxt = new String(buf, 0, buf.length);
-                    if (cb_hex.isChecked()) {
-                        readTxt = HexUtils.bytesToHexStringWithSpace(buf);
+                    mChatService.onReadDispatched(msg.arg2, SystemClock.uptimeMillis() - msg.getWhen());
+                    byte[] buf;
+                    int offset, length;
+                    Chunk chunk = null;
+                    if (msg.obj instanceof Chunk) { // RECEIVE_MODE_POOLED
+                        chunk = (Chunk) msg.obj;
+                        buf = chunk.array();
+                        offset = chunk.offset();
+                        length = chunk.length();
+                    } else {
+                        buf = (byte[]) msg.obj;
+                        offset = 0;
+                        length = buf.length;
+                    }
+
+                    if (BtLog.isLoggable(BtLog.DEBUG)) {
+                        BtLog.data(BtLog.DEBUG, TAG, "read: {} ({} bytes)", buf, offset, length);
                     }
 
-                    et_receive.append(readTxt);
+                    if (cb_hex_dump.isChecked()) { // 只复制数据，格式化在后台线程
+                        mHexDump.offer(buf, offset, length);
+                        if (chunk != null) {
+                            chunk.recycle();
+                        }
+                        break;
+                    }
+                    CharSequence readTxt = toDisplayText(buf, offset, length);
+                    if (chunk != null) {
+                        chunk.recycle(); // 数据已经转换成文本，尽快还给缓冲池
+                    }
 
-                    scrollToBottom(mScrollView, et_receive);
+                    appendReceived(readTxt);
+                    break;
+                case AppConst.MESSAGE_READ_BATCH:
+                    // 一段时间内收到的所有数据只追加一次、滚动一次
+                    ReceiveBatcher.Batch batch = ((ReceiveBatcher) msg.obj).drain();
+                    if (batch.length() == 0) {
+                        break;
+                    }
+                    if (cb_hex_dump.isChecked()) {
+                        for (int i = 0, start = 0; i < batch.getChunkCount(); i++) {
+                            int end = batch.getChunkEnd(i);
+                            mHexDump.offer(batch.array(), start, end - start);
+                            start = end;
+                        }
+                    } else if (mSchemas.isEmpty()) {
+                        appendReceived(toDisplayText(batch.array(), 0, batch.length()));
+                    } else { // 逐块匹配帧格式，分帧后每块是一帧
+                        for (int i = 0, start = 0; i < batch.getChunkCount(); i++) {
+                            int end = batch.getChunkEnd(i);
+                            mConsole.append(toDisplayText(batch.array(), start, end - start));
+                            start = end;
+                        }
+                        mConsoleAdapter.notifyDataSetChanged();
+                    }
 
-                    KLog.e("read: " + readTxt);
+                    BtLog.d(TAG, "read batch: {} chunks, {} bytes", batch.getChunkCount(), batch.length());
+                    break;
+                case AppConst.MESSAGE_HEX_DUMP:
+                    // 只追加后台格式化好的新行，切换显示方式时不会重新格式化已经显示的内容
+                    if (((HexDumpRenderer) msg.obj).drainTo(mConsole) > 0) {
+                        mConsoleAdapter.notifyDataSetChanged();
+                    }
                     break;
                 case AppConst.MESSAGE_TOAST: // 接收连接时失败 和 已连接后又中断 的情况
                     Toast.makeText(activity, msg.getData().getString(AppConst.TOAST), Toast.LENGTH_SHORT).show();
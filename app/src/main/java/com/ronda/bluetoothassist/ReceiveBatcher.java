@@ -0,0 +1,200 @@
+package com.ronda.bluetoothassist;
+
+import android.os.Handler;
+
+import com.ronda.bluetoothassist.base.AppConst;
+import com.ronda.bluetoothassist.metrics.LinkMetrics;
+
+import java.util.Arrays;
+
+/**
+ * 把读线程收到的数据合并成批次再交给 UI
+ * <p>
+ * 第一块数据到达时向 Handler 投递一条延迟 intervalMs 的 MESSAGE_READ_BATCH，在这之前到达的数据都追加到同一个批次中；
+ * 批次超过 maxBatchBytes 时立即投递。UI 收到消息后调用 {@link #drain()} 取走整批数据，
+ * 因此不管读线程 read() 了多少次，每个时间间隔内 UI 最多只处理一次
+ * <p>
+ * 内部使用两个缓冲区交替：读线程写 back，UI 读 front，drain() 时交换。UI 在下一次 drain() 之前可以安全地使用上次取走的批次
+ * <p>
+ * drain() 时把批次中第一块数据等待的时间和丢弃的字节数记入 {@link LinkMetrics}
+ */
+
+public class ReceiveBatcher {
+
+    public static final long DEFAULT_INTERVAL_MS = 16; // 约一帧
+    public static final int DEFAULT_MAX_BATCH_BYTES = 4 * 1024;
+    public static final int DEFAULT_MAX_PENDING_BYTES = 64 * 1024;
+
+    /**
+     * 一个批次的数据，只在下一次 drain() 之前有效
+     */
+    public static class Batch {
+        private byte[] mData;
+        private int mLength;
+        private int mChunkCount;
+        private int[] mChunkEnds = new int[16]; // 每块数据在 mData 中的结束位置
+        private long mFirstNanos; // 第一块数据到达的时刻
+
+        private Batch(int capacity) {
+            mData = new byte[capacity];
+        }
+
+        public byte[] array() {
+            return mData;
+        }
+
+        public int length() {
+            return mLength;
+        }
+
+        /**
+         * 合并进这一批的数据块个数
+         */
+        public int getChunkCount() {
+            return mChunkCount;
+        }
+
+        /**
+         * 第 index 块数据的结束位置，第 0 块从 0 开始，之后每块从上一块的结束位置开始。
+         * 读线程按帧交付时一块就是一帧，可以逐帧显示
+         */
+        public int getChunkEnd(int index) {
+            return mChunkEnds[index];
+        }
+
+        private void clear() {
+            mLength = 0;
+            mChunkCount = 0;
+        }
+    }
+
+    private final Handler mHandler;
+    private final LinkMetrics mMetrics;
+    private long mIntervalMs = DEFAULT_INTERVAL_MS;
+    private int mMaxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private int mMaxPendingBytes = DEFAULT_MAX_PENDING_BYTES;
+
+    private Batch mBack;  // 读线程正在写入的批次
+    private Batch mFront; // UI 最近一次取走的批次
+    private boolean mScheduled; // 已经投递了消息，UI 还没有 drain()
+    private boolean mUrgent;    // 已经因为批次过大而提前投递
+
+    private long mBatchCount;
+    private long mMergedChunks;
+    private long mDroppedBytes;
+
+    public ReceiveBatcher(Handler handler, LinkMetrics metrics) {
+        mHandler = handler;
+        mMetrics = metrics;
+        mBack = new Batch(DEFAULT_MAX_BATCH_BYTES);
+        mFront = new Batch(DEFAULT_MAX_BATCH_BYTES);
+    }
+
+    /**
+     * @param intervalMs 同一批次最多等待的时间，即 UI 更新的最小间隔
+     */
+    public synchronized void setIntervalMs(long intervalMs) {
+        mIntervalMs = intervalMs;
+    }
+
+    /**
+     * @param maxBatchBytes   批次达到这个大小时不再等待，立即交给 UI
+     * @param maxPendingBytes UI 来不及处理时最多缓存的字节数，超出的数据会被丢弃并计数
+     */
+    public synchronized void setLimits(int maxBatchBytes, int maxPendingBytes) {
+        if (maxBatchBytes <= 0 || maxPendingBytes < maxBatchBytes) {
+            throw new IllegalArgumentException("invalid limits: " + maxBatchBytes + ", " + maxPendingBytes);
+        }
+        mMaxBatchBytes = maxBatchBytes;
+        mMaxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * 读线程调用，追加一块数据
+     */
+    public synchronized void offer(byte[] buf, int offset, int length) {
+        Batch batch = mBack;
+        int accept = Math.min(length, mMaxPendingBytes - batch.mLength);
+        if (accept < length) {
+            mDroppedBytes += length - accept;
+            mMetrics.onUiDropped(length - accept);
+        }
+        if (accept <= 0) {
+            return;
+        }
+        if (batch.mLength == 0) {
+            batch.mFirstNanos = System.nanoTime();
+        }
+        ensureCapacity(batch, batch.mLength + accept);
+        System.arraycopy(buf, offset, batch.mData, batch.mLength, accept);
+        batch.mLength += accept;
+        if (batch.mChunkCount == batch.mChunkEnds.length) {
+            batch.mChunkEnds = Arrays.copyOf(batch.mChunkEnds, batch.mChunkCount * 2);
+        }
+        batch.mChunkEnds[batch.mChunkCount++] = batch.mLength;
+
+        if (!mScheduled) {
+            mScheduled = true;
+            post(mIntervalMs);
+        }
+        if (!mUrgent && batch.mLength >= mMaxBatchBytes) {
+            mUrgent = true;
+            postNow();
+        }
+    }
+
+    /**
+     * 投递延迟 delayMs 的 MESSAGE_READ_BATCH，在锁内调用
+     */
+    void post(long delayMs) {
+        mHandler.sendMessageDelayed(mHandler.obtainMessage(AppConst.MESSAGE_READ_BATCH, this), delayMs);
+    }
+
+    /**
+     * 撤回还在等待的延迟消息，立即投递，在锁内调用
+     */
+    void postNow() {
+        mHandler.removeMessages(AppConst.MESSAGE_READ_BATCH, this);
+        mHandler.obtainMessage(AppConst.MESSAGE_READ_BATCH, this).sendToTarget();
+    }
+
+    /**
+     * UI 线程调用，取走当前批次。返回的对象在下一次调用 drain() 之前有效
+     */
+    public synchronized Batch drain() {
+        Batch batch = mBack;
+        mBack = mFront;
+        mBack.clear();
+        mFront = batch;
+        mScheduled = false;
+        mUrgent = false;
+        if (batch.mLength > 0) {
+            mBatchCount++;
+            mMergedChunks += batch.mChunkCount;
+            mMetrics.onDispatched(System.nanoTime() - batch.mFirstNanos);
+        }
+        return batch;
+    }
+
+    public synchronized long getBatchCount() {
+        return mBatchCount;
+    }
+
+    public synchronized long getMergedChunks() {
+        return mMergedChunks;
+    }
+
+    public synchronized long getDroppedBytes() {
+        return mDroppedBytes;
+    }
+
+    private void ensureCapacity(Batch batch, int required) {
+        if (required <= batch.mData.length) {
+            return;
+        }
+        int size = Math.min(Math.max(required, batch.mData.length * 2), mMaxPendingBytes);
+        byte[] data = new byte[size];
+        System.arraycopy(batch.mData, 0, data, 0, batch.mLength);
+        batch.mData = data;
+    }
+}
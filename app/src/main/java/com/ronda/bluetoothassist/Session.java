@@ -0,0 +1,621 @@
+package com.ronda.bluetoothassist;
+
+import android.os.Handler;
+
+import com.ronda.bluetoothassist.base.AppConst;
+import com.ronda.bluetoothassist.capture.CaptureFormat;
+import com.ronda.bluetoothassist.capture.CaptureWriter;
+import com.ronda.bluetoothassist.checksum.ChecksumStage;
+import com.ronda.bluetoothassist.command.CommandChannel;
+import com.ronda.bluetoothassist.command.Correlator;
+import com.ronda.bluetoothassist.connection.Connection;
+import com.ronda.bluetoothassist.connection.ConnectionStateMachine;
+import com.ronda.bluetoothassist.connection.ReceivePipeline;
+import com.ronda.bluetoothassist.connection.ReconnectPolicy;
+import com.ronda.bluetoothassist.frame.FrameDecoder;
+import com.ronda.bluetoothassist.io.Chunk;
+import com.ronda.bluetoothassist.io.WriteFuture;
+import com.ronda.bluetoothassist.log.BtLog;
+import com.ronda.bluetoothassist.log.LogSampler;
+import com.ronda.bluetoothassist.metrics.LinkMetrics;
+import com.ronda.bluetoothassist.metrics.MetricsSnapshot;
+import com.ronda.bluetoothassist.transport.Transport;
+import com.ronda.bluetoothassist.utils.CloseUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 与一个远程设备（以 MAC 地址区分）的会话
+ * <p>
+ * 每个会话有自己的连接状态、接收管道、合并器和统计数据，互不影响。
+ * 状态由无锁的 {@link ConnectionStateMachine} 管理，连接尝试、重连定时器和读线程各自持有开始时的 token，
+ * 过时的结果在 CAS 时被丢弃；收发路径上不加锁。
+ * 状态变化通知给所有监听器，其中一个把它转成 MESSAGE_STATE_CHANGE 发给 UI，
+ * 发给 UI 的消息都在 arg2 中带上会话的 id，UI 据此区分数据来自哪个设备
+ * <p>
+ * 已建立的连接因 IO 异常断开后进入 STATE_RECONNECTING，按 {@link ReconnectPolicy} 自动重连：
+ * 第一次立即重连，之后指数退避；蓝牙关闭期间暂停，重新打开后立即重试。主动 close() 不会重连
+ */
+
+public class Session {
+
+    public static final String TAG = Session.class.getSimpleName();
+
+    private static final AtomicInteger sNextId = new AtomicInteger(1);
+    private static final int LOG_SAMPLE_EVERY = 16; // 每块数据的日志只记录 1/16
+
+    private final BluetoothChatService mService;
+    private final Handler mHandler;
+    private final int mId;
+    private final String mAddress;
+    private final ReceivePipeline mReceivePipeline;
+    private final ReceiveBatcher mReceiveBatcher;
+
+    private final ConnectionStateMachine mStateMachine = new ConnectionStateMachine(BluetoothChatService.STATE_NONE);
+    private volatile ConnectTask mConnectTask;       // 只用于 close() 时尽早取消，正确性由 token 保证
+    private volatile ReconnectTask mReconnectTask;   // 同上
+    private volatile Connection mConnection;
+    private volatile String mName;
+    private volatile CommandChannel mCommandChannel; // 为 null 时收到的数据只发给 UI
+
+    private volatile long mLostAtNanos;  // 本轮断开的时刻，不在重连中时为 0
+
+    private final LinkMetrics mMetrics = new LinkMetrics();
+    private final LogSampler mReadLogSampler = new LogSampler(LOG_SAMPLE_EVERY);
+
+    Session(BluetoothChatService service, Handler handler, String address) {
+        mService = service;
+        mHandler = handler;
+        mId = sNextId.getAndIncrement();
+        mAddress = address;
+        mName = address;
+        mReceivePipeline = new ReceivePipeline(mReceiveSink);
+        mReceiveBatcher = new ReceiveBatcher(handler, mMetrics);
+        mStateMachine.addListener(mUiStateListener);
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * 连接成功之前返回 MAC 地址
+     */
+    public String getName() {
+        return mName;
+    }
+
+    public int getState() {
+        return mStateMachine.getState();
+    }
+
+    /**
+     * 当前的代数，每次发起连接或主动断开时加一
+     */
+    public int getGeneration() {
+        return mStateMachine.getGeneration();
+    }
+
+    /**
+     * 状态变化时在执行切换的线程中回调，不一定是 UI 线程
+     */
+    public void addStateListener(ConnectionStateMachine.Listener listener) {
+        mStateMachine.addListener(listener);
+    }
+
+    public void removeStateListener(ConnectionStateMachine.Listener listener) {
+        mStateMachine.removeListener(listener);
+    }
+
+    public void setFrameDecoder(FrameDecoder decoder) {
+        mReceivePipeline.setFrameDecoder(decoder);
+    }
+
+    public FrameDecoder getFrameDecoder() {
+        return mReceivePipeline.getFrameDecoder();
+    }
+
+    /**
+     * 设置后接收的每一帧都先校验，发送的数据自动追加校验值；为 null 时都不做。
+     * 校验只作用于分帧后的帧，没有分帧器时收发都不生效
+     */
+    public void setChecksumStage(ChecksumStage stage) {
+        if (stage != null && mReceivePipeline.getFrameDecoder() == null) {
+            BtLog.w(TAG, "checksum stage for {} has no effect without a frame decoder", mAddress);
+        }
+        mReceivePipeline.setChecksumStage(stage);
+    }
+
+    public ChecksumStage getChecksumStage() {
+        return mReceivePipeline.getChecksumStage();
+    }
+
+    /**
+     * 打开请求/应答通道，之后收到的每一帧先交给它配对，再照常发给 UI。
+     * 已经打开时替换旧的通道，旧通道中未完成的请求失败
+     *
+     * @param maxInFlight 同时等待应答的请求数上限
+     */
+    public CommandChannel openCommandChannel(Correlator correlator, int maxInFlight) {
+        CommandChannel channel = new CommandChannel(mCommandTarget, correlator, maxInFlight,
+                CommandChannel.DEFAULT_MAX_QUEUED, mService.getCommandTimer());
+        CommandChannel old = mCommandChannel;
+        mCommandChannel = channel;
+        if (old != null) {
+            old.failAll(new IOException("command channel replaced"));
+        }
+        return channel;
+    }
+
+    /**
+     * 没有打开时返回 null
+     */
+    public CommandChannel getCommandChannel() {
+        return mCommandChannel;
+    }
+
+    public void closeCommandChannel() {
+        CommandChannel channel = mCommandChannel;
+        mCommandChannel = null;
+        if (channel != null) {
+            channel.failAll(new IOException("command channel closed"));
+        }
+    }
+
+    /**
+     * 连接断开后不会再有应答，让等待中的请求立即失败，而不是等到超时
+     */
+    private void failCommands(String reason) {
+        CommandChannel channel = mCommandChannel;
+        if (channel != null) {
+            channel.failAll(new IOException(reason));
+        }
+    }
+
+    /**
+     * 回放时直接向接收管道输入数据
+     */
+    ReceivePipeline getReceivePipeline() {
+        return mReceivePipeline;
+    }
+
+    public ReceiveBatcher getReceiveBatcher() {
+        return mReceiveBatcher;
+    }
+
+    /**
+     * 收发计数和延迟分布，随时可以调用 {@link LinkMetrics#snapshot()}
+     */
+    public LinkMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public MetricsSnapshot getMetricsSnapshot() {
+        return mMetrics.snapshot();
+    }
+
+    /**
+     * 异步写入，写队列已满时直接拒绝
+     */
+    public WriteFuture write(byte[] out) {
+        Connection connection = mConnection;
+        if (connection == null || mStateMachine.getState() != BluetoothChatService.STATE_CONNECTED) {
+            return WriteFuture.failed(out, new IOException("not connected"));
+        }
+        return connection.write(seal(out)).setListener(mWriteListener);
+    }
+
+    /**
+     * 异步写入，写队列已满时最多等待 timeoutMs（背压），不要在 UI 线程调用
+     */
+    public WriteFuture write(byte[] out, long timeoutMs) throws InterruptedException {
+        Connection connection = mConnection;
+        if (connection == null || mStateMachine.getState() != BluetoothChatService.STATE_CONNECTED) {
+            return WriteFuture.failed(out, new IOException("not connected"));
+        }
+        return connection.write(seal(out), timeoutMs, TimeUnit.MILLISECONDS).setListener(mWriteListener);
+    }
+
+    private byte[] seal(byte[] out) {
+        ChecksumStage checksum = mReceivePipeline.getActiveChecksumStage();
+        return checksum == null ? out : checksum.seal(out);
+    }
+
+    /**
+     * 开始连接，已经在连接中、已连接或正在自动重连时什么也不做
+     */
+    void connect() {
+        long current = mStateMachine.get();
+        if (ConnectionStateMachine.stateOf(current) != BluetoothChatService.STATE_NONE) {
+            return;
+        }
+        long token = mStateMachine.advance(current, BluetoothChatService.STATE_CONNECTING);
+        if (token != ConnectionStateMachine.NO_TOKEN) {
+            startAttempt(token, 0);
+        }
+    }
+
+    /**
+     * 取消正在进行的连接和自动重连，并断开当前连接
+     */
+    void close() {
+        // 先进入新的一代，之后任何旧的连接结果、定时器和读线程回调都会作废
+        mStateMachine.forceAdvance(BluetoothChatService.STATE_NONE);
+        mLostAtNanos = 0;
+        ReconnectTask reconnect = mReconnectTask;
+        if (reconnect != null) {
+            mHandler.removeCallbacks(reconnect);
+        }
+        ConnectTask task = mConnectTask;
+        if (task != null) {
+            task.cancel();
+        }
+        Connection connection = mConnection;
+        if (connection != null) {
+            mConnection = null;
+            connection.close();
+        }
+        failCommands("session closed");
+    }
+
+    /**
+     * 蓝牙打开或关闭。关闭时暂停重连；打开时如果正在等待重连，进入新的一代并立即重试
+     */
+    void onAdapterStateChanged(boolean enabled) {
+        ReconnectTask pending = mReconnectTask;
+        if (pending != null) {
+            mHandler.removeCallbacks(pending);
+        }
+        if (!enabled) {
+            return;
+        }
+        long current = mStateMachine.get();
+        if (ConnectionStateMachine.stateOf(current) != BluetoothChatService.STATE_RECONNECTING) {
+            return;
+        }
+        long token = mStateMachine.advance(current, BluetoothChatService.STATE_RECONNECTING);
+        if (token != ConnectionStateMachine.NO_TOKEN) {
+            postReconnect(token, 0, 0);
+        }
+    }
+
+    /**
+     * 以 token 的名义发起一次连接尝试
+     *
+     * @param attempt 本轮重连已经失败的次数，首次连接为 0
+     */
+    private void startAttempt(long token, int attempt) {
+        Transport transport;
+        try {
+            transport = mService.getTransportFactory().create(mAddress);
+        } catch (IOException e) {
+            e.printStackTrace();
+            onAttemptFailed(token, attempt, "Unable to connect device");
+            return;
+        }
+        ConnectTask task = new ConnectTask(token, attempt, transport);
+        mConnectTask = task;
+        try {
+            mService.getIoExecutor().executeConnect(task);
+        } catch (RejectedExecutionException e) {
+            CloseUtils.close(transport);
+            onAttemptFailed(token, attempt, "Unable to connect device");
+        }
+    }
+
+    /**
+     * 一次连接尝试失败：重连中则安排下一次，否则回到 STATE_NONE
+     */
+    private void onAttemptFailed(long token, int attempt, String message) {
+        mService.onSessionConnectFailed(this);
+        if (ConnectionStateMachine.stateOf(token) == BluetoothChatService.STATE_RECONNECTING) {
+            scheduleReconnect(token, attempt + 1);
+            return;
+        }
+        if (mStateMachine.compareAndSet(token, BluetoothChatService.STATE_NONE)) {
+            mService.sendToast(message);
+            BtLog.d(TAG, "sendConnectionFailed: {}", mAddress);
+        }
+    }
+
+    /**
+     * 安排 token 这一代的第 attempt 次重连
+     */
+    private void scheduleReconnect(long token, int attempt) {
+        if (mStateMachine.get() != token) {
+            return;
+        }
+        ReconnectPolicy policy = mService.getReconnectPolicy();
+        if (!mService.isAutoReconnect() || !policy.canRetry(attempt)) {
+            if (mStateMachine.compareAndSet(token, BluetoothChatService.STATE_NONE)) {
+                BtLog.d(TAG, "give up reconnecting {} after {} attempts", mAddress, attempt);
+                mLostAtNanos = 0;
+            }
+            return;
+        }
+        if (!mService.isAdapterEnabled()) {
+            return; // 蓝牙重新打开后由 onAdapterStateChanged() 继续
+        }
+        postReconnect(token, attempt, policy.getDelayMs(attempt));
+    }
+
+    private void postReconnect(long token, int attempt, long delayMs) {
+        ReconnectTask task = new ReconnectTask(token, attempt);
+        mReconnectTask = task;
+        mHandler.postDelayed(task, delayMs);
+    }
+
+    private class ReconnectTask implements Runnable {
+        private final long mmToken;
+        private final int mmAttempt;
+
+        private ReconnectTask(long token, int attempt) {
+            mmToken = token;
+            mmAttempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            if (mStateMachine.get() != mmToken || !mService.isAdapterEnabled()) {
+                return;
+            }
+            startAttempt(mmToken, mmAttempt);
+        }
+    }
+
+    private void connected(ConnectTask task, Transport transport) {
+        long token = task.mmToken;
+        // 连接过程中会话已被关闭或重新连接，这次的结果作废
+        if (mStateMachine.get() != token) {
+            CloseUtils.close(transport);
+            return;
+        }
+
+        Connection connection;
+        try {
+            connection = new Connection(transport, mReceivePipeline, mService.getBufferPool(),
+                    mService.getIoExecutor(), new ConnectionListener(token));
+        } catch (IOException e) {
+            CloseUtils.close(transport);
+            onAttemptFailed(token, task.mmAttempt, "Unable to connect device");
+            return;
+        }
+        if (transport.getName() != null) {
+            mName = transport.getName();
+        }
+        connection.setTap(mTap);
+        // 先切换到 CONNECTED 再启动读循环，读循环中的断开回调才能以 CONNECTED 的 token 生效
+        long lostAt = mLostAtNanos;
+        mConnection = connection;
+        if (!mStateMachine.compareAndSet(token, BluetoothChatService.STATE_CONNECTED)) {
+            if (mConnection == connection) {
+                mConnection = null;
+            }
+            connection.close();
+            return;
+        }
+        try {
+            connection.start();
+        } catch (RejectedExecutionException e) {
+            BtLog.log(BtLog.ERROR, TAG, "no io thread for {}: {}", mAddress, mService.getIoExecutor());
+            long connectedToken = ConnectionStateMachine.pack(ConnectionStateMachine.generationOf(token),
+                    BluetoothChatService.STATE_CONNECTED);
+            if (mStateMachine.advance(connectedToken, BluetoothChatService.STATE_NONE) != ConnectionStateMachine.NO_TOKEN) {
+                mConnection = null;
+                mLostAtNanos = 0;
+                mService.sendToast("Too many connections");
+            }
+            return;
+        }
+        if (lostAt != 0) {
+            long elapsedMs = (System.nanoTime() - lostAt) / 1000000;
+            mMetrics.onReconnected(elapsedMs);
+            BtLog.d(TAG, "reconnected {} in {} ms", mAddress, elapsedMs);
+            mLostAtNanos = 0;
+        }
+        long latencyNanos = System.nanoTime() - task.mmStartNanos;
+        mMetrics.onConnected(latencyNanos);
+        mService.onSessionConnected(this, latencyNanos / 1000000);
+    }
+
+    private void connectFailed(ConnectTask task) {
+        if (mStateMachine.get() != task.mmToken) {
+            return;
+        }
+        onAttemptFailed(task.mmToken, task.mmAttempt, "Unable to connect device");
+    }
+
+    /**
+     * 每个连接一个，记住连接建立时的 token，已被 close() 或新的连接取代时回调不再生效
+     */
+    private class ConnectionListener implements Connection.Listener {
+        private final long mmToken;
+
+        private ConnectionListener(long token) {
+            mmToken = ConnectionStateMachine.pack(ConnectionStateMachine.generationOf(token),
+                    BluetoothChatService.STATE_CONNECTED);
+        }
+
+        @Override
+        public void onClosed(Connection connection, IOException cause) {
+            BtLog.d(TAG, "Connection closed --> {}, cause : {}", mAddress, cause);
+            if (cause == null) {
+                return; // 主动断开，状态已由 close() 切换
+            }
+            long lostAt = System.nanoTime();
+            long token = mStateMachine.advance(mmToken, BluetoothChatService.STATE_RECONNECTING);
+            if (token == ConnectionStateMachine.NO_TOKEN) {
+                return;
+            }
+            mLostAtNanos = lostAt;
+            if (mConnection == connection) {
+                mConnection = null;
+            }
+            failCommands("connection lost");
+            mService.sendToast("Device connection was lost");
+            scheduleReconnect(token, 0);
+        }
+    }
+
+    /**
+     * 请求/应答通道的请求和普通发送一样经过校验和写队列
+     */
+    private final CommandChannel.Target mCommandTarget = new CommandChannel.Target() {
+        @Override
+        public WriteFuture write(byte[] data) {
+            return Session.this.write(data);
+        }
+    };
+
+    /**
+     * 统计每次 read() 的大小；抓包开启时把收发的原始字节交给 CaptureWriter，只复制内存
+     */
+    private final Connection.Tap mTap = new Connection.Tap() {
+        @Override
+        public void onReceived(byte[] buf, int offset, int length) {
+            mMetrics.onRead(length);
+            CaptureWriter capture = mService.getCaptureWriter();
+            if (capture != null) {
+                capture.append(mId, CaptureFormat.DIRECTION_RX, buf, offset, length);
+            }
+        }
+
+        @Override
+        public void onSent(byte[] buf, int offset, int length) {
+            CaptureWriter capture = mService.getCaptureWriter();
+            if (capture != null) {
+                capture.append(mId, CaptureFormat.DIRECTION_TX, buf, offset, length);
+            }
+        }
+    };
+
+    /**
+     * 把状态变化转成 MESSAGE_STATE_CHANGE 发给 UI，连接成功时 obj 为设备名
+     */
+    private final ConnectionStateMachine.Listener mUiStateListener = new ConnectionStateMachine.Listener() {
+        @Override
+        public void onStateChanged(int oldState, int newState, int generation) {
+            String deviceName = newState == BluetoothChatService.STATE_CONNECTED ? mName : null;
+            // Give the new state to the Handler so the UI Activity can update
+            mHandler.obtainMessage(AppConst.MESSAGE_STATE_CHANGE, newState, mId, deviceName).sendToTarget();
+        }
+    };
+
+    /**
+     * 把一块接收到的数据（完整帧或原始数据块）发给 UI
+     */
+    private void sendRead(byte[] buf, int offset, int length) {
+        int mode = mService.getReceiveMode();
+        if (mode == BluetoothChatService.RECEIVE_MODE_BATCHED) {
+            mReceiveBatcher.offer(buf, offset, length);
+            return;
+        }
+        Object data;
+        if (mode == BluetoothChatService.RECEIVE_MODE_POOLED) {
+            Chunk chunk = mService.getBufferPool().acquire(length);
+            System.arraycopy(buf, offset, chunk.array(), 0, length);
+            chunk.setRange(0, length);
+            data = chunk;
+        } else {
+            data = Arrays.copyOfRange(buf, offset, offset + length);
+        }
+        mHandler.obtainMessage(AppConst.MESSAGE_READ, -1, mId, data).sendToTarget();
+    }
+
+    /**
+     * 接收路径的末端，运行在读线程中
+     */
+    private final ReceivePipeline.Sink mReceiveSink = new ReceivePipeline.Sink() {
+        @Override
+        public void onData(byte[] buf, int offset, int length) {
+            mMetrics.onFrameReceived(length);
+            if (BtLog.isLoggable(BtLog.DEBUG) && mReadLogSampler.sample()) {
+                BtLog.data(BtLog.DEBUG, TAG, "read:{} ({} bytes, sampled)", buf, offset, length);
+            }
+            CommandChannel channel = mCommandChannel;
+            if (channel != null) {
+                channel.onResponse(buf, offset, length);
+            }
+            sendRead(buf, offset, length);
+        }
+
+        @Override
+        public boolean onChunk(Chunk chunk) {
+            if (mService.getReceiveMode() != BluetoothChatService.RECEIVE_MODE_POOLED) {
+                return false;
+            }
+            mMetrics.onFrameReceived(chunk.length());
+            if (BtLog.isLoggable(BtLog.DEBUG) && mReadLogSampler.sample()) {
+                BtLog.data(BtLog.DEBUG, TAG, "read:{} ({} bytes, sampled)", chunk.array(), chunk.offset(), chunk.length());
+            }
+            CommandChannel channel = mCommandChannel;
+            if (channel != null) {
+                channel.onResponse(chunk.array(), chunk.offset(), chunk.length());
+            }
+            // 不分帧时直接把读到数据的块交给 UI，省掉一次复制
+            mHandler.obtainMessage(AppConst.MESSAGE_READ, -1, mId, chunk).sendToTarget();
+            return true;
+        }
+    };
+
+    /**
+     * 写完成后把数据回传给 UI；队列已满被拒绝时提示用户
+     */
+    private final WriteFuture.Listener mWriteListener = new WriteFuture.Listener() {
+        @Override
+        public void onComplete(WriteFuture future) {
+            if (future.isSuccess()) {
+                mMetrics.onWriteSucceeded(future.getData().length, System.nanoTime() - future.getCreatedNanos());
+                // Share the sent message back to the UI Activity
+                mHandler.obtainMessage(AppConst.MESSAGE_WRITE, -1, mId, future.getData()).sendToTarget();
+                return;
+            }
+            mMetrics.onWriteFailed();
+            if (future.isRejected()) {
+                mService.sendToast("Send queue is full");
+            } else {
+                BtLog.d(TAG, "write failed: {}", future.getCause());
+            }
+        }
+    };
+
+    /**
+     * 在共享线程池中执行的一次连接尝试
+     */
+    private class ConnectTask implements Runnable {
+        private final long mmToken;
+        private final int mmAttempt;
+        private final Transport mmTransport;
+        private final long mmStartNanos = System.nanoTime();
+
+        private ConnectTask(long token, int attempt, Transport transport) {
+            mmToken = token;
+            mmAttempt = attempt;
+            mmTransport = transport;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mmTransport.connect();
+            } catch (IOException e) {
+                CloseUtils.close(mmTransport);
+                connectFailed(this);
+                return;
+            }
+            connected(this, mmTransport);
+        }
+
+        public void cancel() {
+            CloseUtils.close(mmTransport);
+        }
+    }
+}
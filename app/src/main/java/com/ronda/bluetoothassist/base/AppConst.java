@@ -15,6 +15,10 @@ public interface AppConst {
     public static final int MESSAGE_WRITE = 3;
     public static final int MESSAGE_DEVICE_NAME = 4;
     public static final int MESSAGE_TOAST = 5; // 连接时失败 和 通讯过程中 中断 的情况. 表示 message 中的 what 值
+    public static final int MESSAGE_READ_BATCH = 6; // 合并后的接收数据，obj 是 ReceiveBatcher
+    public static final int MESSAGE_HEX_DUMP = 7;   // 后台格式化好了 Hex Dump 的行，obj 是 HexDumpRenderer
     // Key names received from the BluetoothChatService Handler
     public static final String TOAST = "toast";
+
+    public static final int IO_MAX_THREADS = 8; // 共享 IO 线程池的大小，最多同时连接 IO_MAX_THREADS - 1 个设备
 }
\ No newline at end of file
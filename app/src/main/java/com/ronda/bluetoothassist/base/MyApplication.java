@@ -3,6 +3,12 @@ package com.ronda.bluetoothassist.base;
 import android.app.Application;
 
 import com.ronda.bluetoothassist.BuildConfig;
+import com.ronda.bluetoothassist.io.IoExecutor;
+import com.ronda.bluetoothassist.log.BtLog;
+import com.ronda.bluetoothassist.log.KLogSink;
+import com.ronda.bluetoothassist.settings.SettingsStore;
+import com.ronda.bluetoothassist.settings.SharedPreferencesBackend;
+import com.ronda.bluetoothassist.utils.SPUtils;
 import com.socks.library.KLog;
 
 
@@ -27,6 +33,13 @@ public class MyApplication extends Application {
 
     private void init() {
         KLog.init(BuildConfig.LOG_DEBUG, "ronda");
+        // 读写线程的日志经由 BtLog 异步输出到 KLog，release 版本中完全关闭
+        BtLog.init(BuildConfig.LOG_DEBUG ? BtLog.DEBUG : BtLog.OFF, new KLogSink());
+        // 所有蓝牙连接共用的 IO 线程池，每个已连接的设备占用一个线程读数据，另外至少留一个给连接和写
+        IoExecutor.initDefault(AppConst.IO_MAX_THREADS, IoExecutor.DEFAULT_QUEUE_CAPACITY);
+        // 配置在后台线程中读入，UI 线程只读写内存；设备历史提前创建，读入完成后自动合并
+        SettingsStore.initDefault(new SharedPreferencesBackend(this, SPUtils.PREFERENCES_NAME));
+        SPUtils.getDeviceHistory();
 
     }
 
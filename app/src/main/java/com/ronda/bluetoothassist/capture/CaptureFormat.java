@@ -0,0 +1,31 @@
+package com.ronda.bluetoothassist.capture;
+
+/**
+ * 抓包文件格式（大端）
+ * <pre>
+ * 文件头 16 字节：magic "BTCP"(4) | version(2) | reserved(2) | 起始时刻的墙上时间 ms(8)
+ * 记录 15 字节 + 数据：起始后经过的 ns(8) | 会话 id(2) | 方向(1) | 数据长度(4) | 数据
+ * </pre>
+ * 时间戳相对于整个抓包过程的起点，按大小切分出的多个文件之间是连续的
+ */
+
+public final class CaptureFormat {
+
+    public static final int MAGIC = 0x42544350; // "BTCP"
+    public static final short VERSION = 1;
+    public static final int FILE_HEADER_SIZE = 16;
+    public static final int RECORD_HEADER_SIZE = 15;
+
+    /**
+     * 单条记录的数据长度上限，写入时超出的记录被丢弃，读取时超出的长度视为文件损坏
+     */
+    public static final int MAX_RECORD_LENGTH = 256 * 1024 - RECORD_HEADER_SIZE;
+
+    public static final byte DIRECTION_RX = 0; // 从设备收到
+    public static final byte DIRECTION_TX = 1; // 发给设备
+
+    public static final String FILE_SUFFIX = ".btcap";
+
+    private CaptureFormat() {
+    }
+}
@@ -0,0 +1,100 @@
+package com.ronda.bluetoothassist.capture;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 读取 {@link CaptureWriter} 写出的抓包文件，数据缓冲区复用
+ */
+
+public class CaptureReader implements ReplaySource {
+
+    private final DataInputStream mIn;
+    private final long mBaseWallMillis;
+    private byte[] mBuffer = new byte[1024];
+    private int mLength;
+    private long mTimestampNanos;
+    private int mSessionId;
+    private byte mDirection;
+
+    public CaptureReader(InputStream in) throws IOException {
+        mIn = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        int magic = mIn.readInt();
+        if (magic != CaptureFormat.MAGIC) {
+            throw new IOException("not a capture file, magic=0x" + Integer.toHexString(magic));
+        }
+        short version = mIn.readShort();
+        if (version != CaptureFormat.VERSION) {
+            throw new IOException("unsupported capture version " + version);
+        }
+        mIn.readShort();
+        mBaseWallMillis = mIn.readLong();
+    }
+
+    /**
+     * 抓包开始时的墙上时间
+     */
+    public long getBaseWallMillis() {
+        return mBaseWallMillis;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        long timestamp;
+        try {
+            timestamp = mIn.readLong();
+        } catch (EOFException e) {
+            return false;
+        }
+        try {
+            mSessionId = mIn.readUnsignedShort();
+            mDirection = mIn.readByte();
+            int length = mIn.readInt();
+            if (length < 0 || length > CaptureFormat.MAX_RECORD_LENGTH) {
+                throw new IOException("corrupt record length " + length);
+            }
+            if (length > mBuffer.length) {
+                mBuffer = new byte[Math.max(length, mBuffer.length * 2)];
+            }
+            mIn.readFully(mBuffer, 0, length);
+            mLength = length;
+        } catch (EOFException e) {
+            return false; // 抓包被中断时最后一条记录可能不完整
+        }
+        mTimestampNanos = timestamp;
+        return true;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    @Override
+    public int getSessionId() {
+        return mSessionId;
+    }
+
+    @Override
+    public byte getDirection() {
+        return mDirection;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    @Override
+    public int getLength() {
+        return mLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
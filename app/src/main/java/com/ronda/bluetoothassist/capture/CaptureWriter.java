@@ -0,0 +1,260 @@
+package com.ronda.bluetoothassist.capture;
+
+import com.ronda.bluetoothassist.utils.CloseUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 把收发的原始字节以二进制记录写入文件，格式见 {@link CaptureFormat}
+ * <p>
+ * 调用 {@link #append} 的收发线程只把记录复制进内存中的缓冲区，不做任何 IO；
+ * 缓冲区写满（或每隔 {@link #FLUSH_INTERVAL_MS}）后与备用缓冲区交换，由后台线程通过 FileChannel 写盘。
+ * 后台线程还没写完备用缓冲区时新记录直接丢弃并计数，绝不让收发线程等待磁盘。
+ * 单个文件超过 maxFileBytes 后切换到新文件，记录不会跨文件
+ */
+
+public class CaptureWriter implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final long DEFAULT_MAX_FILE_BYTES = 16 * 1024 * 1024;
+    static final long FLUSH_INTERVAL_MS = 500;
+
+    private final File mDir;
+    private final String mPrefix;
+    private final long mMaxFileBytes;
+    private final long mBaseNanos;
+    private final long mBaseWallMillis;
+    private final Thread mFlusher;
+
+    private final Object mLock = new Object();
+    private ByteBuffer mActive;  // 收发线程正在写的缓冲区
+    private ByteBuffer mFull;    // 等待写盘的缓冲区
+    private ByteBuffer mSpare;   // 已写盘、可以交换的缓冲区，为 null 表示后台线程还在用
+    private boolean mClosed;
+    private long mRecordCount;
+    private long mCapturedBytes;
+    private long mDroppedRecords;
+
+    // 以下只在后台线程中访问
+    private FileChannel mChannel;
+    private volatile File mCurrentFile;
+    private long mCurrentFileBytes;
+    private volatile int mFileCount;
+    private volatile IOException mError;
+
+    public CaptureWriter(File dir, String prefix) throws IOException {
+        this(dir, prefix, DEFAULT_MAX_FILE_BYTES, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param maxFileBytes 单个文件的大小上限，超过后切换到新文件
+     * @param bufferSize   每个内存缓冲区的大小，放不下的单条记录会被丢弃，数据长度也不能超过 {@link CaptureFormat#MAX_RECORD_LENGTH}
+     */
+    public CaptureWriter(File dir, String prefix, long maxFileBytes, int bufferSize) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        mDir = dir;
+        mPrefix = prefix;
+        mMaxFileBytes = maxFileBytes;
+        mBaseNanos = System.nanoTime();
+        mBaseWallMillis = System.currentTimeMillis();
+        mActive = ByteBuffer.allocateDirect(bufferSize);
+        mSpare = ByteBuffer.allocateDirect(bufferSize);
+        openNextFile();
+        mFlusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "BtCapture");
+        mFlusher.setDaemon(true);
+        mFlusher.start();
+    }
+
+    /**
+     * 追加一条记录，只复制内存，不会阻塞在 IO 上
+     *
+     * @param sessionId 区分多设备，只保存低 16 位
+     * @param direction {@link CaptureFormat#DIRECTION_RX} 或 {@link CaptureFormat#DIRECTION_TX}
+     * @return 缓冲区已满被丢弃或已关闭时返回 false
+     */
+    public boolean append(int sessionId, byte direction, byte[] buf, int offset, int length) {
+        long nanos = System.nanoTime() - mBaseNanos;
+        int size = CaptureFormat.RECORD_HEADER_SIZE + length;
+        synchronized (mLock) {
+            if (mClosed) {
+                return false;
+            }
+            if (mActive.remaining() < size && !swapLocked()) {
+                mDroppedRecords++;
+                return false;
+            }
+            if (mActive.remaining() < size || length > CaptureFormat.MAX_RECORD_LENGTH) { // 比整个缓冲区还大或超过格式上限
+                mDroppedRecords++;
+                return false;
+            }
+            mActive.putLong(nanos);
+            mActive.putShort((short) sessionId);
+            mActive.put(direction);
+            mActive.putInt(length);
+            mActive.put(buf, offset, length);
+            mRecordCount++;
+            mCapturedBytes += length;
+        }
+        return true;
+    }
+
+    /**
+     * 停止抓包，把缓冲区中剩余的记录写盘后关闭文件
+     */
+    @Override
+    public void close() {
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mLock.notifyAll();
+        }
+        try {
+            mFlusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getBaseWallMillis() {
+        return mBaseWallMillis;
+    }
+
+    public long getRecordCount() {
+        synchronized (mLock) {
+            return mRecordCount;
+        }
+    }
+
+    public long getCapturedBytes() {
+        synchronized (mLock) {
+            return mCapturedBytes;
+        }
+    }
+
+    public long getDroppedRecords() {
+        synchronized (mLock) {
+            return mDroppedRecords;
+        }
+    }
+
+    public int getFileCount() {
+        return mFileCount;
+    }
+
+    /**
+     * 写盘出错时的异常，出错后不再写盘，记录全部丢弃
+     */
+    public IOException getError() {
+        return mError;
+    }
+
+    /**
+     * 把写满的 mActive 交给后台线程，调用时必须持有 mLock
+     */
+    private boolean swapLocked() {
+        if (mSpare == null || mActive.position() == 0) {
+            return false;
+        }
+        mFull = mActive;
+        mActive = mSpare;
+        mSpare = null;
+        mLock.notifyAll();
+        return true;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer full;
+            boolean closed;
+            synchronized (mLock) {
+                if (mFull == null && !mClosed) {
+                    try {
+                        mLock.wait(FLUSH_INTERVAL_MS);
+                    } catch (InterruptedException e) {
+                        mClosed = true;
+                    }
+                }
+                if (mFull == null) {
+                    swapLocked(); // 超时或关闭时把未写满的缓冲区也写出去
+                }
+                full = mFull;
+                mFull = null;
+                closed = mClosed;
+            }
+            if (full != null) {
+                writeBuffer(full);
+                synchronized (mLock) {
+                    mSpare = full;
+                }
+            }
+            if (closed && full == null) {
+                break;
+            }
+        }
+        CloseUtils.close(mChannel);
+    }
+
+    private void writeBuffer(ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            if (mError == null) {
+                if (mCurrentFileBytes > CaptureFormat.FILE_HEADER_SIZE
+                        && mCurrentFileBytes + buffer.remaining() > mMaxFileBytes) {
+                    CloseUtils.close(mChannel);
+                    openNextFile();
+                }
+                while (buffer.hasRemaining()) {
+                    mCurrentFileBytes += mChannel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            mError = e;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void openNextFile() throws IOException {
+        File file = new File(mDir, mPrefix + "_" + mBaseWallMillis + "_" + mFileCount + CaptureFormat.FILE_SUFFIX);
+        FileChannel channel = new FileOutputStream(file).getChannel();
+        ByteBuffer header = ByteBuffer.allocate(CaptureFormat.FILE_HEADER_SIZE);
+        header.putInt(CaptureFormat.MAGIC);
+        header.putShort(CaptureFormat.VERSION);
+        header.putShort((short) 0);
+        header.putLong(mBaseWallMillis);
+        header.flip();
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            CloseUtils.close(channel);
+            throw e;
+        }
+        mChannel = channel;
+        mCurrentFile = file;
+        mCurrentFileBytes = CaptureFormat.FILE_HEADER_SIZE;
+        mFileCount++;
+    }
+
+    /**
+     * 正在写的文件，只用于展示
+     */
+    public File getCurrentFile() {
+        return mCurrentFile;
+    }
+}
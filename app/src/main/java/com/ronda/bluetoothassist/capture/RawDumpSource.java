@@ -0,0 +1,82 @@
+package com.ronda.bluetoothassist.capture;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 没有时间戳的原始二进制转储（例如串口工具保存的 .bin）
+ * <p>
+ * 按 chunkSize 切块，都当作接收的数据；时间戳按给定的链路速率推算，用于实时或倍速回放
+ */
+
+public class RawDumpSource implements ReplaySource {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    public static final int DEFAULT_BYTES_PER_SECOND = 11520; // 115200 bps 串口透传的有效速率
+
+    private final InputStream mIn;
+    private final byte[] mBuffer;
+    private final long mNanosPerByte;
+    private int mLength;
+    private long mOffset;           // 已读出的字节数
+    private long mTimestampNanos;
+
+    public RawDumpSource(InputStream in) {
+        this(in, DEFAULT_CHUNK_SIZE, DEFAULT_BYTES_PER_SECOND);
+    }
+
+    public RawDumpSource(InputStream in, int chunkSize, int bytesPerSecond) {
+        mIn = in;
+        mBuffer = new byte[chunkSize];
+        mNanosPerByte = 1000000000L / bytesPerSecond;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        int n = 0;
+        while (n < mBuffer.length) {
+            int r = mIn.read(mBuffer, n, mBuffer.length - n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        if (n == 0) {
+            return false;
+        }
+        mLength = n;
+        mOffset += n;
+        mTimestampNanos = mOffset * mNanosPerByte; // 这一块最后一个字节到达的时刻
+        return true;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    @Override
+    public int getSessionId() {
+        return 0;
+    }
+
+    @Override
+    public byte getDirection() {
+        return CaptureFormat.DIRECTION_RX;
+    }
+
+    @Override
+    public byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    @Override
+    public int getLength() {
+        return mLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.ronda.bluetoothassist.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 回放的数据来源：依次给出带时间戳的数据块
+ */
+
+public interface ReplaySource extends Closeable {
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 没有更多记录时为 false
+     */
+    boolean next() throws IOException;
+
+    /**
+     * 当前记录相对于第一条记录之前某个固定起点的纳秒数，单调不减
+     */
+    long getTimestampNanos();
+
+    int getSessionId();
+
+    /**
+     * {@link CaptureFormat#DIRECTION_RX} 或 {@link CaptureFormat#DIRECTION_TX}
+     */
+    byte getDirection();
+
+    /**
+     * 当前记录的数据，从 0 开始，长度为 {@link #getLength()}。下一次 next() 之后失效
+     */
+    byte[] getBuffer();
+
+    int getLength();
+}
@@ -0,0 +1,191 @@
+package com.ronda.bluetoothassist.capture;
+
+import com.ronda.bluetoothassist.connection.ReceivePipeline;
+import com.ronda.bluetoothassist.frame.FrameDecoder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 把录下的数据按原来的时间间隔（或倍速、或尽快）送入 ReceivePipeline，和读线程读到的数据走同一条路径
+ * <p>
+ * 只回放接收方向的记录；{@link #run()} 阻塞直到回放完毕或被 {@link #cancel()}，应在后台线程中调用
+ */
+
+public class Replayer {
+
+    public static final double SPEED_REAL_TIME = 1;
+    public static final double SPEED_MAX = 0; // 不等待，测管道的最大吞吐
+
+    public static final int ALL_SESSIONS = -1;
+
+    private final ReplaySource mSource;
+    private final ReceivePipeline mPipeline;
+    private double mSpeed = SPEED_REAL_TIME;
+    private int mSessionFilter = ALL_SESSIONS;
+    private volatile boolean mCancelled;
+
+    public Replayer(ReplaySource source, ReceivePipeline pipeline) {
+        mSource = source;
+        mPipeline = pipeline;
+    }
+
+    /**
+     * 打开一个回放文件：以 {@link CaptureFormat#MAGIC} 开头的按抓包格式读取，否则当作原始转储
+     */
+    public static ReplaySource open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            in.mark(4);
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                magic = (magic << 8) | (b < 0 ? 0 : b);
+            }
+            in.reset();
+            if (magic == CaptureFormat.MAGIC) {
+                return new CaptureReader(in);
+            }
+            return new RawDumpSource(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param speed 倍速，{@link #SPEED_REAL_TIME} 为原速，{@link #SPEED_MAX} 为尽快
+     */
+    public void setSpeed(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed < 0: " + speed);
+        }
+        mSpeed = speed;
+    }
+
+    /**
+     * 抓包中有多个设备时只回放其中一个，默认 {@link #ALL_SESSIONS}
+     */
+    public void setSessionFilter(int sessionId) {
+        mSessionFilter = sessionId;
+    }
+
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public Stats run() throws IOException {
+        FrameDecoder decoder = mPipeline.getFrameDecoder();
+        long framesBefore = decoder == null ? 0 : decoder.getFrameCount();
+        long chunks = 0;
+        long bytes = 0;
+        long skipped = 0;
+        long firstTimestamp = -1;
+        long start = System.nanoTime();
+        try {
+            while (!mCancelled && mSource.next()) {
+                if (mSource.getDirection() != CaptureFormat.DIRECTION_RX
+                        || (mSessionFilter != ALL_SESSIONS && mSource.getSessionId() != mSessionFilter)) {
+                    skipped++;
+                    continue;
+                }
+                if (mSpeed != SPEED_MAX) {
+                    long timestamp = mSource.getTimestampNanos();
+                    if (firstTimestamp < 0) {
+                        firstTimestamp = timestamp;
+                    }
+                    waitUntil(start + (long) ((timestamp - firstTimestamp) / mSpeed));
+                }
+                mPipeline.onRead(mSource.getBuffer(), 0, mSource.getLength());
+                chunks++;
+                bytes += mSource.getLength();
+            }
+        } finally {
+            mSource.close();
+        }
+        long elapsed = System.nanoTime() - start;
+        long frames = decoder == null ? chunks : decoder.getFrameCount() - framesBefore;
+        return new Stats(chunks, frames, bytes, skipped, elapsed, mCancelled);
+    }
+
+    private void waitUntil(long deadline) {
+        long remaining;
+        while (!mCancelled && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * 一次回放的结果
+     */
+    public static class Stats {
+        private final long mChunks;
+        private final long mFrames;
+        private final long mBytes;
+        private final long mSkipped;
+        private final long mElapsedNanos;
+        private final boolean mCancelled;
+
+        Stats(long chunks, long frames, long bytes, long skipped, long elapsedNanos, boolean cancelled) {
+            mChunks = chunks;
+            mFrames = frames;
+            mBytes = bytes;
+            mSkipped = skipped;
+            mElapsedNanos = elapsedNanos;
+            mCancelled = cancelled;
+        }
+
+        /**
+         * 送入管道的数据块数
+         */
+        public long getChunks() {
+            return mChunks;
+        }
+
+        /**
+         * 分帧后的帧数，不分帧时等于 getChunks()
+         */
+        public long getFrames() {
+            return mFrames;
+        }
+
+        public long getBytes() {
+            return mBytes;
+        }
+
+        /**
+         * 跳过的发送方向或其他设备的记录数
+         */
+        public long getSkipped() {
+            return mSkipped;
+        }
+
+        public long getElapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public double getFramesPerSecond() {
+            return mElapsedNanos == 0 ? 0 : mFrames * 1e9 / mElapsedNanos;
+        }
+
+        public double getBytesPerSecond() {
+            return mElapsedNanos == 0 ? 0 : mBytes * 1e9 / mElapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d frames, %d bytes in %.1f ms (%.0f frames/s, %.0f B/s)%s",
+                    mFrames, mBytes, mElapsedNanos / 1e6, getFramesPerSecond(), getBytesPerSecond(),
+                    mCancelled ? ", cancelled" : "");
+        }
+    }
+}
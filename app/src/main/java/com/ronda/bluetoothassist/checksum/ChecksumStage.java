@@ -0,0 +1,107 @@
+package com.ronda.bluetoothassist.checksum;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 帧尾校验：接收时校验分帧后的每一帧，校验失败的帧计数后丢弃；发送时在数据末尾追加校验值
+ * <p>
+ * 帧的格式为 [不参与校验的帧头 coverOffset 字节][参与校验的数据][校验值 width 字节]。
+ * 接收和发送各用一个 {@link FrameChecksum} 实例：{@link #verify} 只在读线程调用，{@link #seal} 可以在任意线程调用
+ */
+
+public class ChecksumStage {
+
+    private final int mType;
+    private final int mCoverOffset;
+    private final boolean mStrip;
+    private final FrameChecksum mRxChecksum;
+    private final FrameChecksum mTxChecksum; // 由自身加锁保护
+
+    private final AtomicLong mGoodFrames = new AtomicLong();
+    private final AtomicLong mBadFrames = new AtomicLong();
+
+    /**
+     * @param type        FrameChecksum.TYPE_*
+     * @param coverOffset 帧头中不参与校验的字节数，例如起始符
+     * @param strip       校验通过后是否去掉帧尾的校验值再交给 UI
+     */
+    public ChecksumStage(int type, int coverOffset, boolean strip) {
+        if (coverOffset < 0) {
+            throw new IllegalArgumentException("coverOffset < 0: " + coverOffset);
+        }
+        mType = type;
+        mCoverOffset = coverOffset;
+        mStrip = strip;
+        mRxChecksum = FrameChecksum.create(type);
+        mTxChecksum = FrameChecksum.create(type);
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    /**
+     * 校验值占用的字节数
+     */
+    public int getWidth() {
+        return mRxChecksum.getWidth();
+    }
+
+    public int getCoverOffset() {
+        return mCoverOffset;
+    }
+
+    public boolean isStrip() {
+        return mStrip;
+    }
+
+    /**
+     * 校验一个完整的帧，结果计入统计。只在读线程调用
+     *
+     * @return 校验通过时返回交给下游的长度（strip 时不含校验值），失败时返回 -1
+     */
+    public int verify(byte[] buf, int offset, int length) {
+        int width = mRxChecksum.getWidth();
+        int covered = length - mCoverOffset - width;
+        if (covered < 0) {
+            mBadFrames.incrementAndGet();
+            return -1;
+        }
+        long expected = mRxChecksum.readFrom(buf, offset + length - width);
+        if (mRxChecksum.compute(buf, offset + mCoverOffset, covered) != expected) {
+            mBadFrames.incrementAndGet();
+            return -1;
+        }
+        mGoodFrames.incrementAndGet();
+        return mStrip ? length - width : length;
+    }
+
+    /**
+     * 返回在 data 末尾追加了校验值的新数组，data 本身不变
+     */
+    public byte[] seal(byte[] data) {
+        int width = mTxChecksum.getWidth();
+        byte[] out = new byte[data.length + width];
+        System.arraycopy(data, 0, out, 0, data.length);
+        int covered = Math.max(0, data.length - mCoverOffset);
+        synchronized (mTxChecksum) {
+            mTxChecksum.compute(data, data.length - covered, covered);
+            mTxChecksum.writeTo(out, data.length);
+        }
+        return out;
+    }
+
+    /**
+     * 校验通过的帧数
+     */
+    public long getGoodFrames() {
+        return mGoodFrames.get();
+    }
+
+    /**
+     * 校验失败（包括长度不足）而被丢弃的帧数
+     */
+    public long getBadFrames() {
+        return mBadFrames.get();
+    }
+}
@@ -0,0 +1,51 @@
+package com.ronda.bluetoothassist.checksum;
+
+/**
+ * CRC-16/CCITT-FALSE：多项式 0x1021，初值 0xFFFF，不反射，高字节在前
+ */
+
+public class Crc16Ccitt extends FrameChecksum {
+
+    private static final char[] TABLE = new char[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            TABLE[i] = (char) crc;
+        }
+    }
+
+    private int mCrc = 0xFFFF;
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int crc = mCrc;
+        for (int i = off, end = off + len; i < end; i++) {
+            crc = ((crc << 8) ^ TABLE[((crc >>> 8) ^ b[i]) & 0xFF]) & 0xFFFF;
+        }
+        mCrc = crc;
+    }
+
+    @Override
+    public long getValue() {
+        return mCrc;
+    }
+
+    @Override
+    public void reset() {
+        mCrc = 0xFFFF;
+    }
+
+    @Override
+    public int getWidth() {
+        return 2;
+    }
+
+    @Override
+    public boolean isBigEndian() {
+        return true;
+    }
+}
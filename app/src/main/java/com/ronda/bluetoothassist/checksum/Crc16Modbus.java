@@ -0,0 +1,62 @@
+package com.ronda.bluetoothassist.checksum;
+
+/**
+ * CRC-16/MODBUS：多项式 0x8005（反射 0xA001），初值 0xFFFF，输入输出反射，低字节在前
+ */
+
+public class Crc16Modbus extends FrameChecksum {
+
+    private static final char[] TABLE = new char[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+            TABLE[i] = (char) crc;
+        }
+    }
+
+    private int mCrc = 0xFFFF;
+
+    /**
+     * 不创建实例直接计算一段数据的 CRC，供 Modbus 编解码使用
+     */
+    public static int crc(byte[] b, int off, int len) {
+        int crc = 0xFFFF;
+        for (int i = off, end = off + len; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int crc = mCrc;
+        for (int i = off, end = off + len; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b[i]) & 0xFF];
+        }
+        mCrc = crc;
+    }
+
+    @Override
+    public long getValue() {
+        return mCrc;
+    }
+
+    @Override
+    public void reset() {
+        mCrc = 0xFFFF;
+    }
+
+    @Override
+    public int getWidth() {
+        return 2;
+    }
+
+    @Override
+    public boolean isBigEndian() {
+        return false;
+    }
+}
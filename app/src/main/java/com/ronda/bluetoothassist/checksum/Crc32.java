@@ -0,0 +1,67 @@
+package com.ronda.bluetoothassist.checksum;
+
+/**
+ * CRC-32（与 zlib / java.util.zip.CRC32 相同）：反射多项式 0xEDB88320，初值和结果异或 0xFFFFFFFF，低字节在前
+ * <p>
+ * 用 slice-by-4：4 张表，每轮处理 4 个字节，剩下不足 4 个的字节逐个查表
+ */
+
+public class Crc32 extends FrameChecksum {
+
+    private static final int[] T0 = new int[256];
+    private static final int[] T1 = new int[256];
+    private static final int[] T2 = new int[256];
+    private static final int[] T3 = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xEDB88320 : crc >>> 1;
+            }
+            T0[i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            T1[i] = (T0[i] >>> 8) ^ T0[T0[i] & 0xFF];
+            T2[i] = (T1[i] >>> 8) ^ T0[T1[i] & 0xFF];
+            T3[i] = (T2[i] >>> 8) ^ T0[T2[i] & 0xFF];
+        }
+    }
+
+    private int mCrc = 0xFFFFFFFF;
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int crc = mCrc;
+        int i = off;
+        int end = off + len;
+        for (int stop = end - 3; i < stop; i += 4) {
+            crc ^= (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | b[i + 3] << 24;
+            crc = T3[crc & 0xFF] ^ T2[(crc >>> 8) & 0xFF] ^ T1[(crc >>> 16) & 0xFF] ^ T0[crc >>> 24];
+        }
+        for (; i < end; i++) {
+            crc = (crc >>> 8) ^ T0[(crc ^ b[i]) & 0xFF];
+        }
+        mCrc = crc;
+    }
+
+    @Override
+    public long getValue() {
+        return ~mCrc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        mCrc = 0xFFFFFFFF;
+    }
+
+    @Override
+    public int getWidth() {
+        return 4;
+    }
+
+    @Override
+    public boolean isBigEndian() {
+        return false;
+    }
+}
@@ -0,0 +1,88 @@
+package com.ronda.bluetoothassist.checksum;
+
+import java.util.zip.Checksum;
+
+/**
+ * 帧尾校验值的计算，可以随着数据块的到达多次调用 update() 增量计算
+ * <p>
+ * 所有 CRC 都使用预先计算好的查找表，每个字节一次查表（CRC-32 每 4 个字节一轮 slice-by-4）。
+ * 非线程安全，每个线程（读线程、发送方）使用各自的实例
+ */
+
+public abstract class FrameChecksum implements Checksum {
+
+    public static final int TYPE_XOR8 = 1;
+    public static final int TYPE_SUM8 = 2;
+    public static final int TYPE_CRC16_MODBUS = 3;
+    public static final int TYPE_CRC16_CCITT = 4;
+    public static final int TYPE_CRC32 = 5;
+
+    /**
+     * @param type TYPE_* 之一
+     */
+    public static FrameChecksum create(int type) {
+        switch (type) {
+            case TYPE_XOR8:
+                return new Xor8();
+            case TYPE_SUM8:
+                return new Sum8();
+            case TYPE_CRC16_MODBUS:
+                return new Crc16Modbus();
+            case TYPE_CRC16_CCITT:
+                return new Crc16Ccitt();
+            case TYPE_CRC32:
+                return new Crc32();
+            default:
+                throw new IllegalArgumentException("unknown checksum type: " + type);
+        }
+    }
+
+    /**
+     * 校验值占用的字节数
+     */
+    public abstract int getWidth();
+
+    /**
+     * 校验值在帧中是否高字节在前。MODBUS 和 CRC-32 低字节在前，CCITT 高字节在前
+     */
+    public abstract boolean isBigEndian();
+
+    @Override
+    public void update(int b) {
+        update(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /**
+     * 一次计算 [offset, offset + length) 的校验值，之前的状态被清除
+     */
+    public long compute(byte[] buf, int offset, int length) {
+        reset();
+        update(buf, offset, length);
+        return getValue();
+    }
+
+    /**
+     * 按帧中的字节序把当前的校验值写到 dst[offset] 开始的 getWidth() 个字节
+     */
+    public void writeTo(byte[] dst, int offset) {
+        long value = getValue();
+        int width = getWidth();
+        for (int i = 0; i < width; i++) {
+            int shift = isBigEndian() ? (width - 1 - i) * 8 : i * 8;
+            dst[offset + i] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * 按帧中的字节序读取 src[offset] 开始的校验值
+     */
+    public long readFrom(byte[] src, int offset) {
+        long value = 0;
+        int width = getWidth();
+        for (int i = 0; i < width; i++) {
+            int shift = isBigEndian() ? (width - 1 - i) * 8 : i * 8;
+            value |= (src[offset + i] & 0xFFL) << shift;
+        }
+        return value;
+    }
+}
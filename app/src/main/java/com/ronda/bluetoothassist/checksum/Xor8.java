@@ -0,0 +1,39 @@
+package com.ronda.bluetoothassist.checksum;
+
+/**
+ * 所有字节的异或（BCC）
+ */
+
+public class Xor8 extends FrameChecksum {
+
+    private int mValue;
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int value = mValue;
+        for (int i = off, end = off + len; i < end; i++) {
+            value ^= b[i];
+        }
+        mValue = value;
+    }
+
+    @Override
+    public long getValue() {
+        return mValue & 0xFF;
+    }
+
+    @Override
+    public void reset() {
+        mValue = 0;
+    }
+
+    @Override
+    public int getWidth() {
+        return 1;
+    }
+
+    @Override
+    public boolean isBigEndian() {
+        return false;
+    }
+}
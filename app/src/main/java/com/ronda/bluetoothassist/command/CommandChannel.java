@@ -0,0 +1,384 @@
+package com.ronda.bluetoothassist.command;
+
+import com.ronda.bluetoothassist.io.WriteFuture;
+import com.ronda.bluetoothassist.metrics.Histogram;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求/应答通道：{@link #submit} 返回 {@link CommandFuture}，收到的帧由 {@link Correlator} 与在途请求配对
+ * <p>
+ * 同时最多有 maxInFlight 个请求已经发出、等待应答（流水线），其余的按提交顺序排队，
+ * 有请求完成时立即发出下一个，不必等一个来回。请求在锁内按顺序写入写队列，发送顺序与序号一致。
+ * <p>
+ * 超时从请求写入时开始计算，所有在途请求共用一个按最早截止时刻安排的检查任务，不为每个请求创建定时器。
+ * 应答在读线程中配对，请求的回调也在读线程、写线程或定时器线程中执行
+ */
+
+public class CommandChannel {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    public static final int DEFAULT_MAX_QUEUED = 256;
+
+    /**
+     * 请求写到哪里，通常是某个会话。在锁内调用，不能阻塞
+     */
+    public interface Target {
+        WriteFuture write(byte[] data);
+    }
+
+    private final Target mTarget;
+    private final Correlator mCorrelator;
+    private final int mMaxInFlight;
+    private final int mMaxQueued;
+    private final ScheduledExecutorService mTimer;
+
+    // 以下字段由 this 保护
+    private final ArrayDeque<CommandFuture> mQueued = new ArrayDeque<CommandFuture>();
+    private final ArrayList<CommandFuture> mInFlight; // 按发送顺序
+    private int mNextSequence;
+    private long mSweepAtNanos = Long.MAX_VALUE; // 已安排的超时检查的时刻，没有安排时为 MAX_VALUE
+
+    private final Histogram mLatency = new Histogram(); // 微秒
+    private final AtomicLong mSent = new AtomicLong();
+    private final AtomicLong mCompleted = new AtomicLong();
+    private final AtomicLong mTimeouts = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+    private final AtomicLong mUnmatched = new AtomicLong();
+
+    /**
+     * @param maxInFlight 同时等待应答的请求数上限，用 {@link SequenceCorrelator} 时不能超过 256
+     * @param maxQueued   排队等待发送的请求数上限，超过后 submit() 直接失败
+     * @param timer       执行超时检查，可以与其它通道共用
+     */
+    public CommandChannel(Target target, Correlator correlator, int maxInFlight, int maxQueued,
+                          ScheduledExecutorService timer) {
+        if (maxInFlight < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("maxInFlight=" + maxInFlight + ", maxQueued=" + maxQueued);
+        }
+        if (correlator instanceof SequenceCorrelator && maxInFlight > 256) {
+            throw new IllegalArgumentException("maxInFlight > 256 with 8-bit sequence");
+        }
+        mTarget = target;
+        mCorrelator = correlator;
+        mMaxInFlight = maxInFlight;
+        mMaxQueued = maxQueued;
+        mTimer = timer;
+        mInFlight = new ArrayList<CommandFuture>(maxInFlight);
+    }
+
+    public Correlator getCorrelator() {
+        return mCorrelator;
+    }
+
+    public int getMaxInFlight() {
+        return mMaxInFlight;
+    }
+
+    /**
+     * 提交一个请求，不等待
+     *
+     * @param timeout 从写入开始等待应答的时间，0 表示一直等待
+     */
+    public CommandFuture submit(byte[] request, long timeout, TimeUnit unit) {
+        CommandFuture future = new CommandFuture(this, request, unit.toNanos(timeout));
+        List<CommandFuture> sent = null;
+        boolean full;
+        synchronized (this) {
+            full = mQueued.size() >= mMaxQueued && mInFlight.size() >= mMaxInFlight;
+            if (!full) {
+                mQueued.addLast(future);
+                sent = pumpLocked();
+            }
+        }
+        if (full) {
+            mFailures.incrementAndGet();
+            future.fail(new IOException("command queue full"));
+            return future;
+        }
+        watchWrites(sent);
+        return future;
+    }
+
+    /**
+     * 收到一帧，在读线程中调用。buf 只在本次调用期间有效
+     *
+     * @return 是否配对到了某个请求
+     */
+    public boolean onResponse(byte[] buf, int offset, int length) {
+        long key = mCorrelator.responseKey(buf, offset, length);
+        CommandFuture matched = null;
+        List<CommandFuture> sent = null;
+        if (key != Correlator.NO_KEY) {
+            synchronized (this) {
+                for (int i = 0; i < mInFlight.size(); i++) {
+                    if (mInFlight.get(i).mKey == key) {
+                        matched = mInFlight.remove(i);
+                        break;
+                    }
+                }
+                if (matched != null) {
+                    sent = pumpLocked();
+                }
+            }
+        }
+        if (matched == null) {
+            mUnmatched.incrementAndGet();
+            return false;
+        }
+        // 从在途列表中移除的请求只会在这里完成，先计数，调用者看到结果时统计已经更新
+        long latency = System.nanoTime() - matched.mSentNanos;
+        mLatency.record(latency / 1000);
+        mCompleted.incrementAndGet();
+        matched.succeed(Arrays.copyOfRange(buf, offset, offset + length), latency);
+        watchWrites(sent);
+        return true;
+    }
+
+    /**
+     * 让所有排队和在途的请求失败，例如连接断开时。之后仍然可以继续提交
+     */
+    public void failAll(IOException cause) {
+        ArrayList<CommandFuture> failed;
+        synchronized (this) {
+            failed = new ArrayList<CommandFuture>(mInFlight.size() + mQueued.size());
+            failed.addAll(mInFlight);
+            failed.addAll(mQueued);
+            mInFlight.clear();
+            mQueued.clear();
+        }
+        mFailures.addAndGet(failed.size());
+        for (int i = 0; i < failed.size(); i++) {
+            failed.get(i).fail(cause);
+        }
+    }
+
+    boolean cancel(CommandFuture future) {
+        List<CommandFuture> sent;
+        synchronized (this) {
+            if (!mQueued.remove(future) && !mInFlight.remove(future)) {
+                return false;
+            }
+            sent = pumpLocked();
+        }
+        boolean cancelled = future.markCancelled();
+        watchWrites(sent);
+        return cancelled;
+    }
+
+    /**
+     * 在途请求没有满时从队列中取出请求发出
+     *
+     * @return 本次发出的请求，没有时为 null
+     */
+    private List<CommandFuture> pumpLocked() {
+        List<CommandFuture> sent = null;
+        while (mInFlight.size() < mMaxInFlight && !mQueued.isEmpty()) {
+            CommandFuture next = mQueued.pollFirst();
+            byte[] stamped;
+            try {
+                stamped = mCorrelator.stamp(next.getRequest(), nextSequenceLocked());
+            } catch (IllegalArgumentException e) {
+                // 请求本身不合格，不占用在途名额，由 watchWrites() 在锁外让它失败
+                next.mWrite = WriteFuture.failed(next.getRequest(), new IOException(e.getMessage()));
+                sent = add(sent, next);
+                continue;
+            }
+            long now = System.nanoTime();
+            next.mStamped = stamped;
+            next.mKey = mCorrelator.requestKey(stamped);
+            next.mSentNanos = now;
+            if (next.getTimeoutNanos() > 0) {
+                next.mDeadlineNanos = now + next.getTimeoutNanos();
+                if (next.mDeadlineNanos < mSweepAtNanos) {
+                    scheduleSweepLocked(next.mDeadlineNanos, now);
+                }
+            }
+            mInFlight.add(next);
+            next.mWrite = mTarget.write(stamped);
+            mSent.incrementAndGet();
+            sent = add(sent, next);
+        }
+        return sent;
+    }
+
+    /**
+     * 8 位序号会回绕，跳过仍然在途的序号（例如不超时的请求一直没有应答），否则迟到的应答会配给新请求。
+     * 调用时在途数小于 maxInFlight，不超过 256，一定能找到空闲的序号
+     */
+    private int nextSequenceLocked() {
+        if (mCorrelator instanceof SequenceCorrelator) {
+            while (keyInFlightLocked(mNextSequence & 0xFF)) {
+                mNextSequence++;
+            }
+        }
+        return mNextSequence++;
+    }
+
+    private boolean keyInFlightLocked(long key) {
+        for (int i = 0; i < mInFlight.size(); i++) {
+            if (mInFlight.get(i).mKey == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<CommandFuture> add(List<CommandFuture> list, CommandFuture future) {
+        if (list == null) {
+            list = new ArrayList<CommandFuture>(4);
+        }
+        list.add(future);
+        return list;
+    }
+
+    /**
+     * 在锁外监听写入结果：写入失败的请求不会有应答，立即让它失败并腾出名额
+     */
+    private void watchWrites(List<CommandFuture> sent) {
+        if (sent == null) {
+            return;
+        }
+        for (int i = 0; i < sent.size(); i++) {
+            CommandFuture future = sent.get(i);
+            if (future.mStamped == null) {
+                mFailures.incrementAndGet();
+                future.fail(future.mWrite.getCause());
+            } else {
+                future.mWrite.addListener(mWriteListener);
+            }
+        }
+    }
+
+    private final WriteFuture.Listener mWriteListener = new WriteFuture.Listener() {
+        @Override
+        public void onComplete(WriteFuture write) {
+            if (write.isSuccess()) {
+                return;
+            }
+            CommandFuture failed = null;
+            List<CommandFuture> sent;
+            synchronized (CommandChannel.this) {
+                for (int i = 0; i < mInFlight.size(); i++) {
+                    if (mInFlight.get(i).mWrite == write) {
+                        failed = mInFlight.remove(i);
+                        break;
+                    }
+                }
+                sent = failed != null ? pumpLocked() : null;
+            }
+            IOException cause = write.getCause() != null ? write.getCause() : new IOException("write cancelled");
+            if (failed != null) {
+                mFailures.incrementAndGet();
+                failed.fail(cause);
+            }
+            watchWrites(sent);
+        }
+    };
+
+    private void scheduleSweepLocked(long atNanos, long nowNanos) {
+        mSweepAtNanos = atNanos;
+        mTimer.schedule(mSweepTask, Math.max(0, atNanos - nowNanos), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 让到期的请求超时，并为剩下的请求中最早的截止时刻安排下一次检查。
+     * 被更早的截止时刻取代的旧任务照常执行，但不会再安排新的检查
+     */
+    private final Runnable mSweepTask = new Runnable() {
+        @Override
+        public void run() {
+            ArrayList<CommandFuture> expired = null;
+            List<CommandFuture> sent = null;
+            synchronized (CommandChannel.this) {
+                long now = System.nanoTime();
+                if (now >= mSweepAtNanos) {
+                    mSweepAtNanos = Long.MAX_VALUE;
+                }
+                long earliest = Long.MAX_VALUE;
+                for (int i = mInFlight.size() - 1; i >= 0; i--) {
+                    CommandFuture future = mInFlight.get(i);
+                    if (future.mDeadlineNanos == Long.MAX_VALUE) {
+                        continue;
+                    }
+                    if (future.mDeadlineNanos <= now) {
+                        mInFlight.remove(i);
+                        if (expired == null) {
+                            expired = new ArrayList<CommandFuture>(4);
+                        }
+                        expired.add(0, future);
+                    } else if (future.mDeadlineNanos < earliest) {
+                        earliest = future.mDeadlineNanos;
+                    }
+                }
+                if (earliest < mSweepAtNanos) {
+                    scheduleSweepLocked(earliest, now);
+                }
+                if (expired != null) {
+                    sent = pumpLocked();
+                }
+            }
+            if (expired != null) {
+                mTimeouts.addAndGet(expired.size());
+                for (int i = 0; i < expired.size(); i++) {
+                    expired.get(i).timeOut();
+                }
+            }
+            watchWrites(sent);
+        }
+    };
+
+    /**
+     * 从写入请求到收到应答的时间分布（微秒）
+     */
+    public Histogram.Snapshot getLatency() {
+        return mLatency.snapshot();
+    }
+
+    /**
+     * 已经写出的请求数
+     */
+    public long getSent() {
+        return mSent.get();
+    }
+
+    /**
+     * 收到应答的请求数
+     */
+    public long getCompleted() {
+        return mCompleted.get();
+    }
+
+    public long getTimeouts() {
+        return mTimeouts.get();
+    }
+
+    /**
+     * 因写入失败、队列已满或连接断开而失败的请求数
+     */
+    public long getFailures() {
+        return mFailures.get();
+    }
+
+    /**
+     * 没有配对到任何请求的帧数，包括设备主动上报的数据和超时后迟到的应答
+     */
+    public long getUnmatched() {
+        return mUnmatched.get();
+    }
+
+    public synchronized int getInFlight() {
+        return mInFlight.size();
+    }
+
+    public synchronized int getQueued() {
+        return mQueued.size();
+    }
+}
@@ -0,0 +1,203 @@
+package com.ronda.bluetoothassist.command;
+
+import com.ronda.bluetoothassist.io.WriteFuture;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一次请求的结果，get() 返回配对到的应答
+ * <p>
+ * 写入失败、超时或连接断开时 get() 抛出 ExecutionException，其 cause 是 IOException；
+ * 超时时 {@link #isTimedOut()} 为 true
+ */
+
+public class CommandFuture implements Future<byte[]> {
+
+    public interface Listener {
+        /**
+         * 请求完成（收到应答、失败、超时或被取消）时调用，调用所在的线程不确定，不要在这里做耗时操作
+         */
+        void onComplete(CommandFuture future);
+    }
+
+    private static final int PENDING = 0;
+    private static final int SUCCESS = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final CommandChannel mChannel;
+    private final byte[] mRequest;
+    private final long mTimeoutNanos; // 0 表示不超时
+
+    // 以下字段由 mChannel 的锁保护
+    byte[] mStamped;          // 实际发送的数据，发送之前为 null
+    long mKey;
+    long mSentNanos;
+    long mDeadlineNanos = Long.MAX_VALUE;
+    WriteFuture mWrite;
+
+    private int mState = PENDING;
+    private boolean mTimedOut;
+    private byte[] mResponse;
+    private IOException mCause;
+    private long mLatencyNanos = -1;
+    private Listener mListener;
+
+    CommandFuture(CommandChannel channel, byte[] request, long timeoutNanos) {
+        mChannel = channel;
+        mRequest = request;
+        mTimeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * 创建一个已经失败的结果，例如没有打开通道时的请求
+     */
+    public static CommandFuture failed(byte[] request, IOException cause) {
+        CommandFuture future = new CommandFuture(null, request, 0);
+        future.fail(cause);
+        return future;
+    }
+
+    /**
+     * 调用者提交的请求
+     */
+    public byte[] getRequest() {
+        return mRequest;
+    }
+
+    long getTimeoutNanos() {
+        return mTimeoutNanos;
+    }
+
+    /**
+     * 设置完成时的回调，已经完成时立即在当前线程回调
+     */
+    public CommandFuture setListener(Listener listener) {
+        boolean done;
+        synchronized (this) {
+            mListener = listener;
+            done = mState != PENDING;
+        }
+        if (done && listener != null) {
+            listener.onComplete(this);
+        }
+        return this;
+    }
+
+    public synchronized boolean isSuccess() {
+        return mState == SUCCESS;
+    }
+
+    public synchronized boolean isTimedOut() {
+        return mTimedOut;
+    }
+
+    public synchronized IOException getCause() {
+        return mCause;
+    }
+
+    /**
+     * 收到应答时为应答，否则为 null
+     */
+    public synchronized byte[] getResponse() {
+        return mResponse;
+    }
+
+    /**
+     * 从写入请求到收到应答的时间，没有收到应答时为 -1
+     */
+    public synchronized long getLatencyNanos() {
+        return mLatencyNanos;
+    }
+
+    /**
+     * 还在排队或等待应答的请求都可以取消；已经发出的请求取消后不再等待它的应答
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return mChannel != null && mChannel.cancel(this);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public synchronized byte[] get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized byte[] get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    private byte[] result() throws ExecutionException {
+        if (mState == CANCELLED) {
+            throw new CancellationException();
+        }
+        if (mState == FAILED) {
+            throw new ExecutionException(mCause);
+        }
+        return mResponse;
+    }
+
+    boolean succeed(byte[] response, long latencyNanos) {
+        return complete(SUCCESS, response, latencyNanos, null, false);
+    }
+
+    boolean fail(IOException cause) {
+        return complete(FAILED, null, -1, cause, false);
+    }
+
+    boolean timeOut() {
+        return complete(FAILED, null, -1, new IOException("no response in "
+                + TimeUnit.NANOSECONDS.toMillis(mTimeoutNanos) + " ms"), true);
+    }
+
+    boolean markCancelled() {
+        return complete(CANCELLED, null, -1, null, false);
+    }
+
+    private boolean complete(int state, byte[] response, long latencyNanos, IOException cause, boolean timedOut) {
+        Listener listener;
+        synchronized (this) {
+            if (mState != PENDING) {
+                return false;
+            }
+            mState = state;
+            mResponse = response;
+            mLatencyNanos = latencyNanos;
+            mCause = cause;
+            mTimedOut = timedOut;
+            listener = mListener;
+            notifyAll();
+        }
+        if (listener != null) {
+            listener.onComplete(this);
+        }
+        return true;
+    }
+}
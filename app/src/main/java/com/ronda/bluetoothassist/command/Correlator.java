@@ -0,0 +1,33 @@
+package com.ronda.bluetoothassist.command;
+
+/**
+ * 把收到的应答与发出的请求对应起来
+ * <p>
+ * 每个请求发送前由 {@link #stamp} 决定实际发送的数据（例如填入序号），再由 {@link #requestKey} 取出关联键；
+ * 收到的每一帧由 {@link #responseKey} 取出关联键，与在途请求中最早的同键请求配对。
+ * 方法在不同线程中调用，实现不能保存可变状态
+ */
+
+public interface Correlator {
+
+    /**
+     * 与任何请求都无关的帧，例如设备主动上报的数据或长度不足的帧
+     */
+    long NO_KEY = -1;
+
+    /**
+     * @param sequence 每个请求递增的序号，由实现决定如何使用
+     * @return 实际发送的数据，不能修改 request 本身
+     */
+    byte[] stamp(byte[] request, int sequence);
+
+    /**
+     * @param stamped {@link #stamp} 的返回值
+     */
+    long requestKey(byte[] stamped);
+
+    /**
+     * @return 非负的关联键，或 {@link #NO_KEY}
+     */
+    long responseKey(byte[] buf, int offset, int length);
+}
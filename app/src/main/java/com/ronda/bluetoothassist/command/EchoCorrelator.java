@@ -0,0 +1,55 @@
+package com.ronda.bluetoothassist.command;
+
+/**
+ * 按回显的命令字节配对：应答中原样带回请求的若干字节，例如地址和功能码
+ * <p>
+ * 同样命令的多个请求按发送顺序配对
+ */
+
+public class EchoCorrelator implements Correlator {
+
+    private final int mRequestOffset;
+    private final int mResponseOffset;
+    private final int mWidth;
+
+    /**
+     * @param width 回显的字节数，1 到 4
+     */
+    public EchoCorrelator(int requestOffset, int responseOffset, int width) {
+        if (requestOffset < 0 || responseOffset < 0) {
+            throw new IllegalArgumentException("offset < 0");
+        }
+        if (width < 1 || width > 4) {
+            throw new IllegalArgumentException("width must be 1..4: " + width);
+        }
+        mRequestOffset = requestOffset;
+        mResponseOffset = responseOffset;
+        mWidth = width;
+    }
+
+    @Override
+    public byte[] stamp(byte[] request, int sequence) {
+        if (request.length < mRequestOffset + mWidth) {
+            throw new IllegalArgumentException("request too short for echo at " + mRequestOffset);
+        }
+        return request;
+    }
+
+    @Override
+    public long requestKey(byte[] stamped) {
+        return keyOf(stamped, mRequestOffset);
+    }
+
+    @Override
+    public long responseKey(byte[] buf, int offset, int length) {
+        return length >= mResponseOffset + mWidth ? keyOf(buf, offset + mResponseOffset) : NO_KEY;
+    }
+
+    private long keyOf(byte[] buf, int offset) {
+        long key = 0;
+        for (int i = 0; i < mWidth; i++) {
+            key = (key << 8) | (buf[offset + i] & 0xFF);
+        }
+        return key;
+    }
+}
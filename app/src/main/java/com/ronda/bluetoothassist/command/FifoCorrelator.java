@@ -0,0 +1,25 @@
+package com.ronda.bluetoothassist.command;
+
+/**
+ * 按顺序配对：每一帧都是最早的在途请求的应答，适合严格一问一答、不会丢应答的设备
+ * <p>
+ * 请求超时后如果应答迟到，它会被当成下一个请求的应答。设备可能丢包时应该用序号或回显配对，或者把在途请求数限制为 1
+ */
+
+public class FifoCorrelator implements Correlator {
+
+    @Override
+    public byte[] stamp(byte[] request, int sequence) {
+        return request;
+    }
+
+    @Override
+    public long requestKey(byte[] stamped) {
+        return 0;
+    }
+
+    @Override
+    public long responseKey(byte[] buf, int offset, int length) {
+        return 0;
+    }
+}
@@ -0,0 +1,46 @@
+package com.ronda.bluetoothassist.command;
+
+/**
+ * 按序号字节配对：发送时把序号的低 8 位写入请求的固定位置，设备在应答的固定位置原样带回
+ * <p>
+ * 序号只有 256 个，在途请求数不能超过 256；回绕时 {@link CommandChannel} 跳过仍在途的序号。
+ * 超时的请求迟到的应答找不到对应的序号，会被当作无关的帧
+ */
+
+public class SequenceCorrelator implements Correlator {
+
+    private final int mRequestOffset;
+    private final int mResponseOffset;
+
+    /**
+     * @param requestOffset  序号在请求中的位置，请求中这个字节的原值会被覆盖
+     * @param responseOffset 序号在应答中的位置
+     */
+    public SequenceCorrelator(int requestOffset, int responseOffset) {
+        if (requestOffset < 0 || responseOffset < 0) {
+            throw new IllegalArgumentException("offset < 0");
+        }
+        mRequestOffset = requestOffset;
+        mResponseOffset = responseOffset;
+    }
+
+    @Override
+    public byte[] stamp(byte[] request, int sequence) {
+        if (request.length <= mRequestOffset) {
+            throw new IllegalArgumentException("request too short for sequence at " + mRequestOffset);
+        }
+        byte[] stamped = request.clone();
+        stamped[mRequestOffset] = (byte) sequence;
+        return stamped;
+    }
+
+    @Override
+    public long requestKey(byte[] stamped) {
+        return stamped[mRequestOffset] & 0xFF;
+    }
+
+    @Override
+    public long responseKey(byte[] buf, int offset, int length) {
+        return length > mResponseOffset ? buf[offset + mResponseOffset] & 0xFF : NO_KEY;
+    }
+}
@@ -0,0 +1,234 @@
+package com.ronda.bluetoothassist.connection;
+
+import com.ronda.bluetoothassist.io.AsyncWriter;
+import com.ronda.bluetoothassist.io.BufferPool;
+import com.ronda.bluetoothassist.io.Chunk;
+import com.ronda.bluetoothassist.io.IoExecutor;
+import com.ronda.bluetoothassist.io.WriteFuture;
+import com.ronda.bluetoothassist.log.BtLog;
+import com.ronda.bluetoothassist.transport.Transport;
+import com.ronda.bluetoothassist.utils.CloseUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一条已经建立的连接：读线程把数据送入 ReceivePipeline，写操作交给 AsyncWriter
+ * <p>
+ * 只依赖 Transport，不依赖任何 Android 类，因此可以在 JVM 上配合内存管道做吞吐和延迟测试
+ * <p>
+ * 传入 IoExecutor 时读循环和写操作都在共享线程池中执行，否则各自使用一个专用线程
+ */
+
+public class Connection {
+
+    public static final String TAG = Connection.class.getSimpleName();
+
+    public interface Listener {
+        /**
+         * 读循环结束时在读线程中调用
+         *
+         * @param cause 因 IO 异常断开时不为 null；调用 close() 主动断开时为 null
+         */
+        void onClosed(Connection connection, IOException cause);
+    }
+
+    /**
+     * 旁路观察收发的原始字节（分帧之前、合并写之后），例如抓包。在读线程或写线程中调用，数据只在调用期间有效
+     */
+    public interface Tap {
+        void onReceived(byte[] buf, int offset, int length);
+
+        void onSent(byte[] buf, int offset, int length);
+    }
+
+    private final Transport mTransport;
+    private final InputStream mIn;
+    private final AsyncWriter mWriter;
+    private final ReceivePipeline mPipeline;
+    private final BufferPool mBufferPool;
+    private final Listener mListener;
+    private final Thread mReader;      // 专用线程模式
+    private final IoExecutor mExecutor; // 共享线程池模式
+    private final String mReaderName;
+    private volatile boolean mClosed;
+    private volatile Tap mTap;
+
+    /**
+     * @param transport 已经 connect() 成功的 Transport，之后由 Connection 负责关闭
+     */
+    public Connection(Transport transport, ReceivePipeline pipeline, BufferPool bufferPool, Listener listener) throws IOException {
+        mTransport = transport;
+        mIn = transport.getInputStream();
+        mWriter = new AsyncWriter(new TapOutputStream(transport.getOutputStream()), "BtWriter-" + transport.getAddress());
+        mPipeline = pipeline;
+        mBufferPool = bufferPool;
+        mListener = listener;
+        mExecutor = null;
+        mReaderName = "BtReader-" + transport.getAddress();
+        mReader = new Thread(mReadTask, mReaderName);
+    }
+
+    /**
+     * 读循环和写操作都在 executor 中执行
+     */
+    public Connection(Transport transport, ReceivePipeline pipeline, BufferPool bufferPool, IoExecutor executor, Listener listener) throws IOException {
+        mTransport = transport;
+        mIn = transport.getInputStream();
+        mWriter = new AsyncWriter(new TapOutputStream(transport.getOutputStream()), executor);
+        mPipeline = pipeline;
+        mBufferPool = bufferPool;
+        mListener = listener;
+        mExecutor = executor;
+        mReaderName = "BtReader-" + transport.getAddress();
+        mReader = null;
+    }
+
+    /**
+     * @throws RejectedExecutionException 共享线程池中同时运行的读循环已达上限，此时连接已被关闭
+     */
+    public void start() {
+        mWriter.start();
+        if (mReader != null) {
+            mReader.start();
+            return;
+        }
+        try {
+            mExecutor.executeLongRunning(mReadTask, mReaderName);
+        } catch (RejectedExecutionException e) {
+            mClosed = true;
+            mWriter.close();
+            CloseUtils.close(mTransport);
+            throw e;
+        }
+    }
+
+    public Transport getTransport() {
+        return mTransport;
+    }
+
+    public AsyncWriter getWriter() {
+        return mWriter;
+    }
+
+    public boolean isOpen() {
+        return !mClosed;
+    }
+
+    /**
+     * @param tap 为 null 时取消
+     */
+    public void setTap(Tap tap) {
+        mTap = tap;
+    }
+
+    /**
+     * 异步写入，写队列已满时直接拒绝
+     */
+    public WriteFuture write(byte[] data) {
+        return mWriter.offer(data);
+    }
+
+    /**
+     * 异步写入，写队列已满时最多等待 timeout
+     */
+    public WriteFuture write(byte[] data, long timeout, TimeUnit unit) throws InterruptedException {
+        return mWriter.write(data, timeout, unit);
+    }
+
+    /**
+     * 主动断开，读线程随后以 cause == null 回调 onClosed()
+     */
+    public void close() {
+        mClosed = true;
+        mWriter.close();
+        CloseUtils.close(mTransport);
+    }
+
+    private final Runnable mReadTask = new Runnable() {
+        @Override
+        public void run() {
+            readLoop();
+        }
+    };
+
+    private void readLoop() {
+        Chunk chunk = null; // 当前用来 read() 的块，被下游接管之后才换一个新的
+        IOException cause = null;
+        mPipeline.reset();
+        try {
+            while (!mClosed) {
+                if (chunk == null) {
+                    chunk = mBufferPool.acquire();
+                }
+                byte[] buffer = chunk.array();
+                int len = mIn.read(buffer, 0, buffer.length);
+                if (len < 0) {
+                    throw new IOException("input stream closed");
+                }
+                chunk.setRange(0, len);
+                Tap tap = mTap;
+                if (tap != null) {
+                    tap.onReceived(buffer, 0, len);
+                }
+                if (mPipeline.onRead(chunk)) {
+                    chunk = null;
+                }
+            }
+        } catch (IOException e) {
+            if (!mClosed) {
+                cause = e;
+            }
+        } catch (RuntimeException e) {
+            // 分帧器、校验或下游的 bug 也要断开并回调 onClosed()，否则会话停在已连接状态，既不收发也不重连
+            BtLog.e(TAG, "read loop failed: {}", e);
+            cause = new IOException("read loop failed: " + e, e);
+        } finally {
+            if (chunk != null) {
+                chunk.recycle();
+            }
+            mClosed = true;
+            mWriter.close();
+            CloseUtils.close(mTransport);
+        }
+        mListener.onClosed(this, cause);
+    }
+
+    /**
+     * 在真正写入 socket 的地方通知 Tap
+     */
+    private class TapOutputStream extends OutputStream {
+        private final OutputStream mmOut;
+
+        private TapOutputStream(OutputStream out) {
+            mmOut = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            mmOut.write(b, off, len);
+            Tap tap = mTap;
+            if (tap != null) {
+                tap.onSent(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mmOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mmOut.close();
+        }
+    }
+}
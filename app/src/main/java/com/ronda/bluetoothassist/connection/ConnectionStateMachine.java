@@ -0,0 +1,121 @@
+package com.ronda.bluetoothassist.connection;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁的连接状态机：状态和代数（generation）打包在一个 AtomicLong 中，所有切换都是 CAS
+ * <p>
+ * 每次发起新的连接或主动断开时进入新的一代。连接线程、读线程和重连定时器都持有自己开始时的值（token），
+ * 完成时用它做 CAS，代数已经变化说明自己已经过时，结果直接作废，不需要再比较地址或线程对象。
+ * <p>
+ * 状态实际发生变化时依次通知所有监听器，监听器在执行切换的线程中被调用。
+ * 并发切换时通知的先后顺序不保证，需要最新状态时以 {@link #getState()} 为准
+ */
+
+public class ConnectionStateMachine {
+
+    public interface Listener {
+        void onStateChanged(int oldState, int newState, int generation);
+    }
+
+    /**
+     * 无效的 token，{@link #advance} 失败时返回。代数从 1 开始，所以不会与有效值冲突
+     */
+    public static final long NO_TOKEN = 0;
+
+    private final AtomicLong mToken;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+
+    public ConnectionStateMachine(int initialState) {
+        mToken = new AtomicLong(pack(1, initialState));
+    }
+
+    public static long pack(int generation, int state) {
+        return ((long) generation << 32) | (state & 0xFFFFFFFFL);
+    }
+
+    public static int stateOf(long token) {
+        return (int) token;
+    }
+
+    public static int generationOf(long token) {
+        return (int) (token >>> 32);
+    }
+
+    /**
+     * 当前的 token，之后的 CAS 以它为期望值
+     */
+    public long get() {
+        return mToken.get();
+    }
+
+    public int getState() {
+        return stateOf(mToken.get());
+    }
+
+    public int getGeneration() {
+        return generationOf(mToken.get());
+    }
+
+    /**
+     * 当前值仍为 expect 时切换到 newState，代数不变
+     */
+    public boolean compareAndSet(long expect, int newState) {
+        int generation = generationOf(expect);
+        if (!mToken.compareAndSet(expect, pack(generation, newState))) {
+            return false;
+        }
+        notifyChanged(stateOf(expect), newState, generation);
+        return true;
+    }
+
+    /**
+     * 当前值仍为 expect 时切换到 newState 并进入新的一代，此前一代的所有 token 随之作废
+     *
+     * @return 新的 token，失败时为 {@link #NO_TOKEN}
+     */
+    public long advance(long expect, int newState) {
+        int generation = generationOf(expect) + 1;
+        if (generation == 0) { // 溢出时跳过 0，保证 NO_TOKEN 永远无效
+            generation = 1;
+        }
+        long update = pack(generation, newState);
+        if (!mToken.compareAndSet(expect, update)) {
+            return NO_TOKEN;
+        }
+        notifyChanged(stateOf(expect), newState, generation);
+        return update;
+    }
+
+    /**
+     * 无论当前处于什么状态，都切换到 newState 并进入新的一代
+     *
+     * @return 新的 token
+     */
+    public long forceAdvance(int newState) {
+        while (true) {
+            long update = advance(mToken.get(), newState);
+            if (update != NO_TOKEN) {
+                return update;
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void notifyChanged(int oldState, int newState, int generation) {
+        if (oldState == newState) {
+            return;
+        }
+        for (Listener listener : mListeners) {
+            listener.onStateChanged(oldState, newState, generation);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.ronda.bluetoothassist.connection;
+
+import com.ronda.bluetoothassist.checksum.ChecksumStage;
+import com.ronda.bluetoothassist.frame.FrameDecoder;
+import com.ronda.bluetoothassist.frame.FrameSink;
+import com.ronda.bluetoothassist.io.Chunk;
+
+/**
+ * 接收路径：读线程读到的数据块 -> 可选的分帧器 -> 可选的帧尾校验 -> Sink
+ * <p>
+ * 只在一个读线程中调用 onRead()，分帧器和校验可以在任意线程中替换。校验只作用于分帧后的完整帧，
+ * 校验失败的帧由 {@link ChecksumStage} 计数后丢弃，不会到达 Sink
+ */
+
+public class ReceivePipeline {
+
+    public interface Sink {
+        /**
+         * 收到一帧或一块原始数据，buf 只在本次回调期间有效
+         */
+        void onData(byte[] buf, int offset, int length);
+
+        /**
+         * 未分帧时读线程先尝试把整块数据直接交给下游，省掉一次复制
+         *
+         * @return true 表示下游接管了 chunk，之后负责 recycle()；false 时会改为调用 onData()
+         */
+        boolean onChunk(Chunk chunk);
+    }
+
+    private final Sink mSink;
+    private volatile FrameDecoder mFrameDecoder; // 为 null 时不分帧
+    private FrameDecoder mActiveDecoder;         // 读线程正在使用的分帧器
+    private volatile ChecksumStage mChecksumStage; // 为 null 时不校验
+
+    private final FrameSink mFrameSink = new FrameSink() {
+        @Override
+        public void onFrame(byte[] buf, int offset, int length) {
+            ChecksumStage checksum = mChecksumStage;
+            if (checksum != null) {
+                length = checksum.verify(buf, offset, length);
+                if (length < 0) {
+                    return;
+                }
+            }
+            mSink.onData(buf, offset, length);
+        }
+    };
+
+    public ReceivePipeline(Sink sink) {
+        mSink = sink;
+    }
+
+    public void setFrameDecoder(FrameDecoder decoder) {
+        mFrameDecoder = decoder;
+    }
+
+    public FrameDecoder getFrameDecoder() {
+        return mFrameDecoder;
+    }
+
+    /**
+     * @param stage 为 null 时不校验；没有设置分帧器时不起作用
+     */
+    public void setChecksumStage(ChecksumStage stage) {
+        mChecksumStage = stage;
+    }
+
+    public ChecksumStage getChecksumStage() {
+        return mChecksumStage;
+    }
+
+    /**
+     * 实际生效的校验：没有设置分帧器时接收不校验，返回 null。发送时据此决定是否追加校验值，收发保持一致
+     */
+    public ChecksumStage getActiveChecksumStage() {
+        return mFrameDecoder == null ? null : mChecksumStage;
+    }
+
+    /**
+     * 新连接开始前调用，丢弃上一个连接残留的半帧数据
+     */
+    public void reset() {
+        mActiveDecoder = null;
+    }
+
+    /**
+     * 读线程读到一块数据
+     *
+     * @return true 表示 chunk 已经被下游接管，读线程需要换一个新的块
+     */
+    public boolean onRead(Chunk chunk) {
+        FrameDecoder decoder = activeDecoder();
+        if (decoder != null) {
+            decoder.decode(chunk.array(), chunk.offset(), chunk.length(), mFrameSink);
+            return false;
+        }
+        if (mSink.onChunk(chunk)) {
+            return true;
+        }
+        mSink.onData(chunk.array(), chunk.offset(), chunk.length());
+        return false;
+    }
+
+    /**
+     * 不经过缓冲池直接输入一段数据，数据在返回后即可复用
+     */
+    public void onRead(byte[] buf, int offset, int length) {
+        FrameDecoder decoder = activeDecoder();
+        if (decoder != null) {
+            decoder.decode(buf, offset, length, mFrameSink);
+        } else {
+            mSink.onData(buf, offset, length);
+        }
+    }
+
+    /**
+     * 分帧器可能在连接过程中被替换，换成新的之后先清空它的状态
+     */
+    private FrameDecoder activeDecoder() {
+        FrameDecoder current = mFrameDecoder;
+        if (current != mActiveDecoder) {
+            mActiveDecoder = current;
+            if (current != null) {
+                current.reset();
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,87 @@
+package com.ronda.bluetoothassist.connection;
+
+import java.util.Random;
+
+/**
+ * 断线重连的等待时间：第一次立即重连，之后按指数退避并加上随机抖动，不超过上限
+ * <p>
+ * 第 n 次（n >= 1）的退避上限为 min(maxDelay, baseDelay * 2^(n-1))，实际等待时间在 [上限/2, 上限] 之间随机，
+ * 避免多台设备同时掉线后在同一时刻集中重连
+ */
+
+public class ReconnectPolicy {
+
+    public static final long DEFAULT_BASE_DELAY_MS = 500;
+    public static final long DEFAULT_MAX_DELAY_MS = 30 * 1000;
+    public static final int UNLIMITED_ATTEMPTS = 0;
+
+    private final long mBaseDelayMs;
+    private final long mMaxDelayMs;
+    private final int mMaxAttempts;
+    private final Random mRandom;
+
+    public ReconnectPolicy() {
+        this(DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS, UNLIMITED_ATTEMPTS);
+    }
+
+    /**
+     * @param maxAttempts 最多重连次数，{@link #UNLIMITED_ATTEMPTS} 表示不限
+     */
+    public ReconnectPolicy(long baseDelayMs, long maxDelayMs, int maxAttempts) {
+        this(baseDelayMs, maxDelayMs, maxAttempts, new Random());
+    }
+
+    public ReconnectPolicy(long baseDelayMs, long maxDelayMs, int maxAttempts, Random random) {
+        if (baseDelayMs <= 0 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("baseDelayMs=" + baseDelayMs + ", maxDelayMs=" + maxDelayMs);
+        }
+        mBaseDelayMs = baseDelayMs;
+        mMaxDelayMs = maxDelayMs;
+        mMaxAttempts = maxAttempts;
+        mRandom = random;
+    }
+
+    /**
+     * @param attempt 已经失败的重连次数，从 0 开始
+     */
+    public boolean canRetry(int attempt) {
+        return mMaxAttempts == UNLIMITED_ATTEMPTS || attempt < mMaxAttempts;
+    }
+
+    /**
+     * @param attempt 已经失败的重连次数，从 0 开始
+     * @return 距离下一次重连的毫秒数，attempt 为 0 时为 0
+     */
+    public long getDelayMs(int attempt) {
+        if (attempt <= 0) {
+            return 0;
+        }
+        long ceiling = getCeilingMs(attempt);
+        long half = ceiling / 2;
+        return half + (long) (mRandom.nextDouble() * (ceiling - half + 1));
+    }
+
+    /**
+     * 第 attempt 次重连的退避上限（不含抖动）
+     */
+    public long getCeilingMs(int attempt) {
+        if (attempt <= 0) {
+            return 0;
+        }
+        int shift = Math.min(attempt - 1, 30);
+        long delay = mBaseDelayMs << shift;
+        return delay <= 0 || delay > mMaxDelayMs ? mMaxDelayMs : delay;
+    }
+
+    public long getBaseDelayMs() {
+        return mBaseDelayMs;
+    }
+
+    public long getMaxDelayMs() {
+        return mMaxDelayMs;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+}
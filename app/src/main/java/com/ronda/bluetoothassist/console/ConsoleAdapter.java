@@ -0,0 +1,50 @@
+package com.ronda.bluetoothassist.console;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.ronda.bluetoothassist.R;
+
+/**
+ * 把 ConsoleBuffer 显示到 ListView 中，只为屏幕上可见的行创建和复用 View
+ */
+
+public class ConsoleAdapter extends BaseAdapter {
+
+    private final ConsoleBuffer mBuffer;
+    private final LayoutInflater mInflater;
+
+    public ConsoleAdapter(LayoutInflater inflater, ConsoleBuffer buffer) {
+        mInflater = inflater;
+        mBuffer = buffer;
+    }
+
+    @Override
+    public int getCount() {
+        return mBuffer.getLineCount();
+    }
+
+    @Override
+    public CharSequence getItem(int position) {
+        return mBuffer.getLine(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView textView = (TextView) convertView;
+        if (textView == null) {
+            textView = (TextView) mInflater.inflate(R.layout.item_console_line, parent, false);
+        }
+        // TextView 会复制一份普通文本，之后这一行的 StringBuilder 被复用也不影响已经显示的内容
+        textView.setText(mBuffer.getLine(position));
+        return textView;
+    }
+}
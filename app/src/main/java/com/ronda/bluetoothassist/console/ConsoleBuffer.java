@@ -0,0 +1,157 @@
+package com.ronda.bluetoothassist.console;
+
+/**
+ * 接收区的文本缓冲，按行保存在固定容量的环形数组中
+ * <p>
+ * 行数超过 maxLines 时最旧的行被淘汰，它的 StringBuilder 直接复用为新行，
+ * 因此不论会话持续多久，占用的内存和行对象数量都是固定的。
+ * 没有换行符的数据（例如 Hex 显示）按 maxLineLength 自动折行，避免单行无限增长。
+ * <p>
+ * 非线程安全，只在 UI 线程中使用
+ */
+
+public class ConsoleBuffer {
+
+    public static final int DEFAULT_MAX_LINES = 2000;
+    public static final int DEFAULT_MAX_LINE_LENGTH = 256;
+
+    private StringBuilder[] mLines;
+    private int mHead;  // 最旧一行所在的位置
+    private int mCount; // 当前保留的行数
+    private boolean mOpen; // 最后一行是否还可以继续追加
+    private final int mMaxLineLength;
+
+    private long mEvictedLines;
+
+    public ConsoleBuffer() {
+        this(DEFAULT_MAX_LINES, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    public ConsoleBuffer(int maxLines, int maxLineLength) {
+        if (maxLines <= 0 || maxLineLength <= 0) {
+            throw new IllegalArgumentException("maxLines and maxLineLength must be > 0");
+        }
+        mLines = new StringBuilder[maxLines];
+        mMaxLineLength = maxLineLength;
+    }
+
+    /**
+     * 追加文本，'\n' 结束当前行，'\r' 被忽略
+     */
+    public void append(CharSequence text) {
+        append(text, 0, text.length());
+    }
+
+    public void append(CharSequence text, int start, int end) {
+        StringBuilder line = null;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                continue;
+            }
+            if (c == '\n') {
+                openLine();
+                mOpen = false;
+                line = null;
+                continue;
+            }
+            if (line == null) {
+                line = openLine();
+            }
+            if (line.length() >= mMaxLineLength) {
+                mOpen = false;
+                line = openLine();
+            }
+            line.append(c);
+        }
+    }
+
+    /**
+     * 结束当前行，之后追加的内容从新的一行开始
+     */
+    public void newLine() {
+        mOpen = false;
+    }
+
+    public int getLineCount() {
+        return mCount;
+    }
+
+    /**
+     * @param index 0 表示保留下来的最旧的一行
+     */
+    public CharSequence getLine(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("index: " + index + ", count: " + mCount);
+        }
+        return mLines[physical(index)];
+    }
+
+    public int getMaxLines() {
+        return mLines.length;
+    }
+
+    /**
+     * 修改保留的最大行数，超出的旧行会被丢弃
+     */
+    public void setMaxLines(int maxLines) {
+        if (maxLines <= 0) {
+            throw new IllegalArgumentException("maxLines must be > 0: " + maxLines);
+        }
+        if (maxLines == mLines.length) {
+            return;
+        }
+        StringBuilder[] lines = new StringBuilder[maxLines];
+        int keep = Math.min(mCount, maxLines);
+        int skip = mCount - keep;
+        for (int i = 0; i < keep; i++) {
+            lines[i] = mLines[physical(skip + i)];
+        }
+        mEvictedLines += skip;
+        mLines = lines;
+        mHead = 0;
+        mCount = keep;
+    }
+
+    /**
+     * 因超出容量而被淘汰的行数
+     */
+    public long getEvictedLines() {
+        return mEvictedLines;
+    }
+
+    public void clear() {
+        mHead = 0;
+        mCount = 0;
+        mOpen = false;
+    }
+
+    /**
+     * 返回可追加的最后一行，需要时新开一行（容量已满则复用最旧的一行）
+     */
+    private StringBuilder openLine() {
+        if (mOpen && mCount > 0) {
+            return mLines[physical(mCount - 1)];
+        }
+        int slot = physical(mCount);
+        if (mCount == mLines.length) {
+            mHead = physical(1);
+            mEvictedLines++;
+        } else {
+            mCount++;
+        }
+        StringBuilder line = mLines[slot];
+        if (line == null) {
+            line = new StringBuilder(64);
+            mLines[slot] = line;
+        }
+        line.setLength(0);
+        mOpen = true;
+        return line;
+    }
+
+    private int physical(int index) {
+        int p = mHead + index;
+        return p >= mLines.length ? p - mLines.length : p;
+    }
+}
@@ -0,0 +1,66 @@
+package com.ronda.bluetoothassist.console;
+
+/**
+ * hexdump -C 风格的一行：8 位偏移量、16 个字节的 Hex（每 8 个字节之间多一个空格）、ASCII 栏，例如
+ * <pre>
+ * 00000010  48 65 6C 6C 6F 0D 0A 00  01 02 03 04 05 06 07 08  |Hello...........|
+ * </pre>
+ * 不足 16 字节的行用空格补齐 Hex 区，ASCII 栏保持对齐。直接写入调用者复用的 char[]，不产生字符串
+ */
+
+public class HexDump {
+
+    public static final int BYTES_PER_ROW = 16;
+
+    /**
+     * 一行的最大字符数
+     */
+    public static final int ROW_LENGTH = 10 + BYTES_PER_ROW * 3 + 2 + 1 + BYTES_PER_ROW + 1;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private HexDump() {
+    }
+
+    /**
+     * 格式化一行
+     *
+     * @param offset 这一行第一个字节在数据流中的偏移量，只显示低 32 位
+     * @param len    1~16
+     * @param dst    长度不小于 {@link #ROW_LENGTH}
+     * @return 写入的字符数
+     */
+    public static int formatRow(long offset, byte[] buf, int off, int len, char[] dst) {
+        if (len < 1 || len > BYTES_PER_ROW) {
+            throw new IllegalArgumentException("len: " + len);
+        }
+        for (int i = 7, o = (int) offset; i >= 0; i--, o >>>= 4) {
+            dst[i] = HEX[o & 0x0F];
+        }
+        dst[8] = ' ';
+        dst[9] = ' ';
+        int p = 10;
+        for (int i = 0; i < BYTES_PER_ROW; i++) {
+            if (i == 8) {
+                dst[p++] = ' ';
+            }
+            if (i < len) {
+                int b = buf[off + i];
+                dst[p++] = HEX[(b >> 4) & 0x0F];
+                dst[p++] = HEX[b & 0x0F];
+            } else {
+                dst[p++] = ' ';
+                dst[p++] = ' ';
+            }
+            dst[p++] = ' ';
+        }
+        dst[p++] = ' ';
+        dst[p++] = '|';
+        for (int i = 0; i < len; i++) {
+            int b = buf[off + i] & 0xFF;
+            dst[p++] = b >= 0x20 && b < 0x7F ? (char) b : '.';
+        }
+        dst[p++] = '|';
+        return p;
+    }
+}
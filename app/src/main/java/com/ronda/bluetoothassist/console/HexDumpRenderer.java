@@ -0,0 +1,288 @@
+package com.ronda.bluetoothassist.console;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * 在后台线程中把收到的数据格式化成 {@link HexDump} 的行，UI 线程只把格式化好的行追加到接收区
+ * <p>
+ * {@link #offer} 只复制数据，格式化在第一次 offer() 时创建的专用线程中进行，每块数据只格式化一次：
+ * 偏移量沿数据流累加，每块数据从新的一行开始，已经显示的行不会重新生成。行对象在 UI 取走后回收复用。
+ * UI 来不及取走时最多保留 maxRows 行，更早的行直接丢弃（反正也会被接收区淘汰）
+ */
+
+public class HexDumpRenderer {
+
+    public static final int DEFAULT_MAX_PENDING_BYTES = 64 * 1024;
+
+    public interface Listener {
+        /**
+         * 有新的行可以取走时在格式化线程中调用，UI 调用 {@link #drainTo} 之前不会再次调用。不能阻塞
+         */
+        void onRowsReady(HexDumpRenderer renderer);
+    }
+
+    /**
+     * 格式化好的一行，字符保存在固定大小的数组中，回收后内容会被覆盖
+     */
+    public static class Row implements CharSequence {
+        private final char[] mChars = new char[HexDump.ROW_LENGTH];
+        private int mLength;
+
+        @Override
+        public int length() {
+            return mLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return mChars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(mChars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(mChars, 0, mLength);
+        }
+    }
+
+    /**
+     * 等待格式化的数据，块之间的边界保存在 mEnds 中
+     */
+    private static class Pending {
+        byte[] mData = new byte[4096];
+        int mLength;
+        int[] mEnds = new int[16];
+        int mCount;
+
+        void clear() {
+            mLength = 0;
+            mCount = 0;
+        }
+    }
+
+    private final String mName;
+    private final int mMaxPendingBytes;
+    private final int mMaxRows;
+    private final Listener mListener;
+
+    // 以下字段由 this 保护
+    private Pending mBack = new Pending();  // offer() 写入
+    private Pending mFront = new Pending(); // 格式化线程正在处理
+    private ArrayDeque<Row> mReady = new ArrayDeque<Row>();
+    private final ArrayDeque<Row> mFree = new ArrayDeque<Row>();
+    private int mGeneration; // reset() 时加 1，丢弃格式化到一半的旧数据
+    private boolean mNotified;
+    private boolean mShutdown;
+    private Thread mThread;
+    private long mRenderedRows;
+    private long mDroppedRows;
+    private long mDroppedBytes;
+
+    private ArrayDeque<Row> mDraining = new ArrayDeque<Row>(); // 只在 UI 线程使用
+
+    // 以下字段只在格式化线程使用
+    private long mOffset;
+    private int mRenderedGeneration;
+    private final ArrayDeque<Row> mRendered = new ArrayDeque<Row>();
+
+    /**
+     * @param name            格式化线程的名字
+     * @param maxPendingBytes 格式化线程来不及处理时最多缓存的字节数，超出的数据被丢弃并计数
+     * @param maxRows         UI 来不及取走时最多保留的行数
+     */
+    public HexDumpRenderer(String name, int maxPendingBytes, int maxRows, Listener listener) {
+        if (maxPendingBytes <= 0 || maxRows <= 0) {
+            throw new IllegalArgumentException("maxPendingBytes=" + maxPendingBytes + ", maxRows=" + maxRows);
+        }
+        mName = name;
+        mMaxPendingBytes = maxPendingBytes;
+        mMaxRows = maxRows;
+        mListener = listener;
+    }
+
+    /**
+     * 追加一块数据，任意线程调用，只复制不格式化。buf 在返回后即可复用
+     */
+    public void offer(byte[] buf, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        synchronized (this) {
+            if (mShutdown) {
+                return;
+            }
+            Pending pending = mBack;
+            int accept = Math.min(length, mMaxPendingBytes - pending.mLength);
+            if (accept < length) {
+                mDroppedBytes += length - accept;
+            }
+            if (accept <= 0) {
+                return;
+            }
+            if (pending.mLength + accept > pending.mData.length) {
+                int size = Math.min(Math.max(pending.mLength + accept, pending.mData.length * 2), mMaxPendingBytes);
+                pending.mData = Arrays.copyOf(pending.mData, size);
+            }
+            System.arraycopy(buf, offset, pending.mData, pending.mLength, accept);
+            pending.mLength += accept;
+            if (pending.mCount == pending.mEnds.length) {
+                pending.mEnds = Arrays.copyOf(pending.mEnds, pending.mCount * 2);
+            }
+            pending.mEnds[pending.mCount++] = pending.mLength;
+
+            if (mThread == null) {
+                mThread = new Thread(mLoop, mName);
+                mThread.setDaemon(true);
+                mThread.start();
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * UI 线程调用：把格式化好的行各占一行追加到 console，并回收行对象
+     *
+     * @return 追加的行数
+     */
+    public int drainTo(ConsoleBuffer console) {
+        ArrayDeque<Row> rows;
+        synchronized (this) {
+            rows = mReady;
+            mReady = mDraining;
+            mNotified = false;
+        }
+        mDraining = rows;
+        int count = rows.size();
+        if (count == 0) {
+            return 0;
+        }
+        for (Row row : rows) {
+            console.newLine();
+            console.append(row);
+            console.newLine();
+        }
+        synchronized (this) {
+            mFree.addAll(rows);
+        }
+        rows.clear();
+        return count;
+    }
+
+    /**
+     * 丢弃还没有显示的数据和行，偏移量从 0 重新开始，例如清空接收区时
+     */
+    public synchronized void reset() {
+        mGeneration++;
+        mBack.clear();
+        mFree.addAll(mReady);
+        mReady.clear();
+    }
+
+    /**
+     * 结束格式化线程，之后 offer() 的数据被忽略
+     */
+    public synchronized void shutdown() {
+        mShutdown = true;
+        notifyAll();
+    }
+
+    public synchronized long getRenderedRows() {
+        return mRenderedRows;
+    }
+
+    /**
+     * UI 来不及取走而丢弃的行数
+     */
+    public synchronized long getDroppedRows() {
+        return mDroppedRows;
+    }
+
+    /**
+     * 格式化线程来不及处理而丢弃的字节数
+     */
+    public synchronized long getDroppedBytes() {
+        return mDroppedBytes;
+    }
+
+    private final Runnable mLoop = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Pending work;
+                int generation;
+                synchronized (HexDumpRenderer.this) {
+                    while (mBack.mCount == 0 && !mShutdown) {
+                        try {
+                            HexDumpRenderer.this.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (mShutdown) {
+                        return;
+                    }
+                    work = mBack;
+                    mBack = mFront;
+                    mFront = work;
+                    generation = mGeneration;
+                }
+                if (generation != mRenderedGeneration) {
+                    mRenderedGeneration = generation;
+                    mOffset = 0;
+                }
+                render(work);
+                publish(generation);
+                work.clear(); // mFront 只有本线程使用，下次交换之前清空即可
+            }
+        }
+    };
+
+    private void render(Pending work) {
+        int start = 0;
+        for (int c = 0; c < work.mCount; c++) {
+            int end = work.mEnds[c];
+            for (int p = start; p < end; p += HexDump.BYTES_PER_ROW) {
+                int n = Math.min(HexDump.BYTES_PER_ROW, end - p);
+                Row row;
+                synchronized (this) {
+                    row = mFree.pollFirst();
+                }
+                if (row == null) {
+                    row = new Row();
+                }
+                row.mLength = HexDump.formatRow(mOffset, work.mData, p, n, row.mChars);
+                mOffset += n;
+                mRendered.addLast(row);
+            }
+            start = end;
+        }
+    }
+
+    private void publish(int generation) {
+        boolean notify;
+        synchronized (this) {
+            if (generation != mGeneration) { // 格式化期间被 reset()
+                mFree.addAll(mRendered);
+                mRendered.clear();
+                return;
+            }
+            mRenderedRows += mRendered.size();
+            mReady.addAll(mRendered);
+            mRendered.clear();
+            while (mReady.size() > mMaxRows) {
+                mFree.addLast(mReady.pollFirst());
+                mDroppedRows++;
+            }
+            notify = !mNotified && !mReady.isEmpty();
+            mNotified |= notify;
+        }
+        if (notify) {
+            mListener.onRowsReady(this);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.ronda.bluetoothassist.device;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 以 MAC 地址为键的设备列表
+ * <p>
+ * 查找和去重是一次 HashMap 查找；同一设备再次出现（名字解析出来、RSSI 变化）时原地更新，位置不变，
+ * 列表只在末尾追加，因此 ListView 的位置在搜索过程中是稳定的。
+ * 只在 UI 线程中使用，不做同步
+ * <p>
+ * 最近见到的设备可以用 {@link #encode(int)} 保存下来，下次打开时用 {@link #decode(String)} 先填进列表
+ */
+
+public class DeviceIndex {
+
+    public static final short RSSI_UNKNOWN = Short.MIN_VALUE;
+
+    private final HashMap<String, DeviceInfo> mByAddress = new HashMap<String, DeviceInfo>();
+    private final ArrayList<DeviceInfo> mDevices = new ArrayList<DeviceInfo>();
+
+    public int size() {
+        return mDevices.size();
+    }
+
+    public DeviceInfo get(int position) {
+        return mDevices.get(position);
+    }
+
+    public DeviceInfo get(String address) {
+        return mByAddress.get(address);
+    }
+
+    /**
+     * 搜索到或更新一个设备
+     *
+     * @param name  为 null 时保留已知的名字
+     * @param rssi  为 {@link #RSSI_UNKNOWN} 时保留已知的值
+     * @return 新增了设备或者显示的内容有变化
+     */
+    public boolean update(String address, String name, short rssi, boolean bonded, long nowMs) {
+        DeviceInfo info = mByAddress.get(address);
+        if (info == null) {
+            info = add(address);
+            info.update(name, rssi, bonded, true, nowMs);
+            return true;
+        }
+        return info.update(name, rssi, bonded, true, nowMs);
+    }
+
+    /**
+     * 名字解析完成（ACTION_NAME_CHANGED），不认识的地址忽略
+     */
+    public boolean updateName(String address, String name) {
+        DeviceInfo info = mByAddress.get(address);
+        return info != null && info.update(name, RSSI_UNKNOWN, false, false, 0);
+    }
+
+    /**
+     * 开始新一轮搜索：保留已有的设备和位置，清掉上一轮的 RSSI 和“已见到”标记
+     */
+    public void beginScan() {
+        for (DeviceInfo info : mDevices) {
+            info.resetScan();
+        }
+    }
+
+    public void clear() {
+        mByAddress.clear();
+        mDevices.clear();
+    }
+
+    /**
+     * 把最近见到的最多 maxCount 个设备编码成字符串，越近的越靠前。每行一个：地址、最后见到的时间、名字，以 tab 分隔
+     */
+    public String encode(int maxCount) {
+        List<DeviceInfo> sorted = new ArrayList<DeviceInfo>(mDevices);
+        Collections.sort(sorted, new Comparator<DeviceInfo>() {
+            @Override
+            public int compare(DeviceInfo a, DeviceInfo b) {
+                return a.getLastSeenMs() < b.getLastSeenMs() ? 1 : (a.getLastSeenMs() == b.getLastSeenMs() ? 0 : -1);
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        int count = Math.min(maxCount, sorted.size());
+        for (int i = 0; i < count; i++) {
+            DeviceInfo info = sorted.get(i);
+            sb.append(info.getAddress()).append('\t').append(info.getLastSeenMs()).append('\t');
+            String name = info.getName();
+            if (name != null) {
+                sb.append(name.replace('\t', ' ').replace('\n', ' '));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 把 {@link #encode(int)} 的结果追加到列表中，已经存在的地址和格式不对的行跳过。
+     * 这些设备在本次搜索到之前 {@link DeviceInfo#isSeen()} 为 false
+     *
+     * @return 新增的设备数
+     */
+    public int decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return 0;
+        }
+        int added = 0;
+        int start = 0;
+        while (start < encoded.length()) {
+            int end = encoded.indexOf('\n', start);
+            if (end < 0) {
+                end = encoded.length();
+            }
+            int tab1 = encoded.indexOf('\t', start);
+            int tab2 = tab1 < 0 ? -1 : encoded.indexOf('\t', tab1 + 1);
+            if (tab1 > start && tab2 > tab1 && tab2 < end) {
+                String address = encoded.substring(start, tab1);
+                String name = tab2 + 1 < end ? encoded.substring(tab2 + 1, end) : null;
+                long lastSeen;
+                try {
+                    lastSeen = Long.parseLong(encoded.substring(tab1 + 1, tab2));
+                } catch (NumberFormatException e) {
+                    lastSeen = -1;
+                }
+                if (lastSeen >= 0 && !mByAddress.containsKey(address)) {
+                    add(address).update(name, RSSI_UNKNOWN, false, false, lastSeen);
+                    added++;
+                }
+            }
+            start = end + 1;
+        }
+        return added;
+    }
+
+    private DeviceInfo add(String address) {
+        DeviceInfo info = new DeviceInfo(address);
+        mByAddress.put(address, info);
+        mDevices.add(info);
+        return info;
+    }
+}
@@ -0,0 +1,81 @@
+package com.ronda.bluetoothassist.device;
+
+/**
+ * 设备列表中的一项，由 {@link DeviceIndex} 原地更新，地址不变
+ */
+
+public class DeviceInfo {
+
+    private final String mAddress;
+    private String mName;
+    private short mRssi = DeviceIndex.RSSI_UNKNOWN;
+    private boolean mBonded;
+    private boolean mSeen;  // 本次搜索中是否见到过，只来自缓存时为 false
+    private long mLastSeenMs;
+
+    DeviceInfo(String address) {
+        mAddress = address;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * 名字还没有解析出来时为 null
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 搜索时的信号强度（dBm），未知时为 {@link DeviceIndex#RSSI_UNKNOWN}
+     */
+    public short getRssi() {
+        return mRssi;
+    }
+
+    public boolean isBonded() {
+        return mBonded;
+    }
+
+    /**
+     * false 表示只是上次打开时缓存的设备，这次还没有搜索到
+     */
+    public boolean isSeen() {
+        return mSeen;
+    }
+
+    public long getLastSeenMs() {
+        return mLastSeenMs;
+    }
+
+    boolean update(String name, short rssi, boolean bonded, boolean seen, long nowMs) {
+        boolean changed = false;
+        if (name != null && !name.equals(mName)) {
+            mName = name;
+            changed = true;
+        }
+        if (rssi != DeviceIndex.RSSI_UNKNOWN && rssi != mRssi) {
+            mRssi = rssi;
+            changed = true;
+        }
+        if (bonded && !mBonded) {
+            mBonded = true;
+            changed = true;
+        }
+        if (seen && !mSeen) {
+            mSeen = true;
+            changed = true;
+        }
+        if (nowMs > mLastSeenMs) {
+            mLastSeenMs = nowMs;
+        }
+        return changed;
+    }
+
+    void resetScan() {
+        mSeen = false;
+        mRssi = DeviceIndex.RSSI_UNKNOWN;
+    }
+}
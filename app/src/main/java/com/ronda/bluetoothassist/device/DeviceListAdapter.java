@@ -0,0 +1,65 @@
+package com.ronda.bluetoothassist.device;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * 把 DeviceIndex 显示到 ListView 中，每行是名字、地址和信号强度
+ */
+
+public class DeviceListAdapter extends BaseAdapter {
+
+    private final DeviceIndex mIndex;
+    private final LayoutInflater mInflater;
+    private final StringBuilder mTextBuilder = new StringBuilder(64);
+
+    public DeviceListAdapter(LayoutInflater inflater, DeviceIndex index) {
+        mInflater = inflater;
+        mIndex = index;
+    }
+
+    @Override
+    public int getCount() {
+        return mIndex.size();
+    }
+
+    @Override
+    public DeviceInfo getItem(int position) {
+        return mIndex.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true; // 设备只追加不移动
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView textView = (TextView) convertView;
+        if (textView == null) {
+            textView = (TextView) mInflater.inflate(android.R.layout.simple_list_item_1, parent, false);
+        }
+        DeviceInfo info = mIndex.get(position);
+        StringBuilder sb = mTextBuilder;
+        sb.setLength(0);
+        sb.append(info.getName() != null ? info.getName() : "未知设备").append(':').append(info.getAddress());
+        if (info.getRssi() != DeviceIndex.RSSI_UNKNOWN) {
+            sb.append("  ").append(info.getRssi()).append("dBm");
+        }
+        if (info.isBonded()) {
+            sb.append("  已配对");
+        } else if (!info.isSeen()) {
+            sb.append("  (最近)");
+        }
+        textView.setText(sb.toString());
+        return textView;
+    }
+}
@@ -0,0 +1,131 @@
+package com.ronda.bluetoothassist.frame;
+
+/**
+ * 可复用的字节环形缓冲区，供帧解析器增量解析时缓存尚未组成完整帧的数据
+ * <p>
+ * 容量固定，写入时不会扩容，也不会产生任何临时对象。非线程安全，只应在读线程中使用
+ */
+
+public class ByteRingBuffer {
+
+    private final byte[] mBuf;
+    private int mHead; // 第一个有效字节在 mBuf 中的下标
+    private int mSize; // 有效字节数
+
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+        }
+        mBuf = new byte[capacity];
+    }
+
+    public int capacity() {
+        return mBuf.length;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * 剩余可写入的字节数
+     */
+    public int remaining() {
+        return mBuf.length - mSize;
+    }
+
+    /**
+     * 尽可能多地写入数据，缓冲区写满时剩下的部分不会写入
+     *
+     * @return 实际写入的字节数
+     */
+    public int write(byte[] src, int off, int len) {
+        int n = Math.min(len, remaining());
+        if (n <= 0) {
+            return 0;
+        }
+        int tail = physical(mSize);
+        int first = Math.min(n, mBuf.length - tail);
+        System.arraycopy(src, off, mBuf, tail, first);
+        if (first < n) {
+            System.arraycopy(src, off + first, mBuf, 0, n - first);
+        }
+        mSize += n;
+        return n;
+    }
+
+    /**
+     * 读取第 index 个有效字节（不移除）
+     */
+    public byte get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + mSize);
+        }
+        return mBuf[physical(index)];
+    }
+
+    /**
+     * 从 fromIndex 开始查找 pattern 第一次出现的位置
+     *
+     * @return 找到时返回 pattern 首字节的下标，否则返回 -1
+     */
+    public int indexOf(byte[] pattern, int fromIndex) {
+        int last = mSize - pattern.length;
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        byte first = pattern[0];
+        for (int i = fromIndex; i <= last; i++) {
+            if (mBuf[physical(i)] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && mBuf[physical(i + j)] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 把从 index 开始的 len 个字节复制到 dst 中（不移除）
+     */
+    public void copyTo(int index, byte[] dst, int dstOff, int len) {
+        if (index < 0 || len < 0 || index + len > mSize) {
+            throw new IndexOutOfBoundsException("index: " + index + ", len: " + len + ", size: " + mSize);
+        }
+        int start = physical(index);
+        int first = Math.min(len, mBuf.length - start);
+        System.arraycopy(mBuf, start, dst, dstOff, first);
+        if (first < len) {
+            System.arraycopy(mBuf, 0, dst, dstOff + first, len - first);
+        }
+    }
+
+    /**
+     * 移除前 n 个字节
+     */
+    public void skip(int n) {
+        if (n < 0 || n > mSize) {
+            throw new IndexOutOfBoundsException("skip: " + n + ", size: " + mSize);
+        }
+        mHead = physical(n);
+        mSize -= n;
+        if (mSize == 0) {
+            mHead = 0;
+        }
+    }
+
+    public void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    private int physical(int index) {
+        int p = mHead + index;
+        return p >= mBuf.length ? p - mBuf.length : p;
+    }
+}
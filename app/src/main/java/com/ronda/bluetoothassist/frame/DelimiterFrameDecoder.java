@@ -0,0 +1,88 @@
+package com.ronda.bluetoothassist.frame;
+
+/**
+ * 按起止标志分帧，例如 aa ... bb
+ * <p>
+ * 起始标志可以为 null，此时帧以结束标志划分（例如按 "\r\n" 分行）。
+ * 查找是增量进行的：上一次已经确认不含结束标志的数据不会被再次扫描
+ */
+
+public class DelimiterFrameDecoder extends FrameDecoder {
+
+    private final byte[] mStart;
+    private final byte[] mEnd;
+    private final boolean mStripDelimiters;
+
+    private boolean mInFrame; // 已经找到起始标志，正在等待结束标志
+    private int mScanFrom;    // 下次查找结束标志的起点
+
+    /**
+     * @param start           起始标志，为 null 或空时表示没有起始标志
+     * @param end             结束标志，不能为空
+     * @param stripDelimiters 输出的帧是否去掉起止标志
+     * @param maxFrameLength  包含起止标志在内的最大帧长，超过时丢弃该帧
+     */
+    public DelimiterFrameDecoder(byte[] start, byte[] end, boolean stripDelimiters, int maxFrameLength) {
+        super(maxFrameLength);
+        if (end == null || end.length == 0) {
+            throw new IllegalArgumentException("end delimiter must not be empty");
+        }
+        mStart = (start == null || start.length == 0) ? null : start.clone();
+        mEnd = end.clone();
+        mStripDelimiters = stripDelimiters;
+        onDiscardAll();
+    }
+
+    @Override
+    protected boolean decodeFrame(FrameSink sink) {
+        int startLen = mStart == null ? 0 : mStart.length;
+
+        if (mStart != null && !mInFrame) {
+            int i = mBuffer.indexOf(mStart, 0);
+            if (i < 0) {
+                // 没有帧头，只保留末尾可能是半个帧头的字节
+                int drop = mBuffer.size() - (startLen - 1);
+                if (drop > 0) {
+                    discard(drop);
+                }
+                return false;
+            }
+            if (i > 0) {
+                discard(i);
+            }
+            mInFrame = true;
+            mScanFrom = startLen;
+        }
+
+        int endIndex = mBuffer.indexOf(mEnd, mScanFrom);
+        if (endIndex < 0) {
+            if (mBuffer.size() >= mMaxFrameLength) {
+                // 帧过长：丢掉当前帧头（或整段数据）后重新同步
+                discard(startLen > 0 ? startLen : mBuffer.size());
+                onDiscardAll();
+                return true;
+            }
+            mScanFrom = Math.max(startLen, mBuffer.size() - mEnd.length + 1);
+            return false;
+        }
+
+        int frameLength = endIndex + mEnd.length;
+        if (frameLength > mMaxFrameLength) {
+            discard(frameLength);
+        } else if (mStripDelimiters) {
+            emit(startLen, endIndex - startLen, sink);
+            mBuffer.skip(frameLength);
+        } else {
+            emit(0, frameLength, sink);
+            mBuffer.skip(frameLength);
+        }
+        onDiscardAll();
+        return true;
+    }
+
+    @Override
+    protected void onDiscardAll() {
+        mInFrame = false;
+        mScanFrom = 0;
+    }
+}
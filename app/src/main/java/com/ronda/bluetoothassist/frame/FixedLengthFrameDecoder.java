@@ -0,0 +1,25 @@
+package com.ronda.bluetoothassist.frame;
+
+/**
+ * 按固定长度分帧
+ */
+
+public class FixedLengthFrameDecoder extends FrameDecoder {
+
+    private final int mFrameLength;
+
+    public FixedLengthFrameDecoder(int frameLength) {
+        super(frameLength);
+        mFrameLength = frameLength;
+    }
+
+    @Override
+    protected boolean decodeFrame(FrameSink sink) {
+        if (mBuffer.size() < mFrameLength) {
+            return false;
+        }
+        emit(0, mFrameLength, sink);
+        mBuffer.skip(mFrameLength);
+        return true;
+    }
+}
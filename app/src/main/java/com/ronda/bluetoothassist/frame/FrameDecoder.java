@@ -0,0 +1,97 @@
+package com.ronda.bluetoothassist.frame;
+
+/**
+ * 运行在读线程中的分帧器基类
+ * <p>
+ * 每次 read() 得到的数据块通过 {@link #decode} 传入，先写入内部的环形缓冲区，
+ * 再由子类的 {@link #decodeFrame} 增量解析，只有完整的帧才会交给 {@link FrameSink}。
+ * 整个过程不做 String 转换，稳定运行时也不分配新对象。
+ * <p>
+ * 非线程安全，一个实例同一时间只能服务一个连接
+ */
+
+public abstract class FrameDecoder {
+
+    protected final ByteRingBuffer mBuffer;
+    protected final int mMaxFrameLength;
+
+    private final byte[] mFrame; // 复用的输出缓冲，完整帧先复制到这里再回调
+    private long mFrameCount;
+    private long mDiscardedBytes;
+
+    protected FrameDecoder(int maxFrameLength) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength must be > 0: " + maxFrameLength);
+        }
+        mMaxFrameLength = maxFrameLength;
+        mBuffer = new ByteRingBuffer(maxFrameLength * 2);
+        mFrame = new byte[maxFrameLength];
+    }
+
+    /**
+     * 输入一块新收到的数据，解析出的每一个完整帧都会回调给 sink
+     */
+    public final void decode(byte[] src, int off, int len, FrameSink sink) {
+        while (len > 0) {
+            int n = mBuffer.write(src, off, len);
+            off += n;
+            len -= n;
+
+            while (mBuffer.size() > 0 && decodeFrame(sink)) {
+                // 一直解析到数据不足以组成下一帧为止
+            }
+
+            // 缓冲区已满却解析不出任何帧，说明缓存的都是无效数据
+            if (len > 0 && mBuffer.remaining() == 0) {
+                discard(mBuffer.size());
+                onDiscardAll();
+            }
+        }
+    }
+
+    /**
+     * 清空缓存的数据和解析状态，新连接建立时调用
+     */
+    public void reset() {
+        mBuffer.clear();
+        onDiscardAll();
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 因失步或帧过长而被丢弃的字节数
+     */
+    public long getDiscardedBytes() {
+        return mDiscardedBytes;
+    }
+
+    /**
+     * 尝试从 mBuffer 头部解析出一帧
+     *
+     * @return 本次调用消费了数据（输出了一帧或丢弃了无效数据）时返回 true，数据不足时返回 false
+     */
+    protected abstract boolean decodeFrame(FrameSink sink);
+
+    /**
+     * 缓存被整体丢弃时调用，子类在这里重置自己的解析状态
+     */
+    protected void onDiscardAll() {
+    }
+
+    /**
+     * 把 mBuffer 中 [index, index + length) 的数据作为一帧输出（不移除数据）
+     */
+    protected final void emit(int index, int length, FrameSink sink) {
+        mBuffer.copyTo(index, mFrame, 0, length);
+        mFrameCount++;
+        sink.onFrame(mFrame, 0, length);
+    }
+
+    protected final void discard(int n) {
+        mBuffer.skip(n);
+        mDiscardedBytes += n;
+    }
+}
@@ -0,0 +1,9 @@
+package com.ronda.bluetoothassist.frame;
+
+/**
+ * FrameDecoder 保存着未完成的半帧数据，不能在多个连接之间共享，多设备时通过工厂为每个连接各创建一个
+ */
+
+public interface FrameDecoderFactory {
+    FrameDecoder create();
+}
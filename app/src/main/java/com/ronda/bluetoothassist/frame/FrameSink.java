@@ -0,0 +1,12 @@
+package com.ronda.bluetoothassist.frame;
+
+/**
+ * 接收 FrameDecoder 解析出的完整帧
+ */
+
+public interface FrameSink {
+    /**
+     * buf 由解析器复用，只在本次回调期间有效，需要保留数据时必须自行复制
+     */
+    void onFrame(byte[] buf, int offset, int length);
+}
@@ -0,0 +1,70 @@
+package com.ronda.bluetoothassist.frame;
+
+/**
+ * 按帧内的长度字段分帧
+ * <p>
+ * 帧总长 = lengthFieldOffset + lengthFieldLength + 长度字段的值 + lengthAdjustment。
+ * 例如帧格式为 [头 1 字节][长度 1 字节][数据 n 字节][校验 2 字节]，长度字段只表示数据长度时，
+ * 可以这样构造：new LengthFieldFrameDecoder(1, 1, 2, 0, true, 256)
+ */
+
+public class LengthFieldFrameDecoder extends FrameDecoder {
+
+    private final int mLengthFieldOffset;
+    private final int mLengthFieldLength;
+    private final int mLengthAdjustment;
+    private final int mInitialBytesToStrip;
+    private final boolean mBigEndian;
+
+    /**
+     * @param lengthFieldOffset   长度字段在帧内的偏移
+     * @param lengthFieldLength   长度字段的字节数，只能是 1、2、3、4
+     * @param lengthAdjustment    对长度字段值的修正，用于长度字段不只表示数据部分的情况
+     * @param initialBytesToStrip 输出时去掉帧头部的字节数
+     * @param bigEndian           长度字段是否为大端
+     * @param maxFrameLength      最大帧长，长度字段超出时认为失步
+     */
+    public LengthFieldFrameDecoder(int lengthFieldOffset, int lengthFieldLength, int lengthAdjustment,
+                                   int initialBytesToStrip, boolean bigEndian, int maxFrameLength) {
+        super(maxFrameLength);
+        if (lengthFieldLength < 1 || lengthFieldLength > 4) {
+            throw new IllegalArgumentException("lengthFieldLength must be 1..4: " + lengthFieldLength);
+        }
+        if (lengthFieldOffset < 0 || initialBytesToStrip < 0) {
+            throw new IllegalArgumentException("negative offset");
+        }
+        mLengthFieldOffset = lengthFieldOffset;
+        mLengthFieldLength = lengthFieldLength;
+        mLengthAdjustment = lengthAdjustment;
+        mInitialBytesToStrip = initialBytesToStrip;
+        mBigEndian = bigEndian;
+    }
+
+    @Override
+    protected boolean decodeFrame(FrameSink sink) {
+        int headerLength = mLengthFieldOffset + mLengthFieldLength;
+        if (mBuffer.size() < headerLength) {
+            return false;
+        }
+
+        long value = 0;
+        for (int i = 0; i < mLengthFieldLength; i++) {
+            int b = mBuffer.get(mLengthFieldOffset + (mBigEndian ? i : mLengthFieldLength - 1 - i)) & 0xFF;
+            value = (value << 8) | b;
+        }
+
+        long frameLength = headerLength + value + mLengthAdjustment;
+        if (frameLength < headerLength || frameLength < mInitialBytesToStrip || frameLength > mMaxFrameLength) {
+            // 长度字段不合法，说明已经失步，丢掉一个字节后重新查找
+            discard(1);
+            return true;
+        }
+        if (mBuffer.size() < frameLength) {
+            return false;
+        }
+
+        emit(mInitialBytesToStrip, (int) frameLength - mInitialBytesToStrip, sink);
+        mBuffer.skip((int) frameLength);
+        return true;
+    }
+}
@@ -0,0 +1,361 @@
+package com.ronda.bluetoothassist.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在独立线程中向输出流写数据，调用者（UI 线程）不会被阻塞在 socket 的 write() 上
+ * <p>
+ * 写请求放入有界队列，写线程每次把队列头部能放进合并缓冲区的多个小请求拼成一次 write()，
+ * 大于合并缓冲区的请求单独写出，单个请求的数据不会被拆开或与其他请求交错。
+ * 队列满时 {@link #offer} 直接拒绝，{@link #write(byte[], long, TimeUnit)} 则等待队列腾出空间（背压）
+ * <p>
+ * 传入 Executor 时不创建专用线程：队列由空变为非空时提交一个排空任务，写完队列中的数据后任务结束、线程归还
+ */
+
+public class AsyncWriter {
+
+    public static final int DEFAULT_COALESCE_SIZE = 1024; // 与 RFCOMM 常见的 MTU 相当
+    public static final int DEFAULT_MAX_QUEUED_BYTES = 64 * 1024;
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 256;
+
+    private final OutputStream mOut;
+    private final byte[] mCoalesceBuffer;
+    private final int mMaxQueuedBytes;
+    private final int mMaxQueuedRequests;
+
+    private final ArrayDeque<WriteFuture> mQueue = new ArrayDeque<WriteFuture>();
+    private final WriteFuture[] mBatch; // 写线程本次要完成的请求，复用
+    private byte[] mBatchSingle;        // 本次单独写出的大请求，为 null 时写合并缓冲区
+    private int mBatchLength;
+    private int mQueuedBytes;
+    private boolean mClosed;
+    private final Thread mThread;     // 专用线程模式
+    private final Executor mExecutor; // 共享线程池模式
+    private boolean mDraining;        // 共享线程池模式下排空任务已提交或正在运行
+
+    private long mWriteCalls;     // 实际调用 OutputStream.write() 的次数
+    private long mWrittenRequests;
+    private long mWrittenBytes;
+    private long mRejectedRequests;
+
+    public AsyncWriter(OutputStream out, String name) {
+        this(out, name, DEFAULT_COALESCE_SIZE, DEFAULT_MAX_QUEUED_BYTES, DEFAULT_MAX_QUEUED_REQUESTS);
+    }
+
+    public AsyncWriter(OutputStream out, String name, int coalesceSize, int maxQueuedBytes, int maxQueuedRequests) {
+        mOut = out;
+        mCoalesceBuffer = new byte[coalesceSize];
+        mMaxQueuedBytes = maxQueuedBytes;
+        mMaxQueuedRequests = maxQueuedRequests;
+        mBatch = new WriteFuture[maxQueuedRequests];
+        mExecutor = null;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, name);
+    }
+
+    /**
+     * 在共享线程池中写，不占用专用线程
+     */
+    public AsyncWriter(OutputStream out, Executor executor) {
+        this(out, executor, DEFAULT_COALESCE_SIZE, DEFAULT_MAX_QUEUED_BYTES, DEFAULT_MAX_QUEUED_REQUESTS);
+    }
+
+    public AsyncWriter(OutputStream out, Executor executor, int coalesceSize, int maxQueuedBytes, int maxQueuedRequests) {
+        mOut = out;
+        mCoalesceBuffer = new byte[coalesceSize];
+        mMaxQueuedBytes = maxQueuedBytes;
+        mMaxQueuedRequests = maxQueuedRequests;
+        mBatch = new WriteFuture[maxQueuedRequests];
+        mExecutor = executor;
+        mThread = null;
+    }
+
+    /**
+     * 启动写线程，共享线程池模式下什么也不做
+     */
+    public void start() {
+        if (mThread != null) {
+            mThread.start();
+        }
+    }
+
+    /**
+     * 不等待，队列已满时返回一个 isRejected() 为 true 的结果
+     */
+    public WriteFuture offer(byte[] data) {
+        WriteFuture future = new WriteFuture(this, data);
+        String reason;
+        synchronized (this) {
+            if (!mClosed && hasRoom(data.length)) {
+                reason = enqueue(future);
+                if (reason == null) {
+                    return future;
+                }
+            } else if (mClosed) {
+                reason = "writer closed";
+            } else {
+                mRejectedRequests++;
+                reason = "write queue full";
+            }
+        }
+        future.reject(new IOException(reason));
+        return future;
+    }
+
+    /**
+     * 队列已满时最多等待 timeout，仍然没有空间则拒绝
+     */
+    public WriteFuture write(byte[] data, long timeout, TimeUnit unit) throws InterruptedException {
+        WriteFuture future = new WriteFuture(this, data);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        String reason;
+        synchronized (this) {
+            while (!mClosed && !hasRoom(data.length)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            if (!mClosed && hasRoom(data.length)) {
+                reason = enqueue(future);
+                if (reason == null) {
+                    return future;
+                }
+            } else if (mClosed) {
+                reason = "writer closed";
+            } else {
+                mRejectedRequests++;
+                reason = "write queue full";
+            }
+        }
+        future.reject(new IOException(reason));
+        return future;
+    }
+
+    /**
+     * 取消一个还在队列中、尚未开始写的请求
+     */
+    boolean cancel(WriteFuture future) {
+        synchronized (this) {
+            if (!mQueue.remove(future)) {
+                return false;
+            }
+            mQueuedBytes -= future.getData().length;
+            notifyAll();
+        }
+        return future.markCancelled();
+    }
+
+    /**
+     * 停止写线程，队列中尚未写出的请求全部以失败结束。不会关闭输出流
+     */
+    public void close() {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            notifyAll();
+        }
+        failPending(new IOException("writer closed"));
+    }
+
+    public synchronized int getQueuedBytes() {
+        return mQueuedBytes;
+    }
+
+    public synchronized int getQueuedRequests() {
+        return mQueue.size();
+    }
+
+    public synchronized long getWriteCalls() {
+        return mWriteCalls;
+    }
+
+    public synchronized long getWrittenRequests() {
+        return mWrittenRequests;
+    }
+
+    public synchronized long getWrittenBytes() {
+        return mWrittenBytes;
+    }
+
+    public synchronized long getRejectedRequests() {
+        return mRejectedRequests;
+    }
+
+    private boolean hasRoom(int length) {
+        if (mQueue.size() >= mMaxQueuedRequests) {
+            return false;
+        }
+        // 队列为空时总是接受，保证超过 maxQueuedBytes 的单个请求也能写出
+        return mQueue.isEmpty() || mQueuedBytes + length <= mMaxQueuedBytes;
+    }
+
+    /**
+     * @return 入队成功时为 null，否则为拒绝原因
+     */
+    private String enqueue(WriteFuture future) {
+        mQueue.addLast(future);
+        mQueuedBytes += future.getData().length;
+        if (mExecutor == null) {
+            notifyAll();
+            return null;
+        }
+        if (!mDraining) {
+            // 排空任务只在队列为空时退出，所以此时队列中只有刚加入的这一个请求
+            try {
+                mExecutor.execute(mDrainTask);
+                mDraining = true;
+            } catch (RejectedExecutionException e) {
+                mQueue.removeLast();
+                mQueuedBytes -= future.getData().length;
+                mRejectedRequests++;
+                return "io executor saturated";
+            }
+        }
+        return null;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            int count;
+            synchronized (this) {
+                while (!mClosed && mQueue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        mClosed = true;
+                    }
+                }
+                if (mClosed) {
+                    break;
+                }
+                count = pollBatch();
+            }
+            if (!flushBatch(count)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 共享线程池模式下的排空任务：写完队列中现有的数据就结束
+     */
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                int count;
+                synchronized (AsyncWriter.this) {
+                    if (mClosed || mQueue.isEmpty()) {
+                        mDraining = false;
+                        return;
+                    }
+                    count = pollBatch();
+                }
+                if (!flushBatch(count)) {
+                    synchronized (AsyncWriter.this) {
+                        mDraining = false;
+                    }
+                    return;
+                }
+            }
+        }
+    };
+
+    /**
+     * 从队列头部取出本次要写的请求放入 mBatch，能合并的小请求复制到合并缓冲区。调用时必须持有锁且队列不为空
+     *
+     * @return 取出的请求数
+     */
+    private int pollBatch() {
+        int count = 0;
+        WriteFuture head = mQueue.pollFirst();
+        mBatch[count++] = head;
+        byte[] data = head.getData();
+        int length = data.length;
+        if (data.length > mCoalesceBuffer.length) {
+            mBatchSingle = data;
+        } else {
+            mBatchSingle = null;
+            System.arraycopy(data, 0, mCoalesceBuffer, 0, data.length);
+            // 把后面放得下的小请求一起合并
+            WriteFuture next;
+            while ((next = mQueue.peekFirst()) != null
+                    && length + next.getData().length <= mCoalesceBuffer.length) {
+                mQueue.pollFirst();
+                byte[] d = next.getData();
+                System.arraycopy(d, 0, mCoalesceBuffer, length, d.length);
+                length += d.length;
+                mBatch[count++] = next;
+            }
+        }
+        mBatchLength = length;
+        mQueuedBytes -= length;
+        notifyAll(); // 唤醒因背压而等待的调用者
+        return count;
+    }
+
+    /**
+     * 在锁外写出 pollBatch() 取出的数据并通知结果
+     *
+     * @return 写失败时为 false，此时写入器已关闭
+     */
+    private boolean flushBatch(int count) {
+        int length = mBatchLength;
+        try {
+            if (mBatchSingle != null) {
+                mOut.write(mBatchSingle);
+            } else {
+                mOut.write(mCoalesceBuffer, 0, length);
+            }
+            mOut.flush();
+            synchronized (this) {
+                mWriteCalls++;
+                mWrittenRequests += count;
+                mWrittenBytes += length;
+            }
+            for (int i = 0; i < count; i++) {
+                mBatch[i].succeed();
+                mBatch[i] = null;
+            }
+            return true;
+        } catch (IOException e) {
+            for (int i = 0; i < count; i++) {
+                mBatch[i].fail(e);
+                mBatch[i] = null;
+            }
+            synchronized (this) {
+                mClosed = true;
+            }
+            failPending(e);
+            return false;
+        } finally {
+            mBatchSingle = null;
+        }
+    }
+
+    private void failPending(IOException cause) {
+        ArrayDeque<WriteFuture> pending;
+        synchronized (this) {
+            pending = new ArrayDeque<WriteFuture>(mQueue);
+            mQueue.clear();
+            mQueuedBytes = 0;
+            notifyAll();
+        }
+        for (WriteFuture future : pending) {
+            future.fail(cause);
+        }
+    }
+}
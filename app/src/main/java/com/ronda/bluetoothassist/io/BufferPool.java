@@ -0,0 +1,90 @@
+package com.ronda.bluetoothassist.io;
+
+/**
+ * 固定块大小、容量有上限的缓冲池
+ * <p>
+ * 读线程借出、UI 线程归还，稳定运行时所有块都在池中循环使用，不再分配新对象。
+ * 池空时会临时分配一个新块（计入 {@link #getMissCount()}），池满时归还的块直接丢弃，
+ * 因此池本身占用的内存不会超过 chunkSize * maxPooled
+ */
+
+public class BufferPool {
+
+    private final int mChunkSize;
+    private final Chunk[] mFree; // 空闲块，作为栈使用
+    private int mFreeCount;
+
+    private long mAcquireCount;
+    private long mMissCount;
+
+    public BufferPool(int chunkSize, int maxPooled) {
+        if (chunkSize <= 0 || maxPooled <= 0) {
+            throw new IllegalArgumentException("chunkSize and maxPooled must be > 0");
+        }
+        mChunkSize = chunkSize;
+        mFree = new Chunk[maxPooled];
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    /**
+     * 借出一个容量为 chunkSize 的块
+     */
+    public Chunk acquire() {
+        synchronized (this) {
+            mAcquireCount++;
+            if (mFreeCount > 0) {
+                Chunk chunk = mFree[--mFreeCount];
+                mFree[mFreeCount] = null;
+                chunk.mInPool = false;
+                chunk.setRange(0, 0);
+                return chunk;
+            }
+            mMissCount++;
+        }
+        return new Chunk(this, mChunkSize);
+    }
+
+    /**
+     * 借出一个容量至少为 minCapacity 的块，超过 chunkSize 的块不会进入池中
+     */
+    public Chunk acquire(int minCapacity) {
+        if (minCapacity <= mChunkSize) {
+            return acquire();
+        }
+        synchronized (this) {
+            mAcquireCount++;
+            mMissCount++;
+        }
+        return new Chunk(null, minCapacity);
+    }
+
+    void release(Chunk chunk) {
+        synchronized (this) {
+            if (chunk.mInPool) {
+                throw new IllegalStateException("chunk recycled twice");
+            }
+            if (mFreeCount < mFree.length) {
+                chunk.mInPool = true;
+                mFree[mFreeCount++] = chunk;
+            }
+        }
+    }
+
+    public synchronized int getFreeCount() {
+        return mFreeCount;
+    }
+
+    public synchronized long getAcquireCount() {
+        return mAcquireCount;
+    }
+
+    /**
+     * 池中没有空闲块、只能新分配的次数
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+}
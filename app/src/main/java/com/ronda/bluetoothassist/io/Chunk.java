@@ -0,0 +1,57 @@
+package com.ronda.bluetoothassist.io;
+
+/**
+ * 从 {@link BufferPool} 借出的一段字节数据，以 [offset, offset + length) 的切片形式交给使用者
+ * <p>
+ * 使用者处理完之后必须调用 {@link #recycle()} 把它还给缓冲池，之后不能再访问其中的数据
+ */
+
+public final class Chunk {
+
+    private final BufferPool mPool; // 为 null 表示这是池外临时分配的块，回收时直接丢弃
+    private final byte[] mData;
+    private int mOffset;
+    private int mLength;
+    boolean mInPool; // 由 BufferPool 在锁内维护，防止同一个块被重复归还
+
+    Chunk(BufferPool pool, int capacity) {
+        mPool = pool;
+        mData = new byte[capacity];
+    }
+
+    public byte[] array() {
+        return mData;
+    }
+
+    public int offset() {
+        return mOffset;
+    }
+
+    public int length() {
+        return mLength;
+    }
+
+    public int capacity() {
+        return mData.length;
+    }
+
+    /**
+     * 设置有效数据的范围
+     */
+    public void setRange(int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > mData.length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", capacity: " + mData.length);
+        }
+        mOffset = offset;
+        mLength = length;
+    }
+
+    /**
+     * 归还到所属的缓冲池
+     */
+    public void recycle() {
+        if (mPool != null) {
+            mPool.release(this);
+        }
+    }
+}
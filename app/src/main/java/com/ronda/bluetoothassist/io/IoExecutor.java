@@ -0,0 +1,222 @@
+package com.ronda.bluetoothassist.io;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 所有连接共用的有界 IO 线程池：读循环和写队列的排空在这里执行，线程数不随设备数增长
+ * <p>
+ * 读循环会一直占用一个线程直到断开，用 {@link #executeLongRunning} 提交，
+ * 同时运行的读循环最多 maxThreads - 1 个，保证总有线程留给写这类短任务。
+ * 阻塞的连接尝试（RFCOMM connect() 可能阻塞几秒）用 {@link #executeConnect} 提交到单独的线程，
+ * 几个设备同时重连时也不会占满读写线程，已连接设备的写入、定时发送和轮询不受影响
+ */
+
+public class IoExecutor implements Executor {
+
+    public static final int DEFAULT_MAX_THREADS = 8;
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    public static final int DEFAULT_MAX_CONNECT_THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static IoExecutor sDefault;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final ThreadPoolExecutor mConnectExecutor;
+    private final int mMaxLongRunning;
+    private final AtomicInteger mLongRunning = new AtomicInteger();
+    private final AtomicLong mRejected = new AtomicLong();
+
+    /**
+     * 全局共享的实例，第一次调用时以默认大小创建
+     */
+    public static synchronized IoExecutor getDefault() {
+        if (sDefault == null) {
+            sDefault = new IoExecutor("BtIo", DEFAULT_MAX_THREADS, DEFAULT_QUEUE_CAPACITY);
+        }
+        return sDefault;
+    }
+
+    /**
+     * 在第一次使用 {@link #getDefault()} 之前调用（例如 Application.onCreate()），之后调用无效
+     *
+     * @return 是否设置成功
+     */
+    public static synchronized boolean initDefault(int maxThreads, int queueCapacity) {
+        if (sDefault != null) {
+            return false;
+        }
+        sDefault = new IoExecutor("BtIo", maxThreads, queueCapacity);
+        return true;
+    }
+
+    /**
+     * @param name          线程名前缀，线程名为 name-序号
+     * @param maxThreads    读写线程数上限，至少为 2
+     * @param queueCapacity 线程都忙时等待执行的任务数上限，超过后拒绝
+     */
+    public IoExecutor(String name, int maxThreads, int queueCapacity) {
+        this(name, maxThreads, DEFAULT_MAX_CONNECT_THREADS, queueCapacity);
+    }
+
+    /**
+     * @param maxConnectThreads 同时进行的连接尝试数上限，更多的连接尝试排队等待
+     */
+    public IoExecutor(String name, int maxThreads, int maxConnectThreads, int queueCapacity) {
+        if (maxThreads < 2 || maxConnectThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be >= 2 and maxConnectThreads >= 1: "
+                    + maxThreads + ", " + maxConnectThreads);
+        }
+        mMaxLongRunning = maxThreads - 1;
+        mExecutor = createPool(name, maxThreads, queueCapacity);
+        mConnectExecutor = createPool(name + "-connect", maxConnectThreads, queueCapacity);
+    }
+
+    private ThreadPoolExecutor createPool(final String name, int threads, int queueCapacity) {
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + mCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        RejectedExecutionHandler rejectHandler = new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                mRejected.incrementAndGet();
+                throw new RejectedExecutionException(name + " executor saturated");
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity), factory, rejectHandler);
+        executor.allowCoreThreadTimeOut(true); // 空闲时线程全部退出
+        return executor;
+    }
+
+    /**
+     * 执行一个短任务
+     *
+     * @throws RejectedExecutionException 队列已满或已经 shutdown()
+     */
+    @Override
+    public void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * 执行一次阻塞的连接尝试，在单独的线程中运行，不占用读写线程
+     *
+     * @throws RejectedExecutionException 排队的连接尝试已满或已经 shutdown()
+     */
+    public void executeConnect(Runnable task) {
+        mConnectExecutor.execute(task);
+    }
+
+    /**
+     * 执行一个会长时间占用线程的任务（读循环），执行期间线程改名为 name 以便调试
+     *
+     * @throws RejectedExecutionException 同时运行的长任务已达上限
+     */
+    public void executeLongRunning(final Runnable task, final String name) {
+        while (true) {
+            int running = mLongRunning.get();
+            if (running >= mMaxLongRunning) {
+                mRejected.incrementAndGet();
+                throw new RejectedExecutionException("too many long running tasks: " + running);
+            }
+            if (mLongRunning.compareAndSet(running, running + 1)) {
+                break;
+            }
+        }
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Thread thread = Thread.currentThread();
+                    String oldName = thread.getName();
+                    thread.setName(name);
+                    try {
+                        task.run();
+                    } finally {
+                        thread.setName(oldName);
+                        mLongRunning.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mLongRunning.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        mExecutor.shutdown();
+        mConnectExecutor.shutdown();
+    }
+
+    /**
+     * 当前的线程数
+     */
+    public int getPoolSize() {
+        return mExecutor.getPoolSize();
+    }
+
+    public int getLargestPoolSize() {
+        return mExecutor.getLargestPoolSize();
+    }
+
+    public int getMaxThreads() {
+        return mExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * 正在执行任务的线程数（近似值）
+     */
+    public int getActiveCount() {
+        return mExecutor.getActiveCount();
+    }
+
+    public int getLongRunningCount() {
+        return mLongRunning.get();
+    }
+
+    public int getQueueSize() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * 正在进行的连接尝试数（近似值）
+     */
+    public int getConnectingCount() {
+        return mConnectExecutor.getActiveCount();
+    }
+
+    public long getCompletedTaskCount() {
+        return mExecutor.getCompletedTaskCount();
+    }
+
+    public long getRejectedCount() {
+        return mRejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "IoExecutor{threads=" + getPoolSize() + "/" + getMaxThreads()
+                + ", active=" + getActiveCount()
+                + ", longRunning=" + getLongRunningCount()
+                + ", connecting=" + getConnectingCount()
+                + ", queued=" + getQueueSize()
+                + ", completed=" + getCompletedTaskCount()
+                + ", rejected=" + getRejectedCount() + "}";
+    }
+}
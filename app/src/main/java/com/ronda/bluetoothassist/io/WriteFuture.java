@@ -0,0 +1,206 @@
+package com.ronda.bluetoothassist.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一次异步写入的结果，get() 返回写入的字节数
+ * <p>
+ * 写入失败时 get() 抛出 ExecutionException，其 cause 是 IOException；
+ * 因队列已满被拒绝时 {@link #isRejected()} 为 true
+ */
+
+public class WriteFuture implements Future<Integer> {
+
+    public interface Listener {
+        /**
+         * 写入完成（成功、失败、被拒绝或被取消）时调用，调用所在的线程不确定，不要在这里做耗时操作
+         */
+        void onComplete(WriteFuture future);
+    }
+
+    private static final int PENDING = 0;
+    private static final int SUCCESS = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final AsyncWriter mWriter; // 负责执行这次写入的 AsyncWriter，用于取消
+    private final byte[] mData;
+    private final long mCreatedNanos = System.nanoTime();
+    private int mState = PENDING;
+    private boolean mRejected;
+    private IOException mCause;
+    private Listener mListener;
+    private ArrayList<Listener> mExtraListeners; // addListener() 添加的，大多数写入没有
+
+    WriteFuture(AsyncWriter writer, byte[] data) {
+        mWriter = writer;
+        mData = data;
+    }
+
+    /**
+     * 创建一个已经失败的结果，例如尚未连接时的写入
+     */
+    public static WriteFuture failed(byte[] data, IOException cause) {
+        WriteFuture future = new WriteFuture(null, data);
+        future.fail(cause);
+        return future;
+    }
+
+    /**
+     * 要写入的数据，写入完成之前调用者不能修改它
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * 创建时的 System.nanoTime()，用于统计从提交到写完的延迟
+     */
+    public long getCreatedNanos() {
+        return mCreatedNanos;
+    }
+
+    /**
+     * 设置完成时的回调，已经完成时立即在当前线程回调
+     */
+    public WriteFuture setListener(Listener listener) {
+        boolean done;
+        synchronized (this) {
+            mListener = listener;
+            done = mState != PENDING;
+        }
+        if (done && listener != null) {
+            listener.onComplete(this);
+        }
+        return this;
+    }
+
+    /**
+     * 在 {@link #setListener} 之外再加一个回调，不替换已有的回调，已经完成时立即在当前线程回调
+     */
+    public WriteFuture addListener(Listener listener) {
+        synchronized (this) {
+            if (mState == PENDING) {
+                if (mExtraListeners == null) {
+                    mExtraListeners = new ArrayList<Listener>(2);
+                }
+                mExtraListeners.add(listener);
+                return this;
+            }
+        }
+        listener.onComplete(this);
+        return this;
+    }
+
+    public synchronized boolean isSuccess() {
+        return mState == SUCCESS;
+    }
+
+    /**
+     * 是否因为写队列已满而被拒绝
+     */
+    public synchronized boolean isRejected() {
+        return mRejected;
+    }
+
+    public synchronized IOException getCause() {
+        return mCause;
+    }
+
+    /**
+     * 只有还在队列中、尚未开始写的请求才能取消
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return mWriter != null && mWriter.cancel(this);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public synchronized Integer get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized Integer get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    private Integer result() throws ExecutionException {
+        if (mState == CANCELLED) {
+            throw new CancellationException();
+        }
+        if (mState == FAILED) {
+            throw new ExecutionException(mCause);
+        }
+        return mData.length;
+    }
+
+    void succeed() {
+        complete(SUCCESS, null, false);
+    }
+
+    void fail(IOException cause) {
+        complete(FAILED, cause, false);
+    }
+
+    void reject(IOException cause) {
+        complete(FAILED, cause, true);
+    }
+
+    boolean markCancelled() {
+        return complete(CANCELLED, null, false);
+    }
+
+    private boolean complete(int state, IOException cause, boolean rejected) {
+        Listener listener;
+        ArrayList<Listener> extra;
+        synchronized (this) {
+            if (mState != PENDING) {
+                return false;
+            }
+            mState = state;
+            mCause = cause;
+            mRejected = rejected;
+            listener = mListener;
+            extra = mExtraListeners;
+            notifyAll();
+        }
+        if (listener != null) {
+            listener.onComplete(this);
+        }
+        if (extra != null) {
+            // 完成之后不会再往列表中添加，可以在锁外遍历
+            for (int i = 0; i < extra.size(); i++) {
+                extra.get(i).onComplete(this);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,154 @@
+package com.ronda.bluetoothassist.log;
+
+/**
+ * 读写线程等热点路径使用的日志门面
+ * <p>
+ * 关闭时每次调用只有一次 volatile 读和一次比较，不拼接字符串、不装箱、不复制数据；
+ * 打开时调用方只把格式串和参数放入 {@link LogRing}，{} 占位符的替换和输出都在后台日志线程中进行。
+ * 对象参数在日志线程中才 toString()，只应传不可变的值；数据块会被复制一份。
+ * 每次读写都会触发的日志再配合 {@link LogSampler} 采样
+ * <pre>
+ * if (BtLog.isLoggable(BtLog.DEBUG) && sampler.sample()) {
+ *     BtLog.data(BtLog.DEBUG, TAG, "read:{} ({} bytes)", buf, off, len);
+ * }
+ * </pre>
+ * 未调用 {@link #init} 时所有日志都被忽略
+ */
+
+public final class BtLog {
+
+    // 与 android.util.Log 的级别一致
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int OFF = Integer.MAX_VALUE;
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static volatile int sLevel = OFF;
+    private static volatile LogRing sRing;
+
+    private BtLog() {
+    }
+
+    /**
+     * 启动日志线程，重复调用时替换之前的设置
+     *
+     * @param level 低于它的日志被忽略，{@link #OFF} 时不启动日志线程
+     */
+    public static synchronized void init(int level, LogSink sink) {
+        init(level, sink, DEFAULT_CAPACITY);
+    }
+
+    public static synchronized void init(int level, LogSink sink, int capacity) {
+        LogRing old = sRing;
+        sLevel = OFF;
+        sRing = level == OFF ? null : new LogRing(capacity, sink);
+        sLevel = level;
+        if (old != null) {
+            old.stop();
+        }
+    }
+
+    /**
+     * 输出剩余日志并停止日志线程
+     */
+    public static synchronized void shutdown() {
+        init(OFF, null);
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= sLevel;
+    }
+
+    /**
+     * 因环满而丢弃的日志条数
+     */
+    public static long getDroppedCount() {
+        LogRing ring = sRing;
+        return ring == null ? 0 : ring.getDropped();
+    }
+
+    public static void d(String tag, String message) {
+        if (DEBUG >= sLevel) {
+            offer(DEBUG, tag, message, 0, null, null);
+        }
+    }
+
+    public static void d(String tag, String format, Object a) {
+        if (DEBUG >= sLevel) {
+            offer(DEBUG, tag, format, 1, a, null);
+        }
+    }
+
+    public static void d(String tag, String format, Object a, Object b) {
+        if (DEBUG >= sLevel) {
+            offer(DEBUG, tag, format, 2, a, b);
+        }
+    }
+
+    public static void d(String tag, String format, long a) {
+        if (DEBUG >= sLevel) {
+            offer(DEBUG, tag, format, 1, a, 0, 0);
+        }
+    }
+
+    public static void d(String tag, String format, long a, long b) {
+        if (DEBUG >= sLevel) {
+            offer(DEBUG, tag, format, 2, a, b, 0);
+        }
+    }
+
+    public static void w(String tag, String format, Object a) {
+        if (WARN >= sLevel) {
+            offer(WARN, tag, format, 1, a, null);
+        }
+    }
+
+    public static void e(String tag, String format, Object a) {
+        if (ERROR >= sLevel) {
+            offer(ERROR, tag, format, 1, a, null);
+        }
+    }
+
+    public static void log(int level, String tag, String format, Object a, Object b) {
+        if (level >= sLevel) {
+            offer(level, tag, format, 2, a, b);
+        }
+    }
+
+    public static void log(int level, String tag, String format, long a, long b, long c) {
+        if (level >= sLevel) {
+            offer(level, tag, format, 3, a, b, c);
+        }
+    }
+
+    private static void offer(int level, String tag, String format, int argCount, Object a, Object b) {
+        LogRing ring = sRing;
+        if (ring != null) {
+            ring.offer(level, tag, format, argCount, a, b);
+        }
+    }
+
+    private static void offer(int level, String tag, String format, int argCount, long a, long b, long c) {
+        LogRing ring = sRing;
+        if (ring != null) {
+            ring.offer(level, tag, format, argCount, a, b, c);
+        }
+    }
+
+    /**
+     * 记录一段数据：format 中第一个 {} 为数据的文本（最多 64 字节），第二个 {} 为数据长度
+     */
+    public static void data(int level, String tag, String format, byte[] buf, int offset, int length) {
+        if (level < sLevel) {
+            return;
+        }
+        LogRing ring = sRing;
+        if (ring != null) {
+            ring.offerPayload(level, tag, format, buf, offset, length, length);
+        }
+    }
+}
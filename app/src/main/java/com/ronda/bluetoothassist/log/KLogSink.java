@@ -0,0 +1,31 @@
+package com.ronda.bluetoothassist.log;
+
+import com.socks.library.KLog;
+
+/**
+ * 输出到 KLog，和 App 其他地方的日志保持同一个格式和开关
+ */
+
+public class KLogSink implements LogSink {
+
+    @Override
+    public void println(int level, String tag, String message) {
+        switch (level) {
+            case BtLog.VERBOSE:
+                KLog.v(tag, message);
+                break;
+            case BtLog.DEBUG:
+                KLog.d(tag, message);
+                break;
+            case BtLog.INFO:
+                KLog.i(tag, message);
+                break;
+            case BtLog.WARN:
+                KLog.w(tag, message);
+                break;
+            default:
+                KLog.e(tag, message);
+                break;
+        }
+    }
+}
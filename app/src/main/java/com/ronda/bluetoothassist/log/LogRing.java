@@ -0,0 +1,270 @@
+package com.ronda.bluetoothassist.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步日志的环形缓冲区：任意线程写入预先分配好的槽位，一个后台线程负责格式化和输出
+ * <p>
+ * 写入方不加锁（CAS 抢占槽位，写完后发布序号），也不唤醒后台线程，后台线程没有数据时每隔
+ * {@link #IDLE_PARK_MS} 检查一次。环满时新日志直接丢弃并计数，读写线程永远不会因为日志而等待
+ */
+
+class LogRing {
+
+    static final int MAX_ARGS = 3;
+    static final int MAX_PAYLOAD = 64; // 每条日志最多附带的数据字节数，超出部分只记录长度
+    private static final long IDLE_PARK_MS = 20;
+
+    private static final int KIND_NONE = 0;
+    private static final int KIND_OBJECT = 1;
+    private static final int KIND_LONG = 2;
+    private static final int KIND_PAYLOAD = 3;
+
+    /**
+     * 一个预分配的日志槽位，内容由抢到它的写入方填写
+     */
+    private static final class Slot {
+        int level;
+        String tag;
+        String format;
+        int argCount;
+        final int[] kinds = new int[MAX_ARGS];
+        final Object[] objects = new Object[MAX_ARGS];
+        final long[] longs = new long[MAX_ARGS];
+        final byte[] payload = new byte[MAX_PAYLOAD];
+        int payloadLength;     // 实际复制的字节数
+        int payloadFullLength; // 原始长度
+    }
+
+    private final Slot[] mSlots;
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+    private final AtomicLong mTail = new AtomicLong();
+    private long mHead; // 只在后台线程中访问
+    private final AtomicLong mDropped = new AtomicLong();
+    private final LogSink mSink;
+    private final StringBuilder mBuilder = new StringBuilder(256);
+    private final Thread mThread;
+    private volatile boolean mStopped;
+
+    /**
+     * @param capacity 槽位数，必须是 2 的幂
+     */
+    LogRing(int capacity, LogSink sink) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+        }
+        mSlots = new Slot[capacity];
+        mSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            mSlots[i] = new Slot();
+            mSequences.set(i, i);
+        }
+        mMask = capacity - 1;
+        mSink = sink;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "BtLog");
+        mThread.setDaemon(true);
+        mThread.setPriority(Thread.MIN_PRIORITY);
+        mThread.start();
+    }
+
+    /**
+     * 抢占一个槽位
+     *
+     * @return 槽位序号，环满时为 -1
+     */
+    private long claim() {
+        while (true) {
+            long tail = mTail.get();
+            long diff = mSequences.get((int) tail & mMask) - tail;
+            if (diff == 0) {
+                if (mTail.compareAndSet(tail, tail + 1)) {
+                    return tail;
+                }
+            } else if (diff < 0) {
+                mDropped.incrementAndGet();
+                return -1;
+            }
+            // diff > 0：别的线程刚抢走了这个位置，重试
+        }
+    }
+
+    private void publish(long position) {
+        mSequences.lazySet((int) position & mMask, position + 1);
+    }
+
+    /**
+     * @param argCount 实际传入的参数个数，多余的 {} 原样输出
+     */
+    boolean offer(int level, String tag, String format, int argCount, Object a, Object b) {
+        long position = claim();
+        if (position < 0) {
+            return false;
+        }
+        Slot slot = mSlots[(int) position & mMask];
+        begin(slot, level, tag, format);
+        slot.argCount = argCount;
+        slot.kinds[0] = KIND_OBJECT;
+        slot.objects[0] = a;
+        slot.kinds[1] = KIND_OBJECT;
+        slot.objects[1] = b;
+        publish(position);
+        return true;
+    }
+
+    boolean offer(int level, String tag, String format, int argCount, long a, long b, long c) {
+        long position = claim();
+        if (position < 0) {
+            return false;
+        }
+        Slot slot = mSlots[(int) position & mMask];
+        begin(slot, level, tag, format);
+        slot.argCount = argCount;
+        slot.kinds[0] = KIND_LONG;
+        slot.longs[0] = a;
+        slot.kinds[1] = KIND_LONG;
+        slot.longs[1] = b;
+        slot.kinds[2] = KIND_LONG;
+        slot.longs[2] = c;
+        publish(position);
+        return true;
+    }
+
+    /**
+     * 第一个参数为数据（复制最多 {@link #MAX_PAYLOAD} 字节，按文本输出），第二个参数为 long
+     */
+    boolean offerPayload(int level, String tag, String format, byte[] buf, int offset, int length, long extra) {
+        long position = claim();
+        if (position < 0) {
+            return false;
+        }
+        Slot slot = mSlots[(int) position & mMask];
+        begin(slot, level, tag, format);
+        int copy = Math.min(length, MAX_PAYLOAD);
+        System.arraycopy(buf, offset, slot.payload, 0, copy);
+        slot.payloadLength = copy;
+        slot.payloadFullLength = length;
+        slot.argCount = 2;
+        slot.kinds[0] = KIND_PAYLOAD;
+        slot.kinds[1] = KIND_LONG;
+        slot.longs[1] = extra;
+        publish(position);
+        return true;
+    }
+
+    private static void begin(Slot slot, int level, String tag, String format) {
+        slot.level = level;
+        slot.tag = tag;
+        slot.format = format;
+    }
+
+    long getDropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * 输出剩余日志后停止后台线程
+     */
+    void stop() {
+        mStopped = true;
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            boolean drained = drain();
+            if (mStopped) {
+                drain();
+                return;
+            }
+            if (!drained) {
+                LockSupport.parkNanos(IDLE_PARK_MS * 1000000L);
+            }
+        }
+    }
+
+    /**
+     * 输出所有已发布的日志
+     *
+     * @return 是否输出了至少一条
+     */
+    private boolean drain() {
+        boolean any = false;
+        while (true) {
+            long head = mHead;
+            int index = (int) head & mMask;
+            if (mSequences.get(index) != head + 1) {
+                return any;
+            }
+            Slot slot = mSlots[index];
+            String message = format(slot);
+            int level = slot.level;
+            String tag = slot.tag;
+            slot.tag = null;
+            slot.format = null;
+            for (int i = 0; i < MAX_ARGS; i++) {
+                slot.objects[i] = null;
+            }
+            mSequences.lazySet(index, head + mSlots.length); // 归还槽位
+            mHead = head + 1;
+            mSink.println(level, tag, message);
+            any = true;
+        }
+    }
+
+    /**
+     * 把 format 中的 {} 依次替换为参数
+     */
+    private String format(Slot slot) {
+        StringBuilder sb = mBuilder;
+        sb.setLength(0);
+        String format = slot.format;
+        int arg = 0;
+        int start = 0;
+        int brace;
+        while ((brace = format.indexOf("{}", start)) >= 0) {
+            sb.append(format, start, brace);
+            if (arg < slot.argCount) {
+                appendArg(sb, slot, arg++);
+            } else {
+                sb.append("{}");
+            }
+            start = brace + 2;
+        }
+        sb.append(format, start, format.length());
+        return sb.toString();
+    }
+
+    private static void appendArg(StringBuilder sb, Slot slot, int i) {
+        switch (slot.kinds[i]) {
+            case KIND_LONG:
+                sb.append(slot.longs[i]);
+                break;
+            case KIND_PAYLOAD:
+                for (int j = 0; j < slot.payloadLength; j++) {
+                    sb.append((char) (slot.payload[j] & 0xFF));
+                }
+                if (slot.payloadFullLength > slot.payloadLength) {
+                    sb.append("...(+").append(slot.payloadFullLength - slot.payloadLength).append(')');
+                }
+                break;
+            case KIND_OBJECT:
+                sb.append(slot.objects[i]);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.ronda.bluetoothassist.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 高频事件（每读到一块数据、每次写）的采样：每 N 次只放行一次
+ * <p>
+ * 放行时 {@link #getSkipped()} 可以告诉日志中间省略了多少次
+ */
+
+public class LogSampler {
+
+    private final int mEvery;
+    private final AtomicLong mCount = new AtomicLong();
+
+    /**
+     * @param every 每多少次放行一次，1 表示全部放行
+     */
+    public LogSampler(int every) {
+        if (every < 1) {
+            throw new IllegalArgumentException("every < 1: " + every);
+        }
+        mEvery = every;
+    }
+
+    /**
+     * 第 1、N+1、2N+1 ... 次调用返回 true
+     */
+    public boolean sample() {
+        return mEvery == 1 || mCount.getAndIncrement() % mEvery == 0;
+    }
+
+    /**
+     * 两次放行之间省略的事件数
+     */
+    public int getSkipped() {
+        return mEvery - 1;
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+}
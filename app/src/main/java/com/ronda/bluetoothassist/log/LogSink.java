@@ -0,0 +1,9 @@
+package com.ronda.bluetoothassist.log;
+
+/**
+ * 日志的最终输出，只在日志线程中调用
+ */
+
+public interface LogSink {
+    void println(int level, String tag, String message);
+}
@@ -0,0 +1,133 @@
+package com.ronda.bluetoothassist.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一条链路（一个会话）的收发计数和延迟分布
+ * <p>
+ * 各个 on*() 由读线程、写线程、连接线程和 UI 线程分别调用，都是无锁的原子操作；
+ * {@link #snapshot()} 可以在任意线程调用。时间一律用 System.nanoTime() 的差值，记录时换算成直方图的单位
+ */
+
+public class LinkMetrics {
+
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicLong mFramesReceived = new AtomicLong();
+    private final AtomicLong mReads = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private final AtomicLong mWritesSent = new AtomicLong();
+    private final AtomicLong mWriteFailures = new AtomicLong();
+    private final AtomicLong mUiDroppedBytes = new AtomicLong();
+    private final AtomicLong mConnectCount = new AtomicLong();
+    private volatile long mLastReconnectMs;
+
+    private final Histogram mReadSize = new Histogram();        // 字节
+    private final Histogram mDispatchDelay = new Histogram();   // 微秒
+    private final Histogram mWriteLatency = new Histogram();    // 微秒
+    private final Histogram mConnectLatency = new Histogram();  // 毫秒
+    private final Histogram mReconnectTime = new Histogram();   // 毫秒
+
+    /**
+     * 读线程中一次 read() 返回了 length 字节
+     */
+    public void onRead(int length) {
+        mReads.incrementAndGet();
+        mReadSize.record(length);
+    }
+
+    /**
+     * 一帧（不分帧时为一块数据）进入了交给 UI 的路径
+     */
+    public void onFrameReceived(int length) {
+        mBytesReceived.addAndGet(length);
+        mFramesReceived.incrementAndGet();
+    }
+
+    /**
+     * UI 线程开始处理一条数据消息，delayNanos 为它从读线程发出到被处理所等待的时间
+     */
+    public void onDispatched(long delayNanos) {
+        mDispatchDelay.record(delayNanos / 1000);
+    }
+
+    /**
+     * UI 来不及处理，合并器丢弃了 length 字节
+     */
+    public void onUiDropped(int length) {
+        mUiDroppedBytes.addAndGet(length);
+    }
+
+    public void onWriteSucceeded(int length, long latencyNanos) {
+        mBytesSent.addAndGet(length);
+        mWritesSent.incrementAndGet();
+        mWriteLatency.record(latencyNanos / 1000);
+    }
+
+    public void onWriteFailed() {
+        mWriteFailures.incrementAndGet();
+    }
+
+    /**
+     * 一次连接尝试成功，latencyNanos 为这次尝试从开始到连上的时间
+     */
+    public void onConnected(long latencyNanos) {
+        mConnectCount.incrementAndGet();
+        mConnectLatency.record(latencyNanos / 1000000);
+    }
+
+    /**
+     * 断线后重新连上，elapsedMs 为从断开到连上的时间
+     */
+    public void onReconnected(long elapsedMs) {
+        mLastReconnectMs = elapsedMs;
+        mReconnectTime.record(elapsedMs);
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    public long getFramesReceived() {
+        return mFramesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    public long getWritesSent() {
+        return mWritesSent.get();
+    }
+
+    public long getConnectCount() {
+        return mConnectCount.get();
+    }
+
+    public long getReconnectCount() {
+        return mReconnectTime.getCount();
+    }
+
+    public long getLastReconnectMs() {
+        return mLastReconnectMs;
+    }
+
+    public MetricsSnapshot snapshot() {
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        snapshot.mTimeNanos = System.nanoTime();
+        snapshot.mBytesReceived = mBytesReceived.get();
+        snapshot.mFramesReceived = mFramesReceived.get();
+        snapshot.mReads = mReads.get();
+        snapshot.mBytesSent = mBytesSent.get();
+        snapshot.mWritesSent = mWritesSent.get();
+        snapshot.mWriteFailures = mWriteFailures.get();
+        snapshot.mUiDroppedBytes = mUiDroppedBytes.get();
+        snapshot.mConnectCount = mConnectCount.get();
+        snapshot.mLastReconnectMs = mLastReconnectMs;
+        snapshot.mReadSize = mReadSize.snapshot();
+        snapshot.mDispatchDelay = mDispatchDelay.snapshot();
+        snapshot.mWriteLatency = mWriteLatency.snapshot();
+        snapshot.mConnectLatency = mConnectLatency.snapshot();
+        snapshot.mReconnectTime = mReconnectTime.snapshot();
+        return snapshot;
+    }
+}
@@ -0,0 +1,172 @@
+package com.ronda.bluetoothassist.metrics;
+
+import java.util.Locale;
+
+/**
+ * {@link LinkMetrics} 在某一时刻的只读副本
+ * <p>
+ * 计数都是累计值，吞吐量通过与上一个快照相减得到，见 {@link #format(MetricsSnapshot)}。
+ * 延迟分布的单位：读线程到 UI 的等待和写延迟为微秒，连接和重连为毫秒
+ */
+
+public class MetricsSnapshot {
+
+    long mTimeNanos;
+    long mBytesReceived;
+    long mFramesReceived;
+    long mReads;
+    long mBytesSent;
+    long mWritesSent;
+    long mWriteFailures;
+    long mUiDroppedBytes;
+    long mConnectCount;
+    long mLastReconnectMs;
+    Histogram.Snapshot mReadSize;
+    Histogram.Snapshot mDispatchDelay;
+    Histogram.Snapshot mWriteLatency;
+    Histogram.Snapshot mConnectLatency;
+    Histogram.Snapshot mReconnectTime;
+
+    MetricsSnapshot() {
+    }
+
+    /**
+     * 生成快照时的 System.nanoTime()
+     */
+    public long getTimeNanos() {
+        return mTimeNanos;
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    /**
+     * 交给 UI 的帧数（不分帧时为数据块数）
+     */
+    public long getFramesReceived() {
+        return mFramesReceived;
+    }
+
+    /**
+     * 读线程 read() 返回数据的次数
+     */
+    public long getReads() {
+        return mReads;
+    }
+
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public long getWritesSent() {
+        return mWritesSent;
+    }
+
+    /**
+     * 写入失败或因队列已满被拒绝的次数
+     */
+    public long getWriteFailures() {
+        return mWriteFailures;
+    }
+
+    /**
+     * UI 来不及处理而被丢弃的字节数，不为 0 说明瓶颈在 UI 而不是蓝牙
+     */
+    public long getUiDroppedBytes() {
+        return mUiDroppedBytes;
+    }
+
+    public long getConnectCount() {
+        return mConnectCount;
+    }
+
+    public long getReconnectCount() {
+        return mReconnectTime.getCount();
+    }
+
+    public long getLastReconnectMs() {
+        return mLastReconnectMs;
+    }
+
+    /**
+     * 每次 read() 得到的字节数
+     */
+    public Histogram.Snapshot getReadSize() {
+        return mReadSize;
+    }
+
+    /**
+     * 数据从读线程发出到 UI 开始处理的等待时间（微秒）。合并模式下包含合并等待的时间
+     */
+    public Histogram.Snapshot getDispatchDelay() {
+        return mDispatchDelay;
+    }
+
+    /**
+     * 从调用 write() 到写入 socket 完成的时间（微秒）
+     */
+    public Histogram.Snapshot getWriteLatency() {
+        return mWriteLatency;
+    }
+
+    /**
+     * 每次成功连接所用的时间（毫秒）
+     */
+    public Histogram.Snapshot getConnectLatency() {
+        return mConnectLatency;
+    }
+
+    /**
+     * 每次断线到重新连上的时间（毫秒）
+     */
+    public Histogram.Snapshot getReconnectTime() {
+        return mReconnectTime;
+    }
+
+    /**
+     * 相对于 previous 的接收速率（字节/秒），无法计算时返回 0
+     */
+    public double getReceiveBytesPerSecond(MetricsSnapshot previous) {
+        return rate(previous == null ? 0 : mBytesReceived - previous.mBytesReceived, previous);
+    }
+
+    public double getSendBytesPerSecond(MetricsSnapshot previous) {
+        return rate(previous == null ? 0 : mBytesSent - previous.mBytesSent, previous);
+    }
+
+    private double rate(long delta, MetricsSnapshot previous) {
+        if (previous == null || delta < 0 || mTimeNanos <= previous.mTimeNanos) {
+            return 0; // 没有上一次快照，或者中间换了会话
+        }
+        return delta * 1e9 / (mTimeNanos - previous.mTimeNanos);
+    }
+
+    /**
+     * 几行适合显示在屏幕上的摘要，previous 不为 null 时带上这段时间内的速率
+     */
+    public String format(MetricsSnapshot previous) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(String.format(Locale.US, "rx %.1f KB/s  %d B  %d reads  %d frames\n",
+                getReceiveBytesPerSecond(previous) / 1024, mBytesReceived, mReads, mFramesReceived));
+        sb.append(String.format(Locale.US, "tx %.1f KB/s  %d B  %d writes  %d failed\n",
+                getSendBytesPerSecond(previous) / 1024, mBytesSent, mWritesSent, mWriteFailures));
+        sb.append(String.format(Locale.US, "read size  p50 %d  p99 %d  max %d B\n",
+                mReadSize.getPercentile(0.5), mReadSize.getPercentile(0.99), mReadSize.getMax()));
+        sb.append(String.format(Locale.US, "to UI      p50 %.1f  p99 %.1f  max %.1f ms  dropped %d B\n",
+                mDispatchDelay.getPercentile(0.5) / 1000.0, mDispatchDelay.getPercentile(0.99) / 1000.0,
+                mDispatchDelay.getMax() / 1000.0, mUiDroppedBytes));
+        sb.append(String.format(Locale.US, "write      p50 %.1f  p99 %.1f  max %.1f ms\n",
+                mWriteLatency.getPercentile(0.5) / 1000.0, mWriteLatency.getPercentile(0.99) / 1000.0,
+                mWriteLatency.getMax() / 1000.0));
+        sb.append(String.format(Locale.US, "connect x%d  avg %.0f ms  reconnect x%d  last %d  max %d ms",
+                mConnectCount, mConnectLatency.getMean(), getReconnectCount(), mLastReconnectMs,
+                mReconnectTime.getMax()));
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return format(null);
+    }
+}
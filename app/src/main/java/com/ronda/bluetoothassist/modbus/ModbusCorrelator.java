@@ -0,0 +1,30 @@
+package com.ronda.bluetoothassist.modbus;
+
+import com.ronda.bluetoothassist.command.Correlator;
+
+/**
+ * 按从站地址和功能码配对，异常应答（功能码最高位为 1）也能配对到原来的请求。
+ * 应答中没有能区分同一从站同一功能码的两个请求的信息，调用者要保证同一从站同一功能码同时只有一个在途请求，
+ * 并且超时后等一段时间再发下一个，否则迟到的应答会被配对给后面的请求（{@link ModbusPoller} 按这个规则发送）
+ */
+
+public class ModbusCorrelator implements Correlator {
+
+    @Override
+    public byte[] stamp(byte[] request, int sequence) {
+        if (request.length < 4) {
+            throw new IllegalArgumentException("not a modbus frame");
+        }
+        return request;
+    }
+
+    @Override
+    public long requestKey(byte[] stamped) {
+        return ((stamped[0] & 0xFF) << 8) | (stamped[1] & 0x7F);
+    }
+
+    @Override
+    public long responseKey(byte[] buf, int offset, int length) {
+        return length < 4 ? NO_KEY : ((buf[offset] & 0xFF) << 8) | (buf[offset + 1] & 0x7F);
+    }
+}
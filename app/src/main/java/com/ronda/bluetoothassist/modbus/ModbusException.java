@@ -0,0 +1,31 @@
+package com.ronda.bluetoothassist.modbus;
+
+import java.io.IOException;
+
+/**
+ * 从站返回的异常应答，或者格式不对的应答
+ */
+
+public class ModbusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int ILLEGAL_FUNCTION = 0x01;
+    public static final int ILLEGAL_DATA_ADDRESS = 0x02;
+    public static final int ILLEGAL_DATA_VALUE = 0x03;
+    public static final int SLAVE_DEVICE_FAILURE = 0x04;
+
+    private final int mExceptionCode;
+
+    /**
+     * @param exceptionCode 从站返回的异常码，应答格式不对时为 0
+     */
+    public ModbusException(String message, int exceptionCode) {
+        super(message);
+        mExceptionCode = exceptionCode;
+    }
+
+    public int getExceptionCode() {
+        return mExceptionCode;
+    }
+}
@@ -0,0 +1,53 @@
+package com.ronda.bluetoothassist.modbus;
+
+import com.ronda.bluetoothassist.frame.FrameDecoder;
+import com.ronda.bluetoothassist.frame.FrameSink;
+
+/**
+ * 主站一侧的 Modbus RTU 应答分帧
+ * <p>
+ * 经过蓝牙串口后帧间的静默间隔已经不存在，只能按功能码和字节数字段算出帧长，再用 CRC 确认。
+ * 功能码不认识或 CRC 错误时丢弃一个字节重新同步，所以输出的帧都已经通过 CRC 校验（含 CRC）
+ */
+
+public class ModbusFrameDecoder extends FrameDecoder {
+
+    private final byte[] mHeader = new byte[3];
+    private final byte[] mCandidate = new byte[ModbusRtu.MAX_FRAME_LENGTH];
+    private long mCrcErrors;
+
+    public ModbusFrameDecoder() {
+        super(ModbusRtu.MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * 因 CRC 错误而重新同步的次数
+     */
+    public long getCrcErrors() {
+        return mCrcErrors;
+    }
+
+    @Override
+    protected boolean decodeFrame(FrameSink sink) {
+        int size = mBuffer.size();
+        int headerLength = Math.min(size, mHeader.length);
+        mBuffer.copyTo(0, mHeader, 0, headerLength);
+        int length = ModbusRtu.responseLength(mHeader, 0, headerLength);
+        if (length == 0 || (length > 0 && size < length)) {
+            return false;
+        }
+        if (length < 0 || length > ModbusRtu.MAX_FRAME_LENGTH) {
+            discard(1);
+            return true;
+        }
+        mBuffer.copyTo(0, mCandidate, 0, length);
+        if (!ModbusRtu.checkCrc(mCandidate, 0, length)) {
+            mCrcErrors++;
+            discard(1);
+            return true;
+        }
+        emit(0, length, sink);
+        mBuffer.skip(length);
+        return true;
+    }
+}
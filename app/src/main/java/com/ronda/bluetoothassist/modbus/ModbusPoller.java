@@ -0,0 +1,499 @@
+package com.ronda.bluetoothassist.modbus;
+
+import com.ronda.bluetoothassist.command.CommandChannel;
+import com.ronda.bluetoothassist.command.CommandFuture;
+import com.ronda.bluetoothassist.log.BtLog;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量轮询寄存器
+ * <p>
+ * 调用者用 {@link #addRange} 登记关心的寄存器段，{@link #start} 时按从站和功能码分组、按地址排序，
+ * 相邻（或间隔不超过 maxGap）的段合并成尽量少的读请求，每个请求不超过 125 个寄存器。
+ * <p>
+ * 每个合并后的请求独立循环：period 为 0 时收到应答立即再发，否则按固定周期发送。
+ * 应答只能按从站和功能码配对，同一从站同一功能码的请求排在一条 {@link Lane} 上，同时只有一个在途；
+ * 不同的从站或功能码同时交给 {@link CommandChannel}，由它的在途上限控制流水线深度，
+ * 一个请求的应答还在路上时其它请求已经发出，吞吐量不受一个来回的延迟限制。
+ * 出错（超时、异常应答、连接断开）的请求等待 {@link #ERROR_RETRY_MS} 后重试；
+ * 超时后所在的 Lane 也空闲这么久，迟到的应答因为配对不到请求而被丢弃，不会被当成下一个请求的应答
+ */
+
+public class ModbusPoller {
+
+    public static final String TAG = ModbusPoller.class.getSimpleName();
+    public static final long ERROR_RETRY_MS = 500;
+
+    public interface Listener {
+        /**
+         * 一段寄存器读到了新的值，在读线程中调用，不要在这里做耗时操作
+         */
+        void onUpdated(ModbusPoller poller, Range range);
+
+        /**
+         * 读一段寄存器失败，在读线程、写线程或定时器线程中调用
+         */
+        void onError(ModbusPoller poller, Range range, IOException cause);
+    }
+
+    /**
+     * 调用者登记的一段寄存器，保存最近一次读到的值
+     */
+    public static class Range {
+        private final int mSlave;
+        private final int mFunction;
+        private final int mAddress;
+        private final int mCount;
+        private final int[] mValues; // 由 this 保护
+        private long mUpdatedNanos;   // 由 this 保护，没有读到过时为 0
+        private long mUpdates;
+
+        Range(int slave, int function, int address, int count) {
+            mSlave = slave;
+            mFunction = function;
+            mAddress = address;
+            mCount = count;
+            mValues = new int[count];
+        }
+
+        public int getSlave() {
+            return mSlave;
+        }
+
+        public int getFunction() {
+            return mFunction;
+        }
+
+        public int getAddress() {
+            return mAddress;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @param register 寄存器地址
+         * @return 0..65535
+         */
+        public synchronized int getValue(int register) {
+            return mValues[register - mAddress];
+        }
+
+        /**
+         * 把全部值复制到 dst，返回更新时刻（System.nanoTime()），没有读到过时为 0
+         */
+        public synchronized long copyValues(int[] dst, int dstOffset) {
+            System.arraycopy(mValues, 0, dst, dstOffset, mCount);
+            return mUpdatedNanos;
+        }
+
+        public synchronized long getUpdates() {
+            return mUpdates;
+        }
+
+        synchronized void update(int[] src, int srcOffset, int dstOffset, int length, long nowNanos) {
+            System.arraycopy(src, srcOffset, mValues, dstOffset, length);
+            mUpdatedNanos = nowNanos;
+            mUpdates++;
+        }
+
+        int end() {
+            return mAddress + mCount;
+        }
+    }
+
+    private final CommandChannel mChannel;
+    private final ScheduledExecutorService mTimer;
+    private final long mTimeoutMs;
+    private final List<Range> mRanges = new ArrayList<Range>(); // 由 this 保护
+    private int mMaxGap;
+    private volatile Listener mListener;
+
+    private volatile boolean mRunning;
+    private long mPeriodNanos;
+    private Request[] mPlan = new Request[0];
+    private long mStartNanos;
+
+    private final AtomicLong mResponses = new AtomicLong();
+    private final AtomicLong mErrors = new AtomicLong();
+    private final AtomicLong mRegisters = new AtomicLong();
+
+    /**
+     * @param channel   使用 {@link ModbusCorrelator} 的通道，会话应使用 {@link ModbusFrameDecoder} 分帧
+     * @param timer     周期发送和出错重试用的定时器
+     * @param timeoutMs 每个请求等待应答的时间
+     */
+    public ModbusPoller(CommandChannel channel, ScheduledExecutorService timer, long timeoutMs) {
+        mChannel = channel;
+        mTimer = timer;
+        mTimeoutMs = timeoutMs;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 两段寄存器之间最多隔着几个不需要的寄存器仍然合并成一个请求。
+     * 多读几个寄存器比多一个请求便宜，但有的从站读到不存在的地址会返回异常，默认为 0
+     */
+    public synchronized void setMaxGap(int maxGap) {
+        checkStopped();
+        mMaxGap = Math.max(0, maxGap);
+    }
+
+    /**
+     * 登记一段要轮询的寄存器
+     *
+     * @param function {@link ModbusRtu#FC_READ_HOLDING_REGISTERS} 或 {@link ModbusRtu#FC_READ_INPUT_REGISTERS}
+     */
+    public synchronized Range addRange(int slave, int function, int address, int count) {
+        checkStopped();
+        if (function != ModbusRtu.FC_READ_HOLDING_REGISTERS && function != ModbusRtu.FC_READ_INPUT_REGISTERS) {
+            throw new IllegalArgumentException("not a read function: " + function);
+        }
+        if (count < 1 || address < 0 || address + count > 0x10000) {
+            throw new IllegalArgumentException("register out of range: " + address + "+" + count);
+        }
+        Range range = new Range(slave, function, address, count);
+        mRanges.add(range);
+        return range;
+    }
+
+    public synchronized List<Range> getRanges() {
+        return new ArrayList<Range>(mRanges);
+    }
+
+    /**
+     * 开始轮询
+     *
+     * @param periodMs 每个请求的发送周期，0 表示收到应答后立即再发
+     */
+    public synchronized void start(long periodMs) {
+        checkStopped();
+        mPeriodNanos = TimeUnit.MILLISECONDS.toNanos(periodMs);
+        mPlan = plan(mRanges, mMaxGap);
+        mStartNanos = System.nanoTime();
+        mResponses.set(0);
+        mErrors.set(0);
+        mRegisters.set(0);
+        mRunning = true;
+        BtLog.d(TAG, "polling {} ranges with {} requests", mRanges.size(), mPlan.length);
+        for (Request request : mPlan) {
+            request.mPoller = this;
+            request.mActive = true;
+            request.mNextNanos = mStartNanos;
+        }
+        for (Request request : mPlan) {
+            request.mLane.send(request);
+        }
+    }
+
+    /**
+     * 停止轮询，已经发出的请求被取消
+     */
+    public void stop() {
+        Request[] plan;
+        synchronized (this) {
+            mRunning = false;
+            plan = mPlan;
+        }
+        for (Request request : plan) {
+            request.mActive = false;
+            CommandFuture future = request.mFuture;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * 合并后实际发送的请求数
+     */
+    public synchronized int getRequestCount() {
+        return mPlan.length;
+    }
+
+    /**
+     * 收到正常应答的次数
+     */
+    public long getResponses() {
+        return mResponses.get();
+    }
+
+    public long getErrors() {
+        return mErrors.get();
+    }
+
+    /**
+     * 从 start() 开始读到的寄存器数，不含合并时顺带读到的无用寄存器
+     */
+    public long getRegisters() {
+        return mRegisters.get();
+    }
+
+    /**
+     * 从 start() 开始平均每秒读到的寄存器数
+     */
+    public double getRegistersPerSecond() {
+        long elapsed;
+        synchronized (this) {
+            elapsed = System.nanoTime() - mStartNanos;
+        }
+        return elapsed <= 0 ? 0 : mRegisters.get() * 1e9 / elapsed;
+    }
+
+    private void checkStopped() {
+        if (mRunning) {
+            throw new IllegalStateException("poller is running");
+        }
+    }
+
+    /**
+     * 按从站和功能码分组，组内按地址排序后把相邻的段合并，再按每个请求最多 125 个寄存器切开。
+     * 同一组的请求共用一个 {@link Lane}
+     */
+    static Request[] plan(List<Range> ranges, int maxGap) {
+        List<Range> sorted = new ArrayList<Range>(ranges);
+        Collections.sort(sorted, new Comparator<Range>() {
+            @Override
+            public int compare(Range a, Range b) {
+                if (a.mSlave != b.mSlave) {
+                    return a.mSlave < b.mSlave ? -1 : 1;
+                }
+                if (a.mFunction != b.mFunction) {
+                    return a.mFunction < b.mFunction ? -1 : 1;
+                }
+                return a.mAddress < b.mAddress ? -1 : (a.mAddress == b.mAddress ? 0 : 1);
+            }
+        });
+        List<Request> requests = new ArrayList<Request>();
+        Lane lane = null;
+        int i = 0;
+        while (i < sorted.size()) {
+            // 找出一个连续的区间 [start, end) 及其覆盖的段 [i, j)
+            Range first = sorted.get(i);
+            int start = first.mAddress;
+            int end = first.end();
+            int j = i + 1;
+            while (j < sorted.size()) {
+                Range next = sorted.get(j);
+                if (next.mSlave != first.mSlave || next.mFunction != first.mFunction || next.mAddress > end + maxGap) {
+                    break;
+                }
+                end = Math.max(end, next.end());
+                j++;
+            }
+            List<Range> covered = sorted.subList(i, j);
+            if (i == 0 || sorted.get(i - 1).mSlave != first.mSlave || sorted.get(i - 1).mFunction != first.mFunction) {
+                lane = new Lane();
+            }
+            for (int chunk = start; chunk < end; chunk += ModbusRtu.MAX_READ_REGISTERS) {
+                int count = Math.min(ModbusRtu.MAX_READ_REGISTERS, end - chunk);
+                Request request = new Request(first.mSlave, first.mFunction, chunk, count, covered, lane);
+                if (request.mSegments.length > 0) {
+                    requests.add(request); // 切开的一块可能正好落在空隙中
+                }
+            }
+            i = j;
+        }
+        return requests.toArray(new Request[requests.size()]);
+    }
+
+    /**
+     * 同一从站同一功能码的请求排队发送，同时只有一个在途
+     */
+    static class Lane {
+        private final ArrayDeque<Request> mWaiting = new ArrayDeque<Request>(); // 由 this 保护
+        private boolean mBusy; // 由 this 保护
+
+        /**
+         * 空闲时立即发出，否则排到队尾
+         */
+        void send(Request request) {
+            synchronized (this) {
+                if (mBusy) {
+                    mWaiting.addLast(request);
+                    return;
+                }
+                mBusy = true;
+            }
+            request.submit();
+        }
+
+        /**
+         * 在途的请求结束，发出下一个还在轮询的请求
+         */
+        void release() {
+            Request next;
+            synchronized (this) {
+                do {
+                    next = mWaiting.pollFirst();
+                } while (next != null && !next.mActive);
+                if (next == null) {
+                    mBusy = false;
+                    return;
+                }
+            }
+            next.submit();
+        }
+
+        final Runnable mRelease = new Runnable() {
+            @Override
+            public void run() {
+                release();
+            }
+        };
+    }
+
+    /**
+     * 合并后的一个读请求，及其应答中每一段寄存器的位置
+     */
+    static class Request {
+        final int mSlave;
+        final int mFunction;
+        final int mAddress;
+        final int mCount;
+        final byte[] mFrame;
+        final Range[] mSegments;
+        final int[] mSegmentStart;  // 在应答中的下标
+        final int[] mRangeStart;    // 在段中的下标
+        final int[] mSegmentLength;
+        final Lane mLane;
+        private final int[] mValues; // 解析应答用，同一请求不会同时有两个应答
+
+        ModbusPoller mPoller;
+        volatile boolean mActive;     // stop() 后为 false，之后重新 start() 的是新的一组请求
+        volatile CommandFuture mFuture;
+        long mNextNanos;
+
+        Request(int slave, int function, int address, int count, List<Range> ranges, Lane lane) {
+            mSlave = slave;
+            mLane = lane;
+            mFunction = function;
+            mAddress = address;
+            mCount = count;
+            mFrame = ModbusRtu.readRegisters(slave, function, address, count);
+            mValues = new int[count];
+            List<Range> overlapping = new ArrayList<Range>(ranges.size());
+            for (Range range : ranges) {
+                if (range.mAddress < address + count && range.end() > address) {
+                    overlapping.add(range);
+                }
+            }
+            int n = overlapping.size();
+            mSegments = overlapping.toArray(new Range[n]);
+            mSegmentStart = new int[n];
+            mRangeStart = new int[n];
+            mSegmentLength = new int[n];
+            for (int k = 0; k < n; k++) {
+                Range range = mSegments[k];
+                int from = Math.max(address, range.mAddress);
+                int to = Math.min(address + count, range.end());
+                mSegmentStart[k] = from - address;
+                mRangeStart[k] = from - range.mAddress;
+                mSegmentLength[k] = to - from;
+            }
+        }
+
+        void submit() {
+            mFuture = mPoller.mChannel.submit(mFrame, mPoller.mTimeoutMs, TimeUnit.MILLISECONDS)
+                    .setListener(mListener);
+        }
+
+        private final CommandFuture.Listener mListener = new CommandFuture.Listener() {
+            @Override
+            public void onComplete(CommandFuture future) {
+                mPoller.onComplete(Request.this, future);
+            }
+        };
+
+        private final Runnable mResubmit = new Runnable() {
+            @Override
+            public void run() {
+                if (mActive) {
+                    mLane.send(Request.this);
+                }
+            }
+        };
+    }
+
+    private void onComplete(Request request, CommandFuture future) {
+        if (future.isCancelled()) {
+            return;
+        }
+        IOException error = future.getCause();
+        if (error == null) {
+            byte[] response = future.getResponse();
+            try {
+                int count = ModbusRtu.decodeRegisters(response, 0, response.length, request.mValues, 0);
+                if (count != request.mCount) {
+                    error = new ModbusException("expected " + request.mCount + " registers, got " + count, 0);
+                }
+            } catch (ModbusException e) {
+                error = e;
+            }
+        }
+        Listener listener = mListener;
+        long now = System.nanoTime();
+        if (error == null) {
+            mResponses.incrementAndGet();
+            for (int k = 0; k < request.mSegments.length; k++) {
+                Range range = request.mSegments[k];
+                range.update(request.mValues, request.mSegmentStart[k], request.mRangeStart[k],
+                        request.mSegmentLength[k], now);
+                mRegisters.addAndGet(request.mSegmentLength[k]);
+                if (listener != null) {
+                    listener.onUpdated(this, range);
+                }
+            }
+        } else {
+            mErrors.incrementAndGet();
+            BtLog.d(TAG, "poll failed: {}", error);
+            if (listener != null) {
+                for (Range range : request.mSegments) {
+                    listener.onError(this, range, error);
+                }
+            }
+        }
+        if (future.isTimedOut()) {
+            // 应答可能还在路上，等它到达（配对不到而被丢弃）之后再发同一条 Lane 上的下一个请求
+            mTimer.schedule(request.mLane.mRelease, ERROR_RETRY_MS, TimeUnit.MILLISECONDS);
+        } else {
+            request.mLane.release();
+        }
+        if (!request.mActive) {
+            return;
+        }
+        long delay;
+        if (error != null) {
+            request.mNextNanos = now + TimeUnit.MILLISECONDS.toNanos(ERROR_RETRY_MS);
+            delay = TimeUnit.MILLISECONDS.toNanos(ERROR_RETRY_MS);
+        } else if (mPeriodNanos == 0) {
+            request.mLane.send(request); // 应答不会在 submit() 中同步到达，不会递归
+            return;
+        } else {
+            // 按固定的时间格发送，来不及时跳到下一格
+            request.mNextNanos += mPeriodNanos;
+            if (request.mNextNanos < now) {
+                request.mNextNanos = now + mPeriodNanos - (now - request.mNextNanos) % mPeriodNanos;
+            }
+            delay = request.mNextNanos - now;
+        }
+        mTimer.schedule(request.mResubmit, delay, TimeUnit.NANOSECONDS);
+    }
+}
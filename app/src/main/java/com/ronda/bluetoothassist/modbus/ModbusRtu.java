@@ -0,0 +1,180 @@
+package com.ronda.bluetoothassist.modbus;
+
+import com.ronda.bluetoothassist.checksum.Crc16Modbus;
+import com.ronda.bluetoothassist.utils.HexUtils;
+
+/**
+ * Modbus RTU 主站的编解码，支持功能码 03、04、06、16
+ * <p>
+ * 帧格式为 [从站地址][功能码][数据][CRC-16/MODBUS，低字节在前]，寄存器的值为大端 16 位。
+ * 构造的请求已经带上 CRC，发送时不要再设置 Modbus 的 ChecksumStage
+ */
+
+public class ModbusRtu {
+
+    public static final int FC_READ_HOLDING_REGISTERS = 0x03;
+    public static final int FC_READ_INPUT_REGISTERS = 0x04;
+    public static final int FC_WRITE_SINGLE_REGISTER = 0x06;
+    public static final int FC_WRITE_MULTIPLE_REGISTERS = 0x10;
+
+    public static final int MAX_READ_REGISTERS = 125;  // 应答的字节数字段只有 1 个字节
+    public static final int MAX_WRITE_REGISTERS = 123;
+    public static final int MAX_FRAME_LENGTH = 256;
+    public static final int EXCEPTION_FLAG = 0x80;     // 异常应答的功能码最高位为 1
+
+    private ModbusRtu() {
+    }
+
+    /**
+     * 03/04 读寄存器请求
+     */
+    public static byte[] readRegisters(int slave, int function, int address, int count) {
+        if (function != FC_READ_HOLDING_REGISTERS && function != FC_READ_INPUT_REGISTERS) {
+            throw new IllegalArgumentException("not a read function: " + function);
+        }
+        if (count < 1 || count > MAX_READ_REGISTERS) {
+            throw new IllegalArgumentException("count must be 1.." + MAX_READ_REGISTERS + ": " + count);
+        }
+        checkAddress(address, count);
+        byte[] frame = new byte[8];
+        frame[0] = (byte) slave;
+        frame[1] = (byte) function;
+        putShort(frame, 2, address);
+        putShort(frame, 4, count);
+        putCrc(frame, 6);
+        return frame;
+    }
+
+    /**
+     * 06 写单个寄存器请求
+     */
+    public static byte[] writeSingleRegister(int slave, int address, int value) {
+        checkAddress(address, 1);
+        byte[] frame = new byte[8];
+        frame[0] = (byte) slave;
+        frame[1] = FC_WRITE_SINGLE_REGISTER;
+        putShort(frame, 2, address);
+        putShort(frame, 4, value);
+        putCrc(frame, 6);
+        return frame;
+    }
+
+    /**
+     * 16 写多个寄存器请求
+     */
+    public static byte[] writeMultipleRegisters(int slave, int address, int[] values, int offset, int count) {
+        if (count < 1 || count > MAX_WRITE_REGISTERS) {
+            throw new IllegalArgumentException("count must be 1.." + MAX_WRITE_REGISTERS + ": " + count);
+        }
+        checkAddress(address, count);
+        byte[] frame = new byte[9 + count * 2];
+        frame[0] = (byte) slave;
+        frame[1] = FC_WRITE_MULTIPLE_REGISTERS;
+        putShort(frame, 2, address);
+        putShort(frame, 4, count);
+        frame[6] = (byte) (count * 2);
+        for (int i = 0; i < count; i++) {
+            putShort(frame, 7 + i * 2, values[offset + i]);
+        }
+        putCrc(frame, frame.length - 2);
+        return frame;
+    }
+
+    /**
+     * 根据应答的头部算出整帧的长度（含 CRC）
+     *
+     * @param available buf 中从 offset 开始已有的字节数
+     * @return 帧长；头部还不完整时返回 0；功能码不认识时返回 -1
+     */
+    public static int responseLength(byte[] buf, int offset, int available) {
+        if (available < 2) {
+            return 0;
+        }
+        int function = buf[offset + 1] & 0xFF;
+        if ((function & EXCEPTION_FLAG) != 0) {
+            return 5;
+        }
+        switch (function) {
+            case FC_READ_HOLDING_REGISTERS:
+            case FC_READ_INPUT_REGISTERS:
+                return available < 3 ? 0 : 5 + (buf[offset + 2] & 0xFF);
+            case FC_WRITE_SINGLE_REGISTER:
+            case FC_WRITE_MULTIPLE_REGISTERS:
+                return 8;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * 帧末尾的 CRC 是否正确
+     */
+    public static boolean checkCrc(byte[] buf, int offset, int length) {
+        if (length < 4) {
+            return false;
+        }
+        int crc = Crc16Modbus.crc(buf, offset, length - 2);
+        int end = offset + length;
+        return (buf[end - 2] & 0xFF) == (crc & 0xFF) && (buf[end - 1] & 0xFF) == crc >>> 8;
+    }
+
+    /**
+     * 解析 03/04 的应答，把寄存器的值（0..65535）写入 dst
+     *
+     * @return 寄存器个数
+     * @throws ModbusException 异常应答、CRC 错误或长度与字节数字段不符
+     */
+    public static int decodeRegisters(byte[] buf, int offset, int length, int[] dst, int dstOffset) throws ModbusException {
+        checkResponse(buf, offset, length);
+        int byteCount = buf[offset + 2] & 0xFF;
+        if ((byteCount & 1) != 0 || length != byteCount + 5) {
+            throw new ModbusException("bad register response: " + toString(buf, offset, length), 0);
+        }
+        int count = byteCount / 2;
+        for (int i = 0, p = offset + 3; i < count; i++, p += 2) {
+            dst[dstOffset + i] = ((buf[p] & 0xFF) << 8) | (buf[p + 1] & 0xFF);
+        }
+        return count;
+    }
+
+    /**
+     * 检查应答不是异常应答并且 CRC 正确，用于 06/16 这类只需要确认的应答
+     *
+     * @throws ModbusException 异常应答或 CRC 错误
+     */
+    public static void checkResponse(byte[] buf, int offset, int length) throws ModbusException {
+        if (!checkCrc(buf, offset, length)) {
+            throw new ModbusException("bad crc: " + toString(buf, offset, length), 0);
+        }
+        int function = buf[offset + 1] & 0xFF;
+        if ((function & EXCEPTION_FLAG) != 0) {
+            int code = buf[offset + 2] & 0xFF;
+            throw new ModbusException("slave " + (buf[offset] & 0xFF) + " function " + (function & 0x7F)
+                    + " exception " + code, code);
+        }
+    }
+
+    /**
+     * 以空格分隔的十六进制，用于日志和异常信息
+     */
+    public static String toString(byte[] buf, int offset, int length) {
+        return HexUtils.appendHexWithSpace(buf, offset, length, new StringBuilder(length * 3)).toString().trim();
+    }
+
+    private static void checkAddress(int address, int count) {
+        if (address < 0 || address + count > 0x10000) {
+            throw new IllegalArgumentException("register out of range: " + address + "+" + count);
+        }
+    }
+
+    private static void putShort(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) (value >>> 8);
+        buf[offset + 1] = (byte) value;
+    }
+
+    private static void putCrc(byte[] frame, int offset) {
+        int crc = Crc16Modbus.crc(frame, 0, offset);
+        frame[offset] = (byte) crc;
+        frame[offset + 1] = (byte) (crc >>> 8);
+    }
+}
@@ -0,0 +1,140 @@
+package com.ronda.bluetoothassist.schedule;
+
+import com.ronda.bluetoothassist.io.WriteFuture;
+import com.ronda.bluetoothassist.metrics.Histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个周期发送任务：按固定周期依次发送 sequence 中的数据，发完最后一条后回到第一条
+ * <p>
+ * 发送时刻按 start + n * period 计算，不累积误差；调度线程被耽误超过一个周期时跳过错过的时刻（计入 missed），
+ * 不会补发成一串。上一次的写入还没有完成时本次跳过（计入 busy），避免在慢速链路上越积越多。
+ * 实际发送时刻与计划时刻之差记入 {@link #getJitter()}（微秒）
+ */
+
+public class PeriodicSend {
+
+    private final SendScheduler mScheduler;
+    private final SendScheduler.Target mTarget;
+    private final byte[][] mSequence;
+    private final long mPeriodNanos;
+    private final long mMaxSends;
+
+    // 以下字段只在调度线程中修改
+    long mNextNanos;
+    private int mIndex;
+    private WriteFuture mLastWrite;
+
+    private volatile boolean mCancelled;
+    private final AtomicLong mSent = new AtomicLong();
+    private final AtomicLong mMissed = new AtomicLong();
+    private final AtomicLong mBusy = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+    private final Histogram mJitter = new Histogram();
+
+    PeriodicSend(SendScheduler scheduler, SendScheduler.Target target, byte[][] sequence, long periodNanos,
+                 long maxSends, long startNanos) {
+        mScheduler = scheduler;
+        mTarget = target;
+        mSequence = sequence;
+        mPeriodNanos = periodNanos;
+        mMaxSends = maxSends;
+        mNextNanos = startNanos;
+    }
+
+    /**
+     * 停止发送，已经交给连接的数据不受影响
+     */
+    public void cancel() {
+        synchronized (this) {
+            mCancelled = true; // 与 fire() 互斥，返回后不会再有新的写入
+        }
+        mScheduler.remove(this);
+    }
+
+    /**
+     * 已取消，或者已经发送了 maxSends 次
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public long getPeriodNanos() {
+        return mPeriodNanos;
+    }
+
+    /**
+     * 交给连接的次数
+     */
+    public long getSent() {
+        return mSent.get();
+    }
+
+    /**
+     * 因调度线程被耽误而跳过的周期数
+     */
+    public long getMissed() {
+        return mMissed.get();
+    }
+
+    /**
+     * 因上一次写入还没有完成而跳过的次数
+     */
+    public long getBusy() {
+        return mBusy.get();
+    }
+
+    public long getFailures() {
+        return mFailures.get();
+    }
+
+    /**
+     * 实际发送时刻晚于计划时刻的分布（微秒）
+     */
+    public Histogram.Snapshot getJitter() {
+        return mJitter.snapshot();
+    }
+
+    /**
+     * 在调度线程中调用：发送一次并计算下一次的时刻
+     *
+     * @return 是否还要继续
+     */
+    synchronized boolean fire(long nowNanos) {
+        if (mCancelled) {
+            return false;
+        }
+        mJitter.record((nowNanos - mNextNanos) / 1000);
+        WriteFuture last = mLastWrite;
+        if (last != null && !last.isDone()) {
+            mBusy.incrementAndGet();
+        } else {
+            byte[] data = mSequence[mIndex];
+            mIndex = (mIndex + 1) % mSequence.length;
+            // 不能用 setListener()，会替换掉会话自己的回调（统计和回显）
+            mLastWrite = mTarget.write(data).addListener(mWriteListener);
+            if (mSent.incrementAndGet() == mMaxSends) {
+                mCancelled = true;
+                return false;
+            }
+        }
+        mNextNanos += mPeriodNanos;
+        long behind = nowNanos - mNextNanos;
+        if (behind >= 0) {
+            long skipped = behind / mPeriodNanos + 1;
+            mMissed.addAndGet(skipped);
+            mNextNanos += skipped * mPeriodNanos;
+        }
+        return true;
+    }
+
+    private final WriteFuture.Listener mWriteListener = new WriteFuture.Listener() {
+        @Override
+        public void onComplete(WriteFuture future) {
+            if (!future.isSuccess()) {
+                mFailures.incrementAndGet();
+            }
+        }
+    };
+}
@@ -0,0 +1,166 @@
+package com.ronda.bluetoothassist.schedule;
+
+import com.ronda.bluetoothassist.io.WriteFuture;
+import com.ronda.bluetoothassist.log.BtLog;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 周期发送的调度器，所有任务在一个专用线程中按时间顺序触发，不占用 UI 线程
+ * <p>
+ * 任务按下一次发送的时刻排在优先队列中，线程用 LockSupport.parkNanos() 睡到最早的时刻，
+ * 新增或取消任务时唤醒它重新计算。每次发送都是一次完整的 {@link Target#write(byte[])}，
+ * 写队列按请求整体写出，因此多个任务共用一个连接时各自的数据不会互相穿插
+ */
+
+public class SendScheduler {
+
+    public static final String TAG = SendScheduler.class.getSimpleName();
+
+    /**
+     * 发送的目标，通常是某个会话或主设备。在调度线程中调用，不能阻塞
+     */
+    public interface Target {
+        WriteFuture write(byte[] data);
+    }
+
+    private final String mName;
+    private final PriorityQueue<PeriodicSend> mQueue = new PriorityQueue<PeriodicSend>(8, new Comparator<PeriodicSend>() {
+        @Override
+        public int compare(PeriodicSend a, PeriodicSend b) {
+            long diff = a.mNextNanos - b.mNextNanos;
+            return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+        }
+    }); // 由自身加锁保护
+    private Thread mThread; // 第一次 schedule() 时创建，由 mQueue 保护
+    private volatile boolean mShutdown;
+
+    /**
+     * @param name 调度线程的名字
+     */
+    public SendScheduler(String name) {
+        mName = name;
+    }
+
+    /**
+     * 从现在开始，每隔 period 依次发送 sequence 中的一条
+     *
+     * @param maxSends 发送这么多次后自动结束，0 表示一直发送直到 cancel()
+     */
+    public PeriodicSend schedule(Target target, byte[][] sequence, long period, TimeUnit unit, long maxSends) {
+        if (sequence.length == 0) {
+            throw new IllegalArgumentException("empty sequence");
+        }
+        long periodNanos = unit.toNanos(period);
+        if (periodNanos <= 0) {
+            throw new IllegalArgumentException("period must be > 0: " + period);
+        }
+        PeriodicSend send = new PeriodicSend(this, target, sequence.clone(), periodNanos, maxSends, System.nanoTime());
+        Thread thread;
+        synchronized (mQueue) {
+            if (mShutdown) {
+                throw new IllegalStateException("scheduler is shut down");
+            }
+            mQueue.add(send);
+            if (mThread == null) {
+                mThread = new Thread(mLoop, mName);
+                mThread.setDaemon(true);
+                mThread.setPriority(Thread.MAX_PRIORITY);
+                mThread.start();
+            }
+            thread = mThread;
+        }
+        LockSupport.unpark(thread);
+        return send;
+    }
+
+    /**
+     * 当前还在运行的任务
+     */
+    public List<PeriodicSend> getScheduled() {
+        synchronized (mQueue) {
+            return new ArrayList<PeriodicSend>(mQueue);
+        }
+    }
+
+    public void cancelAll() {
+        for (PeriodicSend send : getScheduled()) {
+            send.cancel();
+        }
+    }
+
+    /**
+     * 取消所有任务并结束调度线程，之后不能再 schedule()
+     */
+    public void shutdown() {
+        mShutdown = true;
+        cancelAll();
+        Thread thread;
+        synchronized (mQueue) {
+            thread = mThread;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    void remove(PeriodicSend send) {
+        Thread thread;
+        synchronized (mQueue) {
+            mQueue.remove(send);
+            thread = mThread;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private final Runnable mLoop = new Runnable() {
+        @Override
+        public void run() {
+            while (!mShutdown) {
+                PeriodicSend head;
+                synchronized (mQueue) {
+                    head = mQueue.peek();
+                }
+                if (head == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                long now = System.nanoTime();
+                long delay = head.mNextNanos - now;
+                if (delay > 0) {
+                    // 可能被新任务提前唤醒，醒来后重新取最早的任务
+                    LockSupport.parkNanos(this, delay);
+                    continue;
+                }
+                synchronized (mQueue) {
+                    if (mQueue.peek() != head) {
+                        continue;
+                    }
+                    mQueue.poll();
+                }
+                boolean again;
+                try {
+                    again = head.fire(now);
+                } catch (RuntimeException e) {
+                    BtLog.e(TAG, "periodic send stopped: {}", e);
+                    head.cancel();
+                    continue;
+                }
+                if (again) {
+                    synchronized (mQueue) {
+                        if (!head.isCancelled()) {
+                            mQueue.add(head);
+                        }
+                    }
+                }
+            }
+        }
+    };
+}
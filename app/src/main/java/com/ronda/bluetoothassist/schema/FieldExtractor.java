@@ -0,0 +1,239 @@
+package com.ronda.bluetoothassist.schema;
+
+import com.ronda.bluetoothassist.utils.HexUtils;
+
+/**
+ * 从帧中取出一个字段的原始值。声明字段时按类型、宽度和字节序选定实现，
+ * 常见的 1/2/4 字节整数各有展开好的实现，解码时不再判断类型，也不做边界检查（长度已由 FrameSchema 检查过）
+ */
+
+abstract class FieldExtractor {
+
+    final int mOffset;
+
+    FieldExtractor(int offset) {
+        mOffset = offset;
+    }
+
+    /**
+     * @param base 帧在 buf 中的起始位置
+     */
+    abstract long extract(byte[] buf, int base);
+
+    static FieldExtractor integer(int offset, int width, boolean bigEndian, boolean signed) {
+        switch (width) {
+            case 1:
+                return signed ? new S8(offset) : new U8(offset);
+            case 2:
+                if (bigEndian) {
+                    return signed ? new S16BE(offset) : new U16BE(offset);
+                }
+                return signed ? new S16LE(offset) : new U16LE(offset);
+            case 4:
+                if (bigEndian) {
+                    return signed ? new S32BE(offset) : new U32BE(offset);
+                }
+                return signed ? new S32LE(offset) : new U32LE(offset);
+            default:
+                return new Generic(offset, width, bigEndian, signed);
+        }
+    }
+
+    static FieldExtractor bcd(int offset, int width) {
+        return new Bcd(offset, width);
+    }
+
+    static FieldExtractor bits(FieldExtractor word, int bitOffset, int bitCount) {
+        return new Bits(word, bitOffset, bitCount);
+    }
+
+    private static final class U8 extends FieldExtractor {
+        U8(int offset) {
+            super(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            return buf[base + mOffset] & 0xFF;
+        }
+    }
+
+    private static final class S8 extends FieldExtractor {
+        S8(int offset) {
+            super(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            return buf[base + mOffset];
+        }
+    }
+
+    private static final class U16BE extends FieldExtractor {
+        U16BE(int offset) {
+            super(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            int i = base + mOffset;
+            return (buf[i] & 0xFF) << 8 | (buf[i + 1] & 0xFF);
+        }
+    }
+
+    private static final class U16LE extends FieldExtractor {
+        U16LE(int offset) {
+            super(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            int i = base + mOffset;
+            return (buf[i + 1] & 0xFF) << 8 | (buf[i] & 0xFF);
+        }
+    }
+
+    private static final class S16BE extends FieldExtractor {
+        S16BE(int offset) {
+            super(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            int i = base + mOffset;
+            return (short) (buf[i] << 8 | (buf[i + 1] & 0xFF));
+        }
+    }
+
+    private static final class S16LE extends FieldExtractor {
+        S16LE(int offset) {
+            super(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            int i = base + mOffset;
+            return (short) (buf[i + 1] << 8 | (buf[i] & 0xFF));
+        }
+    }
+
+    private static final class S32BE extends FieldExtractor {
+        S32BE(int offset) {
+            super(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            int i = base + mOffset;
+            return buf[i] << 24 | (buf[i + 1] & 0xFF) << 16 | (buf[i + 2] & 0xFF) << 8 | (buf[i + 3] & 0xFF);
+        }
+    }
+
+    private static final class S32LE extends FieldExtractor {
+        S32LE(int offset) {
+            super(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            int i = base + mOffset;
+            return buf[i + 3] << 24 | (buf[i + 2] & 0xFF) << 16 | (buf[i + 1] & 0xFF) << 8 | (buf[i] & 0xFF);
+        }
+    }
+
+    private static final class U32BE extends FieldExtractor {
+        private final S32BE mSigned;
+
+        U32BE(int offset) {
+            super(offset);
+            mSigned = new S32BE(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            return mSigned.extract(buf, base) & 0xFFFFFFFFL;
+        }
+    }
+
+    private static final class U32LE extends FieldExtractor {
+        private final S32LE mSigned;
+
+        U32LE(int offset) {
+            super(offset);
+            mSigned = new S32LE(offset);
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            return mSigned.extract(buf, base) & 0xFFFFFFFFL;
+        }
+    }
+
+    /**
+     * 3、5~8 字节的整数。8 字节无符号数大于 Long.MAX_VALUE 时按补码保存为负数
+     */
+    private static final class Generic extends FieldExtractor {
+        private final int mWidth;
+        private final boolean mBigEndian;
+        private final int mSignShift; // 有符号时用来扩展符号位，无符号时为 0
+
+        Generic(int offset, int width, boolean bigEndian, boolean signed) {
+            super(offset);
+            mWidth = width;
+            mBigEndian = bigEndian;
+            mSignShift = signed ? 64 - width * 8 : 0;
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            int i = base + mOffset;
+            long value = 0;
+            if (mBigEndian) {
+                for (int end = i + mWidth; i < end; i++) {
+                    value = value << 8 | (buf[i] & 0xFF);
+                }
+            } else {
+                for (int j = i + mWidth - 1; j >= i; j--) {
+                    value = value << 8 | (buf[j] & 0xFF);
+                }
+            }
+            return value << mSignShift >> mSignShift;
+        }
+    }
+
+    private static final class Bcd extends FieldExtractor {
+        private final int mWidth;
+
+        Bcd(int offset, int width) {
+            super(offset);
+            mWidth = width;
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            long value = HexUtils.bcdToLong(buf, base + mOffset, mWidth);
+            return value < 0 ? FrameSchema.INVALID : value;
+        }
+    }
+
+    /**
+     * 先按无符号整数取出整个字，再取其中的若干位，第 0 位是最低位
+     */
+    private static final class Bits extends FieldExtractor {
+        private final FieldExtractor mWord;
+        private final int mShift;
+        private final long mMask;
+
+        Bits(FieldExtractor word, int bitOffset, int bitCount) {
+            super(word.mOffset);
+            mWord = word;
+            mShift = bitOffset;
+            mMask = bitCount == 64 ? -1L : (1L << bitCount) - 1;
+        }
+
+        @Override
+        long extract(byte[] buf, int base) {
+            return (mWord.extract(buf, base) >>> mShift) & mMask;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.ronda.bluetoothassist.schema;
+
+import com.ronda.bluetoothassist.utils.HexUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 帧格式：用帧头特征识别一种帧，并按声明的字段把帧解码成数值
+ * <p>
+ * 格式只声明一次，每个字段在声明时编译成固定的取值器，之后每一帧的解码只是按偏移量读字节，
+ * 结果写入调用者复用的 long[]，不产生字符串或其它临时对象。实例不可变，可以在多个线程中共用
+ * <p>
+ * 字段的原始值都保存为 long：整数按有无符号扩展；BCD 码转成十进制数值，含有非法半字节时为 {@link #INVALID}；
+ * 位字段为取出的若干位。整数字段可以声明小数位数（定点数），原始值 1234、2 位小数表示 12.34
+ */
+
+public class FrameSchema {
+
+    public static final int TYPE_UINT = 0;
+    public static final int TYPE_INT = 1;
+    public static final int TYPE_BCD = 2;
+    public static final int TYPE_BITS = 3;
+
+    /**
+     * BCD 字段含有非法半字节时的值
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    /**
+     * 一个字段的声明
+     */
+    public static class Field {
+        private final String mName;
+        private final int mType;
+        private final int mOffset;
+        private final int mWidth;
+        private final boolean mBigEndian;
+        private final int mDecimals;
+        private final int mBitOffset;
+        private final int mBitCount;
+        final FieldExtractor mExtractor;
+
+        private Field(String name, int type, int offset, int width, boolean bigEndian, int decimals,
+                      int bitOffset, int bitCount) {
+            mName = name;
+            mType = type;
+            mOffset = offset;
+            mWidth = width;
+            mBigEndian = bigEndian;
+            mDecimals = decimals;
+            mBitOffset = bitOffset;
+            mBitCount = bitCount;
+            switch (type) {
+                case TYPE_BCD:
+                    mExtractor = FieldExtractor.bcd(offset, width);
+                    break;
+                case TYPE_BITS:
+                    mExtractor = FieldExtractor.bits(FieldExtractor.integer(offset, width, bigEndian, false),
+                            bitOffset, bitCount);
+                    break;
+                default:
+                    mExtractor = FieldExtractor.integer(offset, width, bigEndian, type == TYPE_INT);
+            }
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * 字段在帧中的偏移量
+         */
+        public int getOffset() {
+            return mOffset;
+        }
+
+        /**
+         * 字段占用的字节数，位字段为所在的字的字节数
+         */
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public boolean isBigEndian() {
+            return mBigEndian;
+        }
+
+        /**
+         * 定点数的小数位数，不是定点数时为 0
+         */
+        public int getDecimals() {
+            return mDecimals;
+        }
+
+        public int getBitOffset() {
+            return mBitOffset;
+        }
+
+        public int getBitCount() {
+            return mBitCount;
+        }
+    }
+
+    private final String mName;
+    private final int mMatchOffset;
+    private final byte[] mMatch;
+    private final int mMinLength;
+    private final Field[] mFields;
+
+    private FrameSchema(Builder builder) {
+        mName = builder.mName;
+        mMatchOffset = builder.mMatchOffset;
+        mMatch = builder.mMatch;
+        mFields = builder.mFields.toArray(new Field[builder.mFields.size()]);
+        int min = Math.max(builder.mMinLength, mMatchOffset + mMatch.length);
+        for (Field field : mFields) {
+            min = Math.max(min, field.mOffset + field.mWidth);
+        }
+        mMinLength = min;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * 能够解码的最短帧长，不短于所有字段和帧头特征的结束位置
+     */
+    public int getMinLength() {
+        return mMinLength;
+    }
+
+    public int getFieldCount() {
+        return mFields.length;
+    }
+
+    public Field getField(int index) {
+        return mFields[index];
+    }
+
+    /**
+     * 按名字查找字段，没有时返回 -1。解码前查一次，之后用下标取值
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < mFields.length; i++) {
+            if (mFields[i].mName.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 帧是否足够长，并且在指定位置有声明的帧头特征
+     */
+    public boolean matches(byte[] buf, int offset, int length) {
+        if (length < mMinLength) {
+            return false;
+        }
+        for (int i = 0, p = offset + mMatchOffset; i < mMatch.length; i++, p++) {
+            if (buf[p] != mMatch[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解码一帧，字段 i 的原始值写入 values[i]
+     *
+     * @param values 长度不小于 {@link #getFieldCount()}，可以复用
+     * @return 帧不匹配时返回 false，values 不变
+     */
+    public boolean decode(byte[] buf, int offset, int length, long[] values) {
+        if (!matches(buf, offset, length)) {
+            return false;
+        }
+        Field[] fields = mFields;
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = fields[i].mExtractor.extract(buf, offset);
+        }
+        return true;
+    }
+
+    /**
+     * 只取一个字段，调用者需要先确认帧匹配
+     */
+    public long extract(int index, byte[] buf, int offset) {
+        return mFields[index].mExtractor.extract(buf, offset);
+    }
+
+    /**
+     * 按小数位数换算后的值，BCD 非法时为 NaN
+     */
+    public double getDouble(long[] values, int index) {
+        long raw = values[index];
+        Field field = mFields[index];
+        if (field.mType == TYPE_BCD && raw == INVALID) {
+            return Double.NaN;
+        }
+        return field.mDecimals == 0 ? raw : (double) raw / POW10[field.mDecimals];
+    }
+
+    /**
+     * 把解码结果追加为一行文本，例如 "meter volt=230.1 serial=00001234 alarm=1"，定点数直接按位输出，不经过 double
+     */
+    public StringBuilder format(long[] values, StringBuilder sb) {
+        sb.append(mName);
+        for (int i = 0; i < mFields.length; i++) {
+            Field field = mFields[i];
+            sb.append(' ').append(field.mName).append('=');
+            long raw = values[i];
+            if (field.mType == TYPE_BCD) {
+                if (raw == INVALID) {
+                    sb.append('?');
+                } else {
+                    appendPadded(sb, raw, field.mWidth * 2);
+                }
+            } else if (field.mDecimals > 0) {
+                appendFixed(sb, raw, field.mDecimals);
+            } else {
+                sb.append(raw);
+            }
+        }
+        return sb;
+    }
+
+    private static void appendFixed(StringBuilder sb, long raw, int decimals) {
+        if (raw == Long.MIN_VALUE) { // 取绝对值会溢出，这种值只会来自 8 字节字段
+            sb.append(raw);
+            return;
+        }
+        if (raw < 0) {
+            sb.append('-');
+            raw = -raw;
+        }
+        long scale = POW10[decimals];
+        sb.append(raw / scale).append('.');
+        appendPadded(sb, raw % scale, decimals);
+    }
+
+    /**
+     * 非负数补前导 0 到 digits 位
+     */
+    private static void appendPadded(StringBuilder sb, long value, int digits) {
+        for (int i = digits - 1; i > 0 && value < POW10[i]; i--) {
+            sb.append('0');
+        }
+        sb.append(value);
+    }
+
+    /************************** 文本格式 *****************************/
+
+    private static final Pattern FIELD = Pattern.compile(
+            "(\\w+)=(?:([us])(8|16|24|32|40|48|56|64)(be|le)?|bcd(\\d+))@(\\d+)(?:\\.(\\d+)(?::(\\d+))?)?(?:/(\\d+))?");
+
+    /**
+     * 解析一行文本格式的声明，各项以空白分隔，第一项是名字：
+     * <pre>
+     * meter match=0:AA55 min=14 volt=u16be@2/1 curr=s16le@4/2 serial=bcd4@6 alarm=u8@10.0 mode=u16be@10.4:3
+     * </pre>
+     * match=偏移:十六进制帧头，min=最短帧长；字段为 名字=类型@偏移，类型是 u/s 加位数和 be/le（默认 be），或者 bcd 加字节数；
+     * 整数后面的 .位[:位数] 表示取其中的若干位（默认 1 位），/小数位数 表示定点数
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static FrameSchema parse(String spec) {
+        String[] tokens = spec.trim().split("\\s+");
+        if (tokens[0].isEmpty() || tokens[0].indexOf('=') >= 0) {
+            throw new IllegalArgumentException("missing schema name: " + spec);
+        }
+        Builder builder = new Builder(tokens[0]);
+        for (int i = 1; i < tokens.length; i++) {
+            String token = tokens[i];
+            try {
+                if (token.startsWith("match=")) {
+                    int colon = token.indexOf(':');
+                    if (colon < 0) {
+                        throw new IllegalArgumentException("expected match=offset:hex");
+                    }
+                    builder.match(Integer.parseInt(token.substring(6, colon)),
+                            HexUtils.hexStringToBytes(token.substring(colon + 1)));
+                } else if (token.startsWith("min=")) {
+                    builder.minLength(Integer.parseInt(token.substring(4)));
+                } else {
+                    parseField(builder, token);
+                }
+            } catch (IllegalArgumentException e) { // 包括 NumberFormatException 和 HexFormatException
+                throw new IllegalArgumentException("bad item '" + token + "': " + e.getMessage());
+            }
+        }
+        return builder.build();
+    }
+
+    private static void parseField(Builder builder, String token) {
+        Matcher m = FIELD.matcher(token);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("expected name=type@offset");
+        }
+        String name = m.group(1);
+        int offset = Integer.parseInt(m.group(6));
+        if (m.group(5) != null) {
+            if (m.group(7) != null || m.group(9) != null) {
+                throw new IllegalArgumentException("bcd field takes no bits or decimals");
+            }
+            builder.bcd(name, offset, Integer.parseInt(m.group(5)));
+            return;
+        }
+        boolean signed = m.group(2).equals("s");
+        int width = Integer.parseInt(m.group(3)) / 8;
+        boolean bigEndian = !"le".equals(m.group(4));
+        if (m.group(7) != null) {
+            if (signed || m.group(9) != null) {
+                throw new IllegalArgumentException("bit field must be unsigned without decimals");
+            }
+            int bitCount = m.group(8) != null ? Integer.parseInt(m.group(8)) : 1;
+            builder.bits(name, offset, width, bigEndian, Integer.parseInt(m.group(7)), bitCount);
+            return;
+        }
+        int decimals = m.group(9) != null ? Integer.parseInt(m.group(9)) : 0;
+        builder.fixed(name, offset, width, bigEndian, signed, decimals);
+    }
+
+    public static class Builder {
+        private final String mName;
+        private int mMatchOffset;
+        private byte[] mMatch = new byte[0];
+        private int mMinLength;
+        private final ArrayList<Field> mFields = new ArrayList<Field>();
+
+        public Builder(String name) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("empty schema name");
+            }
+            mName = name;
+        }
+
+        /**
+         * 帧在 offset 处必须是 magic，例如帧头、功能码
+         */
+        public Builder match(int offset, byte[] magic) {
+            if (offset < 0 || magic.length == 0) {
+                throw new IllegalArgumentException("match at " + offset + ", " + magic.length + " bytes");
+            }
+            mMatchOffset = offset;
+            mMatch = Arrays.copyOf(magic, magic.length);
+            return this;
+        }
+
+        /**
+         * 最短帧长，不需要声明时按字段的结束位置计算
+         */
+        public Builder minLength(int minLength) {
+            mMinLength = minLength;
+            return this;
+        }
+
+        public Builder uint(String name, int offset, int width, boolean bigEndian) {
+            return fixed(name, offset, width, bigEndian, false, 0);
+        }
+
+        public Builder sint(String name, int offset, int width, boolean bigEndian) {
+            return fixed(name, offset, width, bigEndian, true, 0);
+        }
+
+        /**
+         * 定点数：原始整数除以 10 的 decimals 次方
+         *
+         * @param width 1~8 字节
+         */
+        public Builder fixed(String name, int offset, int width, boolean bigEndian, boolean signed, int decimals) {
+            checkWidth(name, offset, width, 8);
+            if (decimals < 0 || decimals > 18) {
+                throw new IllegalArgumentException(name + ": decimals " + decimals);
+            }
+            return add(new Field(name, signed ? TYPE_INT : TYPE_UINT, offset, width, bigEndian, decimals, 0, 0));
+        }
+
+        /**
+         * @param width 1~9 字节，最多 18 位十进制数
+         */
+        public Builder bcd(String name, int offset, int width) {
+            checkWidth(name, offset, width, 9);
+            return add(new Field(name, TYPE_BCD, offset, width, true, 0, 0, 0));
+        }
+
+        /**
+         * 位字段：把 offset 处 width 字节的无符号整数中从第 bitOffset 位（最低位为 0）开始的 bitCount 位取出
+         */
+        public Builder bits(String name, int offset, int width, boolean bigEndian, int bitOffset, int bitCount) {
+            checkWidth(name, offset, width, 8);
+            if (bitOffset < 0 || bitCount < 1 || bitOffset + bitCount > width * 8) {
+                throw new IllegalArgumentException(name + ": bits " + bitOffset + ":" + bitCount + " out of " + width * 8);
+            }
+            return add(new Field(name, TYPE_BITS, offset, width, bigEndian, 0, bitOffset, bitCount));
+        }
+
+        /**
+         * offset 处字节的第 bit 位，0 或 1
+         */
+        public Builder flag(String name, int offset, int bit) {
+            return bits(name, offset, 1, true, bit, 1);
+        }
+
+        private static void checkWidth(String name, int offset, int width, int maxWidth) {
+            if (offset < 0 || width < 1 || width > maxWidth) {
+                throw new IllegalArgumentException(name + ": offset " + offset + ", width " + width);
+            }
+        }
+
+        private Builder add(Field field) {
+            for (Field f : mFields) {
+                if (f.mName.equals(field.mName)) {
+                    throw new IllegalArgumentException("duplicate field " + field.mName);
+                }
+            }
+            mFields.add(field);
+            return this;
+        }
+
+        public FrameSchema build() {
+            return new FrameSchema(this);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.ronda.bluetoothassist.schema;
+
+import java.util.ArrayList;
+
+/**
+ * 一组帧格式，按添加顺序匹配，第一个匹配的格式用来解码；都不匹配时由调用者按原来的方式显示
+ * <p>
+ * 格式列表可以在任意线程替换，{@link #format} 复用内部的数组，只能在一个线程（通常是 UI 线程）中调用
+ */
+
+public class SchemaRegistry {
+
+    private static final FrameSchema[] EMPTY = new FrameSchema[0];
+
+    private volatile FrameSchema[] mSchemas = EMPTY;
+    private long[] mValues = new long[8]; // format() 复用
+
+    public synchronized void add(FrameSchema schema) {
+        FrameSchema[] schemas = new FrameSchema[mSchemas.length + 1];
+        System.arraycopy(mSchemas, 0, schemas, 0, mSchemas.length);
+        schemas[mSchemas.length] = schema;
+        mSchemas = schemas;
+    }
+
+    public synchronized void clear() {
+        mSchemas = EMPTY;
+    }
+
+    public boolean isEmpty() {
+        return mSchemas.length == 0;
+    }
+
+    public int size() {
+        return mSchemas.length;
+    }
+
+    /**
+     * 用文本格式替换全部帧格式，每行一个，格式见 {@link FrameSchema#parse}；空行和 # 开头的行被忽略。
+     * 有一行出错时保持原来的格式不变
+     *
+     * @throws IllegalArgumentException 格式错误，消息中带行号
+     */
+    public void load(String specs) {
+        ArrayList<FrameSchema> list = new ArrayList<FrameSchema>();
+        if (specs != null) {
+            String[] lines = specs.split("\n");
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i].trim();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                try {
+                    list.add(FrameSchema.parse(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("line " + (i + 1) + ": " + e.getMessage());
+                }
+            }
+        }
+        FrameSchema[] schemas = list.toArray(new FrameSchema[list.size()]);
+        synchronized (this) {
+            mSchemas = schemas;
+        }
+    }
+
+    /**
+     * 第一个匹配的格式，没有时返回 null
+     */
+    public FrameSchema find(byte[] buf, int offset, int length) {
+        FrameSchema[] schemas = mSchemas;
+        for (FrameSchema schema : schemas) {
+            if (schema.matches(buf, offset, length)) {
+                return schema;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 匹配到格式时把解码结果追加到 sb
+     *
+     * @return 是否匹配，不匹配时 sb 不变
+     */
+    public boolean format(byte[] buf, int offset, int length, StringBuilder sb) {
+        FrameSchema schema = find(buf, offset, length);
+        if (schema == null) {
+            return false;
+        }
+        if (mValues.length < schema.getFieldCount()) {
+            mValues = new long[schema.getFieldCount()];
+        }
+        schema.decode(buf, offset, length, mValues);
+        schema.format(mValues, sb);
+        return true;
+    }
+}
@@ -0,0 +1,255 @@
+package com.ronda.bluetoothassist.settings;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 连接过的设备的历史，按最近使用排序（LRU），超过容量时淘汰最久没有连接的设备
+ * <p>
+ * 每个设备记录最近一次连接的时间和耗时、成功和失败次数。数据保存在 {@link SettingsStore} 的一个键中，
+ * 读取只访问内存；SettingsStore 读入完成后再合并磁盘上的记录，与在这之前记录的连接累加。
+ * 连接线程和 UI 线程都会调用，方法都是同步的
+ */
+
+public class DeviceHistory {
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * 一个设备的连接统计，返回给调用者的是副本
+     */
+    public static class Record {
+        private final String mAddress;
+        private String mName;
+        private long mLastConnectedMs;    // 最近一次连接成功的时间（System.currentTimeMillis()）
+        private long mLastLatencyMs;      // 最近一次连接成功所用的时间
+        private long mTotalLatencyMs;
+        private int mSuccessCount;
+        private int mFailureCount;
+
+        Record(String address) {
+            mAddress = address;
+        }
+
+        private Record(Record other) {
+            mAddress = other.mAddress;
+            mName = other.mName;
+            mLastConnectedMs = other.mLastConnectedMs;
+            mLastLatencyMs = other.mLastLatencyMs;
+            mTotalLatencyMs = other.mTotalLatencyMs;
+            mSuccessCount = other.mSuccessCount;
+            mFailureCount = other.mFailureCount;
+        }
+
+        public String getAddress() {
+            return mAddress;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getLastConnectedMs() {
+            return mLastConnectedMs;
+        }
+
+        public long getLastLatencyMs() {
+            return mLastLatencyMs;
+        }
+
+        public long getAverageLatencyMs() {
+            return mSuccessCount == 0 ? 0 : mTotalLatencyMs / mSuccessCount;
+        }
+
+        public int getSuccessCount() {
+            return mSuccessCount;
+        }
+
+        public int getFailureCount() {
+            return mFailureCount;
+        }
+
+        /**
+         * 连接成功率，没有尝试过时为 0
+         */
+        public float getSuccessRate() {
+            int total = mSuccessCount + mFailureCount;
+            return total == 0 ? 0 : (float) mSuccessCount / total;
+        }
+    }
+
+    private final SettingsStore mStore;
+    private final String mKey;
+    private final int mCapacity;
+    private final LinkedHashMap<String, Record> mRecords;
+
+    public DeviceHistory(SettingsStore store, String key, int capacity) {
+        mStore = store;
+        mKey = key;
+        mCapacity = capacity;
+        mRecords = new LinkedHashMap<String, Record>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Record> eldest) {
+                return size() > mCapacity;
+            }
+        };
+        store.runWhenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                merge(mStore.getLoadedString(mKey, null)); // 读入前记录过时内存中的值已经不是磁盘上的了
+            }
+        });
+    }
+
+    /**
+     * 一次连接成功
+     *
+     * @param latencyMs 从开始连接到连上所用的时间
+     */
+    public synchronized void recordSuccess(String address, String name, long latencyMs, long nowMs) {
+        Record record = obtain(address);
+        if (name != null) {
+            record.mName = name;
+        }
+        record.mLastConnectedMs = nowMs;
+        record.mLastLatencyMs = latencyMs;
+        record.mTotalLatencyMs += latencyMs;
+        record.mSuccessCount++;
+        save();
+    }
+
+    public synchronized void recordFailure(String address) {
+        obtain(address).mFailureCount++;
+        save();
+    }
+
+    public synchronized Record get(String address) {
+        Record record = mRecords.get(address);
+        return record == null ? null : new Record(record);
+    }
+
+    /**
+     * 最近连接成功的设备，没有时返回 null
+     */
+    public synchronized Record getMostRecent() {
+        Record latest = null;
+        for (Record record : mRecords.values()) {
+            if (record.mSuccessCount > 0 && (latest == null || record.mLastConnectedMs >= latest.mLastConnectedMs)) {
+                latest = record;
+            }
+        }
+        return latest == null ? null : new Record(latest);
+    }
+
+    /**
+     * 全部记录，最近使用的在前
+     */
+    public synchronized List<Record> list() {
+        List<Record> list = new ArrayList<Record>(mRecords.size());
+        for (Record record : mRecords.values()) {
+            list.add(0, new Record(record));
+        }
+        return list;
+    }
+
+    public synchronized int size() {
+        return mRecords.size();
+    }
+
+    /**
+     * 取出或新建记录并移到最近的位置。不用 LinkedHashMap 的访问顺序，get() 查询不算使用
+     */
+    private Record obtain(String address) {
+        Record record = mRecords.remove(address);
+        if (record == null) {
+            record = new Record(address);
+        }
+        mRecords.put(address, record);
+        return record;
+    }
+
+    private void save() {
+        mStore.putString(mKey, encode());
+    }
+
+    /**
+     * 每行一个设备：地址、最近连接时间、最近耗时、总耗时、成功次数、失败次数、名字，以 tab 分隔，最久没用的在前
+     */
+    synchronized String encode() {
+        StringBuilder sb = new StringBuilder(mRecords.size() * 64);
+        for (Record r : mRecords.values()) {
+            sb.append(r.mAddress).append('\t').append(r.mLastConnectedMs).append('\t').append(r.mLastLatencyMs)
+                    .append('\t').append(r.mTotalLatencyMs).append('\t').append(r.mSuccessCount)
+                    .append('\t').append(r.mFailureCount).append('\t');
+            if (r.mName != null) {
+                sb.append(r.mName.replace('\t', ' ').replace('\n', ' '));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 把磁盘上的记录合并进来。已经在内存中的设备累加两边的次数和总耗时，最近一次连接和名字取较新的一边，
+     * 并排在磁盘记录之后（更近）
+     */
+    synchronized void merge(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        LinkedHashMap<String, Record> current = new LinkedHashMap<String, Record>(mRecords);
+        mRecords.clear();
+        for (String line : encoded.split("\n")) {
+            String[] fields = line.split("\t", 7);
+            if (fields.length < 6) {
+                continue;
+            }
+            Record record = new Record(fields[0]);
+            try {
+                record.mLastConnectedMs = Long.parseLong(fields[1]);
+                record.mLastLatencyMs = Long.parseLong(fields[2]);
+                record.mTotalLatencyMs = Long.parseLong(fields[3]);
+                record.mSuccessCount = Integer.parseInt(fields[4]);
+                record.mFailureCount = Integer.parseInt(fields[5]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (fields.length > 6 && !fields[6].isEmpty()) {
+                record.mName = fields[6];
+            }
+            Record recent = current.get(record.mAddress);
+            if (recent != null) {
+                combine(recent, record);
+                continue;
+            }
+            mRecords.put(record.mAddress, record);
+        }
+        for (Record record : current.values()) {
+            mRecords.put(record.mAddress, record);
+        }
+        if (!current.isEmpty()) {
+            save();
+        }
+    }
+
+    /**
+     * 把磁盘上的记录 stored 累加到读入前就记录过的 recent 中
+     */
+    private static void combine(Record recent, Record stored) {
+        recent.mTotalLatencyMs += stored.mTotalLatencyMs;
+        recent.mSuccessCount += stored.mSuccessCount;
+        recent.mFailureCount += stored.mFailureCount;
+        if (stored.mLastConnectedMs > recent.mLastConnectedMs) { // 读入前只有失败的尝试
+            recent.mLastConnectedMs = stored.mLastConnectedMs;
+            recent.mLastLatencyMs = stored.mLastLatencyMs;
+            if (stored.mName != null) {
+                recent.mName = stored.mName;
+            }
+        }
+        if (recent.mName == null) {
+            recent.mName = stored.mName;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.ronda.bluetoothassist.settings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不阻塞调用线程的配置存储
+ * <p>
+ * 所有值都缓存在内存中，读取只访问内存；磁盘读写都在一个后台线程中按顺序执行：
+ * {@link #preload()} 在后台一次性读入全部配置，之后的修改先写内存，再合并起来交给 {@link Backend} 写盘。
+ * <p>
+ * 读入完成之前读到的是默认值，需要真实配置的地方（例如启动时自动连接）用 {@link #runWhenLoaded(Runnable)} 等待；
+ * 读入完成之前写入的值优先于磁盘上的旧值
+ */
+
+public class SettingsStore {
+
+    /**
+     * 实际的存储，只在后台线程中调用
+     */
+    public interface Backend {
+        Map<String, ?> load();
+
+        /**
+         * @param changes 值为 null 表示删除
+         */
+        void write(Map<String, Object> changes);
+
+        void clear();
+    }
+
+    private static SettingsStore sDefault;
+
+    private final Backend mBackend;
+    private final ExecutorService mExecutor;
+    private final ConcurrentHashMap<String, Object> mValues = new ConcurrentHashMap<String, Object>();
+    private final CountDownLatch mLoaded = new CountDownLatch(1);
+    private final List<Runnable> mLoadCallbacks = new ArrayList<Runnable>(); // 由 mLoadCallbacks 自身保护
+    private volatile Map<String, ?> mStored = Collections.emptyMap(); // 从磁盘读入的原始值
+
+    private final Object mDirtyLock = new Object();
+    private HashMap<String, Object> mDirty = new HashMap<String, Object>(); // 待写盘的修改，由 mDirtyLock 保护
+    private boolean mClearPending;
+    private boolean mFlushScheduled;
+
+    public SettingsStore(Backend backend) {
+        mBackend = backend;
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BtSettings");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 在 Application.onCreate() 中调用，创建全局实例并开始在后台读入
+     */
+    public static synchronized SettingsStore initDefault(Backend backend) {
+        if (sDefault == null) {
+            sDefault = new SettingsStore(backend);
+            sDefault.preload();
+        }
+        return sDefault;
+    }
+
+    /**
+     * @throws IllegalStateException 还没有调用 {@link #initDefault(Backend)}
+     */
+    public static synchronized SettingsStore getDefault() {
+        if (sDefault == null) {
+            throw new IllegalStateException("SettingsStore.initDefault() not called");
+        }
+        return sDefault;
+    }
+
+    /**
+     * 开始在后台读入，重复调用无效
+     */
+    public void preload() {
+        if (mLoaded.getCount() == 0) {
+            return;
+        }
+        mExecutor.execute(mLoadTask);
+    }
+
+    public boolean isLoaded() {
+        return mLoaded.getCount() == 0;
+    }
+
+    /**
+     * 读入完成后执行 task：已经完成时立即在当前线程执行，否则在后台线程中执行
+     */
+    public void runWhenLoaded(Runnable task) {
+        synchronized (mLoadCallbacks) {
+            if (!isLoaded()) {
+                mLoadCallbacks.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * 只用于测试和后台线程，不要在 UI 线程调用
+     */
+    public boolean awaitLoaded(long timeout, TimeUnit unit) throws InterruptedException {
+        return mLoaded.await(timeout, unit);
+    }
+
+    /**
+     * 从磁盘读入的值，不受读入之前写入内存的值影响。用于需要把读入前的修改与磁盘上的记录合并的地方，
+     * 在 {@link #runWhenLoaded(Runnable)} 的回调中调用；读入之前已经 clear() 时视为磁盘上没有值
+     */
+    public String getLoadedString(String key, String defValue) {
+        Object value = mStored.get(key);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    public String getString(String key, String defValue) {
+        Object value = mValues.get(key);
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    public int getInt(String key, int defValue) {
+        Object value = mValues.get(key);
+        return value instanceof Integer ? (Integer) value : defValue;
+    }
+
+    public long getLong(String key, long defValue) {
+        Object value = mValues.get(key);
+        return value instanceof Long ? (Long) value : defValue;
+    }
+
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = mValues.get(key);
+        return value instanceof Boolean ? (Boolean) value : defValue;
+    }
+
+    public void putString(String key, String value) {
+        put(key, value);
+    }
+
+    public void putInt(String key, int value) {
+        put(key, value);
+    }
+
+    public void putLong(String key, long value) {
+        put(key, value);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        put(key, value);
+    }
+
+    public void remove(String key) {
+        put(key, null);
+    }
+
+    public void clear() {
+        mValues.clear();
+        synchronized (mDirtyLock) {
+            mDirty.clear();
+            mClearPending = true;
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * 等待之前的修改写盘，只用于测试和退出前
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        return done.await(timeout, unit);
+    }
+
+    private void put(String key, Object value) {
+        if (value == null) {
+            mValues.remove(key);
+        } else {
+            mValues.put(key, value);
+        }
+        synchronized (mDirtyLock) {
+            mDirty.put(key, value);
+            scheduleFlushLocked();
+        }
+    }
+
+    private void scheduleFlushLocked() {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mExecutor.execute(mFlushTask);
+        }
+    }
+
+    private final Runnable mLoadTask = new Runnable() {
+        @Override
+        public void run() {
+            Map<String, ?> stored = mBackend.load();
+            if (stored != null) {
+                boolean cleared;
+                synchronized (mDirtyLock) {
+                    cleared = mClearPending;
+                }
+                for (Map.Entry<String, ?> entry : stored.entrySet()) {
+                    boolean touched;
+                    synchronized (mDirtyLock) {
+                        touched = mDirty.containsKey(entry.getKey());
+                    }
+                    // 读入之前已经修改或清空过的键以内存中的为准
+                    if (!cleared && !touched && entry.getValue() != null) {
+                        mValues.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+                }
+                if (!cleared) {
+                    mStored = stored;
+                }
+            }
+            List<Runnable> callbacks;
+            synchronized (mLoadCallbacks) {
+                mLoaded.countDown();
+                callbacks = new ArrayList<Runnable>(mLoadCallbacks);
+                mLoadCallbacks.clear();
+            }
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        }
+    };
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            HashMap<String, Object> changes;
+            boolean clear;
+            synchronized (mDirtyLock) {
+                changes = mDirty;
+                clear = mClearPending;
+                mDirty = new HashMap<String, Object>();
+                mClearPending = false;
+                mFlushScheduled = false;
+            }
+            if (clear) {
+                mBackend.clear();
+            }
+            if (!changes.isEmpty()) {
+                mBackend.write(changes);
+            }
+        }
+    };
+}
@@ -0,0 +1,60 @@
+package com.ronda.bluetoothassist.settings;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Map;
+
+/**
+ * 以 SharedPreferences 作为 SettingsStore 的存储。getSharedPreferences() 本身也推迟到后台线程中第一次 load() 时调用
+ */
+
+public class SharedPreferencesBackend implements SettingsStore.Backend {
+
+    private final Context mContext;
+    private final String mName;
+    private SharedPreferences mPreferences; // 只在 SettingsStore 的后台线程中访问
+
+    public SharedPreferencesBackend(Context context, String name) {
+        mContext = context;
+        mName = name;
+    }
+
+    @Override
+    public Map<String, ?> load() {
+        return preferences().getAll();
+    }
+
+    @Override
+    public void write(Map<String, Object> changes) {
+        SharedPreferences.Editor editor = preferences().edit();
+        for (Map.Entry<String, Object> entry : changes.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (value == null) {
+                editor.remove(key);
+            } else if (value instanceof String) {
+                editor.putString(key, (String) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(key, (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(key, (Long) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(key, (Boolean) value);
+            }
+        }
+        editor.commit(); // 已经在后台线程，直接同步写盘，保证写入顺序
+    }
+
+    @Override
+    public void clear() {
+        preferences().edit().clear().commit();
+    }
+
+    private SharedPreferences preferences() {
+        if (mPreferences == null) {
+            mPreferences = mContext.getSharedPreferences(mName, Context.MODE_PRIVATE);
+        }
+        return mPreferences;
+    }
+}
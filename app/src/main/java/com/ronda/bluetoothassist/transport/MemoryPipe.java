@@ -0,0 +1,129 @@
+package com.ronda.bluetoothassist.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * 单向的内存管道，写入端写满时阻塞，读取端没有数据时阻塞
+ * <p>
+ * 与 java.io.PipedInputStream 不同，它不依赖写线程是否存活，读写两端可以在任意线程（包括线程池）中使用。
+ * 任意一端 close() 之后，读取端读完剩余数据后返回 -1，写入端抛出 IOException
+ */
+
+public class MemoryPipe {
+
+    private final byte[] mBuf;
+    private int mHead;
+    private int mSize;
+    private boolean mClosed;
+
+    private final InputStream mIn = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return MemoryPipe.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            synchronized (MemoryPipe.this) {
+                return mSize;
+            }
+        }
+
+        @Override
+        public void close() {
+            MemoryPipe.this.close();
+        }
+    };
+
+    private final OutputStream mOut = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            MemoryPipe.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            MemoryPipe.this.close();
+        }
+    };
+
+    public MemoryPipe(int capacity) {
+        mBuf = new byte[capacity];
+    }
+
+    public InputStream getInputStream() {
+        return mIn;
+    }
+
+    public OutputStream getOutputStream() {
+        return mOut;
+    }
+
+    public synchronized void close() {
+        mClosed = true;
+        notifyAll();
+    }
+
+    private synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (mSize == 0) {
+            if (mClosed) {
+                return -1;
+            }
+            waitForChange();
+        }
+        int n = Math.min(len, mSize);
+        int first = Math.min(n, mBuf.length - mHead);
+        System.arraycopy(mBuf, mHead, b, off, first);
+        System.arraycopy(mBuf, 0, b, off + first, n - first);
+        mHead = (mHead + n) % mBuf.length;
+        mSize -= n;
+        notifyAll();
+        return n;
+    }
+
+    private synchronized void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            while (mSize == mBuf.length && !mClosed) {
+                waitForChange();
+            }
+            if (mClosed) {
+                throw new IOException("pipe closed");
+            }
+            int n = Math.min(len, mBuf.length - mSize);
+            int tail = (mHead + mSize) % mBuf.length;
+            int first = Math.min(n, mBuf.length - tail);
+            System.arraycopy(b, off, mBuf, tail, first);
+            System.arraycopy(b, off + first, mBuf, 0, n - first);
+            mSize += n;
+            off += n;
+            len -= n;
+            notifyAll();
+        }
+    }
+
+    private void waitForChange() throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.ronda.bluetoothassist.transport;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用内存管道模拟远程设备，每次 create() 都会创建一对新的管道
+ * <p>
+ * create() 返回的是手机这一端，设备那一端通过 {@link #awaitRemote} 取得：
+ * 向设备端的输出流写数据相当于设备发送，从设备端的输入流读到的就是手机发出的数据
+ */
+
+public class MemoryTransportFactory implements TransportFactory {
+
+    public static final int DEFAULT_PIPE_CAPACITY = 64 * 1024;
+
+    private final int mPipeCapacity;
+    private final Map<String, StreamTransport> mRemotes = new HashMap<String, StreamTransport>();
+
+    public MemoryTransportFactory() {
+        this(DEFAULT_PIPE_CAPACITY);
+    }
+
+    public MemoryTransportFactory(int pipeCapacity) {
+        mPipeCapacity = pipeCapacity;
+    }
+
+    @Override
+    public Transport create(String address) throws IOException {
+        MemoryPipe toDevice = new MemoryPipe(mPipeCapacity);
+        MemoryPipe fromDevice = new MemoryPipe(mPipeCapacity);
+        StreamTransport local = new StreamTransport(address, "memory:" + address,
+                fromDevice.getInputStream(), toDevice.getOutputStream());
+        StreamTransport remote = new StreamTransport(address, "memory:" + address,
+                toDevice.getInputStream(), fromDevice.getOutputStream());
+        synchronized (this) {
+            mRemotes.put(address, remote);
+            notifyAll();
+        }
+        return local;
+    }
+
+    /**
+     * 等待并取出最近一次 create(address) 对应的设备端，取出后不再保留
+     *
+     * @return 超时返回 null
+     */
+    public synchronized StreamTransport awaitRemote(String address, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        StreamTransport remote;
+        while ((remote = mRemotes.remove(address)) == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return remote;
+    }
+}
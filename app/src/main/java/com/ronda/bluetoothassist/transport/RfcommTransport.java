@@ -0,0 +1,59 @@
+package com.ronda.bluetoothassist.transport;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * 基于 BluetoothSocket 的 RFCOMM（SPP）连接
+ */
+
+public class RfcommTransport implements Transport {
+
+    private final BluetoothAdapter mAdapter;
+    private final BluetoothDevice mDevice;
+    private final BluetoothSocket mSocket;
+
+    public RfcommTransport(BluetoothAdapter adapter, BluetoothDevice device, UUID uuid) throws IOException {
+        mAdapter = adapter;
+        mDevice = device;
+        mSocket = device.createRfcommSocketToServiceRecord(uuid);
+    }
+
+    @Override
+    public void connect() throws IOException {
+        // 搜索设备会明显拖慢连接速度
+        mAdapter.cancelDiscovery();
+        mSocket.connect();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return mSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return mSocket.getOutputStream();
+    }
+
+    @Override
+    public String getAddress() {
+        return mDevice.getAddress();
+    }
+
+    @Override
+    public String getName() {
+        return mDevice.getName();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSocket.close();
+    }
+}
@@ -0,0 +1,36 @@
+package com.ronda.bluetoothassist.transport;
+
+import android.bluetooth.BluetoothAdapter;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * 创建到指定 MAC 地址的 RFCOMM 连接
+ */
+
+public class RfcommTransportFactory implements TransportFactory {
+
+    // Unique UUID for this application
+    public static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+
+    private final BluetoothAdapter mAdapter;
+    private final UUID mUuid;
+
+    public RfcommTransportFactory(BluetoothAdapter adapter) {
+        this(adapter, SPP_UUID);
+    }
+
+    public RfcommTransportFactory(BluetoothAdapter adapter, UUID uuid) {
+        mAdapter = adapter;
+        mUuid = uuid;
+    }
+
+    @Override
+    public Transport create(String address) throws IOException {
+        if (mAdapter == null) {
+            throw new IOException("Bluetooth is not supported");
+        }
+        return new RfcommTransport(mAdapter, mAdapter.getRemoteDevice(address), mUuid);
+    }
+}
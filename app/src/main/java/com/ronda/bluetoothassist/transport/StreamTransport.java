@@ -0,0 +1,58 @@
+package com.ronda.bluetoothassist.transport;
+
+import com.ronda.bluetoothassist.utils.CloseUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 由现成的输入输出流组成的 Transport，connect() 不做任何事
+ * <p>
+ * 用于在没有蓝牙硬件的 JVM 上运行连接引擎，例如配合 {@link MemoryTransportFactory} 做压测
+ */
+
+public class StreamTransport implements Transport {
+
+    private final String mAddress;
+    private final String mName;
+    private final InputStream mIn;
+    private final OutputStream mOut;
+
+    public StreamTransport(String address, String name, InputStream in, OutputStream out) {
+        mAddress = address;
+        mName = name;
+        mIn = in;
+        mOut = out;
+    }
+
+    @Override
+    public void connect() throws IOException {
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return mIn;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return mOut;
+    }
+
+    @Override
+    public String getAddress() {
+        return mAddress;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        CloseUtils.close(mIn);
+        CloseUtils.close(mOut);
+    }
+}
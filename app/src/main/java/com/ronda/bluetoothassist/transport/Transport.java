@@ -0,0 +1,31 @@
+package com.ronda.bluetoothassist.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 一条到远程设备的双向字节流，连接引擎只通过它收发数据，不关心底层是蓝牙 RFCOMM 还是内存管道
+ * <p>
+ * close() 可以在任意线程调用，用来打断阻塞中的 connect() 和 read()
+ */
+
+public interface Transport extends Closeable {
+
+    /**
+     * 阻塞直到连接建立或失败
+     */
+    void connect() throws IOException;
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * 远程设备的地址，蓝牙设备即 MAC 地址
+     */
+    String getAddress();
+
+    String getName();
+}
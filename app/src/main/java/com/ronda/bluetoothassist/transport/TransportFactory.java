@@ -0,0 +1,15 @@
+package com.ronda.bluetoothassist.transport;
+
+import java.io.IOException;
+
+/**
+ * 根据地址创建 Transport
+ */
+
+public interface TransportFactory {
+
+    /**
+     * 创建一个尚未连接的 Transport，之后由调用者负责 connect() 和 close()
+     */
+    Transport create(String address) throws IOException;
+}
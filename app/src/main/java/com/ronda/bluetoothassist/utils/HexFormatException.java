@@ -0,0 +1,21 @@
+package com.ronda.bluetoothassist.utils;
+
+/**
+ * 16进制文本格式错误，{@link #getIndex()} 是出错字符在输入中的下标，可以用来把光标定位到那里
+ */
+
+public class HexFormatException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mIndex;
+
+    public HexFormatException(String message, int index) {
+        super(message + " at " + index);
+        mIndex = index;
+    }
+
+    public int getIndex() {
+        return mIndex;
+    }
+}
@@ -1,5 +1,7 @@
 package com.ronda.bluetoothassist.utils;
 
+import java.io.IOException;
+import java.util.Arrays;
 
 /*
  *
@@ -11,6 +13,9 @@ package com.ronda.bluetoothassist.utils;
 
 public class HexUtils {
 
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+
     /**
      * byte数组转换成16进制字符串
      * 每个byte分两半各4位，每4位转成一个16进制的字符，若前4位的二进制为0，转成字符串后的前面也会补上0
@@ -20,36 +25,97 @@ public class HexUtils {
      * @return 不带空格的16进制字符串，并且A~F全都是小写表示
      */
     public static String bytesToHexString(byte[] src) {
-        StringBuilder stringBuilder = new StringBuilder();
         if (src == null || src.length <= 0) {
             return null;
         }
-        for (int i = 0; i < src.length; i++) {
-            int v = src[i] & 0xFF;
-            String hv = Integer.toHexString(v);
-            if (hv.length() < 2) {
-                stringBuilder.append(0);
-            }
-            stringBuilder.append(hv);
-        }
-        return stringBuilder.toString();
+        char[] chars = new char[src.length * 2];
+        encodeHex(src, 0, src.length, chars, 0, false);
+        return new String(chars);
     }
 
     //大写的16进制字符串输出，并且每个字节带有一个空格
     public static String bytesToHexStringWithSpace(byte[] src) {
-        StringBuilder stringBuilder = new StringBuilder();
         if (src == null || src.length <= 0) {
             return null;
         }
-        for (int i = 0; i < src.length; i++) {
+        char[] chars = new char[src.length * 3];
+        encodeHexWithSpace(src, 0, src.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * 查表把 src[off, off + len) 编码成不带空格的16进制字符，写入 dst 中
+     *
+     * @param upperCase A~F 是否用大写表示
+     * @return 写入的字符个数，即 len * 2
+     */
+    public static int encodeHex(byte[] src, int off, int len, char[] dst, int dstOff, boolean upperCase) {
+        char[] table = upperCase ? HEX_UPPER : HEX_LOWER;
+        int j = dstOff;
+        for (int i = off, end = off + len; i < end; i++) {
+            int v = src[i] & 0xFF;
+            dst[j++] = table[v >>> 4];
+            dst[j++] = table[v & 0x0F];
+        }
+        return j - dstOff;
+    }
+
+    /**
+     * 查表把 src[off, off + len) 编码成与 {@link #bytesToHexStringWithSpace} 相同的格式（大写，每个字节后带一个空格），写入 dst 中
+     *
+     * @return 写入的字符个数，即 len * 3
+     */
+    public static int encodeHexWithSpace(byte[] src, int off, int len, char[] dst, int dstOff) {
+        int j = dstOff;
+        for (int i = off, end = off + len; i < end; i++) {
+            int v = src[i] & 0xFF;
+            dst[j++] = HEX_UPPER[v >>> 4];
+            dst[j++] = HEX_UPPER[v & 0x0F];
+            dst[j++] = ' ';
+        }
+        return j - dstOff;
+    }
+
+    /**
+     * 把 src[off, off + len) 以不带空格的16进制追加到 sb 末尾，不产生临时字符串
+     */
+    public static StringBuilder appendHex(byte[] src, int off, int len, StringBuilder sb, boolean upperCase) {
+        char[] table = upperCase ? HEX_UPPER : HEX_LOWER;
+        sb.ensureCapacity(sb.length() + len * 2);
+        for (int i = off, end = off + len; i < end; i++) {
+            int v = src[i] & 0xFF;
+            sb.append(table[v >>> 4]).append(table[v & 0x0F]);
+        }
+        return sb;
+    }
+
+    /**
+     * 把 src[off, off + len) 以大写、每个字节后带一个空格的格式追加到 sb 末尾，不产生临时字符串
+     */
+    public static StringBuilder appendHexWithSpace(byte[] src, int off, int len, StringBuilder sb) {
+        sb.ensureCapacity(sb.length() + len * 3);
+        for (int i = off, end = off + len; i < end; i++) {
+            int v = src[i] & 0xFF;
+            sb.append(HEX_UPPER[v >>> 4]).append(HEX_UPPER[v & 0x0F]).append(' ');
+        }
+        return sb;
+    }
+
+    /**
+     * 把 src[off, off + len) 编码成16进制写到任意 Appendable（Writer 等）中
+     *
+     * @param upperCase A~F 是否用大写表示
+     * @param withSpace 每个字节后是否带一个空格
+     */
+    public static void appendHex(byte[] src, int off, int len, Appendable out, boolean upperCase, boolean withSpace) throws IOException {
+        char[] table = upperCase ? HEX_UPPER : HEX_LOWER;
+        for (int i = off, end = off + len; i < end; i++) {
             int v = src[i] & 0xFF;
-            String hv = Integer.toHexString(v);
-            if (hv.length() < 2) {
-                stringBuilder.append(0);
+            out.append(table[v >>> 4]).append(table[v & 0x0F]);
+            if (withSpace) {
+                out.append(' ');
             }
-            stringBuilder.append(hv.toUpperCase()+" ");
         }
-        return stringBuilder.toString();
     }
 
     /**
@@ -65,54 +131,132 @@ public class HexUtils {
             return null;
         }
         String[] str = new String[src.length];
+        char[] pair = new char[2];
 
         for (int i = 0; i < src.length; i++) {
-            int v = src[i] & 0xFF;
-            String hv = Integer.toHexString(v);
-            if (hv.length() < 2) {
-                str[i] = "0";
-            }
-            str[i] = hv;
+            encodeHex(src, i, 1, pair, 0, false);
+            str[i] = new String(pair);
         }
         return str;
     }
 
+    private static final byte SEPARATOR = -2;
+    private static final byte INVALID = -1;
+    private static final byte[] HEX_VALUE = new byte[128]; // ASCII 字符的值：0~15、SEPARATOR 或 INVALID
+
+    static {
+        Arrays.fill(HEX_VALUE, INVALID);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUE['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUE['a' + i] = (byte) (10 + i);
+            HEX_VALUE['A' + i] = (byte) (10 + i);
+        }
+        for (char c : " \t\r\n,;:-".toCharArray()) {
+            HEX_VALUE[c] = SEPARATOR;
+        }
+    }
+
     /**
-     * 把16进制字符串转换成字节数组。
-     * 从hex16进制字符串中的0下标开始，每两位16进制字符转成一个字节类型，返回的是一个byte数组。
-     * eg: fb 转成字节数组的话，数组长度为1，而不是2.这是因为f和b各占4位，合起来是8位（1byte）
-     * <p>
-     * 有一个要求：该16进制的源字符串中的字符个数必须是偶数个，而且每一个必须是0~9、a~f、A~F
-     * 若字符个数是奇数个的话，会把最后一个16进制字符给舍去
+     * 把16进制字符串转换成字节数组，格式同 {@link #parseHex}
      *
-     * @param hexString the hex string
-     * @return byte[]
+     * @return 为 null 或空串时返回 null
+     * @throws HexFormatException 格式错误，不再像以前那样静默丢掉奇数个字符中的最后一个
      */
     public static byte[] hexStringToBytes(String hexString) {
-
-        if (hexString == null || hexString.equals("")) {
+        if (hexString == null || hexString.isEmpty()) {
             return null;
         }
-        hexString = hexString.toUpperCase();
-        int length = hexString.length() / 2;
-        char[] hexChars = hexString.toCharArray();
-        byte[] d = new byte[length];
+        byte[] d = new byte[maxParsedLength(hexString.length())];
+        int n = parseHex(hexString, 0, hexString.length(), d, 0);
+        return n == d.length ? d : Arrays.copyOf(d, n);
+    }
 
-        for (int i = 0; i < length; i++) {
-            int pos = i * 2;
-            d[i] = (byte) (charToByte(hexChars[pos]) << 4 | charToByte(hexChars[pos + 1]));
+    /**
+     * {@link #parseHex} 解析 len 个字符最多得到的字节数，用来准备 dst
+     */
+    public static int maxParsedLength(int len) {
+        return (len + 1) / 2;
+    }
+
+    /**
+     * 一次遍历解析16进制文本，直接写入 dst，不产生中间字符串
+     * <p>
+     * 字节之间可以用空白、逗号、分号、冒号或减号分隔，也可以不分隔；每组数字前可以带 0x 或 0X。
+     * 一组里的数字两两组成一个字节，只有一个数字的组表示一个字节（"0x1 2" 为 01 02），
+     * 多于一个的奇数个数字有歧义，报错
+     *
+     * @param dst 至少要有 {@link #maxParsedLength}(len) 个字节的空间
+     * @return 写入的字节数
+     * @throws HexFormatException 出现非法字符或奇数个数字，下标是相对 s 的
+     */
+    public static int parseHex(CharSequence s, int off, int len, byte[] dst, int dstOff) {
+        int j = dstOff;
+        int groupStart = -1; // 当前这组数字的第一个字符，不在一组中时为 -1
+        int high = -1;       // 还没有配对的高 4 位
+        for (int i = off, end = off + len; i < end; i++) {
+            char c = s.charAt(i);
+            int v = c < 128 ? HEX_VALUE[c] : INVALID;
+            if (v >= 0) {
+                if (v == 0 && high < 0 && groupStart < 0 && i + 1 < end && (s.charAt(i + 1) | 0x20) == 'x') {
+                    i++; // 0x 前缀
+                    if (i + 1 >= end || (s.charAt(i + 1) < 128 ? HEX_VALUE[s.charAt(i + 1)] : INVALID) < 0) {
+                        throw new HexFormatException("no digits after 0x", i + 1);
+                    }
+                    groupStart = i + 1;
+                    continue;
+                }
+                if (groupStart < 0) {
+                    groupStart = i;
+                }
+                if (high < 0) {
+                    high = v;
+                } else {
+                    dst[j++] = (byte) (high << 4 | v);
+                    high = -1;
+                }
+            } else if (v == SEPARATOR) {
+                j = endGroup(groupStart, i, high, dst, j);
+                groupStart = -1;
+                high = -1;
+            } else {
+                throw new HexFormatException("invalid hex character '" + c + "'", i);
+            }
         }
-        return d;
+        return endGroup(groupStart, off + len, high, dst, j) - dstOff;
     }
 
     /**
-     * Convert char to byte
+     * 一组数字结束：只有一个数字时作为一个字节，多于一个的奇数个数字报错
+     */
+    private static int endGroup(int groupStart, int end, int high, byte[] dst, int j) {
+        if (high < 0) {
+            return j;
+        }
+        if (end - groupStart != 1) {
+            throw new HexFormatException("odd number of hex digits", end - 1);
+        }
+        dst[j++] = (byte) high;
+        return j;
+    }
+
+    /**
+     * 把 len 个字节的 BCD 码（高半字节在前）直接转成数值，不经过字符串
      *
-     * @param c char
-     * @return byte
+     * @return 数值，有半字节大于 9 时返回 -1。len 不能超过 9（18 位十进制数）
      */
-    private static byte charToByte(char c) {
-        return (byte) "0123456789ABCDEF".indexOf(c);
+    public static long bcdToLong(byte[] buf, int off, int len) {
+        long value = 0;
+        for (int i = off, end = off + len; i < end; i++) {
+            int high = (buf[i] >> 4) & 0x0F;
+            int low = buf[i] & 0x0F;
+            if (high > 9 || low > 9) {
+                return -1;
+            }
+            value = value * 100 + high * 10 + low;
+        }
+        return value;
     }
 
     /**
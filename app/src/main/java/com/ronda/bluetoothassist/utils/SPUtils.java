@@ -1,13 +1,14 @@
 package com.ronda.bluetoothassist.utils;
 
-import android.content.Context;
-import android.content.SharedPreferences;
-
-import com.ronda.bluetoothassist.base.MyApplication;
+import com.ronda.bluetoothassist.settings.DeviceHistory;
+import com.ronda.bluetoothassist.settings.SettingsStore;
 
 /**
  * SharedPreferences 的帮助类
  * <p>
+ * 数据由 {@link SettingsStore} 在 MyApplication.onCreate() 时于后台读入，这里的方法只读写内存，不会在 UI 线程等待磁盘；
+ * 读入完成之前返回默认值，启动时需要真实值的地方用 SettingsStore.runWhenLoaded() 等待
+ * <p>
  * Author: Ronda(1575558177@qq.com)
  * Date: 2016/11/25
  * Version: v1.0
@@ -15,8 +16,9 @@ import com.ronda.bluetoothassist.base.MyApplication;
 
 public class SPUtils {
 
-    private static SharedPreferences preferences = MyApplication.getInstance().getSharedPreferences("userinfo", Context.MODE_PRIVATE);
-    private static SharedPreferences.Editor editor = preferences.edit();
+    public static final String PREFERENCES_NAME = "userinfo";
+
+    private static DeviceHistory sDeviceHistory;
 
 
 
@@ -28,6 +30,50 @@ public class SPUtils {
     private static final String MAIN_BLUETOOTH_ADDR = "main_bluetooth_addr";
     private static final String defMainBluetoothAddr = "";
 
+    /**
+     * 最近搜索到的设备，格式见 DeviceIndex.encode()
+     */
+    private static final String RECENT_DEVICES = "recent_devices";
+    private static final String defRecentDevices = "";
+
+    /**
+     * 连接过的设备及其连接耗时、成功率，格式见 DeviceHistory.encode()
+     */
+    private static final String DEVICE_HISTORY = "device_history";
+
+    /**
+     * 接收区按字段解码显示的帧格式，每行一个，格式见 FrameSchema.parse()
+     */
+    private static final String FRAME_SCHEMAS = "frame_schemas";
+    private static final String defFrameSchemas = "";
+
+    /**
+     * 接收分帧的结束标志，16进制，例如 "0D 0A"；为空时不分帧
+     */
+    private static final String FRAME_DELIMITER = "frame_delimiter";
+    private static final String defFrameDelimiter = "";
+
+
+    /********************** value --> int ***********************/
+
+    /**
+     * 接收区最多保留的行数
+     */
+    private static final String CONSOLE_MAX_LINES = "console_max_lines";
+    private static final int defConsoleMaxLines = 2000;
+
+    /**
+     * 分帧后的帧尾校验类型，FrameChecksum.TYPE_*，0 表示不校验
+     */
+    private static final String CHECKSUM_TYPE = "checksum_type";
+    private static final int defChecksumType = 0;
+
+    /**
+     * 帧头中不参与校验的字节数
+     */
+    private static final String CHECKSUM_COVER_OFFSET = "checksum_cover_offset";
+    private static final int defChecksumCoverOffset = 0;
+
 
 
     /*************************** 对外提供更简单的方法 **********************************/
@@ -43,6 +89,64 @@ public class SPUtils {
         return getString(MAIN_BLUETOOTH_ADDR, defMainBluetoothAddr);
     }
 
+    public static void setRecentDevices(String encoded) {
+        putString(RECENT_DEVICES, encoded);
+    }
+
+    public static String getRecentDevices() {
+        return getString(RECENT_DEVICES, defRecentDevices);
+    }
+
+    /**
+     * 连接过的设备的历史，第一次调用时创建，之后一直在内存中
+     */
+    public static synchronized DeviceHistory getDeviceHistory() {
+        if (sDeviceHistory == null) {
+            sDeviceHistory = new DeviceHistory(store(), DEVICE_HISTORY, DeviceHistory.DEFAULT_CAPACITY);
+        }
+        return sDeviceHistory;
+    }
+
+    public static void setFrameSchemas(String specs) {
+        putString(FRAME_SCHEMAS, specs);
+    }
+
+    public static String getFrameSchemas() {
+        return getString(FRAME_SCHEMAS, defFrameSchemas);
+    }
+
+    public static void setConsoleMaxLines(int maxLines) {
+        putInt(CONSOLE_MAX_LINES, maxLines);
+    }
+
+    public static int getConsoleMaxLines() {
+        return getInt(CONSOLE_MAX_LINES, defConsoleMaxLines);
+    }
+
+    public static void setFrameDelimiter(String hex) {
+        putString(FRAME_DELIMITER, hex);
+    }
+
+    public static String getFrameDelimiter() {
+        return getString(FRAME_DELIMITER, defFrameDelimiter);
+    }
+
+    public static void setChecksumType(int type) {
+        putInt(CHECKSUM_TYPE, type);
+    }
+
+    public static int getChecksumType() {
+        return getInt(CHECKSUM_TYPE, defChecksumType);
+    }
+
+    public static void setChecksumCoverOffset(int offset) {
+        putInt(CHECKSUM_COVER_OFFSET, offset);
+    }
+
+    public static int getChecksumCoverOffset() {
+        return getInt(CHECKSUM_COVER_OFFSET, defChecksumCoverOffset);
+    }
+
     /************************** 保存和读取基本类型的数据 *****************************/
 
     /**
@@ -52,12 +156,25 @@ public class SPUtils {
      * @param value
      */
     private static void putString(String key, String value) {
-        editor.putString(key, value);
-        editor.apply();
+        store().putString(key, value);
     }
 
     private static String getString(String key, String defValue) {
-        return preferences.getString(key, defValue);
+        return store().getString(key, defValue);
+    }
+
+    /**
+     * 保存值为 int 类型的数据
+     *
+     * @param key
+     * @param value
+     */
+    private static void putInt(String key, int value) {
+        store().putInt(key, value);
+    }
+
+    private static int getInt(String key, int defValue) {
+        return store().getInt(key, defValue);
     }
 
     /**
@@ -67,12 +184,15 @@ public class SPUtils {
      * @param value
      */
     private static void putBoolean(String key, boolean value) {
-        editor.putBoolean(key, value);
-        editor.apply();
+        store().putBoolean(key, value);
     }
 
     private static boolean getBoolean(String key, boolean defvalue) {
-        return preferences.getBoolean(key, defvalue);
+        return store().getBoolean(key, defvalue);
+    }
+
+    private static SettingsStore store() {
+        return SettingsStore.getDefault();
     }
 
 
@@ -81,7 +201,6 @@ public class SPUtils {
      * 清除SharedPreference
      */
     public static void clearSharedPreference(){
-        editor.clear();
-        editor.apply();
+        store().clear();
     }
 }
@@ -0,0 +1,78 @@
+package com.ronda.bluetoothassist;
+
+import com.ronda.bluetoothassist.metrics.LinkMetrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReceiveBatcherTest {
+
+    /**
+     * 不经过 Handler，只记录投递的消息
+     */
+    private static class RecordingBatcher extends ReceiveBatcher {
+        int delayedPosts;
+        int urgentPosts;
+
+        RecordingBatcher(LinkMetrics metrics) {
+            super(null, metrics);
+        }
+
+        @Override
+        void post(long delayMs) {
+            delayedPosts++;
+        }
+
+        @Override
+        void postNow() {
+            urgentPosts++;
+        }
+    }
+
+    @Test
+    public void offer_flushesImmediatelyAtMaxBatchBytes() throws Exception {
+        RecordingBatcher batcher = new RecordingBatcher(new LinkMetrics());
+        batcher.setLimits(8, 64);
+        byte[] data = new byte[5];
+
+        batcher.offer(data, 0, 5);
+        assertEquals(1, batcher.delayedPosts);
+        assertEquals(0, batcher.urgentPosts);
+
+        batcher.offer(data, 0, 3); // 正好达到 8 字节
+        assertEquals(1, batcher.delayedPosts);
+        assertEquals(1, batcher.urgentPosts);
+        batcher.offer(data, 0, 5); // 已经提前投递，不再重复
+        assertEquals(1, batcher.urgentPosts);
+
+        ReceiveBatcher.Batch batch = batcher.drain();
+        assertEquals(13, batch.length());
+        assertEquals(3, batch.getChunkCount());
+        assertEquals(8, batch.getChunkEnd(1));
+
+        batcher.offer(data, 0, 5);
+        assertEquals(2, batcher.delayedPosts); // drain() 之后重新开始计时
+        assertEquals(1, batcher.urgentPosts);
+    }
+
+    @Test
+    public void offer_dropsBytesBeyondDefaultPendingCap() throws Exception {
+        LinkMetrics metrics = new LinkMetrics();
+        RecordingBatcher batcher = new RecordingBatcher(metrics);
+        byte[] data = new byte[1000];
+        for (int i = 0; i < 70; i++) { // UI 一直没有 drain()
+            batcher.offer(data, 0, data.length);
+        }
+
+        int cap = ReceiveBatcher.DEFAULT_MAX_PENDING_BYTES;
+        assertEquals(70 * 1000 - cap, batcher.getDroppedBytes());
+        assertEquals(70 * 1000 - cap, metrics.snapshot().getUiDroppedBytes());
+        assertEquals(1, batcher.urgentPosts);
+
+        ReceiveBatcher.Batch batch = batcher.drain();
+        assertEquals(cap, batch.length());
+        assertEquals(66, batch.getChunkCount()); // 第 66 块只收下一部分，之后的整块丢弃
+        assertEquals(cap, batch.getChunkEnd(65));
+    }
+}
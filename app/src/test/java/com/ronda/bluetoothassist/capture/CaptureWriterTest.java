@@ -0,0 +1,140 @@
+package com.ronda.bluetoothassist.capture;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CaptureWriterTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * 读出一个文件中的所有记录，返回记录数，数据依次追加到 out
+     */
+    private static int readRecords(File file, StringBuilder out) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            assertEquals(CaptureFormat.MAGIC, in.readInt());
+            assertEquals(CaptureFormat.VERSION, in.readShort());
+            in.readShort();
+            in.readLong();
+            int count = 0;
+            long lastNanos = -1;
+            while (true) {
+                long nanos;
+                try {
+                    nanos = in.readLong();
+                } catch (EOFException e) {
+                    return count;
+                }
+                assertTrue(nanos >= lastNanos);
+                lastNanos = nanos;
+                int session = in.readShort();
+                byte direction = in.readByte();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                out.append(session).append(direction == CaptureFormat.DIRECTION_RX ? '<' : '>')
+                        .append(new String(data, "US-ASCII")).append(' ');
+                count++;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private File[] captureFiles(File dir) {
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    @Test
+    public void recordsAreWrittenInOrderWithDirection() throws Exception {
+        File dir = mFolder.newFolder();
+        CaptureWriter writer = new CaptureWriter(dir, "t");
+        assertTrue(writer.append(1, CaptureFormat.DIRECTION_TX, "ping".getBytes(), 0, 4));
+        assertTrue(writer.append(1, CaptureFormat.DIRECTION_RX, "xpongx".getBytes(), 1, 4));
+        assertTrue(writer.append(2, CaptureFormat.DIRECTION_RX, "hi".getBytes(), 0, 2));
+        writer.close();
+        assertFalse(writer.append(1, CaptureFormat.DIRECTION_RX, "late".getBytes(), 0, 4));
+
+        File[] files = captureFiles(dir);
+        assertEquals(1, files.length);
+        StringBuilder records = new StringBuilder();
+        assertEquals(3, readRecords(files[0], records));
+        assertEquals("1>ping 1<pong 2<hi ", records.toString());
+        assertEquals(10, writer.getCapturedBytes());
+        assertEquals(0, writer.getDroppedRecords());
+    }
+
+    @Test
+    public void rotatesBySizeWithoutSplittingRecords() throws Exception {
+        File dir = mFolder.newFolder();
+        // 每个缓冲区放 2 条 20 字节的记录，文件上限 60 字节 => 每个文件一个缓冲区
+        CaptureWriter writer = new CaptureWriter(dir, "t", 60, 2 * (CaptureFormat.RECORD_HEADER_SIZE + 5));
+        int written = 0;
+        for (int i = 0; i < 6; i++) {
+            if (writer.append(1, CaptureFormat.DIRECTION_RX, ("rec" + i + "_").getBytes(), 0, 5)) {
+                written++;
+            } else {
+                Thread.sleep(50); // 后台线程还没写完备用缓冲区，记录被丢弃
+                i--;
+            }
+        }
+        writer.close();
+
+        File[] files = captureFiles(dir);
+        assertTrue(files.length >= 3);
+        int total = 0;
+        StringBuilder records = new StringBuilder();
+        for (File file : files) {
+            assertTrue(file.length() <= 60);
+            total += readRecords(file, records);
+        }
+        assertEquals(written, total);
+        assertEquals("1<rec0_ 1<rec1_ 1<rec2_ 1<rec3_ 1<rec4_ 1<rec5_ ", records.toString());
+        assertEquals(files.length, writer.getFileCount());
+    }
+
+    @Test
+    public void readerRejectsRecordLongerThanWriterLimit() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CaptureFormat.MAGIC);
+        out.writeShort(CaptureFormat.VERSION);
+        out.writeShort(0);
+        out.writeLong(0);
+        out.writeLong(1);
+        out.writeShort(1);
+        out.writeByte(CaptureFormat.DIRECTION_RX);
+        out.writeInt(CaptureFormat.MAX_RECORD_LENGTH + 1); // 损坏的长度，不能按它分配缓冲区
+        out.close();
+
+        CaptureReader reader = new CaptureReader(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            reader.next();
+            fail();
+        } catch (IOException expected) {
+        }
+
+        File dir = mFolder.newFolder();
+        CaptureWriter writer = new CaptureWriter(dir, "t", CaptureWriter.DEFAULT_MAX_FILE_BYTES, 512 * 1024);
+        assertFalse(writer.append(1, CaptureFormat.DIRECTION_RX, new byte[CaptureFormat.MAX_RECORD_LENGTH + 1],
+                0, CaptureFormat.MAX_RECORD_LENGTH + 1));
+        writer.close();
+        assertEquals(1, writer.getDroppedRecords());
+    }
+}
@@ -0,0 +1,88 @@
+package com.ronda.bluetoothassist.capture;
+
+import com.ronda.bluetoothassist.connection.ReceivePipeline;
+import com.ronda.bluetoothassist.frame.DelimiterFrameDecoder;
+import com.ronda.bluetoothassist.io.Chunk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReplayerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static class RecordingSink implements ReceivePipeline.Sink {
+        final List<String> data = new ArrayList<String>();
+
+        @Override
+        public void onData(byte[] buf, int offset, int length) {
+            data.add(new String(buf, offset, length));
+        }
+
+        @Override
+        public boolean onChunk(Chunk chunk) {
+            return false;
+        }
+    }
+
+    @Test
+    public void replaysReceivedCaptureRecordsThroughDecoder() throws Exception {
+        File dir = mFolder.newFolder();
+        CaptureWriter writer = new CaptureWriter(dir, "t");
+        writer.append(1, CaptureFormat.DIRECTION_RX, "he".getBytes(), 0, 2);
+        writer.append(1, CaptureFormat.DIRECTION_TX, "ignored\n".getBytes(), 0, 8);
+        writer.append(1, CaptureFormat.DIRECTION_RX, "llo\nwor".getBytes(), 0, 7);
+        writer.append(2, CaptureFormat.DIRECTION_RX, "other\n".getBytes(), 0, 6);
+        writer.append(1, CaptureFormat.DIRECTION_RX, "ld\n".getBytes(), 0, 3);
+        writer.close();
+
+        RecordingSink sink = new RecordingSink();
+        ReceivePipeline pipeline = new ReceivePipeline(sink);
+        pipeline.setFrameDecoder(new DelimiterFrameDecoder(null, "\n".getBytes(), true, 64));
+        Replayer replayer = new Replayer(Replayer.open(dir.listFiles()[0]), pipeline);
+        replayer.setSpeed(Replayer.SPEED_MAX);
+        replayer.setSessionFilter(1);
+        Replayer.Stats stats = replayer.run();
+
+        assertEquals(2, sink.data.size());
+        assertEquals("hello", sink.data.get(0));
+        assertEquals("world", sink.data.get(1));
+        assertEquals(3, stats.getChunks());
+        assertEquals(2, stats.getFrames());
+        assertEquals(12, stats.getBytes());
+        assertEquals(2, stats.getSkipped());
+        assertFalse(stats.isCancelled());
+    }
+
+    @Test
+    public void rawDumpIsPacedBySpeed() throws Exception {
+        File file = mFolder.newFile("dump.bin");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[100]);
+        out.close();
+
+        // 1000 B/s 的链路上 100 字节需要 100ms，10 倍速约 10ms
+        RawDumpSource source = new RawDumpSource(new ByteArrayInputStream(new byte[100]), 10, 1000);
+        RecordingSink sink = new RecordingSink();
+        Replayer replayer = new Replayer(source, new ReceivePipeline(sink));
+        replayer.setSpeed(10);
+        Replayer.Stats stats = replayer.run();
+
+        assertEquals(10, sink.data.size());
+        assertEquals(100, stats.getBytes());
+        assertTrue(stats.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(8));
+        assertTrue(stats.getElapsedNanos() < TimeUnit.MILLISECONDS.toNanos(80));
+        assertTrue(Replayer.open(file) instanceof RawDumpSource);
+    }
+}
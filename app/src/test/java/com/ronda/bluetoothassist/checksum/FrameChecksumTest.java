@@ -0,0 +1,132 @@
+package com.ronda.bluetoothassist.checksum;
+
+import com.ronda.bluetoothassist.connection.ReceivePipeline;
+import com.ronda.bluetoothassist.frame.FixedLengthFrameDecoder;
+import com.ronda.bluetoothassist.io.Chunk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class FrameChecksumTest {
+
+    private static final byte[] CHECK = "123456789".getBytes();
+
+    @Test
+    public void standardCheckValues() {
+        assertEquals(0x31, FrameChecksum.create(FrameChecksum.TYPE_XOR8).compute(CHECK, 0, CHECK.length));
+        assertEquals(0xDD, FrameChecksum.create(FrameChecksum.TYPE_SUM8).compute(CHECK, 0, CHECK.length));
+        assertEquals(0x4B37, FrameChecksum.create(FrameChecksum.TYPE_CRC16_MODBUS).compute(CHECK, 0, CHECK.length));
+        assertEquals(0x29B1, FrameChecksum.create(FrameChecksum.TYPE_CRC16_CCITT).compute(CHECK, 0, CHECK.length));
+        assertEquals(0xCBF43926L, FrameChecksum.create(FrameChecksum.TYPE_CRC32).compute(CHECK, 0, CHECK.length));
+    }
+
+    @Test
+    public void incrementalCrc32MatchesZip() {
+        Random random = new Random(7);
+        FrameChecksum crc = new Crc32();
+        for (int n = 0; n < 200; n++) {
+            byte[] data = new byte[random.nextInt(300)];
+            random.nextBytes(data);
+            CRC32 expected = new CRC32();
+            expected.update(data, 0, data.length);
+
+            // 随机切成几段，模拟分多次到达的数据块
+            crc.reset();
+            int off = 0;
+            while (off < data.length) {
+                int len = Math.min(data.length - off, 1 + random.nextInt(17));
+                crc.update(data, off, len);
+                off += len;
+            }
+            assertEquals(expected.getValue(), crc.getValue());
+        }
+    }
+
+    @Test
+    public void byteOrderFollowsAlgorithm() {
+        byte[] modbus = new byte[2];
+        FrameChecksum crc = new Crc16Modbus();
+        crc.compute(CHECK, 0, CHECK.length);
+        crc.writeTo(modbus, 0);
+        assertArrayEquals(new byte[]{0x37, 0x4B}, modbus);
+        assertEquals(0x4B37, crc.readFrom(modbus, 0));
+
+        byte[] ccitt = new byte[2];
+        crc = new Crc16Ccitt();
+        crc.compute(CHECK, 0, CHECK.length);
+        crc.writeTo(ccitt, 0);
+        assertArrayEquals(new byte[]{0x29, (byte) 0xB1}, ccitt);
+    }
+
+    @Test
+    public void stageSealsAndDropsBadFrames() {
+        ChecksumStage stage = new ChecksumStage(FrameChecksum.TYPE_CRC16_MODBUS, 1, true);
+        byte[] frame = stage.seal(new byte[]{(byte) 0xAA, 1, 2, 3});
+        assertEquals(6, frame.length);
+
+        final List<byte[]> received = new ArrayList<byte[]>();
+        ReceivePipeline pipeline = new ReceivePipeline(new ReceivePipeline.Sink() {
+            @Override
+            public void onData(byte[] buf, int offset, int length) {
+                received.add(Arrays.copyOfRange(buf, offset, offset + length));
+            }
+
+            @Override
+            public boolean onChunk(Chunk chunk) {
+                return false;
+            }
+        });
+        pipeline.setFrameDecoder(new FixedLengthFrameDecoder(6));
+        pipeline.setChecksumStage(stage);
+
+        byte[] corrupted = frame.clone();
+        corrupted[2] ^= 0x10;
+        byte[] header = frame.clone();
+        header[0] = 0x55; // 帧头不参与校验
+        pipeline.onRead(frame, 0, 3);
+        pipeline.onRead(frame, 3, 3);
+        pipeline.onRead(corrupted, 0, corrupted.length);
+        pipeline.onRead(header, 0, header.length);
+
+        assertEquals(2, received.size());
+        assertArrayEquals(new byte[]{(byte) 0xAA, 1, 2, 3}, received.get(0));
+        assertEquals(2, stage.getGoodFrames());
+        assertEquals(1, stage.getBadFrames());
+        assertEquals(-1, stage.verify(frame, 0, 2)); // 长度不足
+    }
+
+    @Test
+    public void stageInactiveWithoutFrameDecoder() {
+        final List<byte[]> received = new ArrayList<byte[]>();
+        ReceivePipeline pipeline = new ReceivePipeline(new ReceivePipeline.Sink() {
+            @Override
+            public void onData(byte[] buf, int offset, int length) {
+                received.add(Arrays.copyOfRange(buf, offset, offset + length));
+            }
+
+            @Override
+            public boolean onChunk(Chunk chunk) {
+                return false;
+            }
+        });
+        ChecksumStage stage = new ChecksumStage(FrameChecksum.TYPE_XOR8, 0, true);
+        pipeline.setChecksumStage(stage);
+        assertNull(pipeline.getActiveChecksumStage()); // 不分帧时收发都不校验
+
+        byte[] raw = {1, 2, 3};
+        pipeline.onRead(raw, 0, raw.length);
+        assertEquals(1, received.size());
+        assertArrayEquals(raw, received.get(0));
+        assertEquals(0, stage.getBadFrames());
+
+        pipeline.setFrameDecoder(new FixedLengthFrameDecoder(4));
+        assertSame(stage, pipeline.getActiveChecksumStage());
+    }
+}
@@ -0,0 +1,182 @@
+package com.ronda.bluetoothassist.command;
+
+import com.ronda.bluetoothassist.io.AsyncWriter;
+import com.ronda.bluetoothassist.io.WriteFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CommandChannelTest {
+
+    private final ScheduledExecutorService mTimer = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        mTimer.shutdownNow();
+    }
+
+    /**
+     * 记录发出的请求；failWrites 为 true 时写入立即失败
+     */
+    private static class RecordingTarget implements CommandChannel.Target {
+        final List<byte[]> sent = new ArrayList<byte[]>();
+        final AsyncWriter writer;
+        boolean failWrites;
+
+        RecordingTarget() {
+            writer = new AsyncWriter(new ByteArrayOutputStream(), "test-writer");
+            writer.start();
+        }
+
+        /**
+         * 写入线程不启动，写入一直挂起，队列足够大，不会因为来不及写而拒绝
+         */
+        RecordingTarget(int maxQueuedRequests) {
+            writer = new AsyncWriter(new ByteArrayOutputStream(), "test-writer", AsyncWriter.DEFAULT_COALESCE_SIZE,
+                    AsyncWriter.DEFAULT_MAX_QUEUED_BYTES, maxQueuedRequests);
+        }
+
+        @Override
+        public synchronized WriteFuture write(byte[] data) {
+            sent.add(data);
+            return failWrites ? WriteFuture.failed(data, new IOException("broken pipe")) : writer.offer(data);
+        }
+
+        synchronized int count() {
+            return sent.size();
+        }
+
+        synchronized byte[] get(int i) {
+            return sent.get(i);
+        }
+    }
+
+    @Test
+    public void pipelinesUpToMaxInFlightAndMatchesBySequence() throws Exception {
+        RecordingTarget target = new RecordingTarget();
+        CommandChannel channel = new CommandChannel(target, new SequenceCorrelator(0, 0), 2, 8, mTimer);
+        CommandFuture a = channel.submit(new byte[]{0, 'a'}, 0, TimeUnit.MILLISECONDS);
+        CommandFuture b = channel.submit(new byte[]{0, 'b'}, 0, TimeUnit.MILLISECONDS);
+        CommandFuture c = channel.submit(new byte[]{0, 'c'}, 0, TimeUnit.MILLISECONDS);
+        assertEquals(2, target.count()); // c 排队，等待名额
+        assertEquals(1, channel.getQueued());
+        assertEquals(0, target.get(0)[0]);
+        assertEquals(1, target.get(1)[0]);
+
+        // 应答乱序到达，按序号配对；b 完成后立即发出 c
+        assertTrue(channel.onResponse(new byte[]{1, 'B'}, 0, 2));
+        assertArrayEquals(new byte[]{1, 'B'}, b.get(1, TimeUnit.SECONDS));
+        assertFalse(a.isDone());
+        assertEquals(3, target.count());
+        assertEquals(2, target.get(2)[0]);
+
+        assertFalse(channel.onResponse(new byte[]{7}, 0, 1)); // 无关的帧
+        assertTrue(channel.onResponse(new byte[]{9, 0, 'A'}, 1, 2));
+        assertArrayEquals(new byte[]{0, 'A'}, a.get(1, TimeUnit.SECONDS));
+        assertTrue(channel.onResponse(new byte[]{2}, 0, 1));
+        assertTrue(c.isSuccess());
+
+        assertEquals(3, channel.getCompleted());
+        assertEquals(1, channel.getUnmatched());
+        assertEquals(3, channel.getLatency().getCount());
+        assertTrue(a.getLatencyNanos() >= 0);
+        assertEquals(0, channel.getInFlight());
+    }
+
+    @Test
+    public void timeoutFreesSlotAndLateResponseIsUnmatched() throws Exception {
+        RecordingTarget target = new RecordingTarget();
+        CommandChannel channel = new CommandChannel(target, new SequenceCorrelator(0, 0), 1, 8, mTimer);
+        CommandFuture slow = channel.submit(new byte[]{0}, 50, TimeUnit.MILLISECONDS);
+        CommandFuture next = channel.submit(new byte[]{0}, 0, TimeUnit.MILLISECONDS);
+        try {
+            slow.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(slow.isTimedOut());
+        }
+        assertEquals(1, channel.getTimeouts());
+        assertEquals(2, target.count()); // 超时后发出排队的请求
+
+        assertFalse(channel.onResponse(new byte[]{0}, 0, 1)); // 迟到的应答
+        assertTrue(channel.onResponse(new byte[]{1}, 0, 1));
+        assertTrue(next.isSuccess());
+    }
+
+    @Test
+    public void sequenceWrapSkipsRequestsStillInFlight() throws Exception {
+        RecordingTarget target = new RecordingTarget(1024);
+        CommandChannel channel = new CommandChannel(target, new SequenceCorrelator(0, 0), 2, 8, mTimer);
+        CommandFuture pending = channel.submit(new byte[]{0}, 0, TimeUnit.MILLISECONDS); // 序号 0，一直没有应答
+        for (int i = 1; i < 256; i++) {
+            channel.submit(new byte[]{0}, 0, TimeUnit.MILLISECONDS);
+            assertTrue(channel.onResponse(new byte[]{(byte) i}, 0, 1));
+        }
+        CommandFuture wrapped = channel.submit(new byte[]{0}, 0, TimeUnit.MILLISECONDS);
+        assertEquals(1, target.get(256)[0]); // 跳过在途的 0
+
+        assertTrue(channel.onResponse(new byte[]{0}, 0, 1));
+        assertTrue(pending.isSuccess());
+        assertFalse(wrapped.isDone());
+        assertTrue(channel.onResponse(new byte[]{1}, 0, 1));
+        assertTrue(wrapped.isSuccess());
+    }
+
+    @Test
+    public void echoAndFifoCorrelators() throws Exception {
+        RecordingTarget target = new RecordingTarget();
+        CommandChannel echo = new CommandChannel(target, new EchoCorrelator(0, 1, 2), 4, 8, mTimer);
+        CommandFuture read = echo.submit(new byte[]{1, 3, 0, 0}, 0, TimeUnit.MILLISECONDS);
+        CommandFuture write = echo.submit(new byte[]{1, 6, 0, 0}, 0, TimeUnit.MILLISECONDS);
+        assertTrue(echo.onResponse(new byte[]{'>', 1, 6}, 0, 3));
+        assertTrue(write.isSuccess());
+        assertFalse(read.isDone());
+        assertFalse(echo.onResponse(new byte[]{'>', 1}, 0, 2)); // 长度不足
+
+        CommandChannel fifo = new CommandChannel(target, new FifoCorrelator(), 4, 8, mTimer);
+        CommandFuture first = fifo.submit(new byte[]{1}, 0, TimeUnit.MILLISECONDS);
+        CommandFuture second = fifo.submit(new byte[]{2}, 0, TimeUnit.MILLISECONDS);
+        fifo.onResponse(new byte[]{'x'}, 0, 1);
+        assertTrue(first.isSuccess());
+        assertFalse(second.isDone());
+    }
+
+    @Test
+    public void writeFailureQueueFullAndFailAll() throws Exception {
+        RecordingTarget target = new RecordingTarget();
+        target.failWrites = true;
+        CommandChannel channel = new CommandChannel(target, new FifoCorrelator(), 1, 1, mTimer);
+        CommandFuture broken = channel.submit(new byte[]{1}, 0, TimeUnit.MILLISECONDS);
+        assertTrue(broken.isDone());
+        assertEquals("broken pipe", broken.getCause().getMessage());
+        assertEquals(0, channel.getInFlight());
+
+        target.failWrites = false;
+        CommandFuture inFlight = channel.submit(new byte[]{2}, 0, TimeUnit.MILLISECONDS);
+        CommandFuture queued = channel.submit(new byte[]{3}, 0, TimeUnit.MILLISECONDS);
+        CommandFuture rejected = channel.submit(new byte[]{4}, 0, TimeUnit.MILLISECONDS);
+        assertEquals("command queue full", rejected.getCause().getMessage());
+
+        CommandFuture tooShort = new CommandChannel(target, new SequenceCorrelator(4, 0), 1, 1, mTimer)
+                .submit(new byte[]{1}, 0, TimeUnit.MILLISECONDS);
+        assertTrue(tooShort.isDone() && !tooShort.isSuccess());
+
+        assertTrue(queued.cancel(false));
+        channel.failAll(new IOException("connection lost"));
+        assertEquals("connection lost", inFlight.getCause().getMessage());
+        assertTrue(queued.isCancelled());
+        assertEquals(0, channel.getInFlight() + channel.getQueued());
+        assertEquals(3, channel.getFailures());
+    }
+}
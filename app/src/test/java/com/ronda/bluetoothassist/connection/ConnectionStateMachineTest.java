@@ -0,0 +1,91 @@
+package com.ronda.bluetoothassist.connection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class ConnectionStateMachineTest {
+
+    private static final int NONE = 0;
+    private static final int CONNECTING = 1;
+    private static final int CONNECTED = 2;
+
+    @Test
+    public void staleTokenCannotTransition() {
+        ConnectionStateMachine machine = new ConnectionStateMachine(NONE);
+        long attempt = machine.advance(machine.get(), CONNECTING);
+        assertNotEquals(ConnectionStateMachine.NO_TOKEN, attempt);
+
+        // 连接过程中被主动断开，旧的连接结果必须作废
+        long closed = machine.forceAdvance(NONE);
+        assertFalse(machine.compareAndSet(attempt, CONNECTED));
+        assertEquals(NONE, machine.getState());
+        assertEquals(ConnectionStateMachine.generationOf(attempt) + 1, machine.getGeneration());
+        assertEquals(closed, machine.get());
+    }
+
+    @Test
+    public void listenersSeeOnlyRealChanges() {
+        ConnectionStateMachine machine = new ConnectionStateMachine(NONE);
+        final List<String> events = new ArrayList<String>();
+        machine.addListener(new ConnectionStateMachine.Listener() {
+            @Override
+            public void onStateChanged(int oldState, int newState, int generation) {
+                events.add(oldState + "->" + newState + "@" + generation);
+            }
+        });
+        long token = machine.advance(machine.get(), CONNECTING);
+        assertTrue(machine.compareAndSet(token, CONNECTED));
+        machine.forceAdvance(NONE);
+        machine.forceAdvance(NONE);
+
+        assertEquals(3, events.size());
+        assertEquals("0->1@2", events.get(0));
+        assertEquals("1->2@2", events.get(1));
+        assertEquals("2->0@3", events.get(2));
+    }
+
+    @Test
+    public void concurrentAdvancesGetDistinctGenerations() throws Exception {
+        final ConnectionStateMachine machine = new ConnectionStateMachine(NONE);
+        final int threads = 4;
+        final int perThread = 1000;
+        final Set<Integer> generations = new HashSet<Integer>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int[] seen = new int[perThread];
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        seen[i] = ConnectionStateMachine.generationOf(machine.forceAdvance(CONNECTING));
+                    }
+                    synchronized (generations) {
+                        for (int g : seen) {
+                            generations.add(g);
+                        }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(threads * perThread, generations.size());
+        assertEquals(1 + threads * perThread, machine.getGeneration());
+    }
+}
@@ -0,0 +1,164 @@
+package com.ronda.bluetoothassist.connection;
+
+import com.ronda.bluetoothassist.frame.DelimiterFrameDecoder;
+import com.ronda.bluetoothassist.io.BufferPool;
+import com.ronda.bluetoothassist.io.Chunk;
+import com.ronda.bluetoothassist.io.IoExecutor;
+import com.ronda.bluetoothassist.transport.MemoryTransportFactory;
+import com.ronda.bluetoothassist.transport.StreamTransport;
+import com.ronda.bluetoothassist.transport.Transport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectionTest {
+
+    private static final String ADDRESS = "00:11:22:33:44:55";
+
+    private static class RecordingSink implements ReceivePipeline.Sink {
+        final List<String> frames = new ArrayList<String>();
+        final CountDownLatch received;
+
+        RecordingSink(int expected) {
+            received = new CountDownLatch(expected);
+        }
+
+        @Override
+        public synchronized void onData(byte[] buf, int offset, int length) {
+            frames.add(new String(buf, offset, length));
+            received.countDown();
+        }
+
+        @Override
+        public boolean onChunk(Chunk chunk) {
+            return false;
+        }
+    }
+
+    private static class ClosedListener implements Connection.Listener {
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile IOException cause;
+
+        @Override
+        public void onClosed(Connection connection, IOException cause) {
+            this.cause = cause;
+            closed.countDown();
+        }
+    }
+
+    @Test
+    public void receivesFramesAndWritesOverMemoryTransport() throws Exception {
+        MemoryTransportFactory factory = new MemoryTransportFactory();
+        Transport transport = factory.create(ADDRESS);
+        transport.connect();
+        StreamTransport device = factory.awaitRemote(ADDRESS, 1, TimeUnit.SECONDS);
+
+        RecordingSink sink = new RecordingSink(2);
+        ReceivePipeline pipeline = new ReceivePipeline(sink);
+        pipeline.setFrameDecoder(new DelimiterFrameDecoder(null, "\n".getBytes(), true, 64));
+        ClosedListener listener = new ClosedListener();
+        Connection connection = new Connection(transport, pipeline, new BufferPool(16, 4), listener);
+        connection.start();
+
+        OutputStream deviceOut = device.getOutputStream();
+        deviceOut.write("hel".getBytes());
+        deviceOut.write("lo\nworld\n".getBytes());
+        assertTrue(sink.received.await(1, TimeUnit.SECONDS));
+        assertEquals("hello", sink.frames.get(0));
+        assertEquals("world", sink.frames.get(1));
+
+        assertEquals(Integer.valueOf(4), connection.write("ping".getBytes()).get(1, TimeUnit.SECONDS));
+        byte[] buf = new byte[4];
+        InputStream deviceIn = device.getInputStream();
+        int n = 0;
+        while (n < buf.length) {
+            n += deviceIn.read(buf, n, buf.length - n);
+        }
+        assertEquals("ping", new String(buf));
+
+        // 设备端断开，读线程应当以异常结束
+        device.close();
+        assertTrue(listener.closed.await(1, TimeUnit.SECONDS));
+        assertNotNull(listener.cause);
+        assertFalse(connection.isOpen());
+    }
+
+    @Test
+    public void localCloseReportsNoCause() throws Exception {
+        MemoryTransportFactory factory = new MemoryTransportFactory();
+        Transport transport = factory.create(ADDRESS);
+        ClosedListener listener = new ClosedListener();
+        Connection connection = new Connection(transport, new ReceivePipeline(new RecordingSink(0)),
+                new BufferPool(16, 4), listener);
+        connection.start();
+
+        connection.close();
+        assertTrue(listener.closed.await(1, TimeUnit.SECONDS));
+        assertNull(listener.cause);
+    }
+
+    @Test
+    public void pipelineExceptionClosesWithCause() throws Exception {
+        MemoryTransportFactory factory = new MemoryTransportFactory();
+        Transport transport = factory.create(ADDRESS);
+        transport.connect();
+        StreamTransport device = factory.awaitRemote(ADDRESS, 1, TimeUnit.SECONDS);
+
+        ClosedListener listener = new ClosedListener();
+        Connection connection = new Connection(transport, new ReceivePipeline(new RecordingSink(0) {
+            @Override
+            public synchronized void onData(byte[] buf, int offset, int length) {
+                throw new IllegalStateException("broken sink");
+            }
+        }), new BufferPool(16, 4), listener);
+        connection.start();
+
+        device.getOutputStream().write("x".getBytes());
+        assertTrue(listener.closed.await(1, TimeUnit.SECONDS));
+        assertTrue(listener.cause.getCause() instanceof IllegalStateException);
+        assertFalse(connection.isOpen());
+    }
+
+    @Test
+    public void sharedExecutorCapsReadLoops() throws Exception {
+        IoExecutor executor = new IoExecutor("test-io", 2, 16);
+        MemoryTransportFactory factory = new MemoryTransportFactory();
+        Transport first = factory.create(ADDRESS);
+        first.connect();
+        StreamTransport device = factory.awaitRemote(ADDRESS, 1, TimeUnit.SECONDS);
+
+        RecordingSink sink = new RecordingSink(1);
+        ClosedListener listener = new ClosedListener();
+        Connection connection = new Connection(first, new ReceivePipeline(sink), new BufferPool(16, 4), executor, listener);
+        connection.start();
+
+        // 两个线程中只有一个可以用来读，另一个留给写
+        Connection second = new Connection(factory.create("66:77:88:99:AA:BB"), new ReceivePipeline(new RecordingSink(0)),
+                new BufferPool(16, 4), executor, new ClosedListener());
+        try {
+            second.start();
+            fail("expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+            assertFalse(second.isOpen());
+        }
+
+        device.getOutputStream().write("x".getBytes());
+        assertTrue(sink.received.await(1, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2), connection.write("ok".getBytes()).get(1, TimeUnit.SECONDS));
+        assertEquals(1, executor.getLongRunningCount());
+
+        connection.close();
+        assertTrue(listener.closed.await(1, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,37 @@
+package com.ronda.bluetoothassist.connection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReconnectPolicyTest {
+
+    @Test
+    public void firstAttemptIsImmediate() {
+        ReconnectPolicy policy = new ReconnectPolicy(100, 1000, ReconnectPolicy.UNLIMITED_ATTEMPTS);
+        assertEquals(0, policy.getDelayMs(0));
+        assertTrue(policy.canRetry(1000));
+    }
+
+    @Test
+    public void backoffDoublesWithJitterAndIsCapped() {
+        ReconnectPolicy policy = new ReconnectPolicy(100, 1000, 5, new Random(1));
+        assertEquals(100, policy.getCeilingMs(1));
+        assertEquals(200, policy.getCeilingMs(2));
+        assertEquals(800, policy.getCeilingMs(4));
+        assertEquals(1000, policy.getCeilingMs(5));
+        assertEquals(1000, policy.getCeilingMs(100));
+
+        for (int attempt = 1; attempt < 20; attempt++) {
+            long ceiling = policy.getCeilingMs(attempt);
+            for (int i = 0; i < 50; i++) {
+                long delay = policy.getDelayMs(attempt);
+                assertTrue(delay >= ceiling / 2 && delay <= ceiling);
+            }
+        }
+        assertTrue(policy.canRetry(4));
+        assertFalse(policy.canRetry(5));
+    }
+}
@@ -0,0 +1,57 @@
+package com.ronda.bluetoothassist.console;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConsoleBufferTest {
+
+    @Test
+    public void append_splitsLinesAcrossCalls() throws Exception {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 80);
+        buffer.append("ab");
+        buffer.append("c\r\nde\n");
+        buffer.append("f");
+
+        assertEquals(3, buffer.getLineCount());
+        assertEquals("abc", buffer.getLine(0).toString());
+        assertEquals("de", buffer.getLine(1).toString());
+        assertEquals("f", buffer.getLine(2).toString());
+    }
+
+    @Test
+    public void append_evictsOldestLines() throws Exception {
+        ConsoleBuffer buffer = new ConsoleBuffer(3, 80);
+        for (int i = 0; i < 10; i++) {
+            buffer.append("line" + i + "\n");
+        }
+
+        assertEquals(3, buffer.getLineCount());
+        assertEquals("line7", buffer.getLine(0).toString());
+        assertEquals("line9", buffer.getLine(2).toString());
+        assertEquals(7, buffer.getEvictedLines());
+    }
+
+    @Test
+    public void append_wrapsLongLines() throws Exception {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 4);
+        buffer.append("0123456789");
+
+        assertEquals(3, buffer.getLineCount());
+        assertEquals("0123", buffer.getLine(0).toString());
+        assertEquals("89", buffer.getLine(2).toString());
+    }
+
+    @Test
+    public void setMaxLines_keepsNewest() throws Exception {
+        ConsoleBuffer buffer = new ConsoleBuffer(5, 80);
+        buffer.append("a\nb\nc\nd\n");
+        buffer.setMaxLines(2);
+
+        assertEquals(2, buffer.getLineCount());
+        assertEquals("c", buffer.getLine(0).toString());
+        buffer.append("e\n");
+        assertEquals("d", buffer.getLine(0).toString());
+        assertEquals("e", buffer.getLine(1).toString());
+    }
+}
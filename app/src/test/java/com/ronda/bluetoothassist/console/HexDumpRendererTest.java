@@ -0,0 +1,76 @@
+package com.ronda.bluetoothassist.console;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HexDumpRendererTest {
+
+    private final Semaphore mReady = new Semaphore(0);
+    private final HexDumpRenderer mRenderer = new HexDumpRenderer("test-dump", 1024, 100,
+            new HexDumpRenderer.Listener() {
+                @Override
+                public void onRowsReady(HexDumpRenderer renderer) {
+                    mReady.release();
+                }
+            });
+
+    @After
+    public void tearDown() {
+        mRenderer.shutdown();
+    }
+
+    private static String row(long offset, byte[] buf, int off, int len) {
+        char[] chars = new char[HexDump.ROW_LENGTH];
+        return new String(chars, 0, HexDump.formatRow(offset, buf, off, len, chars));
+    }
+
+    /**
+     * 取走行直到接收区有 lines 行
+     */
+    private void drainUntil(ConsoleBuffer console, int lines) throws InterruptedException {
+        while (console.getLineCount() < lines) {
+            assertTrue("rows not rendered", mReady.tryAcquire(5, TimeUnit.SECONDS));
+            mRenderer.drainTo(console);
+        }
+    }
+
+    @Test
+    public void formatsRowsLikeHexdump() {
+        byte[] data = "Hello\r\n\u0000\u0001ABCDEFGH".getBytes();
+        assertEquals("00000010  48 65 6C 6C 6F 0D 0A 00  01 41 42 43 44 45 46 47  |Hello....ABCDEFG|",
+                row(0x10, data, 0, 16));
+        assertEquals(HexDump.ROW_LENGTH, row(0, data, 0, 16).length());
+        assertEquals("0000ABCD  47 48                                             |GH|",
+                row(0xABCD, data, 15, 2));
+    }
+
+    @Test
+    public void rendersNewRowsWithStreamOffsets() throws InterruptedException {
+        ConsoleBuffer console = new ConsoleBuffer(100, 256);
+        console.append("before");
+        byte[] data = new byte[40];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        mRenderer.offer(data, 0, 40); // 16 + 16 + 8
+        mRenderer.offer(data, 0, 3);  // 新的一块从新的一行开始
+        drainUntil(console, 5);
+
+        assertEquals("before", console.getLine(0).toString());
+        assertEquals(row(0, data, 0, 16), console.getLine(1).toString());
+        assertEquals(row(32, data, 32, 8), console.getLine(3).toString());
+        assertTrue(console.getLine(4).toString().startsWith("00000028  61 62 63 "));
+        assertEquals(4, mRenderer.getRenderedRows());
+
+        mRenderer.reset();
+        mRenderer.offer(data, 0, 1);
+        drainUntil(console, 6);
+        assertTrue(console.getLine(5).toString().startsWith("00000000  61 "));
+        assertEquals(0, mRenderer.getDroppedBytes());
+    }
+}
@@ -0,0 +1,63 @@
+package com.ronda.bluetoothassist.device;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeviceIndexTest {
+
+    private static final String A = "00:11:22:33:44:55";
+    private static final String B = "66:77:88:99:AA:BB";
+
+    @Test
+    public void updatesInPlaceWithoutDuplicates() {
+        DeviceIndex index = new DeviceIndex();
+        assertTrue(index.update(A, null, (short) -70, false, 1));
+        assertTrue(index.update(B, "printer", (short) -50, false, 2));
+        assertFalse(index.update(A, null, (short) -70, false, 3)); // 没有变化，不需要刷新
+        assertTrue(index.update(A, null, (short) -60, false, 4));
+        assertTrue(index.updateName(A, "scale"));
+        assertFalse(index.updateName("unknown", "x"));
+
+        assertEquals(2, index.size());
+        DeviceInfo a = index.get(0);
+        assertSame(a, index.get(A));
+        assertEquals("scale", a.getName());
+        assertEquals(-60, a.getRssi());
+        assertEquals(4, a.getLastSeenMs());
+    }
+
+    @Test
+    public void beginScanKeepsPositionsAndClearsRssi() {
+        DeviceIndex index = new DeviceIndex();
+        index.update(A, "scale", (short) -60, true, 1);
+        index.beginScan();
+
+        DeviceInfo a = index.get(0);
+        assertFalse(a.isSeen());
+        assertEquals(DeviceIndex.RSSI_UNKNOWN, a.getRssi());
+        assertTrue(a.isBonded());
+        assertTrue(index.update(A, null, DeviceIndex.RSSI_UNKNOWN, true, 2)); // 再次见到
+        assertEquals("scale", a.getName());
+    }
+
+    @Test
+    public void encodeKeepsMostRecentAndDecodeRestores() {
+        DeviceIndex index = new DeviceIndex();
+        index.update(A, "old\tname", (short) -60, false, 100);
+        index.update(B, null, (short) -50, false, 200);
+        index.update("CC:CC:CC:CC:CC:CC", "third", (short) -40, false, 50);
+
+        String encoded = index.encode(2);
+        DeviceIndex restored = new DeviceIndex();
+        assertEquals(2, restored.decode(encoded + "garbage\nbad\tline\n"));
+
+        assertEquals(B, restored.get(0).getAddress());
+        assertNull(restored.get(0).getName());
+        assertEquals("old name", restored.get(1).getName());
+        assertEquals(100, restored.get(1).getLastSeenMs());
+        assertFalse(restored.get(1).isSeen());
+        assertEquals(0, restored.decode(encoded)); // 已存在的地址跳过
+        assertEquals(0, restored.decode(""));
+    }
+}
@@ -0,0 +1,121 @@
+package com.ronda.bluetoothassist.frame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameDecoderTest {
+
+    private static class CollectingSink implements FrameSink {
+        final List<byte[]> frames = new ArrayList<byte[]>();
+
+        @Override
+        public void onFrame(byte[] buf, int offset, int length) {
+            frames.add(Arrays.copyOfRange(buf, offset, offset + length));
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+    /**
+     * 每次只喂一个字节，模拟最零碎的 read() 结果
+     */
+    private static void feedByteByByte(FrameDecoder decoder, byte[] data, FrameSink sink) {
+        for (int i = 0; i < data.length; i++) {
+            decoder.decode(data, i, 1, sink);
+        }
+    }
+
+    @Test
+    public void delimiter_stripsAndSkipsGarbage() throws Exception {
+        FrameDecoder decoder = new DelimiterFrameDecoder(bytes(0xAA), bytes(0xBB), true, 16);
+        CollectingSink sink = new CollectingSink();
+        feedByteByByte(decoder, bytes(0x01, 0x02, 0xAA, 0x10, 0x11, 0xBB, 0x03, 0xAA, 0x20, 0xBB), sink);
+
+        assertEquals(2, sink.frames.size());
+        assertArrayEquals(bytes(0x10, 0x11), sink.frames.get(0));
+        assertArrayEquals(bytes(0x20), sink.frames.get(1));
+        assertEquals(3, decoder.getDiscardedBytes());
+    }
+
+    @Test
+    public void delimiter_multiByteEndSplitAcrossReads() throws Exception {
+        FrameDecoder decoder = new DelimiterFrameDecoder(null, "\r\n".getBytes(), false, 64);
+        CollectingSink sink = new CollectingSink();
+        decoder.decode("abc\r".getBytes(), 0, 4, sink);
+        assertEquals(0, sink.frames.size());
+        decoder.decode("\nde\r\nf".getBytes(), 0, 6, sink);
+
+        assertEquals(2, sink.frames.size());
+        assertEquals("abc\r\n", new String(sink.frames.get(0)));
+        assertEquals("de\r\n", new String(sink.frames.get(1)));
+    }
+
+    @Test
+    public void delimiter_dropsOverlongFrameAndResyncs() throws Exception {
+        FrameDecoder decoder = new DelimiterFrameDecoder(bytes(0xAA), bytes(0xBB), true, 4);
+        CollectingSink sink = new CollectingSink();
+        feedByteByByte(decoder, bytes(0xAA, 1, 2, 3, 4, 5, 6, 0xBB, 0xAA, 7, 0xBB), sink);
+
+        assertEquals(1, sink.frames.size());
+        assertArrayEquals(bytes(7), sink.frames.get(0));
+    }
+
+    @Test
+    public void lengthField_handlesWrapAroundAndManyFrames() throws Exception {
+        // [0x55][len][data...][crc 2 字节]
+        FrameDecoder decoder = new LengthFieldFrameDecoder(1, 1, 2, 0, true, 8);
+        CollectingSink sink = new CollectingSink();
+        byte[] frame = bytes(0x55, 3, 1, 2, 3, 0xEE, 0xFF);
+        byte[] stream = new byte[frame.length * 10];
+        for (int i = 0; i < 10; i++) {
+            System.arraycopy(frame, 0, stream, i * frame.length, frame.length);
+        }
+        // 用不规则的块大小喂数据，让环形缓冲区多次回绕
+        int off = 0;
+        int step = 1;
+        while (off < stream.length) {
+            int n = Math.min(step, stream.length - off);
+            decoder.decode(stream, off, n, sink);
+            off += n;
+            step = step % 5 + 1;
+        }
+
+        assertEquals(10, sink.frames.size());
+        for (byte[] f : sink.frames) {
+            assertArrayEquals(frame, f);
+        }
+    }
+
+    @Test
+    public void lengthField_littleEndianWithStrip() throws Exception {
+        FrameDecoder decoder = new LengthFieldFrameDecoder(0, 2, 0, 2, false, 16);
+        CollectingSink sink = new CollectingSink();
+        byte[] data = bytes(0x02, 0x00, 0x31, 0x32);
+        decoder.decode(data, 0, data.length, sink);
+
+        assertEquals(1, sink.frames.size());
+        assertArrayEquals(bytes(0x31, 0x32), sink.frames.get(0));
+    }
+
+    @Test
+    public void fixedLength_largeChunk() throws Exception {
+        FrameDecoder decoder = new FixedLengthFrameDecoder(3);
+        CollectingSink sink = new CollectingSink();
+        byte[] data = new byte[32];
+        decoder.decode(data, 0, data.length, sink);
+
+        assertEquals(10, sink.frames.size());
+        assertEquals(10, decoder.getFrameCount());
+    }
+}
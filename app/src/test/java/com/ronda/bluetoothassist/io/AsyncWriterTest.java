@@ -0,0 +1,149 @@
+package com.ronda.bluetoothassist.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncWriterTest {
+
+    /**
+     * 第一次 write() 时阻塞，直到测试放行，用来让后面的请求在队列中堆积
+     */
+    private static class GatedOutputStream extends OutputStream {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        int writeCalls;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            writeCalls++;
+            written.write(b, off, len);
+        }
+    }
+
+    @Test
+    public void smallWritesAreCoalescedInOrder() throws Exception {
+        GatedOutputStream out = new GatedOutputStream();
+        AsyncWriter writer = new AsyncWriter(out, "test-writer", 16, 1024, 64);
+        writer.start();
+
+        WriteFuture first = writer.offer("a".getBytes());
+        assertTrue(out.entered.await(1, TimeUnit.SECONDS));
+        WriteFuture last = null;
+        for (int i = 0; i < 5; i++) {
+            last = writer.offer(("b" + i).getBytes());
+        }
+        out.gate.countDown();
+
+        assertEquals(Integer.valueOf(2), last.get(1, TimeUnit.SECONDS));
+        assertTrue(first.isSuccess());
+        assertEquals("ab0b1b2b3b4", out.written.toString());
+        assertEquals(2, out.writeCalls);
+        writer.close();
+    }
+
+    @Test
+    public void offerRejectsWhenQueueIsFull() throws Exception {
+        GatedOutputStream out = new GatedOutputStream();
+        AsyncWriter writer = new AsyncWriter(out, "test-writer", 16, 4, 8);
+        writer.start();
+
+        writer.offer("x".getBytes());
+        assertTrue(out.entered.await(1, TimeUnit.SECONDS));
+        assertFalse(writer.offer("1234".getBytes()).isRejected());
+        WriteFuture rejected = writer.offer("5".getBytes());
+
+        assertTrue(rejected.isDone());
+        assertTrue(rejected.isRejected());
+        assertEquals(1, writer.getRejectedRequests());
+
+        writer.close();
+        out.gate.countDown();
+    }
+
+    @Test
+    public void executorModeDrainsAndReleasesThread() throws Exception {
+        GatedOutputStream out = new GatedOutputStream();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AsyncWriter writer = new AsyncWriter(out, executor, 16, 1024, 64);
+        writer.start();
+
+        writer.offer("a".getBytes());
+        assertTrue(out.entered.await(1, TimeUnit.SECONDS));
+        WriteFuture last = null;
+        for (int i = 0; i < 3; i++) {
+            last = writer.offer(("b" + i).getBytes());
+        }
+        out.gate.countDown();
+        assertEquals(Integer.valueOf(2), last.get(1, TimeUnit.SECONDS));
+        assertEquals("ab0b1b2", out.written.toString());
+        assertEquals(2, out.writeCalls);
+
+        // 队列写空后排空任务结束，线程可以执行别的任务；再次写入时重新提交
+        assertEquals(Integer.valueOf(1), executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 1;
+            }
+        }).get(1, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(1), writer.offer("c".getBytes()).get(1, TimeUnit.SECONDS));
+        assertEquals("ab0b1b2c", out.written.toString());
+
+        writer.close();
+        executor.shutdown();
+    }
+
+    @Test
+    public void addListenerKeepsExistingListener() throws Exception {
+        GatedOutputStream out = new GatedOutputStream();
+        AsyncWriter writer = new AsyncWriter(out, "test-writer");
+        writer.start();
+        final int[] calls = new int[2];
+        final CountDownLatch done = new CountDownLatch(1);
+        WriteFuture future = writer.offer("a".getBytes()).setListener(new WriteFuture.Listener() {
+            @Override
+            public void onComplete(WriteFuture future) {
+                calls[0]++;
+            }
+        });
+        future.addListener(new WriteFuture.Listener() {
+            @Override
+            public void onComplete(WriteFuture future) {
+                calls[1]++;
+                done.countDown();
+            }
+        });
+        out.gate.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS)); // 在原有回调之后调用
+        future.addListener(new WriteFuture.Listener() {
+            @Override
+            public void onComplete(WriteFuture future) {
+                calls[1] += 10; // 已经完成，立即回调
+            }
+        });
+        assertEquals(1, calls[0]);
+        assertEquals(11, calls[1]);
+        writer.close();
+    }
+}
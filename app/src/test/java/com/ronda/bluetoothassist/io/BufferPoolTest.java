@@ -0,0 +1,78 @@
+package com.ronda.bluetoothassist.io;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void acquire_allocatesWhenExhaustedAndReusesRecycled() throws Exception {
+        BufferPool pool = new BufferPool(16, 2);
+        Chunk a = pool.acquire();
+        Chunk b = pool.acquire();
+        assertEquals(16, a.capacity());
+        assertEquals(2, pool.getMissCount()); // 池一开始是空的
+
+        a.setRange(2, 5);
+        a.recycle();
+        b.recycle();
+        assertEquals(2, pool.getFreeCount());
+
+        Chunk c = pool.acquire();
+        assertSame(b, c); // 后进先出
+        assertSame(a, pool.acquire());
+        assertEquals(0, pool.getFreeCount());
+        assertEquals(0, a.offset());
+        assertEquals(0, a.length());
+
+        Chunk d = pool.acquire(); // 池空，临时分配
+        assertNotSame(a, d);
+        assertNotSame(b, d);
+        assertEquals(5, pool.getAcquireCount());
+        assertEquals(3, pool.getMissCount());
+    }
+
+    @Test
+    public void recycle_dropsChunksBeyondCapacity() throws Exception {
+        BufferPool pool = new BufferPool(16, 2);
+        Chunk a = pool.acquire();
+        Chunk b = pool.acquire();
+        Chunk c = pool.acquire();
+        a.recycle();
+        b.recycle();
+        c.recycle(); // 池满，直接丢弃
+        assertEquals(2, pool.getFreeCount());
+
+        Chunk large = pool.acquire(64); // 超过块大小的不进池
+        assertEquals(64, large.capacity());
+        large.recycle();
+        assertEquals(2, pool.getFreeCount());
+    }
+
+    @Test
+    public void recycle_twiceThrows() throws Exception {
+        BufferPool pool = new BufferPool(16, 4);
+        Chunk chunk = pool.acquire();
+        chunk.recycle();
+        try {
+            chunk.recycle();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, pool.getFreeCount());
+    }
+
+    @Test
+    public void setRange_rejectsOutOfBounds() throws Exception {
+        Chunk chunk = new BufferPool(16, 1).acquire();
+        chunk.setRange(4, 12);
+        try {
+            chunk.setRange(8, 9);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        assertEquals(4, chunk.offset());
+        assertEquals(12, chunk.length());
+    }
+}
@@ -0,0 +1,50 @@
+package com.ronda.bluetoothassist.io;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IoExecutorTest {
+
+    private final IoExecutor mExecutor = new IoExecutor("test-io", 2, 2, 16);
+    private final CountDownLatch mUnblock = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        mUnblock.countDown();
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void blockedConnectsDoNotDelayShortTasks() throws InterruptedException {
+        final CountDownLatch connecting = new CountDownLatch(2);
+        for (int i = 0; i < 4; i++) { // 2 个在连接，2 个排队
+            mExecutor.executeConnect(new Runnable() {
+                @Override
+                public void run() {
+                    connecting.countDown();
+                    try {
+                        mUnblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        assertTrue(connecting.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertTrue("short task waited behind connects", ran.await(5, TimeUnit.SECONDS));
+        assertEquals(2, mExecutor.getConnectingCount());
+    }
+}
@@ -0,0 +1,101 @@
+package com.ronda.bluetoothassist.log;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BtLogTest {
+
+    private static class RecordingSink implements LogSink {
+        final List<String> lines = new ArrayList<String>();
+        final CountDownLatch done;
+
+        RecordingSink(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public synchronized void println(int level, String tag, String message) {
+            lines.add(level + "/" + tag + ": " + message);
+            done.countDown();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        BtLog.shutdown();
+    }
+
+    @Test
+    public void formatsPlaceholdersOnLogThread() throws Exception {
+        RecordingSink sink = new RecordingSink(4);
+        BtLog.init(BtLog.DEBUG, sink);
+        BtLog.d("T", "plain");
+        BtLog.d("T", "{} chunks, {} bytes", 3, 128);
+        BtLog.e("T", "failed: {} {}", "io");
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+        BtLog.data(BtLog.DEBUG, "T", "read:{} ({} bytes)", data, 26, 70);
+        BtLog.log(BtLog.VERBOSE, "T", "below level", null, null);
+
+        assertTrue(sink.done.await(1, TimeUnit.SECONDS));
+        assertEquals(4, sink.lines.size());
+        assertEquals("3/T: plain", sink.lines.get(0));
+        assertEquals("3/T: 3 chunks, 128 bytes", sink.lines.get(1));
+        assertEquals("6/T: failed: io {}", sink.lines.get(2));
+        assertEquals("3/T: read:abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzabcdefghijkl...(+6) (70 bytes)",
+                sink.lines.get(3));
+    }
+
+    @Test
+    public void disabledLoggingIsIgnored() {
+        RecordingSink sink = new RecordingSink(0);
+        BtLog.init(BtLog.OFF, sink);
+        assertFalse(BtLog.isLoggable(BtLog.ERROR));
+        BtLog.e("T", "x {}", "y");
+        assertEquals(0, BtLog.getDroppedCount());
+        assertTrue(sink.lines.isEmpty());
+    }
+
+    @Test
+    public void fullRingDropsInsteadOfBlocking() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingSink sink = new RecordingSink(1) {
+            @Override
+            public void println(int level, String tag, String message) {
+                try {
+                    release.await(); // 让日志线程卡在第一条上
+                } catch (InterruptedException ignored) {
+                }
+                super.println(level, tag, message);
+            }
+        };
+        BtLog.init(BtLog.DEBUG, sink, 4);
+        for (int i = 0; i < 20; i++) {
+            BtLog.d("T", "n={}", i);
+        }
+        assertTrue(BtLog.getDroppedCount() >= 20 - 4 - 1);
+        release.countDown();
+    }
+
+    @Test
+    public void samplerPassesEveryNth() {
+        LogSampler sampler = new LogSampler(4);
+        int passed = 0;
+        for (int i = 0; i < 16; i++) {
+            if (sampler.sample()) {
+                passed++;
+            }
+        }
+        assertEquals(4, passed);
+        assertEquals(3, sampler.getSkipped());
+    }
+}
@@ -0,0 +1,83 @@
+package com.ronda.bluetoothassist.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsArePowersOfTwo() {
+        assertEquals(0, Histogram.bucketOf(0));
+        assertEquals(1, Histogram.bucketOf(1));
+        assertEquals(2, Histogram.bucketOf(2));
+        assertEquals(2, Histogram.bucketOf(3));
+        assertEquals(11, Histogram.bucketOf(1024));
+        assertEquals(63, Histogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(1023, Histogram.upperBoundOf(10));
+        assertEquals(Long.MAX_VALUE, Histogram.upperBoundOf(63));
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBoundsCappedAtMax() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(20);
+        }
+        histogram.record(1000);
+        histogram.record(-5); // 按 0 计
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(101, snapshot.getCount());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(99 * 20 + 1000, snapshot.getSum());
+        assertEquals(31, snapshot.getPercentile(0.5));   // 20 落在 [16, 32)
+        assertEquals(1000, snapshot.getPercentile(1.0)); // 桶上界 1023，不超过最大值
+        assertEquals(1, snapshot.getBucketCount(0));
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(40000, snapshot.getCount());
+        assertEquals(9999, snapshot.getMax());
+        assertEquals(4L * 9999 * 10000 / 2, snapshot.getSum());
+    }
+
+    @Test
+    public void linkMetricsSnapshotComputesRates() throws InterruptedException {
+        LinkMetrics metrics = new LinkMetrics();
+        MetricsSnapshot before = metrics.snapshot();
+        metrics.onRead(100);
+        metrics.onFrameReceived(100);
+        metrics.onWriteSucceeded(10, 2000000);
+        metrics.onDispatched(5000000);
+        Thread.sleep(5);
+        MetricsSnapshot after = metrics.snapshot();
+
+        assertEquals(1, after.getReads());
+        assertEquals(100, after.getBytesReceived());
+        assertEquals(2000, after.getWriteLatency().getMax());
+        assertEquals(5000, after.getDispatchDelay().getMax());
+        assertTrue(after.getReceiveBytesPerSecond(before) > 0);
+        assertEquals(0, after.getReceiveBytesPerSecond(null), 0);
+        assertEquals(0, before.getReceiveBytesPerSecond(after), 0);
+        assertNotNull(after.format(before));
+    }
+}
@@ -0,0 +1,243 @@
+package com.ronda.bluetoothassist.modbus;
+
+import com.ronda.bluetoothassist.checksum.Crc16Modbus;
+import com.ronda.bluetoothassist.command.CommandChannel;
+import com.ronda.bluetoothassist.frame.FrameSink;
+import com.ronda.bluetoothassist.io.AsyncWriter;
+import com.ronda.bluetoothassist.io.WriteFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ModbusRtuTest {
+
+    private final ScheduledExecutorService mTimer = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        mTimer.shutdownNow();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+    @Test
+    public void encodesRequestsWithCrc() {
+        assertArrayEquals(bytes(0x01, 0x03, 0x00, 0x00, 0x00, 0x0A, 0xC5, 0xCD),
+                ModbusRtu.readRegisters(1, ModbusRtu.FC_READ_HOLDING_REGISTERS, 0, 10));
+        assertArrayEquals(bytes(0x01, 0x06, 0x00, 0x01, 0x00, 0x03, 0x98, 0x0B),
+                ModbusRtu.writeSingleRegister(1, 1, 3));
+        byte[] multiple = ModbusRtu.writeMultipleRegisters(1, 0x10, new int[]{0x1234, 0xABCD}, 0, 2);
+        assertEquals(13, multiple.length);
+        assertEquals(4, multiple[6]);
+        assertTrue(ModbusRtu.checkCrc(multiple, 0, multiple.length));
+    }
+
+    @Test
+    public void decodesRegistersAndExceptions() throws Exception {
+        byte[] response = bytes(0x01, 0x03, 0x04, 0x00, 0x01, 0x00, 0x02, 0x2A, 0x32);
+        int[] values = new int[2];
+        assertEquals(2, ModbusRtu.decodeRegisters(response, 0, response.length, values, 0));
+        assertArrayEquals(new int[]{1, 2}, values);
+
+        byte[] exception = bytes(0x01, 0x83, 0x02, 0xC0, 0xF1);
+        try {
+            ModbusRtu.decodeRegisters(exception, 0, exception.length, values, 0);
+            fail();
+        } catch (ModbusException e) {
+            assertEquals(ModbusException.ILLEGAL_DATA_ADDRESS, e.getExceptionCode());
+        }
+        response[4] ^= 1;
+        try {
+            ModbusRtu.decodeRegisters(response, 0, response.length, values, 0);
+            fail();
+        } catch (ModbusException e) {
+            assertEquals(0, e.getExceptionCode());
+        }
+    }
+
+    @Test
+    public void frameDecoderResyncsOnGarbageAndBadCrc() {
+        byte[] good = bytes(0x01, 0x03, 0x04, 0x00, 0x01, 0x00, 0x02, 0x2A, 0x32);
+        byte[] bad = good.clone();
+        bad[5] = 0x7F;
+        byte[] exception = bytes(0x01, 0x83, 0x02, 0xC0, 0xF1);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(0x55);
+        stream.write(bad, 0, bad.length);
+        stream.write(good, 0, good.length);
+        stream.write(exception, 0, exception.length);
+        byte[] all = stream.toByteArray();
+
+        final List<byte[]> frames = new ArrayList<byte[]>();
+        FrameSink sink = new FrameSink() {
+            @Override
+            public void onFrame(byte[] buf, int offset, int length) {
+                frames.add(Arrays.copyOfRange(buf, offset, offset + length));
+            }
+        };
+        ModbusFrameDecoder decoder = new ModbusFrameDecoder();
+        for (int i = 0; i < all.length; i += 3) {
+            decoder.decode(all, i, Math.min(3, all.length - i), sink);
+        }
+        assertEquals(2, frames.size());
+        assertArrayEquals(good, frames.get(0));
+        assertArrayEquals(exception, frames.get(1));
+        assertTrue(decoder.getCrcErrors() > 0);
+    }
+
+    @Test
+    public void planMergesAdjacentRangesPerSlaveAndFunction() {
+        List<ModbusPoller.Range> ranges = new ArrayList<ModbusPoller.Range>();
+        ranges.add(new ModbusPoller.Range(1, 3, 10, 5));
+        ranges.add(new ModbusPoller.Range(1, 3, 0, 10));
+        ranges.add(new ModbusPoller.Range(1, 3, 20, 2));
+        ranges.add(new ModbusPoller.Range(1, 4, 15, 1));
+        ranges.add(new ModbusPoller.Range(2, 3, 0, 300));
+
+        ModbusPoller.Request[] plan = ModbusPoller.plan(ranges, 0);
+        // 1/03: [0,15) 和 [20,22)；1/04: [15,16)；2/03: 300 个寄存器切成 3 个请求
+        assertEquals(6, plan.length);
+        assertEquals(0, plan[0].mAddress);
+        assertEquals(15, plan[0].mCount);
+        assertEquals(2, plan[0].mSegments.length);
+        assertEquals(20, plan[1].mAddress);
+        assertEquals(125, plan[3].mCount);
+        assertEquals(50, plan[5].mCount);
+
+        plan = ModbusPoller.plan(ranges, 5);
+        assertEquals(5, plan.length);
+        assertEquals(22, plan[0].mCount); // 多读 15..19 换掉一个请求
+    }
+
+    /**
+     * 模拟从站：每个请求延迟几毫秒后应答，寄存器的值等于地址加 1。读 lateAddress 的第一个请求延迟 lateMs 才应答
+     */
+    private class SlaveTarget implements CommandChannel.Target {
+        final AsyncWriter writer = new AsyncWriter(new ByteArrayOutputStream(), "test-writer");
+        CommandChannel channel;
+        int maxOutstanding;
+        int outstanding;
+        int lateAddress = -1;
+        long lateMs;
+
+        SlaveTarget() {
+            writer.start();
+        }
+
+        @Override
+        public WriteFuture write(final byte[] request) {
+            long delayMs = 2;
+            synchronized (this) {
+                maxOutstanding = Math.max(maxOutstanding, ++outstanding);
+                if ((((request[2] & 0xFF) << 8) | (request[3] & 0xFF)) == lateAddress) {
+                    lateAddress = -1;
+                    delayMs = lateMs;
+                }
+            }
+            mTimer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    int address = ((request[2] & 0xFF) << 8) | (request[3] & 0xFF);
+                    int count = ((request[4] & 0xFF) << 8) | (request[5] & 0xFF);
+                    byte[] response = new byte[5 + count * 2];
+                    response[0] = request[0];
+                    response[1] = request[1];
+                    response[2] = (byte) (count * 2);
+                    for (int i = 0; i < count; i++) {
+                        response[3 + i * 2] = (byte) ((address + i + 1) >> 8);
+                        response[4 + i * 2] = (byte) (address + i + 1);
+                    }
+                    int crc = Crc16Modbus.crc(response, 0, response.length - 2);
+                    response[response.length - 2] = (byte) crc;
+                    response[response.length - 1] = (byte) (crc >>> 8);
+                    synchronized (SlaveTarget.this) {
+                        outstanding--;
+                    }
+                    channel.onResponse(response, 0, response.length);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+            return writer.offer(request);
+        }
+    }
+
+    @Test
+    public void pollerPipelinesRequestsAndStoresValues() throws Exception {
+        SlaveTarget slave = new SlaveTarget();
+        slave.channel = new CommandChannel(slave, new ModbusCorrelator(), 3, 16, mTimer);
+        ModbusPoller poller = new ModbusPoller(slave.channel, mTimer, 500);
+        ModbusPoller.Range a = poller.addRange(1, ModbusRtu.FC_READ_HOLDING_REGISTERS, 100, 4);
+        ModbusPoller.Range b = poller.addRange(1, ModbusRtu.FC_READ_HOLDING_REGISTERS, 104, 2);
+        ModbusPoller.Range c = poller.addRange(1, ModbusRtu.FC_READ_INPUT_REGISTERS, 0, 200);
+        poller.start(0);
+        assertEquals(3, poller.getRequestCount()); // a+b 合并；c 切成两个
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (c.getUpdates() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        poller.stop();
+        assertTrue(c.getUpdates() >= 3);
+        assertEquals(101, a.getValue(100));
+        assertEquals(106, b.getValue(105));
+        assertEquals(200, c.getValue(199));
+        assertEquals(0, poller.getErrors());
+        assertTrue(poller.getRegisters() > 0);
+        assertTrue(slave.maxOutstanding > 1); // 请求是流水线发出的
+    }
+
+    @Test
+    public void lateResponseAfterTimeoutIsNotMatchedToNextRequest() throws Exception {
+        SlaveTarget slave = new SlaveTarget();
+        slave.lateAddress = 0;
+        slave.lateMs = 150;
+        slave.channel = new CommandChannel(slave, new ModbusCorrelator(), 4, 16, mTimer);
+        ModbusPoller poller = new ModbusPoller(slave.channel, mTimer, 50);
+        final ModbusPoller.Range a = poller.addRange(1, ModbusRtu.FC_READ_HOLDING_REGISTERS, 0, 125);
+        final ModbusPoller.Range b = poller.addRange(1, ModbusRtu.FC_READ_HOLDING_REGISTERS, 125, 125);
+        final AtomicBoolean shifted = new AtomicBoolean();
+        poller.setListener(new ModbusPoller.Listener() {
+            @Override
+            public void onUpdated(ModbusPoller poller, ModbusPoller.Range range) {
+                // 值等于地址加 1，配错了请求时第一个值就对不上
+                if (range.getValue(range.getAddress()) != range.getAddress() + 1) {
+                    shifted.set(true);
+                }
+            }
+
+            @Override
+            public void onError(ModbusPoller poller, ModbusPoller.Range range, IOException cause) {
+            }
+        });
+        poller.start(0);
+        assertEquals(2, poller.getRequestCount()); // 两个请求的从站、功能码和寄存器数都相同
+
+        long deadline = System.currentTimeMillis() + 3000;
+        while ((a.getUpdates() < 3 || b.getUpdates() < 3) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        poller.stop();
+        assertFalse("late response matched to another request", shifted.get());
+        assertTrue(a.getUpdates() >= 3 && b.getUpdates() >= 3);
+        assertEquals(1, slave.channel.getTimeouts());
+        assertEquals(1, slave.channel.getUnmatched()); // 迟到的应答被丢弃
+        assertEquals(1, slave.maxOutstanding);         // 同一从站同一功能码同时只有一个在途
+    }
+}
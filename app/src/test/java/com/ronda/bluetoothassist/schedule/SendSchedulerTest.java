@@ -0,0 +1,81 @@
+package com.ronda.bluetoothassist.schedule;
+
+import com.ronda.bluetoothassist.io.AsyncWriter;
+import com.ronda.bluetoothassist.io.WriteFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SendSchedulerTest {
+
+    private final SendScheduler mScheduler = new SendScheduler("TestScheduler");
+
+    @After
+    public void tearDown() {
+        mScheduler.shutdown();
+    }
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * 写入在单线程池中完成，两个任务共用一个写队列
+     */
+    private static class RecordingTarget implements SendScheduler.Target {
+        final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+        final AsyncWriter mWriter = new AsyncWriter(mOut, EXECUTOR);
+
+        @Override
+        public synchronized WriteFuture write(byte[] data) {
+            return mWriter.offer(data);
+        }
+    }
+
+    @Test
+    public void sendsSequenceAtFixedRateWithoutDrift() throws InterruptedException {
+        RecordingTarget target = new RecordingTarget();
+        PeriodicSend send = mScheduler.schedule(target, new byte[][]{"A".getBytes(), "BC".getBytes()},
+                10, TimeUnit.MILLISECONDS, 20);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!send.isCancelled() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(send.isCancelled()); // 发完 20 次自动结束
+        assertEquals(20, send.getSent());
+        assertEquals(0, send.getFailures());
+        Thread.sleep(20);
+        String out = target.mOut.toString();
+        assertTrue(out, out.startsWith("ABCABC"));
+        assertTrue(send.getJitter().getCount() >= 20);
+    }
+
+    @Test
+    public void schedulesShareTargetWithoutInterleaving() throws InterruptedException {
+        RecordingTarget target = new RecordingTarget();
+        PeriodicSend a = mScheduler.schedule(target, new byte[][]{"[aaaa]".getBytes()}, 3, TimeUnit.MILLISECONDS, 30);
+        PeriodicSend b = mScheduler.schedule(target, new byte[][]{"<bbbbbbbb>".getBytes()}, 5, TimeUnit.MILLISECONDS, 0);
+        Thread.sleep(150);
+        b.cancel();
+        long sentB = b.getSent();
+        Thread.sleep(30);
+        assertEquals(sentB, b.getSent()); // 取消后不再发送
+        assertTrue(a.getSent() > 0 && sentB > 0);
+
+        String out = target.mOut.toString();
+        String rest = out.replace("[aaaa]", "").replace("<bbbbbbbb>", "");
+        assertEquals("", rest);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsAfterShutdown() {
+        mScheduler.shutdown();
+        mScheduler.schedule(new RecordingTarget(), new byte[][]{{1}}, 1, TimeUnit.MILLISECONDS, 0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.ronda.bluetoothassist.schema;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameSchemaTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+    @Test
+    public void decodesIntegersInBothByteOrders() {
+        FrameSchema schema = new FrameSchema.Builder("t")
+                .uint("u16be", 0, 2, true)
+                .uint("u16le", 0, 2, false)
+                .sint("s16be", 2, 2, true)
+                .uint("u32le", 4, 4, false)
+                .sint("s32be", 4, 4, true)
+                .sint("s24le", 8, 3, false)
+                .uint("u64be", 0, 8, true)
+                .build();
+        byte[] frame = bytes(0x12, 0x34, 0xFF, 0xFE, 0xFF, 0xFF, 0xFF, 0x80, 0x00, 0x00, 0x80);
+        long[] values = new long[schema.getFieldCount()];
+
+        assertTrue(schema.decode(frame, 0, frame.length, values));
+        assertEquals(0x1234, values[0]);
+        assertEquals(0x3412, values[1]);
+        assertEquals(-2, values[2]);
+        assertEquals(0x80FFFFFFL, values[3]);
+        assertEquals(-128, values[4]);
+        assertEquals(-0x800000, values[5]);
+        assertEquals(0x1234FFFEFFFFFF80L, values[6]);
+    }
+
+    @Test
+    public void decodesBcdBitsAndFixedPointFromSlice() {
+        FrameSchema schema = FrameSchema.parse(
+                "meter match=0:AA55 volt=u16be@2/1 curr=s16le@4/2 serial=bcd3@6 alarm=u8@9.0 mode=u16be@9.4:3");
+        assertEquals(11, schema.getMinLength());
+
+        byte[] buf = bytes(0x00, 0xAA, 0x55, 0x08, 0xFD, 0x83, 0xFF, 0x00, 0x12, 0x34, 0x01, 0x51, 0x00);
+        long[] values = new long[schema.getFieldCount()];
+        assertTrue(schema.decode(buf, 1, 12, values));
+        assertEquals(2301, values[0]);
+        assertEquals(-125, values[1]);
+        assertEquals(1234, values[2]);
+        assertEquals(1, values[3]);
+        assertEquals(5, values[4]);
+        assertEquals(230.1, schema.getDouble(values, schema.indexOf("volt")), 1e-9);
+
+        StringBuilder sb = new StringBuilder();
+        schema.format(values, sb);
+        assertEquals("meter volt=230.1 curr=-1.25 serial=001234 alarm=1 mode=5", sb.toString());
+
+        buf[8] = (byte) 0x1A; // 非法 BCD
+        schema.decode(buf, 1, 12, values);
+        assertEquals(FrameSchema.INVALID, values[2]);
+        assertTrue(Double.isNaN(schema.getDouble(values, 2)));
+    }
+
+    @Test
+    public void registryFallsBackWhenNoSchemaMatches() {
+        SchemaRegistry registry = new SchemaRegistry();
+        registry.load("# comment\n\nping match=0:01 seq=u8@1\npong match=0:02 seq=u8@1 flags=u8@2.0:4\n");
+        assertEquals(2, registry.size());
+
+        StringBuilder sb = new StringBuilder();
+        assertTrue(registry.format(bytes(0x02, 0x07, 0x3C), 0, 3, sb));
+        assertEquals("pong seq=7 flags=12", sb.toString());
+
+        sb.setLength(0);
+        assertFalse(registry.format(bytes(0x02, 0x07), 0, 2, sb)); // 太短
+        assertFalse(registry.format(bytes(0x03, 0x07, 0x00), 0, 3, sb));
+        assertEquals(0, sb.length());
+
+        try {
+            registry.load("ok seq=u8@0\nbad seq=x8@0");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("line 2"));
+        }
+        assertEquals(2, registry.size()); // 出错时保持原来的格式
+    }
+}
@@ -0,0 +1,164 @@
+package com.ronda.bluetoothassist.settings;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class SettingsStoreTest {
+
+    /**
+     * 内存中的存储，load() 等到 release 之后才返回，模拟很慢的磁盘
+     */
+    private static class SlowBackend implements SettingsStore.Backend {
+        final Map<String, Object> mData = new HashMap<String, Object>();
+        final List<Map<String, Object>> mWrites = new ArrayList<Map<String, Object>>();
+        final CountDownLatch mRelease = new CountDownLatch(1);
+
+        @Override
+        public Map<String, ?> load() {
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new HashMap<String, Object>(mData);
+        }
+
+        @Override
+        public void write(Map<String, Object> changes) {
+            mWrites.add(changes);
+            for (Map.Entry<String, Object> entry : changes.entrySet()) {
+                if (entry.getValue() == null) {
+                    mData.remove(entry.getKey());
+                } else {
+                    mData.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        @Override
+        public void clear() {
+            mData.clear();
+        }
+    }
+
+    @Test
+    public void readsNeverWaitForDiskAndEarlyWritesWin() throws InterruptedException {
+        SlowBackend backend = new SlowBackend();
+        backend.mData.put("addr", "old");
+        backend.mData.put("lines", 500);
+        SettingsStore store = new SettingsStore(backend);
+        store.preload();
+
+        final AtomicBoolean loadedCallback = new AtomicBoolean();
+        store.runWhenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                loadedCallback.set(true);
+            }
+        });
+        // 磁盘还没有读完：读到默认值，写入只进内存
+        assertFalse(store.isLoaded());
+        assertEquals(2000, store.getInt("lines", 2000));
+        store.putString("addr", "new");
+        assertEquals("new", store.getString("addr", ""));
+
+        backend.mRelease.countDown();
+        assertTrue(store.awaitLoaded(1, TimeUnit.SECONDS));
+        assertTrue(store.flush(1, TimeUnit.SECONDS));
+        assertTrue(loadedCallback.get());
+        assertEquals(500, store.getInt("lines", 2000));
+        assertEquals("new", store.getString("addr", ""));
+        assertEquals("new", backend.mData.get("addr"));
+        assertEquals(0, store.getLong("addr", 0)); // 类型不符时返回默认值
+    }
+
+    @Test
+    public void writesAreCoalesced() throws InterruptedException {
+        SlowBackend backend = new SlowBackend();
+        backend.mRelease.countDown();
+        SettingsStore store = new SettingsStore(backend);
+        store.preload();
+        assertTrue(store.awaitLoaded(1, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 100; i++) {
+            store.putInt("n", i);
+        }
+        store.remove("missing");
+        assertTrue(store.flush(1, TimeUnit.SECONDS));
+        assertTrue(backend.mWrites.size() < 100);
+        assertEquals(99, backend.mData.get("n"));
+    }
+
+    @Test
+    public void deviceHistoryIsLruAndSurvivesReload() throws InterruptedException {
+        SlowBackend backend = new SlowBackend();
+        backend.mRelease.countDown();
+        SettingsStore store = new SettingsStore(backend);
+        store.preload();
+        assertTrue(store.awaitLoaded(1, TimeUnit.SECONDS));
+
+        DeviceHistory history = new DeviceHistory(store, "history", 2);
+        history.recordSuccess("A", "scale", 800, 1000);
+        history.recordFailure("A");
+        history.recordSuccess("A", null, 400, 2000);
+        history.recordSuccess("B", "printer", 300, 3000);
+        history.recordFailure("C"); // 超出容量，淘汰最久没用的 A
+
+        assertEquals(2, history.size());
+        assertNull(history.get("A"));
+        assertEquals("C", history.list().get(0).getAddress());
+        assertEquals("B", history.getMostRecent().getAddress());
+        assertTrue(store.flush(1, TimeUnit.SECONDS));
+
+        SettingsStore reloaded = new SettingsStore(backend);
+        reloaded.preload();
+        assertTrue(reloaded.awaitLoaded(1, TimeUnit.SECONDS));
+        DeviceHistory restored = new DeviceHistory(reloaded, "history", 2);
+        DeviceHistory.Record b = restored.get("B");
+        assertEquals("printer", b.getName());
+        assertEquals(300, b.getLastLatencyMs());
+        assertEquals(1, b.getSuccessCount());
+        assertEquals(1, restored.get("C").getFailureCount());
+        assertEquals(0f, restored.get("C").getSuccessRate(), 0);
+    }
+
+    @Test
+    public void deviceHistoryRecordedBeforeLoadMergesWithDisk() throws InterruptedException {
+        SlowBackend backend = new SlowBackend();
+        backend.mData.put("history", "A\t1000\t800\t800\t1\t0\tscale\nB\t2000\t500\t900\t2\t3\told\n");
+        SettingsStore store = new SettingsStore(backend);
+        store.preload();
+
+        // 磁盘还没有读完时就连上了一个设备
+        DeviceHistory history = new DeviceHistory(store, "history", 8);
+        history.recordSuccess("B", "printer", 300, 3000);
+        assertFalse(store.isLoaded());
+
+        backend.mRelease.countDown();
+        assertTrue(store.awaitLoaded(1, TimeUnit.SECONDS));
+        assertTrue(store.flush(1, TimeUnit.SECONDS));
+        assertEquals(2, history.size());
+        assertEquals("scale", history.get("A").getName());
+        assertEquals("B", history.list().get(0).getAddress()); // 读入前的记录更近
+
+        DeviceHistory.Record b = history.get("B"); // 磁盘上已有的设备累加，不被读入前的记录覆盖
+        assertEquals(3, b.getSuccessCount());
+        assertEquals(3, b.getFailureCount());
+        assertEquals(400, b.getAverageLatencyMs()); // (900 + 300) / 3
+        assertEquals(3000, b.getLastConnectedMs());
+        assertEquals(300, b.getLastLatencyMs());
+        assertEquals("printer", b.getName());
+
+        String saved = (String) backend.mData.get("history");
+        assertTrue(saved, saved.startsWith("A\t") && saved.contains("\nB\t3000\t300\t1200\t3\t3\tprinter\n"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.ronda.bluetoothassist.utils;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class HexUtilsTest {
+
+    private static final byte[] DATA = {0x00, 0x0F, (byte) 0xA5, (byte) 0xFF, 0x10};
+
+    @Test
+    public void bytesToHexString_keepsOldFormats() throws Exception {
+        assertEquals("000fa5ff10", HexUtils.bytesToHexString(DATA));
+        assertEquals("00 0F A5 FF 10 ", HexUtils.bytesToHexStringWithSpace(DATA));
+        assertNull(HexUtils.bytesToHexString(new byte[0]));
+    }
+
+    @Test
+    public void bytesToHexStrings_padsWithZero() throws Exception {
+        assertArrayEquals(new String[]{"00", "0f", "a5", "ff", "10"}, HexUtils.bytesToHexStrings(DATA));
+    }
+
+    @Test
+    public void encodeHex_writesAtOffset() throws Exception {
+        char[] dst = new char[8];
+        int n = HexUtils.encodeHex(DATA, 1, 3, dst, 2, true);
+
+        assertEquals(6, n);
+        assertEquals("0FA5FF", new String(dst, 2, n));
+    }
+
+    @Test
+    public void appendHex_toBuilderAndAppendable() throws Exception {
+        StringBuilder sb = new StringBuilder("rx:");
+        HexUtils.appendHexWithSpace(DATA, 2, 2, sb);
+        assertEquals("rx:A5 FF ", sb.toString());
+
+        StringWriter writer = new StringWriter();
+        HexUtils.appendHex(DATA, 0, 2, writer, false, false);
+        assertEquals("000f", writer.toString());
+    }
+
+    @Test
+    public void parseHex_acceptsSeparatorsAndPrefixes() throws Exception {
+        assertArrayEquals(DATA, HexUtils.hexStringToBytes("000fa5ff10"));
+        assertArrayEquals(DATA, HexUtils.hexStringToBytes("00 0F,a5:FF-10"));
+        assertArrayEquals(DATA, HexUtils.hexStringToBytes("0x00 0X0f 0xA5FF\r\n10 "));
+        assertArrayEquals(DATA, HexUtils.hexStringToBytes("0 f a5 ff 10"));
+        assertNull(HexUtils.hexStringToBytes(""));
+
+        byte[] dst = new byte[8];
+        StringBuilder text = new StringBuilder("tx: 0x1 02");
+        assertEquals(2, HexUtils.parseHex(text, 4, text.length() - 4, dst, 3));
+        assertEquals(1, dst[3]);
+        assertEquals(2, dst[4]);
+    }
+
+    @Test
+    public void parseHex_reportsErrorPosition() throws Exception {
+        assertErrorAt("00 0G", 4);
+        assertErrorAt("00 abc 11", 5);   // 奇数个数字
+        assertErrorAt("0x", 2);
+        assertErrorAt("12 0x zz", 5);
+        assertErrorAt("12\u00e9", 2);
+    }
+
+    private static void assertErrorAt(String text, int index) {
+        try {
+            HexUtils.hexStringToBytes(text);
+            fail(text);
+        } catch (HexFormatException e) {
+            assertEquals(text, index, e.getIndex());
+        }
+    }
+}
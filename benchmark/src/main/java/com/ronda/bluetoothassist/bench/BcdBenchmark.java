@@ -0,0 +1,58 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.utils.HexUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BCD 码与10进制串互转
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BcdBenchmark {
+
+    @Param({"4", "12", "64"})
+    public int digits;
+
+    private String decimal;
+    private byte[] bcd;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(digits);
+        sb.append((char) ('1' + random.nextInt(9)));
+        while (sb.length() < digits) {
+            sb.append((char) ('0' + random.nextInt(10)));
+        }
+        decimal = sb.toString();
+        bcd = HexUtils.str2Bcd(decimal);
+    }
+
+    @Benchmark
+    public String bcd2Str() {
+        return HexUtils.bcd2Str(bcd);
+    }
+
+    @Benchmark
+    public byte[] str2Bcd() {
+        return HexUtils.str2Bcd(decimal);
+    }
+}
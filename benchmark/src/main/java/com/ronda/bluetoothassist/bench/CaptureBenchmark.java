@@ -0,0 +1,69 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.capture.CaptureFormat;
+import com.ronda.bluetoothassist.capture.CaptureWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读线程每读到一块数据调用一次 CaptureWriter.append() 的开销，写盘在后台线程中进行
+ * <p>
+ * 结束时打印丢弃的记录数：正常情况下后台线程应当跟得上，丢弃数为 0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaptureBenchmark {
+
+    @Param({"16", "1024"})
+    public int chunkSize;
+
+    private File dir;
+    private CaptureWriter writer;
+    private byte[] chunk;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = File.createTempFile("capture", "");
+        dir.delete();
+        writer = new CaptureWriter(dir, "bench", 64L * 1024 * 1024, CaptureWriter.DEFAULT_BUFFER_SIZE);
+        chunk = new byte[chunkSize];
+    }
+
+    @TearDown
+    public void tearDown() {
+        writer.close();
+        System.out.println("records=" + writer.getRecordCount() + ", dropped=" + writer.getDroppedRecords()
+                + ", files=" + writer.getFileCount());
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public boolean append() {
+        return writer.append(1, CaptureFormat.DIRECTION_RX, chunk, 0, chunk.length);
+    }
+}
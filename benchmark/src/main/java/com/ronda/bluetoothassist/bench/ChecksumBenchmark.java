@@ -0,0 +1,76 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.checksum.Crc16Modbus;
+import com.ronda.bluetoothassist.checksum.Crc32;
+import com.ronda.bluetoothassist.checksum.FrameChecksum;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 查表 CRC 与逐位计算、java.util.zip.CRC32 的对比
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    @Param({"8", "64", "256", "1024"})
+    public int size;
+
+    private byte[] data;
+    private final FrameChecksum crc16 = new Crc16Modbus();
+    private final FrameChecksum crc32 = new Crc32();
+    private final CRC32 zipCrc32 = new CRC32();
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+    }
+
+    @Benchmark
+    public long crc16ModbusTable() {
+        return crc16.compute(data, 0, data.length);
+    }
+
+    @Benchmark
+    public int crc16ModbusBitwise() {
+        int crc = 0xFFFF;
+        for (byte b : data) {
+            crc ^= b & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+        }
+        return crc;
+    }
+
+    @Benchmark
+    public long crc32SliceBy4() {
+        return crc32.compute(data, 0, data.length);
+    }
+
+    @Benchmark
+    public long crc32Zip() {
+        zipCrc32.reset();
+        zipCrc32.update(data, 0, data.length);
+        return zipCrc32.getValue();
+    }
+}
@@ -0,0 +1,71 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.schema.FrameSchema;
+import com.ronda.bluetoothassist.utils.HexUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按帧格式解码字段：编译好的取值器直接读字节，对比先转成 Hex/BCD 字符串再解析数字的做法
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameSchemaBenchmark {
+
+    private FrameSchema schema;
+    private long[] values;
+    private StringBuilder sb;
+    private byte[] frame;
+
+    @Setup
+    public void setup() {
+        schema = FrameSchema.parse("meter match=0:AA55 volt=u16be@2/1 curr=s16le@4/2 energy=u32be@6/2"
+                + " serial=bcd4@10 alarm=u8@14.0 mode=u16be@14.4:3");
+        values = new long[schema.getFieldCount()];
+        sb = new StringBuilder(128);
+        frame = HexUtils.hexStringToBytes("AA5508FD83FF0001E24000123456015100");
+    }
+
+    @Benchmark
+    public long decode() {
+        schema.decode(frame, 0, frame.length, values);
+        return values[0] + values[1] + values[2] + values[3] + values[4] + values[5];
+    }
+
+    @Benchmark
+    public int decodeAndFormat() {
+        sb.setLength(0);
+        schema.decode(frame, 0, frame.length, values);
+        return schema.format(values, sb).length();
+    }
+
+    /**
+     * 原来的写法：整帧转成 Hex 字符串，截取子串再解析
+     */
+    @Benchmark
+    public long viaStrings() {
+        String hex = HexUtils.bytesToHexString(frame);
+        long volt = Integer.parseInt(hex.substring(4, 8), 16);
+        long curr = (short) Integer.parseInt(hex.substring(10, 12) + hex.substring(8, 10), 16);
+        long energy = Long.parseLong(hex.substring(12, 20), 16);
+        long serial = Long.parseLong(HexUtils.bcd2Str(Arrays.copyOfRange(frame, 10, 14)));
+        int flags = Integer.parseInt(hex.substring(28, 32), 16);
+        return volt + curr + energy + serial + (flags >> 8 & 1) + (flags >> 4 & 7);
+    }
+}
@@ -0,0 +1,96 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.console.HexDump;
+import com.ronda.bluetoothassist.utils.HexUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HexUtils 编码、解码的吞吐
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexBenchmark {
+
+    @Param({"1", "16", "128", "1024", "4096"})
+    public int size;
+
+    private byte[] data;
+    private String hex;
+    private StringBuilder spacedHex; // 输入框中带空格的文本，EditText 的 Editable 也是 CharSequence
+    private byte[] parsed;
+    private char[] chars;
+    private StringBuilder builder;
+    private char[] row = new char[HexDump.ROW_LENGTH];
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+        hex = HexUtils.bytesToHexString(data);
+        chars = new char[size * 3];
+        builder = new StringBuilder(size * 3);
+        spacedHex = HexUtils.appendHexWithSpace(data, 0, data.length, new StringBuilder(size * 3));
+        parsed = new byte[HexUtils.maxParsedLength(spacedHex.length())];
+    }
+
+    @Benchmark
+    public String bytesToHexStringWithSpace() {
+        return HexUtils.bytesToHexStringWithSpace(data);
+    }
+
+    @Benchmark
+    public StringBuilder appendHexWithSpace() {
+        builder.setLength(0);
+        return HexUtils.appendHexWithSpace(data, 0, data.length, builder);
+    }
+
+    /**
+     * Hex Dump 显示：按 16 字节一行格式化到复用的行缓冲，含偏移量和 ASCII 栏
+     */
+    @Benchmark
+    public int hexDumpRows() {
+        int chars = 0;
+        for (int p = 0; p < data.length; p += HexDump.BYTES_PER_ROW) {
+            chars += HexDump.formatRow(p, data, p, Math.min(HexDump.BYTES_PER_ROW, data.length - p), row);
+        }
+        return chars;
+    }
+
+    @Benchmark
+    public int encodeHexIntoCharArray() {
+        return HexUtils.encodeHexWithSpace(data, 0, data.length, chars, 0);
+    }
+
+    @Benchmark
+    public String bytesToHexString() {
+        return HexUtils.bytesToHexString(data);
+    }
+
+    @Benchmark
+    public byte[] hexStringToBytes() {
+        return HexUtils.hexStringToBytes(hex);
+    }
+
+    @Benchmark
+    public int parseSpacedHexIntoBuffer() {
+        return HexUtils.parseHex(spacedHex, 0, spacedHex.length(), parsed, 0);
+    }
+}
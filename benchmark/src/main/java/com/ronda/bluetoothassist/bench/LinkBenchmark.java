@@ -0,0 +1,122 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.connection.Connection;
+import com.ronda.bluetoothassist.connection.ReceivePipeline;
+import com.ronda.bluetoothassist.io.BufferPool;
+import com.ronda.bluetoothassist.io.Chunk;
+import com.ronda.bluetoothassist.transport.MemoryTransportFactory;
+import com.ronda.bluetoothassist.transport.StreamTransport;
+import com.ronda.bluetoothassist.transport.Transport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 通过内存管道测连接引擎的收发：
+ * receive 是模拟设备写出一块数据到读线程把它交给下游的耗时，send 是 Connection.write() 到写线程写完的耗时
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkBenchmark {
+
+    private static final String ADDRESS = "00:00:00:00:00:01";
+
+    @Param({"16", "128", "1024", "4096"})
+    public int chunkSize;
+
+    private final AtomicLong received = new AtomicLong();
+    private long expected;
+    private byte[] payload;
+    private Connection connection;
+    private StreamTransport device;
+    private Thread drainer;
+
+    @Setup
+    public void setup() throws Exception {
+        payload = new byte[chunkSize];
+        MemoryTransportFactory factory = new MemoryTransportFactory();
+        Transport transport = factory.create(ADDRESS);
+        transport.connect();
+        device = factory.awaitRemote(ADDRESS, 1, TimeUnit.SECONDS);
+
+        ReceivePipeline pipeline = new ReceivePipeline(new ReceivePipeline.Sink() {
+            @Override
+            public void onData(byte[] buf, int offset, int length) {
+                received.addAndGet(length);
+            }
+
+            @Override
+            public boolean onChunk(Chunk chunk) {
+                received.addAndGet(chunk.length());
+                chunk.recycle();
+                return true;
+            }
+        });
+        connection = new Connection(transport, pipeline, new BufferPool(1024, 32), new Connection.Listener() {
+            @Override
+            public void onClosed(Connection connection, IOException cause) {
+            }
+        });
+        connection.start();
+
+        // 设备端把手机发来的数据全部读掉，避免管道写满
+        final InputStream deviceIn = device.getInputStream();
+        drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buf = new byte[4096];
+                try {
+                    while (deviceIn.read(buf, 0, buf.length) >= 0) {
+                        // discard
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        }, "device-drainer");
+        drainer.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connection.close();
+        device.close();
+        drainer.join(1000);
+    }
+
+    @Benchmark
+    public long receive() throws IOException {
+        OutputStream deviceOut = device.getOutputStream();
+        deviceOut.write(payload, 0, payload.length);
+        expected += payload.length;
+        long n;
+        while ((n = received.get()) < expected) {
+            Thread.yield();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public Integer send() throws Exception {
+        return connection.write(payload).get();
+    }
+}
@@ -0,0 +1,76 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.log.BtLog;
+import com.ronda.bluetoothassist.log.LogSampler;
+import com.ronda.bluetoothassist.log.LogSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读线程每读到一块数据记一条日志的开销：原来的字符串拼接 vs BtLog（关闭 / 打开 / 打开并采样）
+ * <p>
+ * 输出端什么也不做，只测调用方线程上的代价
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogBenchmark {
+
+    @Param({"OFF", "DEBUG"})
+    public String level;
+
+    private final byte[] chunk = "T=25.1,H=40\r\nT=25.2,H=41\r\n".getBytes();
+    private final LogSampler sampler = new LogSampler(16);
+
+    @Setup
+    public void setup() {
+        BtLog.init("OFF".equals(level) ? BtLog.OFF : BtLog.DEBUG, new LogSink() {
+            @Override
+            public void println(int level, String tag, String message) {
+            }
+        }, 4096);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BtLog.shutdown();
+    }
+
+    /**
+     * 原来的写法：不管日志是否输出都先拼接字符串
+     */
+    @Benchmark
+    public String concat() {
+        return "read:" + new String(chunk, 0, chunk.length);
+    }
+
+    @Benchmark
+    public void btLog() {
+        if (BtLog.isLoggable(BtLog.DEBUG)) {
+            BtLog.data(BtLog.DEBUG, "bench", "read:{} ({} bytes)", chunk, 0, chunk.length);
+        }
+    }
+
+    @Benchmark
+    public void btLogSampled() {
+        if (BtLog.isLoggable(BtLog.DEBUG) && sampler.sample()) {
+            BtLog.data(BtLog.DEBUG, "bench", "read:{} ({} bytes)", chunk, 0, chunk.length);
+        }
+    }
+}
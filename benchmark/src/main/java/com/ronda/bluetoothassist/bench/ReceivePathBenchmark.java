@@ -0,0 +1,102 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.console.ConsoleBuffer;
+import com.ronda.bluetoothassist.frame.DelimiterFrameDecoder;
+import com.ronda.bluetoothassist.frame.FrameDecoder;
+import com.ronda.bluetoothassist.frame.FrameSink;
+import com.ronda.bluetoothassist.utils.HexUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从 read() 得到的一块数据到接收区文本的整条处理路径
+ * <p>
+ * 数据是不断重复的 aa ... bb 帧，块大小从 1 字节到 4 KB，分别测原始文本显示、Hex 显示以及先分帧再 Hex 显示
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceivePathBenchmark {
+
+    private static final int STREAM_SIZE = 64 * 1024;
+
+    @Param({"1", "16", "128", "1024", "4096"})
+    public int chunkSize;
+
+    private byte[] stream;
+    private int position;
+    private ConsoleBuffer console;
+    private StringBuilder builder;
+    private FrameDecoder decoder;
+    private FrameSink hexSink;
+
+    @Setup
+    public void setup() {
+        byte[] frame = {(byte) 0xAA, 0x01, 0x00, 0x30, (byte) 0x91, 0x12, 0x25, 0x0D, 0x0A, (byte) 0xBB};
+        stream = new byte[STREAM_SIZE];
+        for (int i = 0; i < stream.length; i++) {
+            stream[i] = frame[i % frame.length];
+        }
+        console = new ConsoleBuffer();
+        builder = new StringBuilder(chunkSize * 3);
+        decoder = new DelimiterFrameDecoder(new byte[]{(byte) 0xAA}, new byte[]{(byte) 0xBB}, true, 256);
+        hexSink = new FrameSink() {
+            @Override
+            public void onFrame(byte[] buf, int offset, int length) {
+                builder.setLength(0);
+                HexUtils.appendHexWithSpace(buf, offset, length, builder);
+                console.append(builder);
+                console.newLine();
+            }
+        };
+    }
+
+    /**
+     * 返回下一块数据在 stream 中的起始位置，循环使用同一段数据
+     */
+    private int nextChunk() {
+        if (position + chunkSize > stream.length) {
+            position = 0;
+        }
+        int off = position;
+        position += chunkSize;
+        return off;
+    }
+
+    @Benchmark
+    public ConsoleBuffer text() {
+        int off = nextChunk();
+        console.append(new String(stream, off, chunkSize));
+        return console;
+    }
+
+    @Benchmark
+    public ConsoleBuffer hex() {
+        int off = nextChunk();
+        builder.setLength(0);
+        console.append(HexUtils.appendHexWithSpace(stream, off, chunkSize, builder));
+        return console;
+    }
+
+    @Benchmark
+    public ConsoleBuffer framedHex() {
+        int off = nextChunk();
+        decoder.decode(stream, off, chunkSize, hexSink);
+        return console;
+    }
+}
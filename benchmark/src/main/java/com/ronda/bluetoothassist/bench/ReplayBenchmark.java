@@ -0,0 +1,88 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.capture.CaptureFormat;
+import com.ronda.bluetoothassist.capture.CaptureWriter;
+import com.ronda.bluetoothassist.capture.Replayer;
+import com.ronda.bluetoothassist.connection.ReceivePipeline;
+import com.ronda.bluetoothassist.frame.DelimiterFrameDecoder;
+import com.ronda.bluetoothassist.io.Chunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以最快速度回放一个 1 MB 的抓包文件（128 字节的块，每块含若干 \r\n 结尾的帧），测读文件 + 分帧的吞吐
+ * <p>
+ * 每次操作回放整个文件，吞吐 = ops/s * 1 MB
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+
+    private static final int CHUNK_SIZE = 128;
+    private static final int CHUNKS = 8 * 1024;
+
+    private File dir;
+    private File file;
+    private ReceivePipeline pipeline;
+    private long frames;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = File.createTempFile("replay", "");
+        dir.delete();
+        CaptureWriter writer = new CaptureWriter(dir, "bench", Long.MAX_VALUE, 2 * 1024 * 1024);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        byte[] frame = "T=25.1,H=40\r\n".getBytes();
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = frame[i % frame.length];
+        }
+        for (int i = 0; i < CHUNKS; i++) {
+            writer.append(1, CaptureFormat.DIRECTION_RX, chunk, 0, chunk.length);
+        }
+        writer.close();
+        file = dir.listFiles()[0];
+        pipeline = new ReceivePipeline(new ReceivePipeline.Sink() {
+            @Override
+            public void onData(byte[] buf, int offset, int length) {
+                frames++;
+            }
+
+            @Override
+            public boolean onChunk(Chunk chunk) {
+                return false;
+            }
+        });
+        pipeline.setFrameDecoder(new DelimiterFrameDecoder(null, "\r\n".getBytes(), true, 256));
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public long replayFile() throws IOException {
+        Replayer replayer = new Replayer(Replayer.open(file), pipeline);
+        replayer.setSpeed(Replayer.SPEED_MAX);
+        return replayer.run().getFrames();
+    }
+}
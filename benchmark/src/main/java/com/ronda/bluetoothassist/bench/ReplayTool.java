@@ -0,0 +1,44 @@
+package com.ronda.bluetoothassist.bench;
+
+import com.ronda.bluetoothassist.capture.Replayer;
+import com.ronda.bluetoothassist.connection.ReceivePipeline;
+import com.ronda.bluetoothassist.frame.DelimiterFrameDecoder;
+import com.ronda.bluetoothassist.io.Chunk;
+import com.ronda.bluetoothassist.utils.HexUtils;
+
+import java.io.File;
+
+/**
+ * 在没有设备的机器上回放现场录下的文件，输出帧率和字节率
+ * <p>
+ * ./gradlew :benchmark:replay -Preplay="capture_xxx_0.btcap 0 0D0A"
+ * 参数依次为：文件、倍速（0 为尽快，默认 0）、帧尾的 Hex（可选，不给则不分帧）
+ */
+public class ReplayTool {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: ReplayTool <file> [speed] [delimiterHex]");
+            System.exit(1);
+        }
+        final long[] delivered = new long[1];
+        ReceivePipeline pipeline = new ReceivePipeline(new ReceivePipeline.Sink() {
+            @Override
+            public void onData(byte[] buf, int offset, int length) {
+                delivered[0]++;
+            }
+
+            @Override
+            public boolean onChunk(Chunk chunk) {
+                return false;
+            }
+        });
+        if (args.length > 2) {
+            pipeline.setFrameDecoder(new DelimiterFrameDecoder(null, HexUtils.hexStringToBytes(args[2]), true, 64 * 1024));
+        }
+        Replayer replayer = new Replayer(Replayer.open(new File(args[0])), pipeline);
+        replayer.setSpeed(args.length > 1 ? Double.parseDouble(args[1]) : Replayer.SPEED_MAX);
+        Replayer.Stats stats = replayer.run();
+        System.out.println(stats + ", delivered=" + delivered[0]);
+    }
+}